@@ -9,4 +9,9 @@ import java.util.*;
 public interface MetdataBasedAccessControlPoliciesFactory {
 
     List<Policy> getPolicies(String groupName);
+
+    /**
+     * @return a number that changes whenever the policies change
+     */
+    long getVersion();
 }
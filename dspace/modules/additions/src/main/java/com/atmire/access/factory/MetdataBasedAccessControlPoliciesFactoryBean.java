@@ -5,85 +5,97 @@ import com.atmire.access.model.ExactMatchPolicy;
 import com.atmire.access.model.GroupPolicy;
 import com.atmire.access.model.MetadataBasedAccessControlPolicies;
 import com.atmire.access.model.Policy;
+import com.atmire.utils.FileSnapshotLoader;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.*;
 
 /**
+ * The policies are indexed by group name once per version of the policy file. The file is checked for changes at
+ * most once per check interval, lookups in between only read the current policies.
+ *
  * @author philip at atmire.com
  */
 public class MetdataBasedAccessControlPoliciesFactoryBean implements MetdataBasedAccessControlPoliciesFactory {
 
-    private static Logger log = Logger.getLogger(MetdataBasedAccessControlPoliciesFactoryBean.class);
-
     private String filePath;
 
-    private Map<String, List<Policy>> policies;
-    private long lastModified;
+    private final FileSnapshotLoader<Map<String, List<Policy>>> policies =
+            new FileSnapshotLoader<Map<String, List<Policy>>>(60 * 1000L) {
+
+                @Override
+                protected File getFile() {
+                    return new File(filePath);
+                }
+
+                @Override
+                protected Map<String, List<Policy>> load(File file) throws Exception {
+                    return loadPolicies(file);
+                }
+            };
 
+    /**
+     * @return the policies of the group, the list must not be modified
+     */
     public List<Policy> getPolicies(String groupName) {
-        updatePolicies();
+        Map<String, List<Policy>> groupPolicies = policies.get();
+        List<Policy> output = groupPolicies == null ? null : groupPolicies.get(groupName);
 
-        if(policies.containsKey(groupName)) {
-            return policies.get(groupName);
+        if(output != null) {
+            return output;
         }
-        return new ArrayList<>();
+        return Collections.emptyList();
     }
 
-    private void updatePolicies(){
-        FileInputStream inputStream = null;
-        try {
-            File file = new File(filePath);
-
-            if(lastModified != file.lastModified()) {
-                policies = new HashMap<>();
-                inputStream = new FileInputStream(file);
+    public long getVersion() {
+        return policies.getSnapshot().getVersion();
+    }
 
-                MetadataAccessControlPoliciesMarshaller marshaller = new MetadataAccessControlPoliciesMarshaller();
-                MetadataBasedAccessControlPolicies metadataBasedAccessControlPolicies = marshaller.unmarshal(inputStream);
+    private Map<String, List<Policy>> loadPolicies(File file) throws Exception {
+        Map<String, List<Policy>> output = new HashMap<>();
 
-                List<GroupPolicy> groupPolicies = metadataBasedAccessControlPolicies.getGroupPolicies();
-                if (CollectionUtils.isNotEmpty(groupPolicies)) {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            MetadataAccessControlPoliciesMarshaller marshaller = new MetadataAccessControlPoliciesMarshaller();
+            MetadataBasedAccessControlPolicies metadataBasedAccessControlPolicies = marshaller.unmarshal(inputStream);
 
-                    for (GroupPolicy groupPolicy : groupPolicies) {
-                        policies.put(groupPolicy.getGroupName(), toPolicyList(groupPolicy.getExactMatchPolicies()));
-                    }
+            List<GroupPolicy> groupPolicies = metadataBasedAccessControlPolicies.getGroupPolicies();
+            if (CollectionUtils.isNotEmpty(groupPolicies)) {
 
+                for (GroupPolicy groupPolicy : groupPolicies) {
+                    output.put(groupPolicy.getGroupName(), toPolicyList(groupPolicy.getExactMatchPolicies()));
                 }
 
-                lastModified = file.lastModified();
-            }
-
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
-        finally {
-            if(inputStream != null){
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                    log.error(e.getMessage(), e);
-                }
             }
+        } finally {
+            inputStream.close();
         }
+
+        return Collections.unmodifiableMap(output);
     }
 
     private List<Policy> toPolicyList(final List<ExactMatchPolicy> exactMatchPolicies) {
-        List<Policy> output = new LinkedList<>();
+        List<Policy> output = new ArrayList<>();
         if(CollectionUtils.isNotEmpty(exactMatchPolicies)) {
             for (ExactMatchPolicy exactMatchPolicy : exactMatchPolicies) {
                 output.add(exactMatchPolicy);
             }
         }
 
-        return output;
+        return Collections.unmodifiableList(output);
     }
 
     public void setFilePath(String filePath) {
         this.filePath = filePath;
+        policies.invalidate();
+    }
+
+    /**
+     * @param checkIntervalSeconds the minimum time between two checks for changes of the policy file
+     */
+    public void setCheckIntervalSeconds(int checkIntervalSeconds) {
+        policies.setCheckIntervalMillis(checkIntervalSeconds * 1000L);
     }
 }
@@ -0,0 +1,53 @@
+package com.atmire.access.model;
+
+import org.dspace.core.Context;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The ACL values extracted from the metadata of the epersons during a single Context, per policy. An authorization
+ * check of a page full of items and bitstreams runs the extractor of a policy only once per eperson.
+ * <p>
+ * The cache is stored in the object cache of the Context and ends with it, changes to the metadata of an eperson are
+ * seen by the next Context.
+ *
+ * @author philip at atmire.com
+ */
+class EpersonAclValueCache {
+
+    /**
+     * The ID under which the cache is stored in the object cache of the Context.
+     */
+    private static final int CACHE_ID = 0;
+
+    private final Map<ExactMatchPolicy, Map<Integer, Set<String>>> values = new IdentityHashMap<>();
+
+    static EpersonAclValueCache get(Context context) {
+        EpersonAclValueCache cache = (EpersonAclValueCache) context.fromCache(EpersonAclValueCache.class, CACHE_ID);
+        if (cache == null) {
+            cache = new EpersonAclValueCache();
+            context.cache(cache, CACHE_ID);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the values of the eperson for the policy, null if not known yet. The set must not be modified
+     */
+    Set<String> get(ExactMatchPolicy policy, int epersonID) {
+        Map<Integer, Set<String>> policyValues = values.get(policy);
+        return policyValues == null ? null : policyValues.get(epersonID);
+    }
+
+    void put(ExactMatchPolicy policy, int epersonID, Set<String> aclValues) {
+        Map<Integer, Set<String>> policyValues = values.get(policy);
+        if (policyValues == null) {
+            policyValues = new HashMap<>();
+            values.put(policy, policyValues);
+        }
+        policyValues.put(epersonID, aclValues);
+    }
+}
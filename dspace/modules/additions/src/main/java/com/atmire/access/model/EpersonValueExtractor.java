@@ -18,7 +18,7 @@ public class EpersonValueExtractor {
     private String value;
 
     @XmlTransient
-    private Pattern pattern = null;
+    private volatile Pattern pattern = null;
 
     public String getValue() {
         return value;
@@ -26,13 +26,15 @@ public class EpersonValueExtractor {
 
     public void setValue(String value) {
         this.value = value;
+        this.pattern = null;
     }
 
     public String extractEpersonAclValue(String rawValue) {
         String matchedValue = null;
 
-        if(getPattern() != null) {
-            Matcher matcher = getPattern().matcher(rawValue);
+        Pattern pattern = getPattern();
+        if(pattern != null && rawValue != null) {
+            Matcher matcher = pattern.matcher(rawValue);
 
             if (matcher.find()) {
                 matchedValue = matcher.group(1);
@@ -43,9 +45,12 @@ public class EpersonValueExtractor {
     }
 
     private Pattern getPattern() {
-        if(pattern == null && StringUtils.isNotBlank(value)) {
-            pattern = Pattern.compile(value);
+        Pattern compiled = pattern;
+        if(compiled == null && StringUtils.isNotBlank(value)) {
+            // policies are shared between requests, compiling twice on a race is harmless
+            compiled = Pattern.compile(value);
+            pattern = compiled;
         }
-        return pattern;
+        return compiled;
     }
 }
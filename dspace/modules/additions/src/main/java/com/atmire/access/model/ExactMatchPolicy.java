@@ -1,7 +1,6 @@
 package com.atmire.access.model;
 
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.dspace.content.DSpaceObject;
@@ -13,9 +12,14 @@ import org.dspace.eperson.EPerson;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * @author philip at atmire.com
@@ -36,6 +40,12 @@ public class ExactMatchPolicy implements Policy {
     @XmlElement(name="epersonValueExtractor")
     private EpersonValueExtractor epersonValueExtractor;
 
+    @XmlTransient
+    private volatile FieldDescriptor itemDescriptor;
+
+    @XmlTransient
+    private volatile FieldDescriptor epersonDescriptor;
+
     public ItemField getItemField() {
         return itemField;
     }
@@ -61,61 +71,68 @@ public class ExactMatchPolicy implements Policy {
     }
 
     @Override
-    public boolean isAuthorized(EPerson ePerson, Item item) {
-        log.debug("ExactMatchPolicy.isAuthorized");
-        log.debug("ePerson: " + ePerson.getEmail());
-
-        Metadatum[] ePersonMetadata = getEpersonMetadata(ePerson);
-        Metadatum[] itemMetadata = getItemMetadata(item);
+    public boolean isAuthorized(Context context, EPerson ePerson, Item item) {
+        Set<String> epersonAclValues = getEpersonAclValues(context, ePerson);
+        if (log.isDebugEnabled()) {
+            log.debug("ExactMatchPolicy.isAuthorized for " + ePerson.getEmail() + " with values " + epersonAclValues);
+        }
+        if (epersonAclValues.isEmpty()) {
+            return false;
+        }
 
-        boolean printedDebug = false;
-        for (Metadatum itemMetadatum : itemMetadata) {
-            log.debug("item field " + itemMetadatum.getField() + " with value " + itemMetadatum.value);
-            for (Metadatum ePersonMetadatum : ePersonMetadata) {
+        for (Metadatum itemMetadatum : getItemMetadata(item)) {
+            if (epersonAclValues.contains(itemMetadatum.value)) {
+                return true;
+            }
+        }
 
-                if(!printedDebug) {
-                    log.debug("eperson field " + ePersonMetadatum.getField() + " with value " + ePersonMetadatum.value);
-                }
+        return false;
+    }
 
+    /**
+     * @return the ACL values extracted from the metadata of the eperson, in the order of the metadata. The values are
+     * remembered for the rest of the Context, the set must not be modified
+     */
+    public Set<String> getEpersonAclValues(Context context, EPerson ePerson) {
+        EpersonAclValueCache cache = context == null ? null : EpersonAclValueCache.get(context);
+        Set<String> values = cache == null ? null : cache.get(this, ePerson.getID());
+
+        if (values == null) {
+            values = new LinkedHashSet<>();
+            for (Metadatum ePersonMetadatum : getEpersonMetadata(ePerson)) {
                 String epersonAclValue = epersonValueExtractor.extractEpersonAclValue(ePersonMetadatum.value);
-                if(itemMetadatum.value.equals(epersonAclValue))
-                {
-                    return true;
+                if (epersonAclValue != null) {
+                    values.add(epersonAclValue);
                 }
             }
+            values = Collections.unmodifiableSet(values);
 
-            printedDebug = true;
+            if (cache != null) {
+                cache.put(this, ePerson.getID(), values);
+            }
         }
 
-        return false;
+        return values;
     }
 
     private Metadatum[] getEpersonMetadata(EPerson ePerson) {
-        String[] split = StringUtils.split(epersonField.getValue(), ".");
-
-        String schema = split[0];
-        String element = split[1];
-        String qualifier = null;
-
-        if(split.length > 2) {
-            qualifier = split[2];
+        FieldDescriptor descriptor = epersonDescriptor;
+        if (descriptor == null || !descriptor.matches(epersonField.getValue())) {
+            descriptor = new FieldDescriptor(epersonField.getValue());
+            epersonDescriptor = descriptor;
         }
 
-        return ePerson.getMetadata(schema, element, qualifier, Item.ANY);
+        return ePerson.getMetadata(descriptor.schema, descriptor.element, descriptor.qualifier, Item.ANY);
     }
 
     private Metadatum[] getItemMetadata(Item item) {
-        String[] split = StringUtils.split(itemField.getValue(), ".");
-
-        String schema = split[0];
-        String element = split[1];
-        String qualifier = null;
-
-        if(split.length > 2) {
-            qualifier = split[2];
+        FieldDescriptor descriptor = itemDescriptor;
+        if (descriptor == null || !descriptor.matches(itemField.getValue())) {
+            descriptor = new FieldDescriptor(itemField.getValue());
+            itemDescriptor = descriptor;
         }
 
-        return item.getMetadata(schema, element, qualifier, Item.ANY);
+        return item.getMetadata(descriptor.schema, descriptor.element, descriptor.qualifier, Item.ANY);
     }
 
     public String getSolrIndexField(){
@@ -137,26 +154,21 @@ public class ExactMatchPolicy implements Policy {
         return output;
     }
 
-    public String getSolrQueryCriteria(EPerson ePerson){
-
-        Metadatum[] metadata = getEpersonMetadata(ePerson);
+    public String getSolrQueryCriteria(Context context, EPerson ePerson){
         StringBuilder solrQueryCriteria = new StringBuilder();
 
         solrQueryCriteria.append("(");
-        if(ArrayUtils.isNotEmpty(metadata)) {
-
-            for (Metadatum metadatum : metadata) {
-                String epersonAclValue = epersonValueExtractor.extractEpersonAclValue(metadatum.value);
-
-                if(StringUtils.isNotBlank(epersonAclValue)) {
-                    if (solrQueryCriteria.length() > 1) {
-                        solrQueryCriteria.append(" OR ");
-                    }
-
-                    solrQueryCriteria.append(getSolrIndexField() + ":\"" + epersonAclValue + "\"");
+        // sorted, so the same values always give the same filter query for the solr filter cache
+        for (String epersonAclValue : new TreeSet<>(getEpersonAclValues(context, ePerson))) {
+            if(StringUtils.isNotBlank(epersonAclValue)) {
+                if (solrQueryCriteria.length() > 1) {
+                    solrQueryCriteria.append(" OR ");
                 }
+
+                solrQueryCriteria.append(getSolrIndexField() + ":\"" + epersonAclValue + "\"");
             }
-        } else {
+        }
+        if (solrQueryCriteria.length() == 1) {
             solrQueryCriteria.append(getSolrIndexField() + ":\"NO-VALUE-FOUND\"");
         }
 
@@ -164,4 +176,28 @@ public class ExactMatchPolicy implements Policy {
 
         return solrQueryCriteria.toString();
     }
+
+    /**
+     * A metadata field of the policy split into its parts, so the field is not split again for every check.
+     */
+    private static final class FieldDescriptor {
+
+        private final String field;
+        private final String schema;
+        private final String element;
+        private final String qualifier;
+
+        private FieldDescriptor(String field) {
+            String[] split = StringUtils.split(field, ".");
+
+            this.field = field;
+            this.schema = split[0];
+            this.element = split[1];
+            this.qualifier = split.length > 2 ? split[2] : null;
+        }
+
+        private boolean matches(String field) {
+            return this.field.equals(field);
+        }
+    }
 }
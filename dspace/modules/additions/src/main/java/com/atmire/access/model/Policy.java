@@ -11,11 +11,11 @@ import java.util.List;
  */
 public interface Policy {
 
-    boolean isAuthorized(EPerson ePerson, Item item);
+    boolean isAuthorized(Context context, EPerson ePerson, Item item);
 
     String getSolrIndexField();
 
     List<String> getSolrIndexValues(Context context, DSpaceObject dSpaceObject);
 
-    String getSolrQueryCriteria(EPerson ePerson);
+    String getSolrQueryCriteria(Context context, EPerson ePerson);
 }
@@ -15,6 +15,7 @@ import org.dspace.eperson.Group;
 import org.dspace.utils.DSpace;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -61,7 +62,7 @@ public class MetadataBasedAccessControlIndexPlugin implements SolrServiceIndexPl
 
         List<Group> memberGroups = Group.allMemberGroups(context, group);
 
-        List<Policy> policiesFromGroup = metadataBasedAuthorizationService.retrievePoliciesForGroup(group);
+        List<Policy> policiesFromGroup = new ArrayList<>(metadataBasedAuthorizationService.retrievePoliciesForGroup(group));
 
         for(Group memberGroup : memberGroups){
             policiesFromGroup.addAll(metadataBasedAuthorizationService.retrievePoliciesForGroup(memberGroup));
@@ -14,5 +14,13 @@ public interface MetadataBasedAuthorizationService {
 
     boolean isAuthorized(Context context, EPerson eperson, Group group, DSpaceObject item);
 
+    /**
+     * @return the policies of the group, shared between all callers. The list must not be modified
+     */
     List<Policy> retrievePoliciesForGroup(Group group);
+
+    /**
+     * @return a number that changes whenever the policies of any group change
+     */
+    long getPoliciesVersion();
 }
\ No newline at end of file
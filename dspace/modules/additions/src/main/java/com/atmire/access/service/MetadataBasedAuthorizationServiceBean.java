@@ -45,7 +45,7 @@ public class MetadataBasedAuthorizationServiceBean implements MetadataBasedAutho
             List<? extends Policy> policies = retrievePoliciesForGroup(group);
 
             for (Policy policy : policies) {
-                if (!policy.isAuthorized(eperson, item)) {
+                if (!policy.isAuthorized(context, eperson, item)) {
                     return false;
                 }
             }
@@ -62,6 +62,10 @@ public class MetadataBasedAuthorizationServiceBean implements MetadataBasedAutho
         return metdataBasedAccessControlPoliciesFactory.getPolicies(group.getName());
     }
 
+    public long getPoliciesVersion() {
+        return metdataBasedAccessControlPoliciesFactory.getVersion();
+    }
+
     public void setMetdataBasedAccessControlPoliciesFactory(MetdataBasedAccessControlPoliciesFactory metdataBasedAccessControlPoliciesFactory) {
         this.metdataBasedAccessControlPoliciesFactory = metdataBasedAccessControlPoliciesFactory;
     }
@@ -42,7 +42,8 @@ public class AsynchronousVirusScanConsumer implements AsynchronousConsumer {
                 context.complete();
             }
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            // the dispatcher logs the failure and retries the scan
+            throw new IllegalStateException("Unable to scan object " + objectType + "-" + objectId, e);
         } finally {
             if (context != null && context.isValid()) {
                 context.abort();
@@ -0,0 +1,177 @@
+package com.atmire.clamav;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.ctask.general.ClamScan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps up to maxSessions {@link ClamdSession}s open to clamd and shares each of them between up to pipelineDepth
+ * concurrent scans. A scan uses the least used session, a new session is only opened when all sessions are in use.
+ * Sessions that failed or were idle for longer than maxIdle are closed.
+ */
+public class ClamdConnectionPool {
+
+    private static final Logger log = Logger.getLogger(ClamdConnectionPool.class);
+
+    private static final String PLUGIN_PREFIX = "clamav";
+
+    private static ClamdConnectionPool instance;
+
+    private final String host;
+    private final int port;
+    private final int timeout;
+    private final int maxSessions;
+    private final long maxIdle;
+    private final long reportInterval;
+
+    private final List<ClamdSession> sessions = new ArrayList<ClamdSession>();
+    private final Semaphore permits;
+    private final ScanMetrics metrics = new ScanMetrics("clamd scans");
+    private long lastReport = System.currentTimeMillis();
+
+    /**
+     * @return the pool configured in clamav.cfg
+     */
+    public static synchronized ClamdConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new ClamdConnectionPool(ClamScan.getHost(), ClamScan.getPort(), ClamScan.getTimeout(),
+                    ConfigurationManager.getIntProperty(PLUGIN_PREFIX, "pool.size", 4),
+                    ConfigurationManager.getIntProperty(PLUGIN_PREFIX, "pool.pipeline-depth", 2),
+                    ConfigurationManager.getLongProperty(PLUGIN_PREFIX, "pool.max-idle", 20000),
+                    ConfigurationManager.getLongProperty(PLUGIN_PREFIX, "pool.report-interval", 300) * 1000);
+        }
+        return instance;
+    }
+
+    /**
+     * @param timeout        the socket timeout of the sessions in milliseconds
+     * @param maxSessions    the maximum number of open sessions
+     * @param pipelineDepth  the maximum number of concurrent scans on a single session
+     * @param maxIdle        the time in milliseconds after which an unused session is closed, this should be lower
+     *                       than the IdleTimeout of clamd
+     * @param reportInterval the time in milliseconds between two log lines with the metrics, 0 to disable
+     */
+    public ClamdConnectionPool(String host, int port, int timeout, int maxSessions, int pipelineDepth, long maxIdle, long reportInterval) {
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.maxIdle = maxIdle;
+        this.reportInterval = reportInterval;
+        permits = new Semaphore(this.maxSessions * Math.max(1, pipelineDepth), true);
+    }
+
+    /**
+     * Scan a stream on a pooled session, waits while all sessions are in use.
+     *
+     * @param buffer the buffer used to read the data, its length is the chunk size sent to clamd
+     * @return the reply of clamd, e.g. "stream: OK"
+     */
+    public String scan(InputStream data, byte[] buffer) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a clamd session");
+        }
+
+        ClamdSession session = null;
+        long start = System.nanoTime();
+        try {
+            session = lease();
+            CountingInputStream counting = new CountingInputStream(data);
+            String reply = session.scan(counting, buffer);
+            metrics.record(System.nanoTime() - start, counting.getByteCount());
+            return reply;
+        } catch (IOException e) {
+            metrics.fail();
+            throw e;
+        } finally {
+            if (session != null) {
+                giveBack(session);
+            }
+            permits.release();
+            report();
+        }
+    }
+
+    /**
+     * Make sure clamd can be reached, opening a session when none is open.
+     */
+    public void checkConnection() throws IOException {
+        giveBack(lease());
+    }
+
+    private synchronized ClamdSession lease() throws IOException {
+        long now = System.currentTimeMillis();
+        ClamdSession best = null;
+        Iterator<ClamdSession> iterator = sessions.iterator();
+        while (iterator.hasNext()) {
+            ClamdSession session = iterator.next();
+            if (session.isBroken() || (session.getLeases() == 0 && now - session.getLastUsed() > maxIdle)) {
+                iterator.remove();
+                session.close();
+            } else if (best == null || session.getLeases() < best.getLeases()) {
+                best = session;
+            }
+        }
+
+        if ((best == null || best.getLeases() > 0) && sessions.size() < maxSessions) {
+            best = new ClamdSession(host, port, timeout);
+            sessions.add(best);
+        }
+        best.lease();
+        return best;
+    }
+
+    private synchronized void giveBack(ClamdSession session) {
+        session.giveBack();
+        if (session.isBroken()) {
+            sessions.remove(session);
+        }
+    }
+
+    private void report() {
+        if (reportInterval <= 0) {
+            return;
+        }
+        synchronized (metrics) {
+            if (System.currentTimeMillis() - lastReport < reportInterval) {
+                return;
+            }
+            lastReport = System.currentTimeMillis();
+        }
+        log.info(this);
+    }
+
+    /**
+     * Close all sessions, scans that are waiting for a reply fail.
+     */
+    public synchronized void close() {
+        for (ClamdSession session : sessions) {
+            session.close();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * @return the scanned bytes per second and the per file latency
+     */
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "clamd " + host + ":" + port + ", " + sessions.size() + " of " + maxSessions + " sessions open, " + metrics;
+    }
+}
@@ -0,0 +1,282 @@
+package com.atmire.clamav;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A clamd connection in IDSESSION mode. clamd numbers the commands of a session and prefixes every reply with the
+ * number of its command, so the next INSTREAM command can be sent while the replies to the previous ones are
+ * still pending. The streams are written one after the other, a reader thread hands the replies to the waiting
+ * callers.
+ */
+public class ClamdSession {
+
+    private static final Logger log = Logger.getLogger(ClamdSession.class);
+
+    private static final byte[] IDSESSION = "zIDSESSION\0".getBytes();
+    private static final byte[] INSTREAM = "zINSTREAM\0".getBytes();
+    private static final byte[] END = "zEND\0".getBytes();
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final InputStream in;
+    private final int timeout;
+
+    private final Object writeLock = new Object();
+    private final Map<Integer, PendingReply> pending = new HashMap<Integer, PendingReply>();
+    private int lastId;
+    private volatile boolean broken;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private int leases;
+
+    /**
+     * @param timeout the connect timeout, and the time in milliseconds clamd may take to reply to a streamed file
+     */
+    public ClamdSession(String host, int port, int timeout) throws IOException {
+        this.timeout = timeout;
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new BufferedInputStream(socket.getInputStream());
+            out.write(IDSESSION);
+            out.flush();
+        } catch (IOException e) {
+            closeSocket();
+            throw e;
+        }
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readReplies();
+            }
+        }, "clamd-session-" + socket.getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Stream the data to clamd with the INSTREAM command and wait for the reply.
+     *
+     * @param buffer the buffer used to read the data, its length is the chunk size sent to clamd
+     * @return the reply without the command number, e.g. "stream: OK" or "stream: Eicar-Test-Signature FOUND"
+     */
+    public String scan(InputStream data, byte[] buffer) throws IOException {
+        PendingReply reply = new PendingReply();
+        synchronized (writeLock) {
+            if (broken) {
+                throw new IOException("The clamd session is closed");
+            }
+            // registered before writing, the reply can arrive as soon as the last chunk is flushed
+            register(++lastId, reply);
+            try {
+                out.write(INSTREAM);
+                int read;
+                while ((read = data.read(buffer)) != -1) {
+                    if (read > 0) {
+                        out.writeInt(read);
+                        out.write(buffer, 0, read);
+                    }
+                }
+                out.writeInt(0);
+                out.flush();
+                reply.written = System.currentTimeMillis();
+            } catch (IOException e) {
+                // the session can not continue after a partially written stream
+                fail(e);
+                throw e;
+            }
+        }
+        lastUsed = System.currentTimeMillis();
+        return reply.await();
+    }
+
+    private void register(int id, PendingReply reply) throws IOException {
+        synchronized (pending) {
+            if (broken) {
+                throw new IOException("The clamd session is closed");
+            }
+            pending.put(id, reply);
+        }
+    }
+
+    private void readReplies() {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            int b;
+            try {
+                b = in.read();
+            } catch (SocketTimeoutException e) {
+                if (isReplyOverdue()) {
+                    fail(new SocketTimeoutException("No reply from clamd within " + timeout + " ms"));
+                    return;
+                }
+                continue;
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+
+            if (b == -1) {
+                fail(new EOFException("clamd closed the session"));
+                return;
+            }
+            if (b == 0) {
+                if (!dispatch(new String(line.toByteArray()))) {
+                    return;
+                }
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+
+    private boolean dispatch(String line) {
+        int separator = line.indexOf(": ");
+        PendingReply reply = null;
+        if (separator > 0) {
+            try {
+                int id = Integer.parseInt(line.substring(0, separator));
+                synchronized (pending) {
+                    reply = pending.remove(id);
+                }
+            } catch (NumberFormatException e) {
+                // handled below
+            }
+        }
+        if (reply == null) {
+            fail(new IOException("Unexpected reply from clamd: " + line));
+            return false;
+        }
+        reply.complete(line.substring(separator + 2), null);
+        return true;
+    }
+
+    private boolean isReplyOverdue() {
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            for (PendingReply reply : pending.values()) {
+                // replies to streams that are still being written are not overdue
+                if (reply.written > 0 && now - reply.written >= timeout) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void fail(IOException e) {
+        List<PendingReply> failed;
+        synchronized (pending) {
+            if (!broken && !pending.isEmpty()) {
+                log.warn("clamd session failed with " + pending.size() + " pending replies", e);
+            }
+            broken = true;
+            failed = new ArrayList<PendingReply>(pending.values());
+            pending.clear();
+        }
+        for (PendingReply reply : failed) {
+            reply.complete(null, e);
+        }
+        closeSocket();
+    }
+
+    /**
+     * End the session, replies that are still pending fail.
+     */
+    public void close() {
+        if (!broken) {
+            synchronized (writeLock) {
+                try {
+                    out.write(END);
+                    out.flush();
+                } catch (IOException e) {
+                    log.debug("Unable to end the clamd session", e);
+                }
+            }
+        }
+        fail(new IOException("The clamd session is closed"));
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Exception closing the clamd socket", e);
+        }
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * @return the time the last scan on this session ended
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Leases are managed by the {@link ClamdConnectionPool} under its own lock.
+     *
+     * @return the number of callers currently using this session
+     */
+    int getLeases() {
+        return leases;
+    }
+
+    void lease() {
+        leases++;
+    }
+
+    void giveBack() {
+        leases--;
+    }
+
+    private static class PendingReply {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile long written;
+        private volatile String reply;
+        private volatile IOException error;
+
+        private void complete(String reply, IOException error) {
+            this.reply = reply;
+            this.error = error;
+            done.countDown();
+        }
+
+        private String await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for clamd");
+            }
+            if (error != null) {
+                throw new IOException(error.getMessage(), error);
+            }
+            return reply;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.atmire.clamav;
+
+import com.atmire.utils.multithreading.PipelineStageMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per file latency and the number of bytes sent to clamd.
+ */
+public class ScanMetrics extends PipelineStageMetrics {
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    public ScanMetrics(String name) {
+        super(name);
+    }
+
+    /**
+     * Record a scanned file.
+     *
+     * @param nanos the time it took to stream the file and receive the reply
+     * @param size  the number of bytes streamed
+     */
+    public void record(long nanos, long size) {
+        record(nanos);
+        bytes.addAndGet(size);
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the number of bytes scanned per second since the metrics were created
+     */
+    public double getBytesPerSecond() {
+        double filesPerSecond = getThroughput();
+        return getProcessed() == 0 ? 0 : filesPerSecond * bytes.get() / getProcessed();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(", %d bytes, %.2f MB/s", getBytes(), getBytesPerSecond() / (1024 * 1024));
+    }
+}
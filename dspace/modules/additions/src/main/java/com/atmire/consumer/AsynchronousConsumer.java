@@ -1,6 +1,9 @@
 package com.atmire.consumer;
 
 /**
+ * Processes a single object queued by the {@link AsynchronousConsumerDispatcher}. The run method throws a
+ * RuntimeException when the object has to be processed again later.
+ *
  * @author philip at atmire.com
  */
 public interface AsynchronousConsumer extends Runnable {
@@ -1,23 +1,457 @@
 package com.atmire.consumer;
 
-import java.util.*;
-import org.dspace.utils.*;
-import org.springframework.scheduling.concurrent.*;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.utils.DSpace;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Queues the changed objects for every asynchronous consumer in the {@link AsynchronousConsumerQueue}. A polling
+ * thread claims the entries that are due and runs the consumers on the thread pool. Events for the same object
+ * within the coalesce window are processed once, failed entries are retried with an exponential backoff and the
+ * entries left in the queue by a previous run are processed on startup.
+ * <p>
+ * Every running entry holds its own Context, so the number of running entries is capped by maxContexts. Changes
+ * made in a web request are claimed before the changes of scripts and large batches, which may only use
+ * maxBatchConcurrency of those slots. Each consumer can be limited further with consumerConcurrency. Entries
+ * beyond these limits stay in the database queue until a slot frees up.
+ *
  * @author philip at atmire.com
  */
 public class AsynchronousConsumerDispatcher {
 
+    private static Logger log = Logger.getLogger(AsynchronousConsumerDispatcher.class);
+
     private ThreadPoolTaskExecutor threadPoolTaskExecutor;
     private List<String> asynchronousConsumers;
+    private AsynchronousConsumerQueue queue = new AsynchronousConsumerQueue();
+
+    private long coalesceWindow = 30000;
+    private long pollInterval = 5000;
+    private int maxAttempts = 5;
+    private long retryDelay = 60000;
+    private long maxRetryDelay = 3600000;
+    private long claimTimeout = 3600000;
+    private long reportInterval = 300000;
+    private int maxContexts = 0;
+    private int maxBatchConcurrency = 0;
+    private Map<String, Integer> consumerConcurrency = new HashMap<String, Integer>();
+    private int batchThreshold = 50;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+
+    /**
+     * What to do with a consumer that is run right away, because the queue is not available, when the thread pool
+     * rejects it.
+     */
+    public enum OverflowPolicy {
+        /** Run the consumer in the thread that dispatched the object */
+        CALLER_RUNS,
+        /** Skip the consumer for the object */
+        DISCARD
+    }
+
+    private static final int[] LANES = {AsynchronousConsumerQueue.PRIORITY_INTERACTIVE, AsynchronousConsumerQueue.PRIORITY_BATCH};
+
+    /** Identifies the entries claimed by this JVM */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger batchInFlight = new AtomicInteger();
+    private final ConcurrentMap<String, ConsumerMetrics> consumerMetrics = new ConcurrentHashMap<String, ConsumerMetrics>();
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private Thread poller;
+
+    @PostConstruct
+    public void start() {
+        Context context = null;
+        try {
+            context = new Context();
+            int released = queue.releaseExpired(context, new Date(System.currentTimeMillis() - claimTimeout));
+            AsynchronousConsumerQueue.QueueStatus status = queue.getStatus(context, maxAttempts);
+            context.complete();
+            log.info("Asynchronous consumer queue: " + status + (released > 0 ? ", released " + released + " expired claims" : ""));
+        } catch (SQLException e) {
+            log.error("Unable to read the asynchronous consumer queue, queued objects are processed once it is available", e);
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+
+        running = true;
+        poller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, "asynchronous-consumer-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+        }
+
+        Context context = null;
+        try {
+            context = new Context();
+            int released = queue.release(context, owner);
+            context.complete();
+            if (released > 0) {
+                log.info("Released " + released + " asynchronous consumer queue entries that were still in progress");
+            }
+        } catch (SQLException e) {
+            log.error("Unable to release the claimed asynchronous consumer queue entries", e);
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+    }
 
     public void dispatch(int objectId, int objectType) {
-        for (String asynchronousConsumerName : asynchronousConsumers) {
-            AsynchronousConsumer asynchronousConsumer = new DSpace().getServiceManager().getServiceByName(asynchronousConsumerName, AsynchronousConsumer.class);
-            asynchronousConsumer.setObjectId(objectId);
-            asynchronousConsumer.setObjectType(objectType);
+        dispatch(Collections.singleton(new ConsumerDspaceObject(objectId, objectType)));
+    }
+
+    /**
+     * Queue the given objects for all asynchronous consumers. When the queue is not available, the consumers
+     * are run right away.
+     */
+    public void dispatch(Collection<ConsumerDspaceObject> objects) {
+        int priority = getPriority(objects.size());
+        Context context = null;
+        try {
+            context = new Context();
+            Date notBefore = new Date(System.currentTimeMillis() + coalesceWindow);
+            for (ConsumerDspaceObject object : objects) {
+                for (String asynchronousConsumerName : asynchronousConsumers) {
+                    queue.enqueue(context, object.getType(), object.getId(), asynchronousConsumerName, priority, notBefore);
+                }
+            }
+            context.complete();
+        } catch (SQLException e) {
+            log.error("Unable to queue " + objects.size() + " objects, running the asynchronous consumers right away", e);
+            for (ConsumerDspaceObject object : objects) {
+                for (String asynchronousConsumerName : asynchronousConsumers) {
+                    executeDirectly(asynchronousConsumerName, object);
+                }
+            }
+            return;
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+
+        if (coalesceWindow <= 0) {
+            synchronized (wakeUp) {
+                wakeUp.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Changes made in a web request are interactive, unless a single event batch changed many objects.
+     */
+    private int getPriority(int objectCount) {
+        if (objectCount <= batchThreshold && new DSpace().getRequestService().getCurrentRequestId() != null) {
+            return AsynchronousConsumerQueue.PRIORITY_INTERACTIVE;
+        }
+        return AsynchronousConsumerQueue.PRIORITY_BATCH;
+    }
+
+    private void executeDirectly(String asynchronousConsumerName, ConsumerDspaceObject object) {
+        AsynchronousConsumer asynchronousConsumer = createConsumer(asynchronousConsumerName, object.getId(), object.getType());
+        try {
             threadPoolTaskExecutor.execute(asynchronousConsumer);
+        } catch (TaskRejectedException e) {
+            getMetrics(asynchronousConsumerName).reject();
+            if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+                asynchronousConsumer.run();
+            } else {
+                log.warn("Discarded " + asynchronousConsumerName + " for " + object.getType() + "-" + object.getId());
+            }
+        }
+    }
+
+    private AsynchronousConsumer createConsumer(String asynchronousConsumerName, int objectId, int objectType) {
+        AsynchronousConsumer asynchronousConsumer = new DSpace().getServiceManager().getServiceByName(asynchronousConsumerName, AsynchronousConsumer.class);
+        if (asynchronousConsumer == null) {
+            throw new IllegalStateException("No asynchronous consumer named " + asynchronousConsumerName);
+        }
+        asynchronousConsumer.setObjectId(objectId);
+        asynchronousConsumer.setObjectType(objectType);
+        return asynchronousConsumer;
+    }
+
+    private void poll() {
+        long lastReport = System.currentTimeMillis();
+        while (running) {
+            int claimed = 0;
+            try {
+                claimed = claimDue();
+            } catch (Exception e) {
+                log.error("Unable to claim asynchronous consumer queue entries", e);
+            }
+
+            if (reportInterval > 0 && System.currentTimeMillis() - lastReport >= reportInterval) {
+                lastReport = System.currentTimeMillis();
+                report();
+            }
+
+            // keep claiming while there is work and capacity, otherwise wait for the next poll
+            if (claimed == 0 || getCapacity() == 0) {
+                synchronized (wakeUp) {
+                    try {
+                        wakeUp.wait(pollInterval);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of entries running at the same time, each with its own Context. Unless configured,
+     * a quarter of the database connections.
+     */
+    public int getMaxContexts() {
+        int max = maxContexts > 0 ? maxContexts : ConfigurationManager.getIntProperty("db.maxconnections", 30) / 4;
+        return Math.max(1, Math.min(max, threadPoolTaskExecutor.getMaxPoolSize()));
+    }
+
+    /**
+     * @return the maximum number of batch entries running at the same time, unless configured half of the contexts
+     */
+    public int getMaxBatchConcurrency() {
+        int max = maxBatchConcurrency > 0 ? maxBatchConcurrency : getMaxContexts() / 2;
+        return Math.max(1, Math.min(max, getMaxContexts()));
+    }
+
+    private int getConsumerConcurrency(String asynchronousConsumerName) {
+        Integer max = consumerConcurrency.get(asynchronousConsumerName);
+        return max == null ? getMaxContexts() : max;
+    }
+
+    private int getCapacity() {
+        return Math.max(0, getMaxContexts() - inFlight.get());
+    }
+
+    /**
+     * Claim as many due entries as the limits allow, the interactive lane of every consumer first.
+     */
+    private int claimDue() throws SQLException {
+        List<AsynchronousConsumerQueue.QueueEntry> entries = new ArrayList<AsynchronousConsumerQueue.QueueEntry>();
+        Context context = null;
+        try {
+            context = new Context();
+            queue.releaseExpired(context, new Date(System.currentTimeMillis() - claimTimeout));
+            for (int priority : LANES) {
+                for (String asynchronousConsumerName : asynchronousConsumers) {
+                    int max = Math.min(getCapacity(),
+                            getConsumerConcurrency(asynchronousConsumerName) - getMetrics(asynchronousConsumerName).getInFlight());
+                    if (priority == AsynchronousConsumerQueue.PRIORITY_BATCH) {
+                        max = Math.min(max, getMaxBatchConcurrency() - batchInFlight.get());
+                    }
+                    for (AsynchronousConsumerQueue.QueueEntry entry : queue.claim(context, owner, asynchronousConsumerName, priority, max, maxAttempts)) {
+                        track(entry);
+                        entries.add(entry);
+                    }
+                }
+            }
+            context.complete();
+        } catch (SQLException e) {
+            // the claims are rolled back
+            for (AsynchronousConsumerQueue.QueueEntry entry : entries) {
+                untrack(entry);
+                getMetrics(entry.getConsumer()).unqueue();
+            }
+            throw e;
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+
+        for (AsynchronousConsumerQueue.QueueEntry entry : entries) {
+            try {
+                threadPoolTaskExecutor.execute(new QueueTask(entry));
+            } catch (TaskRejectedException e) {
+                // the entry stays in the database queue and is claimed again when there is room
+                untrack(entry);
+                getMetrics(entry.getConsumer()).unqueue();
+                getMetrics(entry.getConsumer()).reject();
+                release(entry);
+            }
+        }
+        return entries.size();
+    }
+
+    private void track(AsynchronousConsumerQueue.QueueEntry entry) {
+        inFlight.incrementAndGet();
+        if (entry.getPriority() == AsynchronousConsumerQueue.PRIORITY_BATCH) {
+            batchInFlight.incrementAndGet();
+        }
+        getMetrics(entry.getConsumer()).queue();
+    }
+
+    private void untrack(AsynchronousConsumerQueue.QueueEntry entry) {
+        inFlight.decrementAndGet();
+        if (entry.getPriority() == AsynchronousConsumerQueue.PRIORITY_BATCH) {
+            batchInFlight.decrementAndGet();
+        }
+    }
+
+    private void release(AsynchronousConsumerQueue.QueueEntry entry) {
+        Context context = null;
+        try {
+            context = new Context();
+            queue.release(context, entry);
+            context.complete();
+        } catch (SQLException e) {
+            log.error("Unable to release the asynchronous consumer queue entry " + entry, e);
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+    }
+
+    private void finish(AsynchronousConsumerQueue.QueueEntry entry, Throwable error) {
+        Context context = null;
+        try {
+            context = new Context();
+            if (error == null) {
+                queue.complete(context, entry, new Date(System.currentTimeMillis() + coalesceWindow));
+            } else {
+                queue.fail(context, entry, error, new Date(System.currentTimeMillis() + getRetryDelay(entry.getAttempts())));
+            }
+            context.complete();
+        } catch (SQLException e) {
+            // the entry stays claimed and is processed again once the claim expires
+            log.error("Unable to update the asynchronous consumer queue entry " + entry, e);
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+    }
+
+    private long getRetryDelay(int attempts) {
+        return Math.min(retryDelay << Math.min(attempts, 20), maxRetryDelay);
+    }
+
+    private ConsumerMetrics getMetrics(String asynchronousConsumerName) {
+        ConsumerMetrics metrics = consumerMetrics.get(asynchronousConsumerName);
+        if (metrics == null) {
+            consumerMetrics.putIfAbsent(asynchronousConsumerName, new ConsumerMetrics(asynchronousConsumerName));
+            metrics = consumerMetrics.get(asynchronousConsumerName);
+        }
+        return metrics;
+    }
+
+    private void report() {
+        try {
+            log.info("Asynchronous consumer queue: " + getQueueStatus() + ", " + inFlight.get() + " of " + getMaxContexts()
+                    + " contexts in use in this JVM, " + batchInFlight.get() + " of " + getMaxBatchConcurrency() + " by batch changes");
+            for (ConsumerMetrics metrics : getConsumerMetrics()) {
+                log.info(metrics);
+            }
+        } catch (SQLException e) {
+            log.error("Unable to read the asynchronous consumer queue status", e);
+        }
+    }
+
+    /**
+     * @return the depth, the age of the oldest entry and the number of failed entries of the shared queue
+     */
+    public AsynchronousConsumerQueue.QueueStatus getQueueStatus() throws SQLException {
+        Context context = null;
+        try {
+            context = new Context();
+            return queue.getStatus(context, maxAttempts);
+        } finally {
+            if (context != null && context.isValid()) {
+                context.abort();
+            }
+        }
+    }
+
+    /**
+     * @return the active, queued, completed and failed entries and the throughput of every consumer in this JVM
+     */
+    public List<ConsumerMetrics> getConsumerMetrics() {
+        return new ArrayList<ConsumerMetrics>(consumerMetrics.values());
+    }
+
+    /**
+     * @return the number of entries claimed by this JVM that are being processed
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private class QueueTask implements Runnable {
+
+        private final AsynchronousConsumerQueue.QueueEntry entry;
+
+        private QueueTask(AsynchronousConsumerQueue.QueueEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void run() {
+            ConsumerMetrics metrics = getMetrics(entry.getConsumer());
+            metrics.activate();
+            // anything but a normal return, including an Error, counts as a failed attempt
+            Throwable error = new IllegalStateException("Asynchronous consumer did not complete");
+            long start = System.nanoTime();
+            try {
+                createConsumer(entry.getConsumer(), entry.getObjectId(), entry.getObjectType()).run();
+                metrics.record(System.nanoTime() - start);
+                error = null;
+            } catch (RuntimeException e) {
+                error = e;
+                log.warn("Asynchronous consumer failed for " + entry + " (attempt " + (entry.getAttempts() + 1)
+                        + " of " + maxAttempts + ")", e);
+            } finally {
+                if (error != null) {
+                    metrics.fail();
+                }
+                finish(entry, error);
+                metrics.deactivate();
+                untrack(entry);
+                synchronized (wakeUp) {
+                    wakeUp.notifyAll();
+                }
+            }
         }
     }
 
@@ -28,4 +462,88 @@ public class AsynchronousConsumerDispatcher {
     public void setAsynchronousConsumers(List<String> asynchronousConsumers) {
         this.asynchronousConsumers = asynchronousConsumers;
     }
+
+    public void setQueue(AsynchronousConsumerQueue queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * @param coalesceWindow the time in milliseconds events for the same object are collected before it is processed
+     */
+    public void setCoalesceWindow(long coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    /**
+     * @param pollInterval the time in milliseconds between two checks for due entries
+     */
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @param maxAttempts the number of times a failing entry is processed before it is left in the queue
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param retryDelay the delay in milliseconds before the first retry, doubled for every next attempt
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public void setMaxRetryDelay(long maxRetryDelay) {
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @param claimTimeout the time in milliseconds after which an entry claimed by a stopped JVM is processed again
+     */
+    public void setClaimTimeout(long claimTimeout) {
+        this.claimTimeout = claimTimeout;
+    }
+
+    /**
+     * @param reportInterval the time in milliseconds between two status log lines, 0 to disable
+     */
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    /**
+     * @param maxContexts the maximum number of entries running at the same time in this JVM, each with its own Context
+     */
+    public void setMaxContexts(int maxContexts) {
+        this.maxContexts = maxContexts;
+    }
+
+    /**
+     * @param maxBatchConcurrency the maximum number of batch entries running at the same time, keeping the other
+     *                            contexts free for interactive changes
+     */
+    public void setMaxBatchConcurrency(int maxBatchConcurrency) {
+        this.maxBatchConcurrency = maxBatchConcurrency;
+    }
+
+    /**
+     * @param consumerConcurrency the maximum number of running entries per consumer name
+     */
+    public void setConsumerConcurrency(Map<String, Integer> consumerConcurrency) {
+        this.consumerConcurrency = consumerConcurrency;
+    }
+
+    /**
+     * @param batchThreshold the number of objects changed in a single event batch above which the changes are
+     *                       processed in the batch lane, even when made in a web request
+     */
+    public void setBatchThreshold(int batchThreshold) {
+        this.batchThreshold = batchThreshold;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
 }
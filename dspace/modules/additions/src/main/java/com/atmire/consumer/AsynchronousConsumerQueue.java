@@ -0,0 +1,316 @@
+package com.atmire.consumer;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of the (object, consumer) pairs that still have to be processed by an {@link AsynchronousConsumer},
+ * stored in the async_consumer_queue table. Events for a pair that is already queued are coalesced into the existing
+ * entry. An entry is claimed by a single dispatcher before it is processed, and deleted once it is processed
+ * unless a new event arrived in the meantime.
+ */
+public class AsynchronousConsumerQueue {
+
+    private static final String TABLE = "async_consumer_queue";
+
+    /** SQL state of a unique constraint violation */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /** Priority lane of changes made by users, claimed before the batch lane */
+    public static final int PRIORITY_INTERACTIVE = 0;
+    /** Priority lane of changes made by scripts and large imports */
+    public static final int PRIORITY_BATCH = 1;
+
+    /**
+     * Add an object to the queue of a consumer, or coalesce it into the queued entry of the same object and consumer.
+     *
+     * @param priority  {@link #PRIORITY_INTERACTIVE} or {@link #PRIORITY_BATCH}
+     * @param notBefore the time from which a new entry may be processed
+     */
+    public void enqueue(Context context, int objectType, int objectId, String consumer, int priority, Date notBefore) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        if (coalesce(context, objectType, objectId, consumer, priority, now)) {
+            return;
+        }
+        // a failed insert aborts the transaction up to the savepoint only
+        Savepoint savepoint = context.getDBConnection().setSavepoint();
+        try {
+            DatabaseManager.updateQuery(context, "INSERT INTO " + TABLE
+                            + " (resource_type_id, resource_id, consumer, priority, enqueued, last_event, not_before, attempts)"
+                            + " VALUES (?, ?, ?, ?, ?, ?, ?, 0)",
+                    objectType, objectId, consumer, priority, now, now, new Timestamp(notBefore.getTime()));
+            context.getDBConnection().releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            context.getDBConnection().rollback(savepoint);
+            // another thread inserted the same entry since the update
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState()) || !coalesce(context, objectType, objectId, consumer, priority, now)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A new event resets the retry count of an entry that failed before and can raise its priority,
+     * the processing delay of the entry is kept.
+     */
+    private boolean coalesce(Context context, int objectType, int objectId, String consumer, int priority, Timestamp now) throws SQLException {
+        return DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                        + " SET last_event = ?, attempts = 0, priority = LEAST(priority, ?)"
+                        + " WHERE resource_type_id = ? AND resource_id = ? AND consumer = ?",
+                now, priority, objectType, objectId, consumer) > 0;
+    }
+
+    /**
+     * Claim the due entries of a consumer in a priority lane, oldest first. An entry is only claimed by one owner,
+     * entries that failed maxAttempts times are left in the queue for inspection.
+     *
+     * @param owner the identifier of the claiming dispatcher
+     * @param max   the maximum number of entries to claim
+     */
+    public List<QueueEntry> claim(Context context, String owner, String consumer, int priority, int max, int maxAttempts) throws SQLException {
+        List<QueueEntry> claimed = new ArrayList<QueueEntry>();
+        if (max <= 0) {
+            return claimed;
+        }
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<QueueEntry> due = new ArrayList<QueueEntry>();
+        TableRowIterator rows = DatabaseManager.query(context, "SELECT * FROM " + TABLE
+                        + " WHERE consumer = ? AND priority = ? AND claimed_by IS NULL AND not_before <= ? AND attempts < ?"
+                        + " ORDER BY not_before LIMIT ?",
+                consumer, priority, now, maxAttempts, max);
+        try {
+            while (rows.hasNext()) {
+                due.add(new QueueEntry(rows.next()));
+            }
+        } finally {
+            rows.close();
+        }
+
+        for (QueueEntry entry : due) {
+            // the claim fails when another dispatcher claimed the entry after the select
+            if (DatabaseManager.updateQuery(context, "UPDATE " + TABLE + " SET claimed_by = ?, claimed_at = ?"
+                            + " WHERE queue_id = ? AND claimed_by IS NULL",
+                    owner, now, entry.getQueueId()) > 0) {
+                claimed.add(entry);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Remove a processed entry. When an event arrived while the entry was processed, the entry is released
+     * again to be processed after the given time.
+     */
+    public void complete(Context context, QueueEntry entry, Date notBefore) throws SQLException {
+        if (DatabaseManager.updateQuery(context, "DELETE FROM " + TABLE + " WHERE queue_id = ? AND last_event = ?",
+                entry.getQueueId(), new Timestamp(entry.getLastEvent().getTime())) == 0) {
+            DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                            + " SET claimed_by = NULL, claimed_at = NULL, attempts = 0, last_error = NULL, not_before = ?"
+                            + " WHERE queue_id = ?",
+                    new Timestamp(notBefore.getTime()), entry.getQueueId());
+        }
+    }
+
+    /**
+     * Release a failed entry to be retried after the given time.
+     */
+    public void fail(Context context, QueueEntry entry, Throwable error, Date retryAt) throws SQLException {
+        DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                        + " SET claimed_by = NULL, claimed_at = NULL, attempts = attempts + 1, last_error = ?, not_before = ?"
+                        + " WHERE queue_id = ?",
+                StringUtils.abbreviate(ExceptionUtils.getStackTrace(error), 4000), new Timestamp(retryAt.getTime()),
+                entry.getQueueId());
+    }
+
+    /**
+     * Release a claimed entry that was not processed, without counting it as an attempt.
+     */
+    public void release(Context context, QueueEntry entry) throws SQLException {
+        DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                + " SET claimed_by = NULL, claimed_at = NULL WHERE queue_id = ?", entry.getQueueId());
+    }
+
+    /**
+     * Release the entries claimed by the given owner.
+     *
+     * @return the number of released entries
+     */
+    public int release(Context context, String owner) throws SQLException {
+        return DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                + " SET claimed_by = NULL, claimed_at = NULL WHERE claimed_by = ?", owner);
+    }
+
+    /**
+     * Release the entries that were claimed before the given time, their dispatcher stopped without releasing them.
+     *
+     * @return the number of released entries
+     */
+    public int releaseExpired(Context context, Date claimedBefore) throws SQLException {
+        return DatabaseManager.updateQuery(context, "UPDATE " + TABLE
+                        + " SET claimed_by = NULL, claimed_at = NULL WHERE claimed_at < ?",
+                new Timestamp(claimedBefore.getTime()));
+    }
+
+    /**
+     * Make the entries that failed maxAttempts times due again.
+     *
+     * @return the number of entries to retry
+     */
+    public int retryFailed(Context context, int maxAttempts) throws SQLException {
+        return DatabaseManager.updateQuery(context, "UPDATE " + TABLE + " SET attempts = 0, not_before = ?"
+                + " WHERE attempts >= ?", new Timestamp(System.currentTimeMillis()), maxAttempts);
+    }
+
+    public QueueStatus getStatus(Context context, int maxAttempts) throws SQLException {
+        QueueStatus status = new QueueStatus();
+        TableRowIterator rows = DatabaseManager.query(context, "SELECT consumer,"
+                        + " COUNT(*) AS depth,"
+                        + " SUM(CASE WHEN claimed_by IS NOT NULL THEN 1 ELSE 0 END) AS claimed,"
+                        + " SUM(CASE WHEN attempts >= ? THEN 1 ELSE 0 END) AS failed,"
+                        + " MIN(enqueued) AS oldest"
+                        + " FROM " + TABLE + " GROUP BY consumer ORDER BY consumer",
+                maxAttempts);
+        try {
+            while (rows.hasNext()) {
+                TableRow row = rows.next();
+                String consumer = row.getStringColumn("consumer");
+                long depth = row.getLongColumn("depth");
+                status.depth.put(consumer, depth);
+                status.total += depth;
+                status.claimed += row.getLongColumn("claimed");
+                status.failed += row.getLongColumn("failed");
+                Date oldest = row.getDateColumn("oldest");
+                if (oldest != null && (status.oldest == null || oldest.before(status.oldest))) {
+                    status.oldest = oldest;
+                }
+            }
+        } finally {
+            rows.close();
+        }
+        return status;
+    }
+
+    /**
+     * A claimed (object, consumer) pair.
+     */
+    public static class QueueEntry {
+
+        private final int queueId;
+        private final int objectType;
+        private final int objectId;
+        private final String consumer;
+        private final int priority;
+        private final Date enqueued;
+        private final Date lastEvent;
+        private final int attempts;
+
+        QueueEntry(TableRow row) {
+            queueId = row.getIntColumn("queue_id");
+            objectType = row.getIntColumn("resource_type_id");
+            objectId = row.getIntColumn("resource_id");
+            consumer = row.getStringColumn("consumer");
+            priority = row.getIntColumn("priority");
+            enqueued = row.getDateColumn("enqueued");
+            lastEvent = row.getDateColumn("last_event");
+            attempts = row.getIntColumn("attempts");
+        }
+
+        public int getQueueId() {
+            return queueId;
+        }
+
+        public int getObjectType() {
+            return objectType;
+        }
+
+        public int getObjectId() {
+            return objectId;
+        }
+
+        public String getConsumer() {
+            return consumer;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public Date getEnqueued() {
+            return enqueued;
+        }
+
+        public Date getLastEvent() {
+            return lastEvent;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public String toString() {
+            return consumer + " " + objectType + "-" + objectId;
+        }
+    }
+
+    /**
+     * Snapshot of the queue.
+     */
+    public static class QueueStatus {
+
+        private final Map<String, Long> depth = new LinkedHashMap<String, Long>();
+        private long total;
+        private long claimed;
+        private long failed;
+        private Date oldest;
+
+        /**
+         * @return the number of queued entries per consumer
+         */
+        public Map<String, Long> getDepth() {
+            return depth;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getClaimed() {
+            return claimed;
+        }
+
+        /**
+         * @return the number of entries that are no longer retried
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the age in milliseconds of the oldest entry, 0 when the queue is empty
+         */
+        public long getOldestAge() {
+            return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getTime());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d queued (%d in progress, %d failed), oldest %d s, per consumer %s",
+                    total, claimed, failed, getOldestAge() / 1000, depth);
+        }
+    }
+}
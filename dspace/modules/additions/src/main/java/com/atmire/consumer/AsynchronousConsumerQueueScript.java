@@ -0,0 +1,63 @@
+package com.atmire.consumer;
+
+import com.atmire.scripts.ContextScript;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.dspace.utils.DSpace;
+
+import java.util.Map;
+
+/**
+ * Prints the depth of the asynchronous consumer queue and the age of its oldest entry. The failed entries
+ * can be made due again, e.g. after the cause of the failures has been fixed. The per consumer throughput
+ * is logged periodically by the dispatcher of every JVM that processes the queue.
+ */
+public class AsynchronousConsumerQueueScript extends ContextScript {
+
+    private static final String retry_param = "r";
+
+    private boolean retry;
+
+    public static void main(String[] args) {
+        new AsynchronousConsumerQueueScript().mainImpl(args);
+    }
+
+    @Override
+    public void run() throws Exception {
+        AsynchronousConsumerDispatcher dispatcher = new DSpace().getServiceManager()
+                .getServicesByType(AsynchronousConsumerDispatcher.class).get(0);
+        AsynchronousConsumerQueue queue = new AsynchronousConsumerQueue();
+
+        if (retry) {
+            int retried = queue.retryFailed(context, dispatcher.getMaxAttempts());
+            context.commit();
+            print("Retrying " + retried + " failed entries");
+        }
+
+        AsynchronousConsumerQueue.QueueStatus status = queue.getStatus(context, dispatcher.getMaxAttempts());
+        print("Queued entries: " + status.getTotal());
+        print("In progress: " + status.getClaimed());
+        print("Failed: " + status.getFailed());
+        print("Age of the oldest entry: " + status.getOldestAge() / 1000 + " s");
+        for (Map.Entry<String, Long> depth : status.getDepth().entrySet()) {
+            print("  " + depth.getKey() + ": " + depth.getValue());
+        }
+    }
+
+    @Override
+    protected int processLine(CommandLine line) throws ParseException {
+        int status = super.processLine(line);
+        if (status == 0) {
+            retry = line.hasOption(retry_param);
+        }
+        return status;
+    }
+
+    @Override
+    protected Options createCommandLineOptions() {
+        Options options = super.createCommandLineOptions();
+        options.addOption(retry_param, "retry", false, "Retry the entries that failed the maximum number of attempts");
+        return options;
+    }
+}
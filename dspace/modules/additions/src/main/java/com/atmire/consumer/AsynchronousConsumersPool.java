@@ -40,9 +40,7 @@ public class AsynchronousConsumersPool implements Consumer {
     public void end(Context ctx) throws Exception {
         try {
             if (CollectionUtils.isNotEmpty(toUpdateDspaceObjects)) {
-                for (ConsumerDspaceObject toUpdateDspaceObject : toUpdateDspaceObjects) {
-                    asynchronousConsumerDispatcher.dispatch(toUpdateDspaceObject.getId(), toUpdateDspaceObject.getType());
-                }
+                asynchronousConsumerDispatcher.dispatch(toUpdateDspaceObjects);
             }
 
         } finally {
@@ -0,0 +1,66 @@
+package com.atmire.consumer;
+
+import com.atmire.utils.multithreading.PipelineStageMetrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a single asynchronous consumer in this JVM: the entries waiting for a thread, the running entries,
+ * and the completed, failed and rejected entries.
+ */
+public class ConsumerMetrics extends PipelineStageMetrics {
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConsumerMetrics(String name) {
+        super(name);
+    }
+
+    void queue() {
+        queued.incrementAndGet();
+    }
+
+    void unqueue() {
+        queued.decrementAndGet();
+    }
+
+    void activate() {
+        queued.decrementAndGet();
+        active.incrementAndGet();
+    }
+
+    void deactivate() {
+        active.decrementAndGet();
+    }
+
+    void reject() {
+        rejected.incrementAndGet();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of queued and active entries
+     */
+    public int getInFlight() {
+        return queued.get() + active.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(", %d active, %d queued, %d rejected", getActive(), getQueued(), getRejected());
+    }
+}
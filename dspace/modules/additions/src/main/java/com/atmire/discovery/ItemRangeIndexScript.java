@@ -0,0 +1,86 @@
+package com.atmire.discovery;
+
+import com.atmire.scripts.ContextScript;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.dspace.discovery.IndexingService;
+import org.dspace.discovery.SolrServiceImpl;
+import org.dspace.utils.DSpace;
+
+import java.io.File;
+
+/**
+ * Indexes the items with an ID in a given range in discovery. Several instances, each with
+ * their own range, can rebuild the index of a large repository in parallel. With a checkpoint
+ * file an interrupted run continues where it stopped.
+ */
+public class ItemRangeIndexScript extends ContextScript {
+
+    private static final String from_param = "f";
+    private static final String to_param = "t";
+    private static final String checkpoint_param = "c";
+    private static final String build_param = "b";
+
+    private Integer fromId;
+    private Integer toId;
+    private File checkpoint;
+    private boolean force;
+
+    public static void main(String[] args) {
+        new ItemRangeIndexScript().mainImpl(args);
+    }
+
+    @Override
+    public void run() throws Exception {
+        IndexingService indexingService = new DSpace().getServiceManager()
+                .getServiceByName(IndexingService.class.getName(), IndexingService.class);
+        if (!(indexingService instanceof SolrServiceImpl)) {
+            print("The configured indexing service does not support indexing item ranges: " + indexingService);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        print("Indexing items from " + (fromId == null ? "the first item" : fromId)
+                + " up to " + (toId == null ? "the last item" : toId + " (exclusive)"));
+        ((SolrServiceImpl) indexingService).updateItemIndex(context, force, fromId, toId, checkpoint);
+        print("Done in " + (System.currentTimeMillis() - start) / 1000 + " s"
+                + (checkpoint == null ? "" : ", last completed item ID stored in " + checkpoint));
+    }
+
+    @Override
+    protected int processLine(CommandLine line) throws ParseException {
+        int status = super.processLine(line);
+        if (status == 0) {
+            fromId = parseId(line, from_param);
+            toId = parseId(line, to_param);
+            if (line.hasOption(checkpoint_param)) {
+                checkpoint = new File(line.getOptionValue(checkpoint_param));
+            }
+            force = line.hasOption(build_param);
+        }
+        return status;
+    }
+
+    private Integer parseId(CommandLine line, String param) throws ParseException {
+        if (!line.hasOption(param)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(line.getOptionValue(param));
+        } catch (NumberFormatException e) {
+            throw new ParseException("Not a valid item ID: " + line.getOptionValue(param));
+        }
+    }
+
+    @Override
+    protected Options createCommandLineOptions() {
+        Options options = super.createCommandLineOptions();
+        options.addOption(from_param, "from", true, "The lowest item ID to index. Default: the first item");
+        options.addOption(to_param, "to", true, "The item ID to stop before. Default: the last item");
+        options.addOption(checkpoint_param, "checkpoint", true,
+                "File to store the last completed item ID in. An existing checkpoint is resumed");
+        options.addOption(build_param, "build", false, "Reindex the items even if they are up to date in the index");
+        return options;
+    }
+}
@@ -0,0 +1,74 @@
+package com.atmire.eperson;
+
+import com.atmire.scripts.ContextScript;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.dspace.eperson.Group2GroupCache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the group2groupcache table with the closure computed from group2group, the way a full rebuild would
+ * write it, and prints the missing and superfluous rows. With -f the differences are written to the table.
+ */
+public class GroupCacheVerifier extends ContextScript {
+
+    private static final String fix_param = "f";
+    private static final String verbose_param = "v";
+
+    private boolean fix;
+    private boolean verbose;
+
+    public static void main(String[] args) {
+        new GroupCacheVerifier().mainImpl(args);
+    }
+
+    @Override
+    public void run() throws Exception {
+        Group2GroupCache.Changes changes = Group2GroupCache.verify(context, fix);
+        if (changes.isEmpty()) {
+            print("group2groupcache matches group2group");
+            return;
+        }
+
+        print("Missing rows: " + changes.getMissingCount());
+        print("Superfluous rows: " + changes.getSuperfluousCount());
+        if (verbose) {
+            printPairs("missing", changes.getMissing());
+            printPairs("superfluous", changes.getSuperfluous());
+        }
+
+        if (fix) {
+            context.commit();
+            print("The differences were fixed");
+        } else {
+            print("Run with -" + fix_param + " to fix the differences");
+        }
+    }
+
+    private void printPairs(String type, Map<Integer, Set<Integer>> pairs) {
+        for (Map.Entry<Integer, Set<Integer>> entry : pairs.entrySet()) {
+            print("  " + type + ": parent " + entry.getKey() + ", children " + entry.getValue());
+        }
+    }
+
+    @Override
+    protected int processLine(CommandLine line) throws ParseException {
+        int status = super.processLine(line);
+        if (status == 0) {
+            fix = line.hasOption(fix_param);
+            verbose = line.hasOption(verbose_param);
+        }
+        return status;
+    }
+
+    @Override
+    protected Options createCommandLineOptions() {
+        Options options = super.createCommandLineOptions();
+        options.addOption(fix_param, "fix", false, "Write the missing rows and delete the superfluous rows");
+        options.addOption(verbose_param, "verbose", false, "Print the differing rows");
+        return options;
+    }
+}
@@ -1,5 +1,6 @@
 package com.atmire.scripts.bitstreamchecker;
 
+import com.atmire.clamav.ScanMetrics;
 import com.atmire.scripts.IteratorScript;
 import com.atmire.scripts.PrintConsumer;
 import com.atmire.utils.Consumer;
@@ -12,14 +13,18 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
 import org.dspace.content.Bitstream;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
+import org.dspace.core.Context;
 import org.dspace.handle.HandleManager;
 import org.dspace.kernel.ServiceManager;
 import org.dspace.utils.DSpace;
 
+import java.io.File;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -28,12 +33,20 @@ import java.util.List;
 /**
  * Created by: Antoine Snyers (antoine at atmire dot com)
  * Date: 04 Jul 2016
+ * <p>
+ * With -t the bitstreams are checked by several workers, each with its own Context. The bitstreams to check are
+ * read once, ordered by last scan date, and handed to the workers in pages of numberPerCommit bitstreams. Each
+ * page is committed at once, and the completed pages can be stored in a checkpoint file with -k.
  */
 public class BitstreamChecker extends IteratorScript {
 
+    private static Logger log = Logger.getLogger(BitstreamChecker.class);
+
     public static final String bitstream_param = "b";
     public static final String operation_param = "p";
     public static final String item_param = "i";
+    public static final String threads_param = "t";
+    public static final String checkpoint_param = "k";
 
     private final List<BitstreamCheckOperation> operationList;
     private final int numberPerCommit;
@@ -42,8 +55,12 @@ public class BitstreamChecker extends IteratorScript {
     private String[] includeOperations;
     private String item;
 
+    private int threads = 1;
+    private File checkpoint;
+
     private Date lastScanDate = null;
     private Date startDate = null;
+    private ScanMetrics metrics;
 
     public BitstreamChecker() {
         ServiceManager serviceManager = new DSpace().getServiceManager();
@@ -59,33 +76,143 @@ public class BitstreamChecker extends IteratorScript {
     @Override
     public void run() throws Exception {
         startDate = new Date();
+        metrics = new ScanMetrics("bitstreams");
         print("Started at " + MetadataUtils.getVirusCheckDateFormat().format(startDate));
         try {
-            do {
-                Iterator<Bitstream> bitstreamIterator = getBitstreamIterator();
-                while (bitstreamIterator.hasNext() && stillActive()) {
-                    Bitstream bitstream = bitstreamIterator.next();
-
-                    lastScanDate = MetadataUtils.getVirusCheckDate(bitstream);
-                    if(stillActive()) {
-                        if (verbose) {
-                            String lastScanDate = MetadataUtils.getMetadataFirstValue(bitstream, MetadataUtils.virusCheckDateField);
-                            print("Processing bitstream " + bitstream.getID() + ", last scan date: " + lastScanDate);
-                        }
+            if (threads > 1 && CollectionUtils.isEmpty(includeBitstreams) && StringUtils.isBlank(item)) {
+                do {
+                    runParallel();
+                } while (loop && stillActive());
+            } else {
+                runSerial();
+            }
+            context.complete();
+        } catch (Exception e) {
+            printAndLogError(e);
+        }
+        printReport();
+        print("Ended at " + MetadataUtils.getVirusCheckDateFormat().format(new Date()));
+    }
 
-                        runBitstream(bitstream);
-                        bitstream.update();
-                        context.removeCached(bitstream, bitstream.getID());
+    private void runSerial() throws Exception {
+        do {
+            Iterator<Bitstream> bitstreamIterator = getBitstreamIterator();
+            while (bitstreamIterator.hasNext() && stillActive()) {
+                Bitstream bitstream = bitstreamIterator.next();
 
-                        iteration++;
+                lastScanDate = MetadataUtils.getVirusCheckDate(bitstream);
+                if(stillActive()) {
+                    if (verbose) {
+                        String lastScanDate = MetadataUtils.getMetadataFirstValue(bitstream, MetadataUtils.virusCheckDateField);
+                        print("Processing bitstream " + bitstream.getID() + ", last scan date: " + lastScanDate);
                     }
+
+                    long start = System.nanoTime();
+                    runBitstream(bitstream);
+                    bitstream.update();
+                    metrics.record(System.nanoTime() - start, bitstream.getSize());
+                    context.removeCached(bitstream, bitstream.getID());
+
+                    iteration++;
                 }
-            } while (loop && stillActive());
-            context.complete();
+            }
+        } while (loop && stillActive());
+    }
+
+    private void runParallel() throws Exception {
+        BitstreamWorkList workList = BitstreamWorkList.findByVirusScanDate(context, new Date(), checkpoint);
+        print(workList.size() + " bitstreams to check with " + threads + " workers");
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Worker(workList), "bitstream-checker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        workList.finish();
+    }
+
+    /**
+     * Checks pages of the work list with its own Context, committing once per page.
+     */
+    private class Worker implements Runnable {
+
+        private final BitstreamWorkList workList;
+
+        private Worker(BitstreamWorkList workList) {
+            this.workList = workList;
+        }
+
+        @Override
+        public void run() {
+            Context workerContext = null;
+            try {
+                workerContext = new Context();
+                workerContext.turnOffAuthorisationSystem();
+
+                BitstreamWorkList.Page page;
+                while (stillActive() && (page = workList.nextPage(numberPerCommit)) != null) {
+                    boolean pageCompleted = true;
+                    for (Integer id : page.getIds()) {
+                        if (!stillActive()) {
+                            pageCompleted = false;
+                            break;
+                        }
+                        checkBitstream(workerContext, id);
+                    }
+                    workerContext.commit();
+                    if (pageCompleted) {
+                        workList.complete(page);
+                    }
+                }
+                workerContext.complete();
+            } catch (Exception e) {
+                printAndLogError(e);
+            } finally {
+                if (workerContext != null && workerContext.isValid()) {
+                    workerContext.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * A bitstream that can not be checked is counted as a failure, the worker continues with the next one.
+     */
+    private void checkBitstream(Context workerContext, int id) {
+        long start = System.nanoTime();
+        try {
+            Bitstream bitstream = Bitstream.find(workerContext, id);
+            if (bitstream != null) {
+                if (verbose) {
+                    String lastScanDate = MetadataUtils.getMetadataFirstValue(bitstream, MetadataUtils.virusCheckDateField);
+                    print("Processing bitstream " + bitstream.getID() + ", last scan date: " + lastScanDate);
+                }
+                runBitstream(workerContext, bitstream);
+                bitstream.update();
+                metrics.record(System.nanoTime() - start, bitstream.getSize());
+                workerContext.removeCached(bitstream, id);
+            }
         } catch (Exception e) {
-            printAndLogError(e);
+            metrics.fail();
+            log.error("Failed to check bitstream " + id, e);
+            print("Failed to check bitstream " + id + ": " + e.getMessage());
         }
-        print("Ended at " + MetadataUtils.getVirusCheckDateFormat().format(new Date()));
+        countIteration();
+    }
+
+    private synchronized void countIteration() {
+        iteration++;
+    }
+
+    private void printReport() {
+        print(String.format("Checked %d bitstreams (%.1f/s), %.2f MB (%.2f MB/s), %d failures",
+                metrics.getProcessed(), metrics.getThroughput(), metrics.getBytes() / (1024.0 * 1024),
+                metrics.getBytesPerSecond() / (1024 * 1024), metrics.getFailed()));
+        print("Latency per bitstream: " + metrics.getLatency());
     }
 
     @Override
@@ -138,6 +265,10 @@ public class BitstreamChecker extends IteratorScript {
     }
 
     protected void runBitstream(Bitstream bitstream) throws Exception {
+        runBitstream(this.context, bitstream);
+    }
+
+    protected void runBitstream(Context context, Bitstream bitstream) throws Exception {
         if (CollectionUtils.isNotEmpty(operationList)) {
             for (BitstreamCheckOperation operation : operationList) {
                 if (isOperationIncluded(operation)) {
@@ -145,7 +276,7 @@ public class BitstreamChecker extends IteratorScript {
                         print("Operation: " + operation.getName());
                     }
                     Consumer<String> verbose = isVerbose() ? printer() : noprinter();
-                    operation.check(this.context, bitstream, new PrintConsumer(printer(), verbose));
+                    operation.check(context, bitstream, new PrintConsumer(printer(), verbose));
                 }
             }
         }
@@ -165,6 +296,10 @@ public class BitstreamChecker extends IteratorScript {
                 "The name of the operations to execute");
         options.addOption(item_param, "item", true,
                 "Use the bitstreams of an item. Does not work in combination with -" + bitstream_param);
+        options.addOption(threads_param, "threads", true,
+                "Number of workers checking bitstreams in parallel, each with its own database connection. Default: 1");
+        options.addOption(checkpoint_param, "checkpoint", true,
+                "File to store the progress of a parallel run in. An existing checkpoint is resumed");
         return options;
     }
 
@@ -181,6 +316,16 @@ public class BitstreamChecker extends IteratorScript {
             if (line.hasOption(item_param)) {
                 setItem(line.getOptionValue(item_param));
             }
+            if (line.hasOption(threads_param)) {
+                try {
+                    setThreads(Integer.parseInt(line.getOptionValue(threads_param)));
+                } catch (NumberFormatException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            if (line.hasOption(checkpoint_param)) {
+                checkpoint = new File(line.getOptionValue(checkpoint_param));
+            }
         }
         return status;
     }
@@ -197,6 +342,10 @@ public class BitstreamChecker extends IteratorScript {
         this.includeOperations = includeOperations;
     }
 
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public void setItem(String item) {
         this.item = item;
     }
@@ -0,0 +1,207 @@
+package com.atmire.scripts.bitstreamchecker;
+
+import com.atmire.utils.MetadataUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.content.BitstreamQuerier;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The bitstreams to check, read with a single query and ordered by last scan date and ID. Workers take pages
+ * of the list, the position up to which all pages are completed is stored in a checkpoint file so a new run
+ * can skip the bitstreams that were already checked.
+ */
+public class BitstreamWorkList {
+
+    private static final Logger log = Logger.getLogger(BitstreamWorkList.class);
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final File checkpoint;
+
+    private int next;
+    private int completed;
+    private final Map<Integer, Integer> completedPages = new HashMap<>();
+
+    private BitstreamWorkList(File checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @param scannedBefore only the bitstreams that were not scanned since this date are included
+     * @param checkpoint    the checkpoint file, null to disable. The bitstreams up to an existing checkpoint are skipped
+     */
+    public static BitstreamWorkList findByVirusScanDate(Context context, Date scannedBefore, File checkpoint) throws SQLException, IOException {
+        BitstreamWorkList workList = new BitstreamWorkList(checkpoint);
+        DateFormat dateFormat = MetadataUtils.getVirusCheckDateFormat();
+        TableRowIterator rows = BitstreamQuerier.getInstance().findAllVirusScanDates(context);
+        try {
+            while (rows.hasNext()) {
+                TableRow row = rows.next();
+                long scanDate = parse(dateFormat, row.getStringColumn("text_value"));
+                if (scanDate < scannedBefore.getTime()) {
+                    workList.entries.add(new Entry(row.getIntColumn("bitstream_id"), scanDate));
+                }
+            }
+        } finally {
+            rows.close();
+        }
+        Collections.sort(workList.entries);
+
+        Entry resumeAfter = workList.readCheckpoint();
+        if (resumeAfter != null) {
+            List<Entry> remaining = new ArrayList<>();
+            for (Entry entry : workList.entries) {
+                if (entry.compareTo(resumeAfter) > 0) {
+                    remaining.add(entry);
+                }
+            }
+            log.info("Resuming after bitstream " + resumeAfter.id + ", skipping "
+                    + (workList.entries.size() - remaining.size()) + " bitstreams");
+            workList.entries.clear();
+            workList.entries.addAll(remaining);
+        }
+        return workList;
+    }
+
+    private static long parse(DateFormat dateFormat, String value) {
+        if (StringUtils.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return dateFormat.parse(value).getTime();
+        } catch (ParseException e) {
+            // checked first, like the bitstreams that were never scanned
+            return 0;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the next page of at most size bitstream IDs, null when all pages were handed out
+     */
+    public synchronized Page nextPage(int size) {
+        if (next >= entries.size()) {
+            return null;
+        }
+        Page page = new Page(next, Math.min(next + Math.max(1, size), entries.size()));
+        next = page.end;
+        return page;
+    }
+
+    /**
+     * Mark a page as completed and store the new checkpoint when all preceding pages are completed too.
+     */
+    public synchronized void complete(Page page) {
+        completedPages.put(page.start, page.end);
+        int before = completed;
+        while (completedPages.containsKey(completed)) {
+            completed = completedPages.remove(completed);
+        }
+        if (completed > before) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Remove the checkpoint once the whole list is completed, the next run starts from the oldest scan date again.
+     *
+     * @return true if all pages were completed
+     */
+    public synchronized boolean finish() {
+        if (completed < entries.size()) {
+            return false;
+        }
+        if (checkpoint != null) {
+            FileUtils.deleteQuietly(checkpoint);
+        }
+        return true;
+    }
+
+    private Entry readCheckpoint() throws IOException {
+        if (checkpoint == null || !checkpoint.isFile()) {
+            return null;
+        }
+        String[] value = StringUtils.split(StringUtils.trim(FileUtils.readFileToString(checkpoint, "UTF-8")), '\t');
+        try {
+            return new Entry(Integer.parseInt(value[1]), Long.parseLong(value[0]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid checkpoint in " + checkpoint, e);
+        }
+    }
+
+    private void writeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        Entry last = entries.get(completed - 1);
+        File temp = new File(checkpoint.getPath() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(temp, last.scanDate + "\t" + last.id, "UTF-8");
+            if (!temp.renameTo(checkpoint)) {
+                FileUtils.copyFile(temp, checkpoint);
+                FileUtils.deleteQuietly(temp);
+            }
+        } catch (IOException e) {
+            log.error("Unable to write the checkpoint to " + checkpoint, e);
+        }
+    }
+
+    /**
+     * A range of the work list, handed to a single worker.
+     */
+    public class Page {
+
+        private final int start;
+        private final int end;
+
+        private Page(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public List<Integer> getIds() {
+            List<Integer> ids = new ArrayList<>(end - start);
+            for (Entry entry : entries.subList(start, end)) {
+                ids.add(entry.id);
+            }
+            return ids;
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final int id;
+        private final long scanDate;
+
+        private Entry(int id, long scanDate) {
+            this.id = id;
+            this.scanDate = scanDate;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (scanDate != other.scanDate) {
+                return scanDate < other.scanDate ? -1 : 1;
+            }
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);
+        }
+    }
+}
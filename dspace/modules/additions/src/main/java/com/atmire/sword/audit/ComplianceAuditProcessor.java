@@ -0,0 +1,49 @@
+package com.atmire.sword.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.atmire.sword.result.CategoryComplianceResult;
+import com.atmire.sword.result.ComplianceResult;
+import com.atmire.sword.result.RuleComplianceResult;
+import com.atmire.sword.service.ComplianceCheckService;
+import com.atmire.utils.multithreading.ItemProcessor;
+import org.dspace.content.Item;
+import org.dspace.core.Context;
+
+/**
+ * Checks an item against the compliance policy, the policy is compiled once and shared by all workers.
+ */
+public class ComplianceAuditProcessor implements ItemProcessor<ComplianceAuditRecord> {
+
+    private final ComplianceCheckService complianceCheckService;
+
+    public ComplianceAuditProcessor(final ComplianceCheckService complianceCheckService) {
+        this.complianceCheckService = complianceCheckService;
+    }
+
+    @Override
+    public ComplianceAuditRecord process(final Context context, final Item item) throws Exception {
+        ComplianceResult result = complianceCheckService.checkCompliance(context, item);
+        if (result == null) {
+            throw new IllegalStateException("The compliance check of item " + item.getID() + " failed");
+        }
+
+        ComplianceAuditRecord record = new ComplianceAuditRecord(item.getID(), item.getHandle(),
+                result.isApplicable(), !result.isApplicable() || result.isCompliant());
+
+        if (result.isApplicable() && !result.isCompliantByException()) {
+            for (CategoryComplianceResult category : result.getOrderedCategoryResults()) {
+                if (category.isApplicable() && !category.isCompliant()) {
+                    List<String> rules = new ArrayList<String>();
+                    for (RuleComplianceResult rule : category.getViolatedRules()) {
+                        rules.add(rule.getResultDescription());
+                    }
+                    record.addViolation(category.getCategoryName(), rules);
+                }
+            }
+        }
+
+        return record;
+    }
+}
@@ -0,0 +1,62 @@
+package com.atmire.sword.audit;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of checking a single item in a {@link ComplianceAuditScript} run.
+ */
+public class ComplianceAuditRecord {
+
+    private final int itemId;
+
+    private final String handle;
+
+    private final boolean applicable;
+
+    private final boolean compliant;
+
+    private final Map<String, List<String>> violations = new LinkedHashMap<String, List<String>>();
+
+    public ComplianceAuditRecord(final int itemId, final String handle, final boolean applicable, final boolean compliant) {
+        this.itemId = itemId;
+        this.handle = handle;
+        this.applicable = applicable;
+        this.compliant = compliant;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public String getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return false if the preconditions of the policy were not met, the item was not checked any further
+     */
+    public boolean isApplicable() {
+        return applicable;
+    }
+
+    public boolean isCompliant() {
+        return compliant;
+    }
+
+    /**
+     * @param category the name of a violated category
+     * @param rules    the descriptions of the violated rules of the category
+     */
+    public void addViolation(final String category, final List<String> rules) {
+        violations.put(category, rules);
+    }
+
+    /**
+     * @return the descriptions of the violated rules, per violated category in the order of the policy
+     */
+    public Map<String, List<String>> getViolations() {
+        return violations;
+    }
+}
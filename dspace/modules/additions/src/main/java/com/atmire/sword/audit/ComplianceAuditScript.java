@@ -0,0 +1,144 @@
+package com.atmire.sword.audit;
+
+import java.io.File;
+import java.util.Map;
+
+import com.atmire.scripts.ContextScript;
+import com.atmire.sword.service.ComplianceCheckService;
+import com.atmire.utils.multithreading.ItemPipeline;
+import com.atmire.utils.multithreading.PipelineStageMetrics;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang.StringUtils;
+import org.dspace.content.ItemIdIterator;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.utils.DSpace;
+
+/**
+ * Checks all archived and withdrawn items against the current compliance rules, in parallel workers that share the
+ * compiled policy. Every item is written as a line of a CSV or JSON lines file, the violation counts per category and
+ * rule are written to a summary file next to it. With a checkpoint file an interrupted run continues where it stopped,
+ * the lines of the items after the checkpoint are removed from the output and the items are checked again.
+ */
+public class ComplianceAuditScript extends ContextScript {
+
+    private static final String output_param = "o";
+    private static final String json_param = "j";
+    private static final String violations_param = "v";
+    private static final String threads_param = "n";
+    private static final String checkpoint_param = "c";
+    private static final String from_param = "f";
+    private static final String to_param = "t";
+
+    private File output;
+    private ComplianceAuditSink.Format format;
+    private boolean violationsOnly;
+    private int threads;
+    private File checkpoint;
+    private Integer fromId;
+    private Integer toId;
+
+    public static void main(String[] args) {
+        new ComplianceAuditScript().mainImpl(args);
+    }
+
+    @Override
+    public void run() throws Exception {
+        ComplianceCheckService complianceCheckService = new DSpace().getServiceManager()
+                .getServiceByName("milieuinfoComplianceCheckService", ComplianceCheckService.class);
+
+        boolean resume = false;
+        Integer completed = ItemPipeline.readCheckpoint(checkpoint);
+        if (completed != null && (fromId == null || completed >= fromId) && output.isFile()) {
+            int removed = ComplianceAuditSink.truncateAfterCheckpoint(output, completed);
+            print("Resuming from checkpoint " + checkpoint + " after item " + completed + ", " + removed
+                    + " lines after the checkpoint were removed from " + output);
+            fromId = completed + 1;
+            resume = true;
+        }
+        if (fromId != null && toId != null && fromId >= toId) {
+            print("No items left to check in the range ending at " + toId);
+            return;
+        }
+
+        ComplianceAuditSink sink = new ComplianceAuditSink(output, format, resume, violationsOnly);
+        ItemPipeline<ComplianceAuditRecord> pipeline = new ItemPipeline<ComplianceAuditRecord>("compliance-audit",
+                new ComplianceAuditProcessor(complianceCheckService), sink);
+        pipeline.setWorkerThreads(threads);
+        pipeline.setReportInterval(ConfigurationManager.getIntProperty("item-compliance", "audit.report-interval", 30) * 1000L);
+        pipeline.setCheckpointFile(checkpoint);
+
+        long start = System.currentTimeMillis();
+        ItemIdIterator items = ItemIdIterator.findUnfilteredItemIds(context, fromId, toId,
+                Math.max(1, ConfigurationManager.getIntProperty("item-compliance", "audit.chunk-size", 1000)));
+        try {
+            pipeline.execute(items);
+        } finally {
+            items.close();
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        File summary = new File(output.getPath() + ".summary");
+        sink.writeSummary(summary);
+
+        print(String.format("Checked %d items in %d s (%.1f items/s), %d items violate the rules",
+                sink.getItems(), elapsed / 1000, sink.getItems() * 1000.0 / elapsed, sink.getViolatingItems()));
+        for (Map.Entry<String, Long> category : sink.getCategoryCounts().entrySet()) {
+            print("  " + category.getKey() + ": " + category.getValue());
+        }
+        for (PipelineStageMetrics stage : pipeline.getStageMetrics()) {
+            if (stage.getFailed() > 0) {
+                print(stage.getFailed() + " items failed in the " + stage.getName() + " stage, see the log");
+            }
+        }
+        if (!pipeline.getFailedIds().isEmpty()) {
+            print("Failed item IDs: " + StringUtils.join(pipeline.getFailedIds(), ", ")
+                    + (checkpoint == null ? "" : ", a resumed run checks them again"));
+        }
+        print("Results written to " + output + ", violation counts" + (resume ? " of this run" : "") + " to " + summary);
+    }
+
+    @Override
+    protected int processLine(CommandLine line) throws ParseException {
+        int status = super.processLine(line);
+        if (status == 0) {
+            if (!line.hasOption(output_param)) {
+                throw new ParseException("An output file is required");
+            }
+            output = new File(line.getOptionValue(output_param));
+            format = line.hasOption(json_param) ? ComplianceAuditSink.Format.JSONL : ComplianceAuditSink.Format.CSV;
+            violationsOnly = line.hasOption(violations_param);
+            threads = line.hasOption(threads_param) ? parseInt(line, threads_param)
+                    : ConfigurationManager.getIntProperty("item-compliance", "audit.threads", 4);
+            if (line.hasOption(checkpoint_param)) {
+                checkpoint = new File(line.getOptionValue(checkpoint_param));
+            }
+            fromId = line.hasOption(from_param) ? parseInt(line, from_param) : null;
+            toId = line.hasOption(to_param) ? parseInt(line, to_param) : null;
+        }
+        return status;
+    }
+
+    private int parseInt(CommandLine line, String param) throws ParseException {
+        try {
+            return Integer.parseInt(line.getOptionValue(param));
+        } catch (NumberFormatException e) {
+            throw new ParseException("Not a valid number for -" + param + ": " + line.getOptionValue(param));
+        }
+    }
+
+    @Override
+    protected Options createCommandLineOptions() {
+        Options options = super.createCommandLineOptions();
+        options.addOption(output_param, "output", true, "The file to write the result of every item to");
+        options.addOption(json_param, "json", false, "Write JSON lines instead of CSV");
+        options.addOption(violations_param, "violations", false, "Only write the items that violate the rules");
+        options.addOption(threads_param, "threads", true, "The number of items checked at once. Default: audit.threads");
+        options.addOption(checkpoint_param, "checkpoint", true,
+                "File to store the last completed item ID in. An existing checkpoint is resumed");
+        options.addOption(from_param, "from", true, "The lowest item ID to check. Default: the first item");
+        options.addOption(to_param, "to", true, "The item ID to stop before. Default: the last item");
+        return options;
+    }
+}
@@ -0,0 +1,283 @@
+package com.atmire.sword.audit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.atmire.utils.multithreading.PipelineSink;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Streams the audit records to a CSV or JSON lines file and counts the violations per category and rule. Every line
+ * starts with the item ID, so the lines of a run that was interrupted can be matched against its checkpoint.
+ */
+public class ComplianceAuditSink extends PipelineSink<ComplianceAuditRecord> {
+
+    private static final Logger log = Logger.getLogger(ComplianceAuditSink.class);
+
+    private static final String CSV_HEADER = "item_id,handle,applicable,compliant,violated_categories,violated_rules";
+
+    private static final String JSON_ID_PREFIX = "{\"item_id\":";
+
+    private static final String SEPARATOR = " | ";
+
+    public enum Format {
+        CSV, JSONL
+    }
+
+    private final Format format;
+
+    private final boolean violationsOnly;
+
+    private final Writer writer;
+
+    private long items;
+
+    private long violatingItems;
+
+    private final Map<String, Long> categoryCounts = new LinkedHashMap<String, Long>();
+
+    private final Map<String, Map<String, Long>> ruleCounts = new LinkedHashMap<String, Map<String, Long>>();
+
+    /**
+     * @param output         the file to write to
+     * @param format         the format of the file
+     * @param append         whether to add to the lines of an earlier run
+     * @param violationsOnly whether to leave out the compliant items
+     */
+    public ComplianceAuditSink(final File output, final Format format, final boolean append, final boolean violationsOnly)
+            throws IOException {
+        this.format = format;
+        this.violationsOnly = violationsOnly;
+
+        boolean header = format == Format.CSV && (!append || output.length() == 0);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output, append), "UTF-8"));
+        if (header) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public synchronized void write(final ComplianceAuditRecord record) throws IOException {
+        items++;
+        if (!record.getViolations().isEmpty()) {
+            violatingItems++;
+        }
+        for (Map.Entry<String, List<String>> violation : record.getViolations().entrySet()) {
+            increment(categoryCounts, violation.getKey());
+            Map<String, Long> rules = ruleCounts.get(violation.getKey());
+            if (rules == null) {
+                rules = new LinkedHashMap<String, Long>();
+                ruleCounts.put(violation.getKey(), rules);
+            }
+            for (String rule : violation.getValue()) {
+                increment(rules, rule);
+            }
+        }
+
+        if (violationsOnly && record.isCompliant()) {
+            return;
+        }
+        writer.write(format == Format.CSV ? toCsv(record) : toJson(record));
+        writer.write('\n');
+        // the item counts as completed for the checkpoint as soon as this returns
+        writer.flush();
+    }
+
+    private void increment(final Map<String, Long> counts, final String key) {
+        Long count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private String toCsv(final ComplianceAuditRecord record) {
+        StringBuilder categories = new StringBuilder();
+        StringBuilder rules = new StringBuilder();
+        for (Map.Entry<String, List<String>> violation : record.getViolations().entrySet()) {
+            if (categories.length() > 0) {
+                categories.append(SEPARATOR);
+            }
+            categories.append(violation.getKey());
+            for (String rule : violation.getValue()) {
+                if (rules.length() > 0) {
+                    rules.append(SEPARATOR);
+                }
+                rules.append(violation.getKey()).append(": ").append(rule);
+            }
+        }
+
+        return record.getItemId() + "," + csv(record.getHandle()) + "," + record.isApplicable() + ","
+                + record.isCompliant() + "," + csv(categories.toString()) + "," + csv(rules.toString());
+    }
+
+    private String toJson(final ComplianceAuditRecord record) {
+        StringBuilder json = new StringBuilder(JSON_ID_PREFIX).append(record.getItemId());
+        json.append(",\"handle\":").append(json(record.getHandle()));
+        json.append(",\"applicable\":").append(record.isApplicable());
+        json.append(",\"compliant\":").append(record.isCompliant());
+        json.append(",\"violations\":{");
+        boolean firstCategory = true;
+        for (Map.Entry<String, List<String>> violation : record.getViolations().entrySet()) {
+            if (!firstCategory) {
+                json.append(',');
+            }
+            firstCategory = false;
+            json.append(json(violation.getKey())).append(":[");
+            for (int i = 0; i < violation.getValue().size(); i++) {
+                json.append(i == 0 ? "" : ",").append(json(violation.getValue().get(i)));
+            }
+            json.append(']');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String csv(final String value) {
+        if (value == null) {
+            return "";
+        }
+        // one line per item, the checkpoint handling relies on it
+        String line = value.replace('\r', ' ').replace('\n', ' ');
+        if (StringUtils.containsAny(line, ",\"")) {
+            return "\"" + line.replace("\"", "\"\"") + "\"";
+        }
+        return line;
+    }
+
+    private static String json(final String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    @Override
+    protected synchronized void finish() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error("Unable to close the compliance audit output", e);
+        }
+    }
+
+    /**
+     * Write the violation counts, one line per category followed by a line per violated rule of the category.
+     */
+    public synchronized void writeSummary(final File file) throws IOException {
+        Writer summary = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            if (format == Format.CSV) {
+                summary.write("category,rule,violations\n");
+            }
+            for (Map.Entry<String, Long> category : categoryCounts.entrySet()) {
+                summary.write(summaryLine(category.getKey(), null, category.getValue()));
+                for (Map.Entry<String, Long> rule : ruleCounts.get(category.getKey()).entrySet()) {
+                    summary.write(summaryLine(category.getKey(), rule.getKey(), rule.getValue()));
+                }
+            }
+        } finally {
+            summary.close();
+        }
+    }
+
+    private String summaryLine(final String category, final String rule, final long count) {
+        if (format == Format.CSV) {
+            return csv(category) + "," + csv(rule) + "," + count + "\n";
+        }
+        return "{\"category\":" + json(category) + ",\"rule\":" + json(rule) + ",\"violations\":" + count + "}\n";
+    }
+
+    /**
+     * Remove the lines of the items after the checkpoint of an interrupted run. Those items are checked again when
+     * the run is resumed.
+     *
+     * @param output    the output of the interrupted run
+     * @param completed the last item ID in the checkpoint
+     * @return the number of lines that were removed
+     */
+    public static int truncateAfterCheckpoint(final File output, final int completed) throws IOException {
+        File temp = new File(output.getPath() + ".tmp");
+        int removed = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(output), "UTF-8"));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Integer id = leadingId(line);
+                if (id == null || id <= completed) {
+                    writer.write(line);
+                    writer.write('\n');
+                } else {
+                    removed++;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+            writer.close();
+        }
+
+        if (!temp.renameTo(output)) {
+            FileUtils.copyFile(temp, output);
+            FileUtils.deleteQuietly(temp);
+        }
+        return removed;
+    }
+
+    private static Integer leadingId(final String line) {
+        String rest = line.startsWith(JSON_ID_PREFIX) ? line.substring(JSON_ID_PREFIX.length()) : line;
+        int end = 0;
+        while (end < rest.length() && Character.isDigit(rest.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? null : Integer.valueOf(rest.substring(0, end));
+    }
+
+    public synchronized long getItems() {
+        return items;
+    }
+
+    public synchronized long getViolatingItems() {
+        return violatingItems;
+    }
+
+    public synchronized Map<String, Long> getCategoryCounts() {
+        return new LinkedHashMap<String, Long>(categoryCounts);
+    }
+}
@@ -1,6 +1,7 @@
 package com.atmire.sword.rules;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -19,15 +20,20 @@ import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
 /**
- * Abstract implementation of a compliance rule
+ * Abstract implementation of a compliance rule. A rule is configured by the rules factory before the policy is
+ * published and does not change afterwards, the same instance validates items from many threads at once. The findings
+ * of a single validation are kept in a {@link RuleEvaluation}.
  */
 public abstract class AbstractComplianceRule implements ComplianceRule {
 
-    private final List<ComplianceRule> exceptionRules = new LinkedList<ComplianceRule>();
+    private final List<ComplianceRule> exceptionRules = new ArrayList<ComplianceRule>();
 
-    private final List<ComplianceRule> preconditionRules = new LinkedList<ComplianceRule>();
+    private final List<ComplianceRule> preconditionRules = new ArrayList<ComplianceRule>();
 
-    private List<String> violationDescriptions = new LinkedList<String>();
+    /**
+     * Problems with the rule definition itself, reported by every validation
+     */
+    private final List<String> definitionErrors = new ArrayList<String>();
 
     private String definitionHint = null;
 
@@ -41,9 +47,9 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         this.resolutionHint = resolutionHint;
     }
 
-    public RuleComplianceResult validate(final Context context, final Item item) {
+    public RuleComplianceResult validate(final Context context, final Item item, final MetadataOverlay overlay) {
 
-        RuleComplianceResult result = getComplianceResult(context, item);
+        RuleComplianceResult result = getComplianceResult(context, item, overlay);
 
         if (!result.isCompliant() && CollectionUtils.isNotEmpty(exceptionRules)) {
 
@@ -51,7 +57,7 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
             Iterator<ComplianceRule> it = exceptionRules.iterator();
             do {
                 ComplianceRule exceptionRule = it.next();
-                exceptionResult = exceptionRule.validate(context, item);
+                exceptionResult = exceptionRule.validate(context, item, overlay);
             } while (!(exceptionResult.isCompliant() && exceptionResult.isApplicable()) && it.hasNext());
 
             if (exceptionResult.isCompliant() && exceptionResult.isApplicable()) {
@@ -75,7 +81,7 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         preconditionRules.add(complianceRule);
     }
 
-    protected RuleComplianceResult getComplianceResult(final Context context, final Item item) {
+    protected RuleComplianceResult getComplianceResult(final Context context, final Item item, final MetadataOverlay overlay) {
         RuleComplianceResult result = new RuleComplianceResult();
         result.setApplicable(true);
 
@@ -87,16 +93,17 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
             result.setCompliant(true);
 
             //Always do the validation so that the rule description can be built if necessary
-            boolean isValid = doValidationAndBuildDescription(context, item);
-            result.setRuleDescriptionViolation(getRuleDescriptionViolation());
-            result.setRuleDescriptionCompliant(getRuleDescriptionCompliant());
+            RuleEvaluation evaluation = new RuleEvaluation(definitionErrors, overlay);
+            boolean isValid = doValidationAndBuildDescription(context, item, evaluation);
+            result.setRuleDescriptionViolation(getRuleDescriptionViolation(evaluation));
+            result.setRuleDescriptionCompliant(getRuleDescriptionCompliant(evaluation));
 
 
-            if (preconditionsAreMet(context, result, item)) {
+            if (preconditionsAreMet(context, result, item, overlay)) {
                 result.setCompliant(isValid);
 
                 if (!isValid) {
-                    result.addViolationDescriptions(violationDescriptions);
+                    result.addViolationDescriptions(evaluation.getViolationDescriptions());
                 }
             } else {
                 result.setApplicable(false);
@@ -110,7 +117,16 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
 
     protected abstract String getRuleDescriptionViolation();
 
-    private boolean preconditionsAreMet(final Context context, final RuleComplianceResult parentResult, final Item item) {
+    protected String getRuleDescriptionCompliant(final RuleEvaluation evaluation) {
+        return getRuleDescriptionCompliant();
+    }
+
+    protected String getRuleDescriptionViolation(final RuleEvaluation evaluation) {
+        return getRuleDescriptionViolation();
+    }
+
+    private boolean preconditionsAreMet(final Context context, final RuleComplianceResult parentResult, final Item item,
+                                        final MetadataOverlay overlay) {
         boolean conditionsAreMet = true;
 
         Iterator<ComplianceRule> it = preconditionRules.iterator();
@@ -118,7 +134,7 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
 
         while (it.hasNext()) {
             ComplianceRule rule = it.next();
-            RuleComplianceResult complianceResult = rule.validate(context, item);
+            RuleComplianceResult complianceResult = rule.validate(context, item, overlay);
 
             conditionsAreMet &= complianceResult.isCompliant();
 
@@ -132,12 +148,11 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         return conditionsAreMet;
     }
 
-    protected void addViolationDescription(final String description) {
-        violationDescriptions.add(description);
-    }
-
-    protected void addViolationDescription(final String description, final Object... parameters) {
-        addViolationDescription(String.format(description, parameters));
+    /**
+     * Report a problem with the rule definition, for use while the rule is being built
+     */
+    protected void addDefinitionError(final String description, final Object... parameters) {
+        definitionErrors.add(String.format(description, parameters));
     }
 
     protected String getValueDescription(final Value valueObject) {
@@ -149,13 +164,14 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         }
     }
 
-    protected List<Metadatum> getMetadata(final Context context, final Item item, final String metadataField) {
+    protected List<Metadatum> getMetadata(final Context context, final Item item, final String metadataField,
+                                          final RuleEvaluation evaluation) {
         List<Metadatum> output;
 
         try {
             CustomField customField = CustomField.findByField(metadataField);
             if (customField == null) {
-                Metadatum[] metadata = item.getMetadataByMetadataString(metadataField);
+                Metadatum[] metadata = evaluation.getOverlay().getMetadata(item, metadataField);
                 output = Arrays.asList(metadata);
             } else {
                 output = customField.createValueList(context, item);
@@ -167,16 +183,17 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         return output;
     }
 
-    protected DateTime getFirstDateValue(final Context context, final Item item, final String metadataField) {
+    protected DateTime getFirstDateValue(final Context context, final Item item, final String metadataField,
+                                         final RuleEvaluation evaluation) {
 
         try {
-            List<Metadatum> fieldValueList = getMetadata(context, item, metadataField);
+            List<Metadatum> fieldValueList = getMetadata(context, item, metadataField, evaluation);
             if (CollectionUtils.isNotEmpty(fieldValueList)) {
                 return parseDateTime(fieldValueList.get(0).value);
             }
 
         } catch (IllegalArgumentException ex) {
-            addViolationDescription("the metadata field %s is invalid because it has too few tokens or contains an invalid date", metadataField);
+            evaluation.addViolationDescription("the metadata field %s is invalid because it has too few tokens or contains an invalid date", metadataField);
         }
 
         return null;
@@ -197,6 +214,7 @@ public abstract class AbstractComplianceRule implements ComplianceRule {
         return ISODateTimeFormat.dateParser();
     }
 
-    protected abstract boolean doValidationAndBuildDescription(final Context context, final Item item);
+    protected abstract boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                               final RuleEvaluation evaluation);
 
 }
@@ -19,21 +19,22 @@ public abstract class AbstractFieldCheckRule extends AbstractComplianceRule {
     }
 
     @Override
-    protected boolean doValidationAndBuildDescription(final Context context, final Item item) {
+    protected boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                      final RuleEvaluation evaluation) {
         if (metadataFieldToCheck == null) {
-            addViolationDescription("Cannot validate a blank field");
+            evaluation.addViolationDescription("Cannot validate a blank field");
             return false;
         } else {
             try {
-                List<Metadatum> fieldValueList = getMetadata(context, item, metadataFieldToCheck);
-                return checkFieldValues(fieldValueList);
+                List<Metadatum> fieldValueList = getMetadata(context, item, metadataFieldToCheck, evaluation);
+                return checkFieldValues(fieldValueList, evaluation);
 
             } catch(IllegalArgumentException ex) {
-                addViolationDescription("The metadata field %s is invalid because it has too few tokens", metadataFieldToCheck);
+                evaluation.addViolationDescription("The metadata field %s is invalid because it has too few tokens", metadataFieldToCheck);
                 return false;
             }
         }
     }
 
-    abstract protected boolean checkFieldValues(final List<Metadatum> fieldValueList);
+    abstract protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation);
 }
@@ -76,16 +76,16 @@ public class ComplianceCategory implements Comparable<ComplianceCategory> {
         exceptionRules.addAll(rules);
     }
 
-    public CategoryComplianceResult validate(final Context context, final Item item) {
+    public CategoryComplianceResult validate(final Context context, final Item item, final MetadataOverlay overlay) {
         CategoryComplianceResult result = buildCategoryComplianceResult();
 
         for (ComplianceRule rule : complianceRules) {
-            RuleComplianceResult ruleResult = rule.validate(context, item);
+            RuleComplianceResult ruleResult = rule.validate(context, item, overlay);
             result.addRuleResult(ruleResult);
         }
 
         for (ComplianceRule rule : exceptionRules) {
-            RuleComplianceResult ruleResult = rule.validate(context, item);
+            RuleComplianceResult ruleResult = rule.validate(context, item, overlay);
             result.addExceptionResult(ruleResult);
         }
 
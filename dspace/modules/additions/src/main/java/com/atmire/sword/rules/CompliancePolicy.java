@@ -7,6 +7,10 @@ import java.util.*;
 import org.dspace.content.*;
 import org.dspace.core.*;
 
+/**
+ * The compiled validation rules. A policy is built once per version of the rule definition file and is then shared
+ * by all threads that check items, validating does not change it.
+ */
 public class CompliancePolicy {
 
     private final List<ComplianceCategory> categories = new LinkedList<ComplianceCategory>();
@@ -17,6 +21,7 @@ public class CompliancePolicy {
 
     public void addComplianceCategory(final ComplianceCategory category) {
         categories.add(category);
+        Collections.sort(categories);
     }
 
     public void addExceptionRules(final Collection<ComplianceRule> rules) {
@@ -27,15 +32,14 @@ public class CompliancePolicy {
         preconditionRules.addAll(rules);
     }
 
-    public ComplianceResult validate(final Context context, final Item item, ComplianceResult result) {
-
-        Collections.sort(categories);
+    public ComplianceResult validate(final Context context, final Item item, final MetadataOverlay overlay,
+                                     ComplianceResult result) {
 
         boolean exceptionEncountered = false;
 
         //First check all the exceptions
         for (ComplianceRule exceptionRule : exceptionRules) {
-            RuleComplianceResult ruleResult = exceptionRule.validate(context, item);
+            RuleComplianceResult ruleResult = exceptionRule.validate(context, item, overlay);
             result.addExceptionResult(ruleResult);
         }
 
@@ -46,7 +50,7 @@ public class CompliancePolicy {
 
         //Check the categories and indicate if they are applicable or not
         for (ComplianceCategory category : categories) {
-            CategoryComplianceResult categoryResult = category.validate(context, item);
+            CategoryComplianceResult categoryResult = category.validate(context, item, overlay);
 
             if(exceptionEncountered) {
                 categoryResult.setApplicable(false);
@@ -65,13 +69,14 @@ public class CompliancePolicy {
         return result;
     }
 
-    public ComplianceResult validatePreconditionRules(final Context context, final Item item) {
+    public ComplianceResult validatePreconditionRules(final Context context, final Item item,
+                                                      final MetadataOverlay overlay) {
         ComplianceResult result = new ComplianceResult();
 
         result.setApplicable(true);
 
         for (ComplianceRule preconditionRule : preconditionRules) {
-            RuleComplianceResult ruleResult = preconditionRule.validate(context, item);
+            RuleComplianceResult ruleResult = preconditionRule.validate(context, item, overlay);
             if(!ruleResult.isCompliant()) {
                 result.addPreconditionResult(ruleResult);
                 result.setApplicable(false);
@@ -10,7 +10,10 @@ import org.dspace.core.*;
  */
 public interface ComplianceRule {
 
-    RuleComplianceResult validate(Context context, Item item);
+    /**
+     * @param overlay the estimated values to validate the item with, next to its own metadata
+     */
+    RuleComplianceResult validate(Context context, Item item, MetadataOverlay overlay);
 
     void addExceptionRule(ComplianceRule exceptionRule);
 
@@ -30,7 +30,7 @@ public class CountLesserThanRule extends AbstractComplianceRule {
         try {
             this.thresholdNumber = thresholdValue == null ? null : Integer.valueOf(StringUtils.trimToEmpty(thresholdValue.getValue()));
         } catch(NumberFormatException ex) {
-            addViolationDescription("de opgegeven drempelwaarde %s is geen geldig getal", thresholdValue);
+            addDefinitionError("de opgegeven drempelwaarde %s is geen geldig getal", thresholdValue);
             this.thresholdNumber = null;
         }
 
@@ -52,32 +52,34 @@ public class CountLesserThanRule extends AbstractComplianceRule {
         );
     }
 
-    protected boolean doValidationAndBuildDescription(final Context context, final Item item) {
+    protected boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                      final RuleEvaluation evaluation) {
         boolean valid = false;
 
         if (fieldToCheck == null) {
-            addViolationDescription("een leeg veld kan niet gevalideerd worden");
+            evaluation.addViolationDescription("een leeg veld kan niet gevalideerd worden");
         } else {
             if(thresholdNumber != null) {
                 try {
-                    int count = countFieldValues(context, item);
+                    int count = countFieldValues(context, item, evaluation);
 
                     if (count < thresholdNumber) {
                         valid = true;
                     } else {
-                        addViolationDescription("het aantal waardes van %s is %d", fieldDescription, count);
+                        evaluation.addViolationDescription("het aantal waardes van %s is %d", fieldDescription, count);
                     }
 
                 } catch (SQLException e) {
-                    addViolationDescription("het is niet mogelijk om de waardes van %s te tellen: %s", fieldDescription, e.getMessage());
+                    evaluation.addViolationDescription("het is niet mogelijk om de waardes van %s te tellen: %s", fieldDescription, e.getMessage());
                 }
             }
         }
         return valid;
     }
 
-    private int countFieldValues(final Context context, final Item item) throws SQLException {
-        List<Metadatum> fieldValueList = getMetadata(context, item, fieldToCheck);
+    private int countFieldValues(final Context context, final Item item, final RuleEvaluation evaluation)
+            throws SQLException {
+        List<Metadatum> fieldValueList = getMetadata(context, item, fieldToCheck, evaluation);
         return CollectionUtils.size(fieldValueList);
     }
 
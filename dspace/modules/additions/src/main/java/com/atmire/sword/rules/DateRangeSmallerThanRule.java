@@ -33,7 +33,7 @@ public class DateRangeSmallerThanRule extends AbstractComplianceRule {
         try {
             this.thresholdNumber = thresholdValue == null ? null : Integer.valueOf(StringUtils.trimToEmpty(thresholdValue.getValue()));
         } catch(NumberFormatException ex) {
-            addViolationDescription("de opgegeven drempelwaarde %s is geen geldig getal", thresholdValue);
+            addDefinitionError("de opgegeven drempelwaarde %s is geen geldig getal", thresholdValue);
             this.thresholdNumber = null;
         }
     }
@@ -48,21 +48,22 @@ public class DateRangeSmallerThanRule extends AbstractComplianceRule {
                 thresholdValue == null ? "ERROR" : getValueDescription(thresholdValue));
     }
 
-    protected boolean doValidationAndBuildDescription(final Context context, final Item item) {
+    protected boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                      final RuleEvaluation evaluation) {
         boolean valid = false;
 
         if (fromField == null || toField == null) {
-            addViolationDescription("the from and to date fields of a date range validation rule cannot be blank.");
+            evaluation.addViolationDescription("the from and to date fields of a date range validation rule cannot be blank.");
         } else {
             if(thresholdNumber != null) {
-                DateTime from = getFirstDateValue(context, item, fromField);
-                DateTime to = getFirstDateValue(context, item, toField);
+                DateTime from = getFirstDateValue(context, item, fromField, evaluation);
+                DateTime to = getFirstDateValue(context, item, toField, evaluation);
 
                 if(from == null) {
-                    addViolationDescription("er is geen geldige waarde voor het veld " + fromField);
+                    evaluation.addViolationDescription("er is geen geldige waarde voor het veld " + fromField);
                 }
                 if(to == null) {
-                    addViolationDescription("er is geen geldige waarde voor het veld " + toField);
+                    evaluation.addViolationDescription("er is geen geldige waarde voor het veld " + toField);
                 }
 
                 if (to != null && from != null) {
@@ -74,7 +75,7 @@ public class DateRangeSmallerThanRule extends AbstractComplianceRule {
                     if (months < thresholdNumber) {
                         valid = true;
                     } else {
-                        addViolationDescription("de %s is %d maand(en)", rangeDescription, months);
+                        evaluation.addViolationDescription("de %s is %d maand(en)", rangeDescription, months);
                     }
                 }
             }
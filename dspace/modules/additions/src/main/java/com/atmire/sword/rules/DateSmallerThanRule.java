@@ -24,13 +24,13 @@ public class DateSmallerThanRule extends AbstractFieldCheckRule implements Compl
         thresholdValue = CollectionUtils.isEmpty(thresholdValues) ? null : thresholdValues.get(0);
     }
 
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
         boolean valid = false;
         if (isEmpty(fieldValueList)) {
-            addViolationDescription("het %s veld heeft geen waarde", fieldDescription);
+            evaluation.addViolationDescription("het %s veld heeft geen waarde", fieldDescription);
 
         } else if (thresholdValue == null || StringUtils.isBlank(thresholdValue.getValue())) {
-            addViolationDescription("de drempelwaarde kan niet leeg zijn");
+            evaluation.addViolationDescription("de drempelwaarde kan niet leeg zijn");
 
         } else {
             try {
@@ -38,16 +38,16 @@ public class DateSmallerThanRule extends AbstractFieldCheckRule implements Compl
                 DateTime dateToCheck = parseDateTime(fieldValueList.get(0).value);
 
                 if(dateToCheck == null) {
-                    addViolationDescription("er is geen geldige waarde voor het veld " + metadataFieldToCheck);
+                    evaluation.addViolationDescription("er is geen geldige waarde voor het veld " + metadataFieldToCheck);
                 } else if (thresholdDate != null && dateToCheck.compareTo(thresholdDate) < 0) {
                     valid = true;
                 } else {
-                    addViolationDescription("de %s is na %s", fieldDescription,
+                    evaluation.addViolationDescription("de %s is na %s", fieldDescription,
                             thresholdValue == null ? "ERROR" : getValueDescription(thresholdValue));
                 }
 
             } catch (IllegalArgumentException ex) {
-                addViolationDescription("het metadata veld %s is ongeldig omdat het een ongeldige datum (in een verkeerd formaat) bevat", metadataFieldToCheck);
+                evaluation.addViolationDescription("het metadata veld %s is ongeldig omdat het een ongeldige datum (in een verkeerd formaat) bevat", metadataFieldToCheck);
             }
         }
 
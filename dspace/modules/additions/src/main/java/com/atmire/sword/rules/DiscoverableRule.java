@@ -28,7 +28,8 @@ public class DiscoverableRule extends AbstractComplianceRule {
         return "the item must be discoverable using the search functionality";
     }
 
-    protected boolean doValidationAndBuildDescription(final Context context, final Item item) {
+    protected boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                      final RuleEvaluation evaluation) {
         boolean valid = false;
 
         DiscoverQuery query = new DiscoverQuery();
@@ -42,26 +43,26 @@ public class DiscoverableRule extends AbstractComplianceRule {
             if(result != null && result.getTotalSearchResults() > 0) {
                 valid = true;
             } else {
-                addViolationDescription(item);
+                addViolationDescription(item, evaluation);
             }
 
             anonymousContext.complete();
 
         } catch (SearchServiceException e) {
-            addViolationDescription("niet in staat om in discovery te zoeken naar item %s: %s", item.getHandle(), e.getMessage());
+            evaluation.addViolationDescription("niet in staat om in discovery te zoeken naar item %s: %s", item.getHandle(), e.getMessage());
         } catch (SQLException e) {
-            addViolationDescription("niet in staat om een anonieme context aan te maken voor het ondervragen van discovery voor item %s: %s", item.getHandle(), e.getMessage());
+            evaluation.addViolationDescription("niet in staat om een anonieme context aan te maken voor het ondervragen van discovery voor item %s: %s", item.getHandle(), e.getMessage());
         }
 
         return valid;
     }
 
-    private void addViolationDescription(final Item item) {
+    private void addViolationDescription(final Item item, final RuleEvaluation evaluation) {
         String description = "item met %s %s is niet vindbaar via de zoekfunctionaliteit";
         if(item.getHandle() == null) {
-            addViolationDescription(description, "titel", "\"" + item.getMetadata("dc.title") + "\"");
+            evaluation.addViolationDescription(description, "titel", "\"" + item.getMetadata("dc.title") + "\"");
         } else {
-            addViolationDescription(description, "handle", item.getHandle());
+            evaluation.addViolationDescription(description, "handle", item.getHandle());
         }
     }
 }
@@ -26,8 +26,8 @@ public class FailOnPreconditionSuccessRule extends AbstractComplianceRule {
     }
 
     @Override
-    protected boolean doValidationAndBuildDescription(Context context, Item item) {
-        addViolationDescription("Velden %s kunnen niet beiden een waarde hebben binnen eenzelfde item", fieldDescription);
+    protected boolean doValidationAndBuildDescription(Context context, Item item, RuleEvaluation evaluation) {
+        evaluation.addViolationDescription("Velden %s kunnen niet beiden een waarde hebben binnen eenzelfde item", fieldDescription);
         return false;
     }
 }
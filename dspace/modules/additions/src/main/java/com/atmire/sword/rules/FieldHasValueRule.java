@@ -17,9 +17,7 @@ import org.dspace.content.Metadatum;
  */
 public class FieldHasValueRule extends AbstractFieldCheckRule {
 
-    private Map<String, Value> possibleValues = new LinkedHashMap<String, Value>();
-
-    private Value checkedCompliantValue = null;
+    private final Map<String, Value> possibleValues = new LinkedHashMap<String, Value>();
 
     public FieldHasValueRule(final String fieldDescription, final String metadataField, final Collection<Value> possibleValues) {
         super(fieldDescription, metadataField);
@@ -31,28 +29,43 @@ public class FieldHasValueRule extends AbstractFieldCheckRule {
         }
     }
 
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
 
         if (isEmpty(fieldValueList)) {
-            addViolationDescription("Het %s veld heeft geen waarde", fieldDescription);
+            evaluation.addViolationDescription("Het %s veld heeft geen waarde", fieldDescription);
             return false;
         } else if(possibleValues.containsKey(fieldValueList.get(0).value)) {
-            checkedCompliantValue = possibleValues.get(fieldValueList.get(0).value);
+            evaluation.setCompliantValue(possibleValues.get(fieldValueList.get(0).value));
             return true;
         } else {
-            addViolationDescription("het %s veld heeft waarde %s", fieldDescription, fieldValueList.get(0).value);
+            evaluation.addViolationDescription("het %s veld heeft waarde %s", fieldDescription, fieldValueList.get(0).value);
             return false;
         }
     }
 
     protected String getRuleDescriptionCompliant() {
-        return String.format("het %s veld (%s) heeft waarde %s", fieldDescription, metadataFieldToCheck,
-                checkedCompliantValue == null ? buildValueString() : getValueDescription(checkedCompliantValue));
+        return getRuleDescriptionCompliant(null);
     }
 
     protected String getRuleDescriptionViolation() {
+        return getRuleDescriptionViolation(null);
+    }
+
+    @Override
+    protected String getRuleDescriptionCompliant(final RuleEvaluation evaluation) {
+        return String.format("het %s veld (%s) heeft waarde %s", fieldDescription, metadataFieldToCheck,
+                buildValueString(evaluation));
+    }
+
+    @Override
+    protected String getRuleDescriptionViolation(final RuleEvaluation evaluation) {
         return String.format("het %s veld (%s) moet waarde %s hebben", fieldDescription, metadataFieldToCheck,
-                checkedCompliantValue == null ? buildValueString() : getValueDescription(checkedCompliantValue));
+                buildValueString(evaluation));
+    }
+
+    private String buildValueString(final RuleEvaluation evaluation) {
+        Value compliantValue = evaluation == null ? null : evaluation.getCompliantValue();
+        return compliantValue == null ? buildValueString() : getValueDescription(compliantValue);
     }
 
     private String buildValueString() {
@@ -12,19 +12,16 @@ import org.dspace.content.Metadatum;
  */
 public class FieldIsBlankRule extends AbstractFieldCheckRule {
 
-    private String checkedValue = null;
-
     public FieldIsBlankRule(final String fieldDescription, final String metadataField) {
         super(fieldDescription, metadataField);
     }
 
     @Override
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
         if (isEmpty(fieldValueList) || isBlank(fieldValueList.get(0))) {
             return true;
         } else {
-            addViolationDescription("het veld %s heeft een waarde", fieldDescription);
-            checkedValue = fieldValueList.get(0).value;
+            evaluation.addViolationDescription("het veld %s heeft een waarde", fieldDescription);
             return false;
         }
     }
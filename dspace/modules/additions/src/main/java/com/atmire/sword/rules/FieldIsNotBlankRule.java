@@ -12,19 +12,16 @@ import org.dspace.content.Metadatum;
  */
 public class FieldIsNotBlankRule extends AbstractFieldCheckRule {
 
-    private String checkedValue = null;
-
     public FieldIsNotBlankRule(final String fieldDescription, final String metadataField) {
         super(fieldDescription, metadataField);
     }
 
     @Override
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
         if (isEmpty(fieldValueList) || isBlank(fieldValueList.get(0))) {
-            addViolationDescription("het %s veld heeft een lege waarde", fieldDescription);
+            evaluation.addViolationDescription("het %s veld heeft een lege waarde", fieldDescription);
             return false;
         } else {
-            checkedValue = fieldValueList.get(0).value;
             return true;
         }
     }
@@ -0,0 +1,60 @@
+package com.atmire.sword.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.dspace.content.Item;
+import org.dspace.content.Metadatum;
+
+/**
+ * Read-only view on the metadata of an item with estimated values added for fields the item does not have yet. The
+ * rules validate against this view, so an item can be checked as if it had the estimated values without writing them
+ * to the item.
+ */
+public class MetadataOverlay {
+
+    private final List<Metadatum> estimatedValues = new ArrayList<Metadatum>();
+
+    public void addEstimatedValue(final Metadatum value) {
+        estimatedValues.add(value);
+    }
+
+    public List<Metadatum> getEstimatedValues() {
+        return Collections.unmodifiableList(estimatedValues);
+    }
+
+    /**
+     * Same as {@link Item#getMetadataByMetadataString(String)}, followed by the estimated values of the field
+     */
+    public Metadatum[] getMetadata(final Item item, final String metadataField) {
+        Metadatum[] values = item.getMetadataByMetadataString(metadataField);
+        if (estimatedValues.isEmpty()) {
+            return values;
+        }
+
+        List<Metadatum> output = new ArrayList<Metadatum>(Arrays.asList(values));
+        String[] tokens = StringUtils.split(metadataField, '.');
+        if (tokens.length == 2 || tokens.length == 3) {
+            for (Metadatum estimatedValue : estimatedValues) {
+                if (matches(estimatedValue, tokens[0], tokens[1], tokens.length == 3 ? tokens[2] : null)) {
+                    output.add(estimatedValue);
+                }
+            }
+        }
+        return output.toArray(new Metadatum[output.size()]);
+    }
+
+    private boolean matches(final Metadatum value, final String schema, final String element, final String qualifier) {
+        if (!Item.ANY.equals(schema) && !StringUtils.equals(schema, value.schema)) {
+            return false;
+        }
+        if (!Item.ANY.equals(element) && !StringUtils.equals(element, value.element)) {
+            return false;
+        }
+        // no qualifier only matches unqualified values, as for the item itself
+        return Item.ANY.equals(qualifier) || StringUtils.equals(qualifier, value.qualifier);
+    }
+}
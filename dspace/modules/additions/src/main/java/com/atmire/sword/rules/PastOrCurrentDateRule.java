@@ -20,25 +20,25 @@ public class PastOrCurrentDateRule extends AbstractFieldCheckRule implements Com
         super(fieldDescription, metadataField);
     }
 
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
         boolean valid = false;
         if (isEmpty(fieldValueList)) {
-            addViolationDescription("het %s veld heeft geen waarde", fieldDescription);
+            evaluation.addViolationDescription("het %s veld heeft geen waarde", fieldDescription);
         } else {
             try {
                 Date thresholdDate = parseDate(getThresholdValue());
                 Date dateToCheck = parseDate(fieldValueList.get(0).value);
 
                 if (dateToCheck == null) {
-                    addViolationDescription("er is geen geldige waarde voor het veld " + metadataFieldToCheck);
+                    evaluation.addViolationDescription("er is geen geldige waarde voor het veld " + metadataFieldToCheck);
                 } else if (thresholdDate != null && dateToCheck.compareTo(thresholdDate) < 0) {
                     valid = true;
                 } else {
-                    addViolationDescription("de %s is na vandaag", fieldDescription);
+                    evaluation.addViolationDescription("de %s is na vandaag", fieldDescription);
                 }
 
             } catch (IllegalArgumentException ex) {
-                addViolationDescription(
+                evaluation.addViolationDescription(
                         "het veld %s (%s) is ongeldig omdat het een ongeldige datum (-formaat) bevat",
                         fieldDescription, metadataFieldToCheck
                 );
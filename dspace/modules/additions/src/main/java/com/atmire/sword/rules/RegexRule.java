@@ -25,16 +25,16 @@ public class RegexRule extends AbstractFieldCheckRule implements ComplianceRule
         this.regex = Pattern.compile(fieldValue.get(0).getValue());
     }
 
-    protected boolean checkFieldValues(final List<Metadatum> fieldValueList) {
+    protected boolean checkFieldValues(final List<Metadatum> fieldValueList, final RuleEvaluation evaluation) {
         boolean valid = true;
         if (isEmpty(fieldValueList)) {
             valid = false;
-            addViolationDescription("het %s veld (%s) heeft geen waarde", fieldDescription, metadataFieldToCheck);
+            evaluation.addViolationDescription("het %s veld (%s) heeft geen waarde", fieldDescription, metadataFieldToCheck);
         } else {
             for (Metadatum metadatum : fieldValueList) {
                 if (!regex.matcher(metadatum.value).matches()) {
                     valid = false;
-                    addViolationDescription(
+                    evaluation.addViolationDescription(
                             "De waarde %s voldoet niet aan de reguliere expressie %s",
                             metadatum.value,
                             regex.pattern()
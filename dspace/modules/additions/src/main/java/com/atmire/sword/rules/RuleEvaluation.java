@@ -0,0 +1,54 @@
+package com.atmire.sword.rules;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import com.atmire.sword.validation.model.Value;
+
+/**
+ * The state of a single validation of an item against a rule. Rules are shared between threads and do not change
+ * while validating, everything a rule finds out about the item is kept here.
+ */
+public class RuleEvaluation {
+
+    private final List<String> violationDescriptions;
+
+    private final MetadataOverlay overlay;
+
+    private Value compliantValue = null;
+
+    public RuleEvaluation(final List<String> definitionErrors, final MetadataOverlay overlay) {
+        this.violationDescriptions = new LinkedList<String>(definitionErrors);
+        this.overlay = overlay;
+    }
+
+    /**
+     * @return the metadata of the item, including the estimated values
+     */
+    public MetadataOverlay getOverlay() {
+        return overlay;
+    }
+
+    public void addViolationDescription(final String description) {
+        violationDescriptions.add(description);
+    }
+
+    public void addViolationDescription(final String description, final Object... parameters) {
+        addViolationDescription(String.format(description, parameters));
+    }
+
+    public List<String> getViolationDescriptions() {
+        return violationDescriptions;
+    }
+
+    /**
+     * @return the configured value the item turned out to have, null if not known
+     */
+    public Value getCompliantValue() {
+        return compliantValue;
+    }
+
+    public void setCompliantValue(final Value compliantValue) {
+        this.compliantValue = compliantValue;
+    }
+}
@@ -1,64 +1,83 @@
 package com.atmire.sword.rules;
 
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.atmire.sword.rules.uniqueness.UniqueValueLookup;
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.dspace.content.Item;
-import org.dspace.content.ItemIterator;
 import org.dspace.content.Metadatum;
 import org.dspace.core.Context;
 
 /**
  * @author philip at atmire.com
  */
-public class UniqueValueByAuthorityId extends AbstractFieldCheckRule {
+public class UniqueValueByAuthorityId extends AbstractComplianceRule {
 
-    public boolean valid;
+    private static final Logger log = Logger.getLogger(UniqueValueByAuthorityId.class);
 
-    public UniqueValueByAuthorityId(String fieldDescription, String metadataField) {
-        super(fieldDescription, metadataField);
+    private final String metadataFieldToCheck;
+    private final String fieldDescription;
+    private final UniqueValueLookup lookup;
+
+    public UniqueValueByAuthorityId(String fieldDescription, String metadataField, UniqueValueLookup lookup) {
+        this.fieldDescription = StringUtils.trimToEmpty(fieldDescription);
+        this.metadataFieldToCheck = StringUtils.trimToNull(metadataField);
+        this.lookup = lookup;
     }
 
     @Override
-    protected boolean checkFieldValues(List<Metadatum> fieldValueList) {
-        valid = true;
-        for (Metadatum metadatum : fieldValueList) {
-            Context context = null;
-            try {
-                context = new Context();
-                context.turnOffAuthorisationSystem();
-
-                // Reverted back to using value -> Authority isn't filled in at this point, the consumer that copies this value to the authority is only triggered after this step.
-                if(StringUtils.isNotBlank(metadatum.value)) {
-                    String[] split = StringUtils.split(metadataFieldToCheck, ".");
-
-                    if(split.length>=2) {
-                        String schema = split[0];
-                        String element = split[1];
-                        String qualifier = null;
-
-                        if(split.length == 3){
-                            qualifier = split[2];
-                        }
+    protected boolean doValidationAndBuildDescription(final Context context, final Item item,
+                                                      final RuleEvaluation evaluation) {
+        if (metadataFieldToCheck == null) {
+            evaluation.addViolationDescription("Cannot validate a blank field");
+            return false;
+        }
 
-                        ItemIterator itemIterator = Item.findByAuthorityValue(context, schema, element, qualifier, metadatum.value);
+        List<Metadatum> fieldValueList;
+        try {
+            fieldValueList = getMetadata(context, item, metadataFieldToCheck, evaluation);
+        } catch (IllegalArgumentException ex) {
+            evaluation.addViolationDescription("The metadata field %s is invalid because it has too few tokens", metadataFieldToCheck);
+            return false;
+        }
 
-                        if (itemIterator.hasNext()) {
-                            valid = false;
-                            addViolationDescription("De waarde voor %s (%s) is reeds in gebruik door item %s", fieldDescription, metadataFieldToCheck,
-                                    itemIterator.next().getHandle());
-                        }
-                    }
+        // Reverted back to using value -> Authority isn't filled in at this point, the consumer that copies this value to the authority is only triggered after this step.
+        Set<String> values = new LinkedHashSet<String>();
+        if (fieldValueList != null) {
+            for (Metadatum metadatum : fieldValueList) {
+                if (StringUtils.isNotBlank(metadatum.value)) {
+                    values.add(metadatum.value);
                 }
-            } catch (Exception e) {
-                valid = false;
-                addViolationDescription("niet in staat om de uniekheid van veld %s te bepalen", fieldDescription);
             }
-            finally {
-                if(context!= null && context.isValid()){
-                    context.abort();
+        }
+        if (values.isEmpty()) {
+            return true;
+        }
+
+        boolean valid = true;
+        try {
+            Map<String, Map<String, String>> found = lookup.findItemHandles(context,
+                    Collections.singletonMap(metadataFieldToCheck, values), item.getID());
+            Map<String, String> handles = found.get(metadataFieldToCheck);
+            if (handles != null) {
+                for (String value : values) {
+                    if (handles.containsKey(value)) {
+                        valid = false;
+                        evaluation.addViolationDescription("De waarde voor %s (%s) is reeds in gebruik door item %s", fieldDescription, metadataFieldToCheck,
+                                handles.get(value));
+                    }
                 }
             }
+        } catch (SQLException e) {
+            log.error("Unable to check the uniqueness of " + metadataFieldToCheck + " for item " + item.getID(), e);
+            valid = false;
+            evaluation.addViolationDescription("niet in staat om de uniekheid van veld %s te bepalen", fieldDescription);
         }
 
         return valid;
@@ -9,6 +9,9 @@ import com.atmire.sword.rules.exception.*;
  */
 public interface ComplianceCategoryRulesFactory {
 
+    /**
+     * @return the policy of the current rule definitions. The policy can be shared between callers and threads
+     */
     CompliancePolicy createComplianceRulePolicy() throws ValidationRuleDefinitionException;
 
 }
\ No newline at end of file
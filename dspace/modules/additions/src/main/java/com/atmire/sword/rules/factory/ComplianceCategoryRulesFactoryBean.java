@@ -3,15 +3,20 @@ package com.atmire.sword.rules.factory;
 import com.atmire.sword.rules.*;
 import com.atmire.sword.rules.exception.*;
 import com.atmire.sword.validation.model.*;
+import com.atmire.utils.FileSnapshotLoader;
 import java.io.*;
 import java.util.*;
 import javax.xml.bind.*;
 import org.apache.commons.collections.*;
+import org.apache.commons.io.IOUtils;
 import org.dspace.core.*;
 
 /**
  * Factory that is able to instantiate all required compliance validation categories with their rules based on the
  * Validation Rule definition file (config/item-validation-rules.xml)
+ *
+ * The rules are compiled once per version of the definition file, every caller gets the same policy until the file
+ * changes. The file is checked for changes at most once per configured number of minutes.
  */
 public class ComplianceCategoryRulesFactoryBean implements ComplianceCategoryRulesFactory {
 
@@ -25,18 +30,33 @@ public class ComplianceCategoryRulesFactoryBean implements ComplianceCategoryRul
         this.builderMap = builderMap;
     }
 
-    private CategorySet categorySet;
+    private final FileSnapshotLoader<CompliancePolicy> policyLoader = new FileSnapshotLoader<CompliancePolicy>(0) {
 
-    private long lastCategorySetUpdate;
-
-    private long categorySetDateModified;
+        @Override
+        protected File getFile() {
+            return new File(ConfigurationManager.getProperty("dspace.dir") + File.separator + "config" + File.separator + RULE_DEF_FILE);
+        }
 
-    private int minutesBetweentCategorySetupdate;
+        @Override
+        protected CompliancePolicy load(final File file) throws ValidationRuleDefinitionException {
+            return compile(loadRuleDefinitionSet(file));
+        }
+    };
 
     public CompliancePolicy createComplianceRulePolicy() throws ValidationRuleDefinitionException {
-        CompliancePolicy output = new CompliancePolicy();
+        FileSnapshotLoader.Snapshot<CompliancePolicy> snapshot = policyLoader.getSnapshot();
 
-        CategorySet categorySet = loadRuleDefinitionSet();
+        if (snapshot.getValue() == null) {
+            if (snapshot.getError() instanceof ValidationRuleDefinitionException) {
+                throw (ValidationRuleDefinitionException) snapshot.getError();
+            }
+            throw new ValidationRuleDefinitionException("The validation rule definitions from file " + RULE_DEF_FILE + " could not be compiled.", snapshot.getError());
+        }
+        return snapshot.getValue();
+    }
+
+    private CompliancePolicy compile(final CategorySet categorySet) throws ValidationRuleDefinitionException {
+        CompliancePolicy output = new CompliancePolicy();
 
         if (categorySet != null) {
 
@@ -133,39 +153,22 @@ public class ComplianceCategoryRulesFactoryBean implements ComplianceCategoryRul
         return rule;
     }
 
-    private CategorySet loadRuleDefinitionSet() throws ValidationRuleDefinitionException {
-        // minutes to milliseconds
-        long millisecondsBetweentCategorySetupdate = minutesBetweentCategorySetupdate * 60 * 1000;
-
-        // update if null or if the last update was longer ago then the configured time between updates
-        if(categorySet == null || lastCategorySetUpdate < (System.currentTimeMillis() - millisecondsBetweentCategorySetupdate)) {
-            File file = new File(ConfigurationManager.getProperty("dspace.dir") + File.separator + "config" + File.separator + RULE_DEF_FILE);
-
-            if(file.lastModified() != categorySetDateModified) {
-
-                FileInputStream inputStream = null;
-                try {
-                    inputStream = new FileInputStream(file);
-                    categorySet = marshaller.unmarshal(inputStream);
-                    inputStream.close();
-
-                    lastCategorySetUpdate = System.currentTimeMillis();
-                    categorySetDateModified = file.lastModified();
-
-                } catch (FileNotFoundException e) {
-                    throw new ValidationRuleDefinitionException("The validation rule definition file " + RULE_DEF_FILE + " was not found.", e);
-                } catch (IOException e) {
-                    throw new ValidationRuleDefinitionException("There was a problem reading the validation rule definition file " + RULE_DEF_FILE + ".", e);
-                } catch (JAXBException e) {
-                    throw new ValidationRuleDefinitionException("There was a problem unmarshalling the validation rule definitions from file " + RULE_DEF_FILE + ".", e);
-                }
-            }
+    private CategorySet loadRuleDefinitionSet(final File file) throws ValidationRuleDefinitionException {
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            return marshaller.unmarshal(inputStream);
+
+        } catch (FileNotFoundException e) {
+            throw new ValidationRuleDefinitionException("The validation rule definition file " + RULE_DEF_FILE + " was not found.", e);
+        } catch (JAXBException e) {
+            throw new ValidationRuleDefinitionException("There was a problem unmarshalling the validation rule definitions from file " + RULE_DEF_FILE + ".", e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
         }
-
-        return categorySet;
     }
 
     public void setMinutesBetweentCategorySetupdate(int minutesBetweentCategorySetupdate) {
-        this.minutesBetweentCategorySetupdate = minutesBetweentCategorySetupdate;
+        policyLoader.setCheckIntervalMillis(minutesBetweentCategorySetupdate * 60 * 1000L);
     }
 }
@@ -1,7 +1,9 @@
 package com.atmire.sword.rules.factory;
 
 import com.atmire.sword.rules.*;
+import com.atmire.sword.rules.uniqueness.*;
 import com.atmire.sword.validation.model.*;
+import org.springframework.beans.factory.annotation.*;
 
 /**
  * @author philip at atmire.com
@@ -9,9 +11,14 @@ import com.atmire.sword.validation.model.*;
  * Builder that will instantiate a UniqueValueByAuthorityId rule based on a rule definition.
  */
 public class UniqueValueByAuthorityIdRuleBuilder extends ComplianceRuleBuilder {
+
+    @Autowired(required = false)
+    private UniqueValueLookup uniqueValueLookup = new DatabaseUniqueValueLookup();
+
     @Override
     public ComplianceRule buildRule(RuleDefinition ruleDefinition) {
-        UniqueValueByAuthorityId rule = new UniqueValueByAuthorityId(ruleDefinition.getFieldDescription(), ruleDefinition.getField());
+        UniqueValueByAuthorityId rule = new UniqueValueByAuthorityId(ruleDefinition.getFieldDescription(), ruleDefinition.getField(),
+                uniqueValueLookup);
         applyDefinitionDescriptionAndResolutionHint(rule, ruleDefinition);
         return rule;
     }
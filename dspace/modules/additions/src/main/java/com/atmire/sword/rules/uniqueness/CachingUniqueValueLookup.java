@@ -0,0 +1,152 @@
+package com.atmire.sword.rules.uniqueness;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dspace.core.Context;
+
+/**
+ * Remembers the answers of another {@link UniqueValueLookup}. Only the values that are not known yet are passed on,
+ * in a single call. {@link UniqueValueCacheConsumer} forgets all answers when an item is installed, changed or
+ * deleted in this JVM, changes made elsewhere are picked up when the answers expire.
+ */
+public class CachingUniqueValueLookup implements UniqueValueLookup {
+
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    private UniqueValueLookup delegate = new DatabaseUniqueValueLookup();
+
+    private int maxSize = 10000;
+
+    private long timeToLive = 300 * 1000L;
+
+    private final Map<String, Answer> answers = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Forget all answers of all caches, after item metadata changed.
+     */
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Map<String, String>> findItemHandles(Context context, Map<String, Set<String>> valuesByField,
+                                                            int excludeItemId) throws SQLException {
+        Map<String, Map<String, String>> output = new HashMap<String, Map<String, String>>();
+        Map<String, Set<String>> unknown = new HashMap<String, Set<String>>();
+        long now = System.currentTimeMillis();
+        long currentGeneration = generation.get();
+
+        synchronized (answers) {
+            for (Map.Entry<String, Set<String>> entry : valuesByField.entrySet()) {
+                for (String value : entry.getValue()) {
+                    Answer answer = answers.get(key(entry.getKey(), value, excludeItemId));
+                    if (answer != null && answer.generation == currentGeneration && answer.expires > now) {
+                        hits.incrementAndGet();
+                        if (answer.used) {
+                            put(output, entry.getKey(), value, answer.handle);
+                        }
+                    } else {
+                        misses.incrementAndGet();
+                        add(unknown, entry.getKey(), value);
+                    }
+                }
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            Map<String, Map<String, String>> found = delegate.findItemHandles(context, unknown, excludeItemId);
+            synchronized (answers) {
+                for (Map.Entry<String, Set<String>> entry : unknown.entrySet()) {
+                    Map<String, String> handles = found.get(entry.getKey());
+                    for (String value : entry.getValue()) {
+                        boolean used = handles != null && handles.containsKey(value);
+                        String handle = used ? handles.get(value) : null;
+                        // an invalidation during the lookup makes these answers stale right away
+                        answers.put(key(entry.getKey(), value, excludeItemId),
+                                new Answer(used, handle, currentGeneration, now + timeToLive));
+                        if (used) {
+                            put(output, entry.getKey(), value, handle);
+                        }
+                    }
+                }
+            }
+        }
+
+        return output;
+    }
+
+    private String key(String field, String value, int excludeItemId) {
+        return field + "\u0000" + value + "\u0000" + excludeItemId;
+    }
+
+    private void put(Map<String, Map<String, String>> output, String field, String value, String handle) {
+        Map<String, String> handles = output.get(field);
+        if (handles == null) {
+            handles = new HashMap<String, String>();
+            output.put(field, handles);
+        }
+        handles.put(value, handle);
+    }
+
+    private void add(Map<String, Set<String>> values, String field, String value) {
+        Set<String> fieldValues = values.get(field);
+        if (fieldValues == null) {
+            fieldValues = new HashSet<String>();
+            values.put(field, fieldValues);
+        }
+        fieldValues.add(value);
+    }
+
+    public void setDelegate(UniqueValueLookup delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param timeToLive the number of seconds an answer is used
+     */
+    public void setTimeToLive(int timeToLive) {
+        this.timeToLive = timeToLive * 1000L;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    private static class Answer {
+
+        private final boolean used;
+        private final String handle;
+        private final long generation;
+        private final long expires;
+
+        Answer(boolean used, String handle, long generation, long expires) {
+            this.used = used;
+            this.handle = handle;
+            this.generation = generation;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.atmire.sword.rules.uniqueness;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.dspace.content.MetadataField;
+import org.dspace.content.MetadataSchema;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Looks the values up in the metadatavalue table, all values of all fields in a single query (split when there are
+ * more than {@link #MAX_PARAMETERS} values). Like {@link org.dspace.content.Item#findByAuthorityValue}, only archived
+ * items are taken into account.
+ */
+public class DatabaseUniqueValueLookup implements UniqueValueLookup {
+
+    /**
+     * Number of values in a single query
+     */
+    private static final int MAX_PARAMETERS = 500;
+
+    @Override
+    public Map<String, Map<String, String>> findItemHandles(Context context, Map<String, Set<String>> valuesByField,
+                                                            int excludeItemId) throws SQLException {
+        Map<String, Map<String, String>> output = new HashMap<String, Map<String, String>>();
+
+        Map<Integer, String> fields = new HashMap<Integer, String>();
+        List<Object[]> pairs = new ArrayList<Object[]>();
+        for (Map.Entry<String, Set<String>> entry : valuesByField.entrySet()) {
+            MetadataField field = findField(context, entry.getKey());
+            if (field == null) {
+                // no item can have a value for a field that does not exist
+                continue;
+            }
+            fields.put(field.getFieldID(), entry.getKey());
+            for (String value : entry.getValue()) {
+                pairs.add(new Object[]{field.getFieldID(), value});
+            }
+        }
+
+        for (int start = 0; start < pairs.size(); start += MAX_PARAMETERS) {
+            query(context, pairs.subList(start, Math.min(start + MAX_PARAMETERS, pairs.size())), excludeItemId,
+                    fields, output);
+        }
+        return output;
+    }
+
+    private void query(Context context, List<Object[]> pairs, int excludeItemId, Map<Integer, String> fields,
+                       Map<String, Map<String, String>> output) throws SQLException {
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder query = new StringBuilder("SELECT mv.metadata_field_id, mv.authority, h.handle")
+                .append(" FROM metadatavalue mv")
+                .append(" JOIN item i ON i.item_id = mv.resource_id")
+                .append(" LEFT JOIN handle h ON h.resource_type_id = ? AND h.resource_id = i.item_id")
+                .append(" WHERE mv.resource_type_id = ? AND i.in_archive = '1' AND i.item_id <> ? AND (");
+        parameters.add(Constants.ITEM);
+        parameters.add(Constants.ITEM);
+        parameters.add(excludeItemId);
+        for (int i = 0; i < pairs.size(); i++) {
+            query.append(i == 0 ? "" : " OR ").append("(mv.metadata_field_id = ? AND mv.authority = ?)");
+            parameters.add(pairs.get(i)[0]);
+            parameters.add(pairs.get(i)[1]);
+        }
+        query.append(")");
+
+        TableRowIterator rows = DatabaseManager.query(context, query.toString(), parameters.toArray());
+        try {
+            while (rows.hasNext()) {
+                TableRow row = rows.next();
+                String field = fields.get(row.getIntColumn("metadata_field_id"));
+                Map<String, String> handles = output.get(field);
+                if (handles == null) {
+                    handles = new HashMap<String, String>();
+                    output.put(field, handles);
+                }
+                String value = row.getStringColumn("authority");
+                if (!handles.containsKey(value) || handles.get(value) == null) {
+                    handles.put(value, row.getStringColumn("handle"));
+                }
+            }
+        } finally {
+            rows.close();
+        }
+    }
+
+    private MetadataField findField(Context context, String metadataField) throws SQLException {
+        String[] split = StringUtils.split(metadataField, ".");
+        if (split.length < 2 || split.length > 3) {
+            return null;
+        }
+        MetadataSchema schema = MetadataSchema.find(context, split[0]);
+        if (schema == null) {
+            return null;
+        }
+        return MetadataField.findByElement(context, schema.getSchemaID(), split[1], split.length == 3 ? split[2] : null);
+    }
+}
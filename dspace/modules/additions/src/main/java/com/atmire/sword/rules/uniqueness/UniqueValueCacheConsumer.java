@@ -0,0 +1,34 @@
+package com.atmire.sword.rules.uniqueness;
+
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Clears the answers of {@link CachingUniqueValueLookup} once the changes to items are committed.
+ */
+public class UniqueValueCacheConsumer implements Consumer {
+
+    private boolean itemsChanged;
+
+    public void initialize() throws Exception {
+        itemsChanged = false;
+    }
+
+    public void consume(Context context, Event event) throws Exception {
+        if (event.getSubjectType() == Constants.ITEM) {
+            itemsChanged = true;
+        }
+    }
+
+    public void end(Context context) throws Exception {
+        if (itemsChanged) {
+            CachingUniqueValueLookup.invalidateAll();
+            itemsChanged = false;
+        }
+    }
+
+    public void finish(Context context) throws Exception {
+    }
+}
@@ -0,0 +1,25 @@
+package com.atmire.sword.rules.uniqueness;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+
+import org.dspace.core.Context;
+
+/**
+ * Finds the archived items that already use a value as authority of a metadata field, for many fields and values at
+ * once.
+ */
+public interface UniqueValueLookup {
+
+    /**
+     * @param context       the context of the caller, no new connection is opened
+     * @param valuesByField the values to look up per metadata field (schema.element[.qualifier])
+     * @param excludeItemId the ID of the item being checked, it does not count as another user of its own values.
+     *                      -1 for none
+     * @return per field, the handle of an item using the value for every value that is in use. Values that are not in
+     * use are left out
+     */
+    Map<String, Map<String, String>> findItemHandles(Context context, Map<String, Set<String>> valuesByField,
+                                                     int excludeItemId) throws SQLException;
+}
@@ -6,7 +6,6 @@ import com.atmire.sword.rules.exception.*;
 import com.atmire.sword.rules.factory.*;
 import com.atmire.utils.EmbargoUtils;
 import com.atmire.utils.helper.MetadataFieldString;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.*;
@@ -14,9 +13,7 @@ import org.dspace.content.*;
 import org.dspace.core.*;
 import org.springframework.beans.factory.annotation.*;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 /**
  * Implementation of {@link ComplianceCheckService}
@@ -47,26 +44,21 @@ public class ComplianceCheckServiceBean implements ComplianceCheckService {
         } else {
             ComplianceResult complianceResult = null;
 
-            // temporarily add fake values for empty fields so validation does not fail on these fields
-            List<Metadatum> fakeFields = addFakeValues(context, item);
+            // estimate values for empty fields so validation does not fail on these fields, the item itself is not changed
+            MetadataOverlay overlay = createOverlay(context, item);
 
             try {
-                complianceResult = policy.validatePreconditionRules(context, item);
+                complianceResult = policy.validatePreconditionRules(context, item, overlay);
 
                 if (complianceResult.isApplicable()) {
-                    complianceResult = policy.validate(context, item, complianceResult);
+                    complianceResult = policy.validate(context, item, overlay, complianceResult);
 
-                    complianceResult.addEstimatedValues(fakeFields);
+                    complianceResult.addEstimatedValues(overlay.getEstimatedValues());
 
                 }
 
             } catch(Exception ex) {
-                context.abort();
                 log.warn(ex.getMessage(), ex);
-
-            } finally {
-                // Always remove the temporary values
-                removeFakeValues(context, fakeFields, item);
             }
 
             return complianceResult;
@@ -90,65 +82,32 @@ public class ComplianceCheckServiceBean implements ComplianceCheckService {
         return false;
     }
 
-    private void removeFakeValues(Context context, List<Metadatum> fakeFields, Item item) {
-        if(CollectionUtils.isNotEmpty(fakeFields) && context.isValid()) {
-
-            for (Metadatum fakeField : fakeFields) {
-                item.clearMetadata(fakeField.schema, fakeField.element, fakeField.qualifier, fakeField.language);
-            }
-            try {
-                item.update();
-                context.commit();
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
-
-        }
-    }
-
-    private List<Metadatum> addFakeValues(Context context, Item item) {
-        List<Metadatum> fakeFields = addFakeValues(context, item, fakeIfEmptyDuringValidation);
+    private MetadataOverlay createOverlay(Context context, Item item) {
+        MetadataOverlay overlay = new MetadataOverlay();
+        addEstimatedValues(context, item, overlay, fakeIfEmptyDuringValidation);
 
         if (!item.isArchived()) {
-            fakeFields.addAll(addFakeValues(context, item, fakeIfEmptyDuringUnarchivedValidation));
+            addEstimatedValues(context, item, overlay, fakeIfEmptyDuringUnarchivedValidation);
         }
 
-        return fakeFields;
+        return overlay;
     }
 
-    private List<Metadatum> addFakeValues(Context context, Item item, Map<String, String> fakeFieldMap) {
-        List<Metadatum> fakeFields = new ArrayList<Metadatum>();
-
+    private void addEstimatedValues(Context context, Item item, MetadataOverlay overlay, Map<String, String> fakeFieldMap) {
         if (MapUtils.isNotEmpty(fakeFieldMap)) {
             for (String field : fakeFieldMap.keySet()) {
-                Metadatum[] dcValues = item.getMetadataByMetadataString(field);
+                Metadatum[] dcValues = overlay.getMetadata(item, field);
 
                 if (dcValues.length == 0) {
                     Metadatum metadata = MetadataFieldString.encapsulate(field);
-                    addFakeValue(context, item, metadata, fakeFieldMap.get(field));
-                    fakeFields.add(metadata);
+                    metadata.value = estimateValue(context, item, overlay, fakeFieldMap.get(field));
+                    overlay.addEstimatedValue(metadata);
                 }
             }
         }
-
-        return fakeFields;
-    }
-
-    private void addFakeValue(Context context, Item item, Metadatum field, String value) {
-        String estimatedValue = estimateValue(context, item, value);
-
-        item.addMetadata(field.schema, field.element, field.qualifier, field.language, estimatedValue);
-        field.value = estimatedValue;
-
-        try {
-            item.update();
-            context.commit();
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
     }
 
-    private String estimateValue(Context context, Item item, String value) {
+    private String estimateValue(Context context, Item item, MetadataOverlay overlay, String value) {
         String estimatedValue = null;
         if (now.equals(value)) {
             estimatedValue = DCDate.getCurrent().toString();
@@ -161,7 +120,7 @@ public class ComplianceCheckServiceBean implements ComplianceCheckService {
 
             estimatedValue = new DCDate(lastEmbargo).toString();
         } else {
-            Metadatum[] metadata = item.getMetadataByMetadataString(value);
+            Metadatum[] metadata = overlay.getMetadata(item, value);
 
             if (metadata.length > 0) {
                 estimatedValue = metadata[0].value;
@@ -0,0 +1,162 @@
+package com.atmire.utils;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the parsed contents of a configuration file and reloads them when the file changes. Every load publishes a
+ * new immutable {@link Snapshot}; readers only read the current snapshot and never see a half loaded file.
+ * <p>
+ * The file is checked at most once per check interval, by a single thread. The other threads keep using the current
+ * snapshot in the meantime, so between checks a lookup is a volatile read. When the file cannot be loaded, the last
+ * loaded contents stay in use and the error is kept in the snapshot, the file is loaded again once it changes.
+ *
+ * @param <T> the parsed contents, must not be modified once loaded
+ */
+public abstract class FileSnapshotLoader<T> {
+
+    private static final Logger log = Logger.getLogger(FileSnapshotLoader.class);
+
+    private static final AtomicLong versions = new AtomicLong();
+
+    private final AtomicReference<Snapshot<T>> current = new AtomicReference<Snapshot<T>>();
+
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private volatile long nextCheck;
+
+    private long checkIntervalMillis;
+
+    /**
+     * @param checkIntervalMillis the minimum time between two checks for changes of the file
+     */
+    protected FileSnapshotLoader(final long checkIntervalMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    /**
+     * @return the file to load, checked again on every reload so the location can come from the configuration
+     */
+    protected abstract File getFile();
+
+    /**
+     * Parse the file. Called by one thread at a time, the result is shared by all threads.
+     */
+    protected abstract T load(File file) throws Exception;
+
+    /**
+     * @return the current snapshot, loaded first if the file was not loaded yet
+     */
+    public Snapshot<T> getSnapshot() {
+        Snapshot<T> snapshot = current.get();
+        if (snapshot != null && System.currentTimeMillis() < nextCheck) {
+            return snapshot;
+        }
+
+        if (snapshot == null) {
+            // nothing to fall back on, wait for the first load
+            reloadLock.lock();
+        } else if (!reloadLock.tryLock()) {
+            return snapshot;
+        }
+        try {
+            if (System.currentTimeMillis() >= nextCheck || current.get() == null) {
+                reloadIfModified();
+                nextCheck = System.currentTimeMillis() + checkIntervalMillis;
+            }
+            return current.get();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * @return the current contents, null if the file was never loaded successfully
+     */
+    public T get() {
+        return getSnapshot().getValue();
+    }
+
+    /**
+     * Check the file on the next lookup, regardless of the check interval.
+     */
+    public void invalidate() {
+        nextCheck = 0;
+    }
+
+    private void reloadIfModified() {
+        Snapshot<T> snapshot = current.get();
+        File file = getFile();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (snapshot != null && snapshot.lastModified == lastModified && snapshot.length == length) {
+            return;
+        }
+
+        try {
+            T value = load(file);
+            current.set(new Snapshot<T>(value, null, lastModified, length));
+            log.info("Loaded " + file);
+        } catch (Exception e) {
+            log.error("Unable to load " + file + (snapshot != null && snapshot.value != null
+                    ? ", the previously loaded contents stay in use" : ""), e);
+            current.set(new Snapshot<T>(snapshot == null ? null : snapshot.value, e, lastModified, length));
+        }
+    }
+
+    public void setCheckIntervalMillis(final long checkIntervalMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+        invalidate();
+    }
+
+    /**
+     * The contents of the file as loaded at one point in time.
+     */
+    public static final class Snapshot<T> {
+
+        private final long version = versions.incrementAndGet();
+        private final T value;
+        private final Exception error;
+        private final long lastModified;
+        private final long length;
+
+        private Snapshot(final T value, final Exception error, final long lastModified, final long length) {
+            this.value = value;
+            this.error = error;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        /**
+         * @return a number that differs between all snapshots, so it can be part of a cache key
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the contents, null if the file was never loaded successfully
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return the error of the last attempt to load the file, null if it succeeded
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return the modification time of the file when it was last checked
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.atmire.utils.multithreading;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIdIterator;
+import org.dspace.core.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes a stream of item IDs in three stages connected by bounded queues:
+ * <ol>
+ * <li>a single producer thread reads the item IDs,</li>
+ * <li>worker threads load each item and hand it to the {@link ItemProcessor},</li>
+ * <li>sink threads write the results to the {@link PipelineSink}.</li>
+ * </ol>
+ * Every worker thread owns exactly one Context. Loading and processing share that thread
+ * because an Item can only be used with the Context it was loaded in.
+ * A full queue blocks the stage that feeds it, so a slow sink throttles the workers and
+ * slow workers throttle the producer.
+ * <p/>
+ * Queue depths and the throughput and latency of every stage are logged periodically
+ * and are available through the getters while the pipeline runs.
+ * <p/>
+ * When the item IDs are read in ascending order, the pipeline also keeps track of the highest ID
+ * below which every item has been written, and can store it in a checkpoint file at every report
+ * so an interrupted run can be resumed. Items that failed to load, process or write hold the watermark
+ * below their ID, so a resumed run processes them again. Their IDs are logged when the pipeline finishes
+ * and written next to the checkpoint, one per line, in a file ending in {@link #FAILED_SUFFIX}.
+ */
+public class ItemPipeline<T> {
+
+    private static final Logger log = Logger.getLogger(ItemPipeline.class);
+
+    private static final long POLL_TIMEOUT = 500;
+
+    /**
+     * Appended to the name of the checkpoint file for the file with the IDs of the failed items.
+     */
+    public static final String FAILED_SUFFIX = ".failed";
+
+    private final String name;
+    private final ItemProcessor<T> processor;
+    private final PipelineSink<T> sink;
+
+    private int workerThreads = 4;
+    private int sinkThreads = 1;
+    private int idQueueSize = 1000;
+    private int resultQueueSize = 1000;
+    private int commitInterval = 100;
+    private long reportInterval = 30000;
+
+    private final PipelineStageMetrics idStage = new PipelineStageMetrics("ids");
+    private final PipelineStageMetrics loadStage = new PipelineStageMetrics("load");
+    private final PipelineStageMetrics processStage = new PipelineStageMetrics("process");
+    private final PipelineStageMetrics sinkStage = new PipelineStageMetrics("sink");
+
+    private BlockingQueue<Integer> ids;
+    private BlockingQueue<Result<T>> results;
+    private Iterator<Integer> itemIds;
+
+    private final ConcurrentSkipListSet<Integer> inFlight = new ConcurrentSkipListSet<Integer>();
+    private final ConcurrentSkipListSet<Integer> failed = new ConcurrentSkipListSet<Integer>();
+    private volatile Integer lastRead;
+    private File checkpointFile;
+
+    private volatile boolean producing;
+    private volatile boolean processing;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger activeSinks = new AtomicInteger();
+
+    public ItemPipeline(String name, ItemProcessor<T> processor, PipelineSink<T> sink) {
+        this.name = name;
+        this.processor = processor;
+        this.sink = sink;
+    }
+
+    /**
+     * Run the pipeline over the given item IDs and wait until every result has been written.
+     *
+     * @param itemIds the IDs of the items to process, only read from the producer thread
+     */
+    public void execute(Iterator<Integer> itemIds) throws InterruptedException {
+        this.itemIds = itemIds;
+        ids = new ArrayBlockingQueue<Integer>(idQueueSize);
+        results = new ArrayBlockingQueue<Result<T>>(resultQueueSize);
+        inFlight.clear();
+        failed.clear();
+        lastRead = null;
+        producing = true;
+        processing = true;
+        activeWorkers.set(workerThreads);
+        activeSinks.set(sinkThreads);
+        for (PipelineStageMetrics stage : getStageMetrics()) {
+            stage.start();
+        }
+
+        log.info(name + " pipeline started with " + workerThreads + " workers and " + sinkThreads + " sink threads");
+
+        ExecutorService producerExecutor = Executors.newSingleThreadExecutor(threadFactory("producer"));
+        ExecutorService workerExecutor = Executors.newFixedThreadPool(workerThreads, threadFactory("worker"));
+        ExecutorService sinkExecutor = Executors.newFixedThreadPool(sinkThreads, threadFactory("sink"));
+        try {
+            producerExecutor.execute(new Producer());
+            for (int i = 0; i < workerThreads; i++) {
+                workerExecutor.execute(new Worker());
+            }
+            for (int i = 0; i < sinkThreads; i++) {
+                sinkExecutor.execute(new SinkWriter());
+            }
+            producerExecutor.shutdown();
+            workerExecutor.shutdown();
+            sinkExecutor.shutdown();
+
+            awaitTermination(workerExecutor);
+            processing = false;
+            awaitTermination(sinkExecutor);
+            awaitTermination(producerExecutor);
+        } finally {
+            producerExecutor.shutdownNow();
+            workerExecutor.shutdownNow();
+            sinkExecutor.shutdownNow();
+            processing = false;
+            try {
+                sink.finish();
+            } catch (RuntimeException e) {
+                log.error("Error while finishing the " + name + " pipeline sink", e);
+            }
+        }
+
+        writeCheckpoint();
+        log.info(name + " pipeline finished: " + getReport());
+        if (!failed.isEmpty()) {
+            log.warn(name + " pipeline failed for " + failed.size() + " items: " + StringUtils.join(failed, ", "));
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) throws InterruptedException {
+        while (!executor.awaitTermination(reportInterval, TimeUnit.MILLISECONDS)) {
+            writeCheckpoint();
+            log.info(name + " pipeline progress: " + getReport());
+        }
+    }
+
+    /**
+     * Only meaningful when the item IDs are read in ascending order.
+     *
+     * @return the highest item ID for which it and all lower IDs that were read have been written,
+     * null if nothing has been completed yet
+     */
+    public Integer getCompletedWatermark() {
+        Integer read = lastRead;
+        Integer first = lowest(inFlight);
+        Integer firstFailed = lowest(failed);
+        if (first == null || firstFailed != null && firstFailed < first) {
+            first = firstFailed;
+        }
+        if (first == null) {
+            return read;
+        }
+        return first - 1 < 0 ? null : first - 1;
+    }
+
+    private static Integer lowest(ConcurrentSkipListSet<Integer> ids) {
+        try {
+            return ids.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the IDs of the items that failed to load, process or write, in ascending order
+     */
+    public List<Integer> getFailedIds() {
+        return new ArrayList<Integer>(failed);
+    }
+
+    private void writeCheckpoint() {
+        Integer watermark = getCompletedWatermark();
+        if (checkpointFile == null) {
+            return;
+        }
+        if (watermark != null) {
+            writeAtomically(checkpointFile, String.valueOf(watermark));
+        }
+        File failedFile = new File(checkpointFile.getPath() + FAILED_SUFFIX);
+        if (!failed.isEmpty() || failedFile.exists()) {
+            writeAtomically(failedFile, StringUtils.join(failed, "\n"));
+        }
+    }
+
+    private void writeAtomically(File file, String content) {
+        try {
+            File temp = new File(file.getPath() + ".tmp");
+            FileUtils.writeStringToFile(temp, content, "UTF-8");
+            if (!temp.renameTo(file)) {
+                FileUtils.copyFile(temp, file);
+                FileUtils.deleteQuietly(temp);
+            }
+        } catch (IOException e) {
+            log.error("Unable to write " + content.length() + " characters to " + file, e);
+        }
+    }
+
+    /**
+     * @param checkpointFile a file written by a previous run
+     * @return the last completed item ID stored in the file, or null if there is no usable checkpoint
+     */
+    public static Integer readCheckpoint(File checkpointFile) {
+        if (checkpointFile == null || !checkpointFile.isFile()) {
+            return null;
+        }
+        try {
+            String value = StringUtils.trim(FileUtils.readFileToString(checkpointFile, "UTF-8"));
+            return StringUtils.isNumeric(value) && StringUtils.isNotEmpty(value) ? Integer.valueOf(value) : null;
+        } catch (IOException e) {
+            log.error("Unable to read checkpoint file " + checkpointFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Put an element on a queue, blocking while the queue is full.
+     *
+     * @return false if the element could not be queued because none of the consuming threads are left
+     */
+    private <E> boolean put(BlockingQueue<E> queue, E element, AtomicInteger consumers) throws InterruptedException {
+        while (!queue.offer(element, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (consumers.get() <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class Producer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    if (!itemIds.hasNext()) {
+                        break;
+                    }
+                    Integer id = itemIds.next();
+                    idStage.record(System.nanoTime() - start);
+                    if (id == null) {
+                        idStage.fail();
+                        continue;
+                    }
+                    inFlight.add(id);
+                    lastRead = id;
+                    if (!put(ids, id, activeWorkers)) {
+                        log.error(name + " pipeline stopped reading item IDs, no workers are left");
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Error while reading item IDs for the " + name + " pipeline", e);
+            } finally {
+                producing = false;
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            Context context = null;
+            try {
+                context = new Context();
+                context.turnOffAuthorisationSystem();
+                int count = 0;
+                while (true) {
+                    Integer id = ids.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (id == null) {
+                        if (!producing && ids.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    T result = process(context, id);
+                    if (result == null) {
+                        // a failed item was added to the failed IDs first, so the watermark stays below it
+                        inFlight.remove(id);
+                    } else if (!put(results, new Result<T>(id, result), activeSinks)) {
+                        log.error(name + " pipeline worker stopped, no sink threads are left");
+                        break;
+                    }
+
+                    if (++count % commitInterval == 0) {
+                        context.commit();
+                        context.clearCache();
+                    }
+                }
+                context.complete();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error in " + name + " pipeline worker", e);
+            } finally {
+                if (context != null && context.isValid()) {
+                    context.abort();
+                }
+                activeWorkers.decrementAndGet();
+            }
+        }
+
+        private T process(Context context, Integer id) {
+            Item item = null;
+            try {
+                long start = System.nanoTime();
+                item = Item.find(context, id);
+                loadStage.record(System.nanoTime() - start);
+                if (item == null) {
+                    return null;
+                }
+
+                start = System.nanoTime();
+                T result = processor.process(context, item);
+                processStage.record(System.nanoTime() - start);
+                return result;
+            } catch (Exception e) {
+                (item == null ? loadStage : processStage).fail();
+                failed.add(id);
+                log.error(name + " pipeline failed to process item " + id, e);
+                return null;
+            } finally {
+                if (item != null) {
+                    try {
+                        item.decache();
+                    } catch (Exception e) {
+                        log.warn("Unable to decache item " + id, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private class SinkWriter implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Result<T> result = results.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (result == null) {
+                        if (!processing && results.isEmpty()) {
+                            break;
+                        }
+                        sink.idle();
+                        continue;
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        sink.write(result.value);
+                        sinkStage.record(System.nanoTime() - start);
+                    } catch (Exception e) {
+                        sinkStage.fail();
+                        failed.add(result.id);
+                        log.error("Error while writing the result of item " + result.id + " in the " + name + " pipeline", e);
+                    } finally {
+                        inFlight.remove(result.id);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Error in " + name + " pipeline sink thread", e);
+            } finally {
+                activeSinks.decrementAndGet();
+            }
+        }
+    }
+
+    private static class Result<T> {
+
+        private final int id;
+        private final T value;
+
+        Result(int id, T value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private ThreadFactory threadFactory(final String stage) {
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = defaultFactory.newThread(runnable);
+                thread.setName(name + "-" + stage + "-" + counter.incrementAndGet());
+                return thread;
+            }
+        };
+    }
+
+    public List<PipelineStageMetrics> getStageMetrics() {
+        return Arrays.asList(idStage, loadStage, processStage, sinkStage);
+    }
+
+    public int getIdQueueDepth() {
+        return ids == null ? 0 : ids.size();
+    }
+
+    public int getResultQueueDepth() {
+        return results == null ? 0 : results.size();
+    }
+
+    /**
+     * @return a single line describing the progress, queue depths and stage metrics
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(loadStage.getProcessed()).append(" items");
+        if (itemIds instanceof ItemIdIterator) {
+            ItemIdIterator iterator = (ItemIdIterator) itemIds;
+            report.append(" (read ").append(iterator.getPos());
+            if (iterator.getTotal() != null) {
+                report.append("/").append(iterator.getTotal());
+            } else if (iterator.getProgress() != null) {
+                report.append(String.format(", %.1f%%", iterator.getProgress() * 100));
+            }
+            report.append(")");
+        }
+        report.append(String.format(", %.1f items/s", loadStage.getThroughput()));
+        report.append(", queues: ids ").append(getIdQueueDepth()).append("/").append(idQueueSize);
+        report.append(", results ").append(getResultQueueDepth()).append("/").append(resultQueueSize);
+        report.append(", completed up to ID ").append(getCompletedWatermark());
+        for (PipelineStageMetrics stage : getStageMetrics()) {
+            report.append("; ").append(stage);
+        }
+        return report.toString();
+    }
+
+    /**
+     * @param checkpointFile the file the completed watermark is written to at every report, null to disable
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = Math.max(1, workerThreads);
+    }
+
+    public void setSinkThreads(int sinkThreads) {
+        this.sinkThreads = Math.max(1, sinkThreads);
+    }
+
+    public void setIdQueueSize(int idQueueSize) {
+        this.idQueueSize = Math.max(1, idQueueSize);
+    }
+
+    public void setResultQueueSize(int resultQueueSize) {
+        this.resultQueueSize = Math.max(1, resultQueueSize);
+    }
+
+    /**
+     * @param commitInterval the number of items after which a worker commits and clears its context
+     */
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = Math.max(1, commitInterval);
+    }
+
+    /**
+     * @param reportInterval the time in milliseconds between two progress reports in the log
+     */
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = Math.max(1000, reportInterval);
+    }
+}
@@ -0,0 +1,20 @@
+package com.atmire.utils.multithreading;
+
+import org.dspace.content.Item;
+import org.dspace.core.Context;
+
+/**
+ * The work done by an {@link ItemPipeline} worker for a single item.
+ */
+public interface ItemProcessor<T> {
+
+    /**
+     * Process an item. The item was loaded in the given context, which is owned by the calling
+     * worker thread and must not be handed to other threads.
+     *
+     * @param context the context of the worker thread
+     * @param item    the item to process
+     * @return the result passed on to the {@link PipelineSink}, or null if there is nothing to write
+     */
+    T process(Context context, Item item) throws Exception;
+}
@@ -0,0 +1,22 @@
+package com.atmire.utils.multithreading;
+
+/**
+ * The last stage of an {@link ItemPipeline}, receives the results of the {@link ItemProcessor}.
+ * Implementations must be thread safe when the pipeline uses more than one sink thread.
+ */
+public abstract class PipelineSink<T> {
+
+    public abstract void write(T result) throws Exception;
+
+    /**
+     * Called by a sink thread when no result arrived for a while.
+     */
+    protected void idle() {
+    }
+
+    /**
+     * Called once after all results have been written.
+     */
+    protected void finish() {
+    }
+}
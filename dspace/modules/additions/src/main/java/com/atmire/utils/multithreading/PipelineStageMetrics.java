@@ -0,0 +1,68 @@
+package com.atmire.utils.multithreading;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histogram of a single {@link ItemPipeline} stage.
+ */
+public class PipelineStageMetrics {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long started = System.currentTimeMillis();
+
+    public PipelineStageMetrics(String name) {
+        this.name = name;
+    }
+
+    void start() {
+        started = System.currentTimeMillis();
+    }
+
+    /**
+     * Record a successfully processed element.
+     *
+     * @param nanos the time it took to process the element
+     */
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Record an element that could not be processed.
+     */
+    public void fail() {
+        failed.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getProcessed() {
+        return latency.getCount();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the number of elements processed per second since the stage started
+     */
+    public double getThroughput() {
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed <= 0 ? 0 : getProcessed() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d processed, %d failed, %.1f/s, %s",
+                name, getProcessed(), getFailed(), getThroughput(), latency);
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ * <p>
+ * http://www.dspace.org/license/
+ */
+package org.dspace.authorize;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dspace.content.DSpaceObject;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.eperson.EPerson;
+import org.dspace.eperson.Group;
+
+/**
+ * Remembers the authorization decisions and group memberships of a single Context, so rendering a page with many
+ * bitstreams or expanding a REST response does not repeat the same policy and group queries for every object.
+ * <p>
+ * The cache is stored in the object cache of the Context and ends with it. Changes to policies made through
+ * {@link AuthorizeManager} and changes to groups made through {@link org.dspace.eperson.Group#update()} clear it, code
+ * that updates or deletes a {@link ResourcePolicy} itself calls {@link AuthorizeManager#clearAuthorizationCache}. The
+ * decisions and memberships are remembered per eperson, per current user and per set of special groups of the
+ * Context, because the decisions also depend on whether the current user is an administrator and on the groups the
+ * current user is a member of. Switching the current user or adding a special group therefore does not reuse them.
+ */
+public class AuthorizationCache {
+
+    /**
+     * The ID under which the cache is stored in the object cache of the Context.
+     */
+    private static final int CACHE_ID = 0;
+
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+
+    private final Map<String, Boolean> decisions;
+    private final Map<String, Set<Integer>> memberGroupIDs = new HashMap<String, Set<Integer>>();
+    private final Map<Integer, Set<Integer>> subGroupIDs = new HashMap<Integer, Set<Integer>>();
+    private final Map<Integer, Boolean> installedItems = new HashMap<Integer, Boolean>();
+    private final Map<String, List<ResourcePolicy>> policies = new HashMap<String, List<ResourcePolicy>>();
+
+    private int bulkDepth;
+
+    private long hits;
+    private long misses;
+
+    private AuthorizationCache(final int maxDecisions) {
+        decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxDecisions;
+            }
+        };
+    }
+
+    /**
+     * @return the cache of the Context, created on first use. null if the cache is disabled
+     */
+    public static AuthorizationCache get(Context c) {
+        AuthorizationCache cache = (AuthorizationCache) c.fromCache(AuthorizationCache.class, CACHE_ID);
+        if (cache == null) {
+            int maxDecisions = ConfigurationManager.getIntProperty("core.authorization.cache.size", 10000);
+            if (maxDecisions <= 0) {
+                return null;
+            }
+            cache = new AuthorizationCache(maxDecisions);
+            c.cache(cache, CACHE_ID);
+        }
+        return cache;
+    }
+
+    /**
+     * Forget the decisions of the Context, after a policy was added, changed or removed.
+     */
+    public static void clearDecisions(Context c) {
+        AuthorizationCache cache = (AuthorizationCache) c.fromCache(AuthorizationCache.class, CACHE_ID);
+        if (cache != null) {
+            cache.decisions.clear();
+            cache.installedItems.clear();
+            cache.policies.clear();
+        }
+    }
+
+    /**
+     * Forget everything the Context remembers, after a group membership changed.
+     */
+    public static void clear(Context c) {
+        AuthorizationCache cache = (AuthorizationCache) c.fromCache(AuthorizationCache.class, CACHE_ID);
+        if (cache != null) {
+            c.removeCached(cache, CACHE_ID);
+        }
+    }
+
+    /**
+     * @return the cached decision, null if the decision is not known yet
+     */
+    public Boolean getDecision(Context c, EPerson e, DSpaceObject o, int action, boolean useInheritance)
+            throws SQLException {
+        return count(decisions.get(decisionKey(c, e, o, action, useInheritance)));
+    }
+
+    public void putDecision(Context c, EPerson e, DSpaceObject o, int action, boolean useInheritance,
+                            boolean authorized) throws SQLException {
+        decisions.put(decisionKey(c, e, o, action, useInheritance), authorized);
+    }
+
+    private String decisionKey(Context c, EPerson e, DSpaceObject o, int action, boolean useInheritance)
+            throws SQLException {
+        return (e == null ? 0 : e.getID()) + ":" + o.getType() + ":" + o.getID() + ":" + action + ":" + useInheritance
+                + ":" + contextKey(c);
+    }
+
+    /**
+     * @param includesSpecialGroups whether the special groups of the Context are part of the memberships
+     * @return the IDs of all groups the eperson is a direct or indirect member of, null if not known yet.
+     * The set must not be modified
+     */
+    public Set<Integer> getMemberGroupIDs(Context c, EPerson e, boolean includesSpecialGroups) throws SQLException {
+        return count(memberGroupIDs.get(membershipKey(c, e, includesSpecialGroups)));
+    }
+
+    public void putMemberGroupIDs(Context c, EPerson e, boolean includesSpecialGroups, Set<Integer> groupIDs)
+            throws SQLException {
+        memberGroupIDs.put(membershipKey(c, e, includesSpecialGroups), groupIDs);
+    }
+
+    private String membershipKey(Context c, EPerson e, boolean includesSpecialGroups) throws SQLException {
+        return (e == null ? "anonymous" : String.valueOf(e.getID())) + ":" + currentUserKey(c)
+                + (includesSpecialGroups ? "+special" + specialGroupsKey(c) : "");
+    }
+
+    /**
+     * @return the current user and the special groups of the Context
+     */
+    private String contextKey(Context c) throws SQLException {
+        return currentUserKey(c) + ":" + specialGroupsKey(c);
+    }
+
+    /**
+     * @return the ID of the current user of the Context, "anonymous" if nobody is logged in
+     */
+    private String currentUserKey(Context c) {
+        EPerson currentUser = c.getCurrentUser();
+        return currentUser == null ? "anonymous" : String.valueOf(currentUser.getID());
+    }
+
+    /**
+     * @return the sorted IDs of the special groups of the Context
+     */
+    private String specialGroupsKey(Context c) throws SQLException {
+        Group[] specialGroups = c.getSpecialGroups();
+        if (specialGroups.length == 0) {
+            return "[]";
+        }
+        int[] groupIDs = new int[specialGroups.length];
+        for (int i = 0; i < specialGroups.length; i++) {
+            groupIDs[i] = specialGroups[i].getID();
+        }
+        Arrays.sort(groupIDs);
+        return Arrays.toString(groupIDs);
+    }
+
+    /**
+     * @return the IDs of all direct and indirect sub groups of a group, null if not known yet. The set must not be
+     * modified
+     */
+    public Set<Integer> getSubGroupIDs(int groupID) {
+        return count(subGroupIDs.get(groupID));
+    }
+
+    public void putSubGroupIDs(int groupID, Set<Integer> groupIDs) {
+        subGroupIDs.put(groupID, groupIDs);
+    }
+
+    /**
+     * @return whether the item passed submission and workflow, null if not known yet
+     */
+    public Boolean isItemInstalled(int itemID) {
+        return count(installedItems.get(itemID));
+    }
+
+    public void putItemInstalled(int itemID, boolean installed) {
+        installedItems.put(itemID, installed);
+    }
+
+    /**
+     * Remember the policies read until the matching {@link #endBulk()}, see
+     * {@link AuthorizeManager#filterAuthorized(Context, List, int)}.
+     */
+    void beginBulk() {
+        bulkDepth++;
+    }
+
+    void endBulk() {
+        if (--bulkDepth == 0) {
+            policies.clear();
+        }
+    }
+
+    /**
+     * @return the policies of the object for the action, null if they are not known or no bulk authorization is in
+     * progress. The list must not be modified
+     */
+    List<ResourcePolicy> getPolicies(int type, int id, int action) {
+        return bulkDepth > 0 ? count(policies.get(policyKey(type, id, action))) : null;
+    }
+
+    void putPolicies(int type, int id, int action, List<ResourcePolicy> objectPolicies) {
+        if (bulkDepth > 0) {
+            policies.put(policyKey(type, id, action), objectPolicies);
+        }
+    }
+
+    private String policyKey(int type, int id, int action) {
+        return type + ":" + id + ":" + action;
+    }
+
+    private <T> T count(T value) {
+        if (value == null) {
+            misses++;
+            totalMisses.incrementAndGet();
+        } else {
+            hits++;
+            totalHits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of lookups answered by this cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups this cache could not answer
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of lookups answered by the caches of all Contexts since startup
+     */
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    /**
+     * @return the number of lookups the caches of all Contexts could not answer since startup
+     */
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "authorization cache: " + hits + " hits, " + misses + " misses, " + decisions.size() + " decisions, "
+                + memberGroupIDs.size() + " memberships";
+    }
+}
@@ -43,6 +43,11 @@ public class AuthorizeManager {
 
     private static Logger log = Logger.getLogger(AuthorizeManager.class);
 
+    /**
+     * The maximum number of IDs in the IN list of a single query.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     /**
      * Utility method, checks that the current user of the given context can
      * perform all of the specified actions on the given object. An
@@ -259,11 +264,37 @@ public class AuthorizeManager {
             return true;
         }
 
+        AuthorizationCache cache = AuthorizationCache.get(c);
+        if (cache != null) {
+            Boolean decision = cache.getDecision(c, e, o, action, useInheritance);
+            if (decision != null) {
+                return decision;
+            }
+        }
+
+        boolean authorized = decide(c, o, action, e, useInheritance);
+        if (cache != null) {
+            cache.putDecision(c, e, o, action, useInheritance, authorized);
+        }
+        return authorized;
+    }
+
+    /**
+     * The authorization check of {@link #authorize(Context, DSpaceObject, int, EPerson, boolean)} without the
+     * cache.
+     */
+    private static boolean decide(Context c, DSpaceObject o, int action,
+                                  EPerson e, boolean useInheritance) throws SQLException {
         // is eperson set? if not, userid = 0 (anonymous)
         int userid = 0;
         if (e != null) {
             userid = e.getID();
 
+            // a system admin needs no admin object, finding it costs a few queries for a bitstream
+            if (isAdmin(c)) {
+                return true;
+            }
+
             // perform isAdmin check to see
             // if user is an Admin on this object
             DSpaceObject testObject = useInheritance ? o.getAdminObject(action) : null;
@@ -347,6 +378,108 @@ public class AuthorizeManager {
         return false;
     }
 
+    /**
+     * Check an action on many objects at once, e.g. the bitstreams of a page of items. The policies of the objects
+     * for the action and for ADMIN are read with one query per type of object. They and the policies of the parent
+     * objects read during the checks are remembered until all objects are checked, so objects with the same parents
+     * do not read the policies of those parents again.
+     *
+     * @param c
+     *         current context
+     * @param objects
+     *         the objects to check
+     * @param action
+     *         action being attempted, from <code>org.dspace.core.Constants</code>
+     * @return the objects the current user may perform the action on, in the order of the given objects
+     */
+    public static <T extends DSpaceObject> List<T> filterAuthorized(Context c, List<T> objects, int action)
+            throws SQLException {
+        List<T> authorized = new ArrayList<T>(objects.size());
+        AuthorizationCache cache = c.ignoreAuthorization() ? null : AuthorizationCache.get(c);
+        if (cache != null) {
+            cache.beginBulk();
+        }
+        try {
+            if (cache != null) {
+                readPolicies(c, cache, objects, action);
+            }
+            for (T o : objects) {
+                if (authorizeActionBoolean(c, o, action)) {
+                    authorized.add(o);
+                }
+            }
+        } finally {
+            if (cache != null) {
+                cache.endBulk();
+            }
+        }
+        return authorized;
+    }
+
+    private static void readPolicies(Context c, AuthorizationCache cache, List<? extends DSpaceObject> objects,
+                                     int action) throws SQLException {
+        int[] actions = action == Constants.ADMIN ? new int[]{action} : new int[]{action, Constants.ADMIN};
+
+        Map<Integer, Map<Integer, Map<Integer, List<ResourcePolicy>>>> byType =
+                new HashMap<Integer, Map<Integer, Map<Integer, List<ResourcePolicy>>>>();
+        for (DSpaceObject o : objects) {
+            Map<Integer, Map<Integer, List<ResourcePolicy>>> byID = byType.get(o.getType());
+            if (byID == null) {
+                byID = new LinkedHashMap<Integer, Map<Integer, List<ResourcePolicy>>>();
+                byType.put(o.getType(), byID);
+            }
+            if (!byID.containsKey(o.getID())) {
+                Map<Integer, List<ResourcePolicy>> byAction = new HashMap<Integer, List<ResourcePolicy>>();
+                for (int a : actions) {
+                    byAction.put(a, new ArrayList<ResourcePolicy>());
+                }
+                byID.put(o.getID(), byAction);
+            }
+        }
+
+        for (Map.Entry<Integer, Map<Integer, Map<Integer, List<ResourcePolicy>>>> type : byType.entrySet()) {
+            List<Integer> ids = new ArrayList<Integer>(type.getValue().keySet());
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+
+                List<Object> parameters = new ArrayList<Object>();
+                parameters.add(type.getKey());
+                StringBuilder query = new StringBuilder(
+                        "SELECT * FROM resourcepolicy WHERE resource_type_id= ? AND action_id IN (");
+                for (int i = 0; i < actions.length; i++) {
+                    query.append(i == 0 ? "?" : ", ?");
+                    parameters.add(actions[i]);
+                }
+                query.append(") AND resource_id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    query.append(i == 0 ? "?" : ", ?");
+                    parameters.add(chunk.get(i));
+                }
+                query.append(")");
+
+                TableRowIterator tri = DatabaseManager.queryTable(c, "resourcepolicy", query.toString(),
+                        parameters.toArray());
+                try {
+                    while (tri.hasNext()) {
+                        TableRow row = tri.next();
+                        ResourcePolicy cachepolicy = (ResourcePolicy) c.fromCache(
+                                ResourcePolicy.class, row.getIntColumn("policy_id"));
+                        type.getValue().get(row.getIntColumn("resource_id")).get(row.getIntColumn("action_id"))
+                                .add(cachepolicy != null ? cachepolicy : new ResourcePolicy(c, row));
+                    }
+                } finally {
+                    tri.close();
+                }
+            }
+
+            for (Map.Entry<Integer, Map<Integer, List<ResourcePolicy>>> object : type.getValue().entrySet()) {
+                for (Map.Entry<Integer, List<ResourcePolicy>> policies : object.getValue().entrySet()) {
+                    cache.putPolicies(type.getKey(), object.getKey(), policies.getKey(), policies.getValue());
+                }
+            }
+        }
+    }
+
     private static MetadataBasedAuthorizationService getMetadataBasedAuthorizationService() {
         MetadataBasedAuthorizationService metadataBasedAuthorizationService = null;
         List<MetadataBasedAuthorizationService> metadataBasedAuthorizationServiceList =
@@ -361,10 +494,18 @@ public class AuthorizeManager {
     // and workflow process
     protected static boolean isAnyItemInstalled(Context ctx, Bundle[] bundles)
             throws SQLException {
+        AuthorizationCache cache = AuthorizationCache.get(ctx);
         for (Bundle bundle : bundles) {
             for (Item item : bundle.getItems()) {
-                if (WorkspaceItem.findByItem(ctx, item) == null
-                        && WorkflowItem.findByItem(ctx, item) == null) {
+                Boolean installed = cache == null ? null : cache.isItemInstalled(item.getID());
+                if (installed == null) {
+                    installed = WorkspaceItem.findByItem(ctx, item) == null
+                            && WorkflowItem.findByItem(ctx, item) == null;
+                    if (cache != null) {
+                        cache.putItemInstalled(item.getID(), installed);
+                    }
+                }
+                if (installed) {
                     return true;
                 }
             }
@@ -467,6 +608,18 @@ public class AuthorizeManager {
         }
     }
 
+    /**
+     * Forget the authorization decisions and group memberships remembered by the context. Needed after changing
+     * policies or group memberships with SQL or through {@link ResourcePolicy#update()} and
+     * {@link ResourcePolicy#delete()}, the methods of this class and {@link Group#update()} already do this.
+     *
+     * @param c
+     *         current context
+     */
+    public static void clearAuthorizationCache(Context c) {
+        AuthorizationCache.clear(c);
+    }
+
     ///////////////////////////////////////////////
     // policy manipulation methods
     ///////////////////////////////////////////////
@@ -517,6 +670,7 @@ public class AuthorizeManager {
         rp.setRpType(type);
 
         rp.update();
+        AuthorizationCache.clearDecisions(c);
 
         o.updateLastModified();
     }
@@ -570,6 +724,7 @@ public class AuthorizeManager {
         rp.setRpType(type);
 
         rp.update();
+        AuthorizationCache.clearDecisions(c);
 
         o.updateLastModified();
     }
@@ -709,6 +864,13 @@ public class AuthorizeManager {
      */
     public static List<ResourcePolicy> getPoliciesActionFilter(Context c, DSpaceObject o,
                                                                int actionID) throws SQLException {
+        // the policies read by filterAuthorized
+        AuthorizationCache cache = c.ignoreAuthorization() ? null : AuthorizationCache.get(c);
+        List<ResourcePolicy> cached = cache == null ? null : cache.getPolicies(o.getType(), o.getID(), actionID);
+        if (cached != null) {
+            return new ArrayList<ResourcePolicy>(cached);
+        }
+
         TableRowIterator tri = DatabaseManager.queryTable(c, "resourcepolicy",
                 "SELECT * FROM resourcepolicy WHERE resource_type_id= ? " +
                         "AND resource_id= ? AND action_id= ? ",
@@ -736,6 +898,9 @@ public class AuthorizeManager {
             }
         }
 
+        if (cache != null) {
+            cache.putPolicies(o.getType(), o.getID(), actionID, new ArrayList<ResourcePolicy>(policies));
+        }
         return policies;
     }
 
@@ -801,6 +966,7 @@ public class AuthorizeManager {
             // and write out new policy
             drp.update();
         }
+        AuthorizationCache.clearDecisions(c);
 
         dest.updateLastModified();
     }
@@ -823,6 +989,7 @@ public class AuthorizeManager {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                         + "resource_type_id= ? AND resource_id= ? ",
                 o.getType(), o.getID());
+        AuthorizationCache.clearDecisions(c);
     }
 
     /**
@@ -840,6 +1007,7 @@ public class AuthorizeManager {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                         + "resource_type_id= ? AND resource_id= ? AND (rptype <> ? OR rptype IS NULL)",
                 o.getType(), o.getID(), type);
+        AuthorizationCache.clearDecisions(c);
     }
 
 
@@ -860,6 +1028,7 @@ public class AuthorizeManager {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                         + "resource_type_id= ? AND resource_id= ? AND rptype=? ",
                 o.getType(), o.getID(), type);
+        AuthorizationCache.clearDecisions(c);
     }
 
     /**
@@ -887,6 +1056,7 @@ public class AuthorizeManager {
                     "DELETE FROM resourcepolicy WHERE resource_type_id= ? AND " +
                             "resource_id= ? AND action_id= ? ",
                     dso.getType(), dso.getID(), actionID);
+            AuthorizationCache.clearDecisions(context);
         }
     }
 
@@ -905,6 +1075,7 @@ public class AuthorizeManager {
             throws SQLException {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "epersongroup_id= ? ", groupID);
+        AuthorizationCache.clearDecisions(c);
     }
 
     /**
@@ -927,6 +1098,7 @@ public class AuthorizeManager {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                         + "resource_type_id= ? AND resource_id= ? AND epersongroup_id= ? ",
                 o.getType(), o.getID(), g.getID());
+        AuthorizationCache.clearDecisions(c);
     }
 
     /**
@@ -948,6 +1120,7 @@ public class AuthorizeManager {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                         + "resource_type_id= ? AND resource_id= ? AND eperson_id= ? ",
                 o.getType(), o.getID(), e.getID());
+        AuthorizationCache.clearDecisions(c);
     }
 
     /**
@@ -1186,6 +1359,8 @@ public class AuthorizeManager {
         }
         policy.setRpName(name);
         policy.setRpDescription(reason);
+        // the caller updates the policy
+        AuthorizationCache.clearDecisions(context);
         return policy;
     }
 
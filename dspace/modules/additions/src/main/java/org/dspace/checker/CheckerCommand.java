@@ -7,18 +7,26 @@
  */
 package org.dspace.checker;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
+import com.atmire.clamav.ScanMetrics;
 import org.apache.log4j.Logger;
 import org.dspace.content.Bitstream;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Context;
 import org.dspace.core.Utils;
+import org.dspace.storage.bitstore.LocalAssetstoreFiles;
 
 /**
  * <p>
@@ -27,6 +35,14 @@ import org.dspace.core.Utils;
  * against the last calculated checksum for that bitstream.
  * </p>
  *
+ * <p>
+ * The bitstreams are checked by checker.threads threads, each with its own
+ * Context. Files in a local assetstore are read through a FileChannel into a
+ * direct buffer of checker.read-buffer-size bytes, the read rate of all threads
+ * together is limited to checker.max-read-rate MB/s. The results are written
+ * in batches of checker.batch-size.
+ * </p>
+ *
  * @author Jim Downing
  * @author Grace Carpenter
  * @author Nathan Sarr
@@ -43,8 +59,20 @@ public final class CheckerCommand
     /** Default digest algorithm (MD5). */
     private static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    /** 4 Meg byte array for reading file. */
-    private int BYTE_ARRAY_SIZE = 4 * 1024;
+    /** Size of the buffer used for reading a file, 1 MB by default. */
+    private int bufferSize;
+
+    /** Number of threads checking bitstreams. */
+    private int threads;
+
+    /** Number of results written to the database at once. */
+    private int batchSize;
+
+    /** Limits the read rate of all threads together. */
+    private ReadRateLimiter rateLimiter;
+
+    /** Bitstreams checked per second and MB read per second. */
+    private final ScanMetrics metrics = new ScanMetrics("checksums");
 
     /** BitstreamInfoDAO dependency. */
     private BitstreamInfoDAO bitstreamInfoDAO = null;
@@ -65,6 +93,11 @@ public final class CheckerCommand
      */
     private BitstreamDispatcher dispatcher = null;
 
+    /**
+     * Hands out the bitstreams of the dispatcher to the threads of a run.
+     */
+    private ClaimingDispatcher claims = null;
+
     /**
      * Container/logger with details about each bitstream and checksum results.
      */
@@ -81,6 +114,10 @@ public final class CheckerCommand
         bitstreamInfoDAO = new BitstreamInfoDAO();
         bitstreamDAO = new BitstreamDAO();
         checksumHistoryDAO = new ChecksumHistoryDAO();
+        bufferSize = Math.max(4096, ConfigurationManager.getIntProperty("checker.read-buffer-size", 1024 * 1024));
+        threads = Math.max(1, ConfigurationManager.getIntProperty("checker.threads", 1));
+        batchSize = ConfigurationManager.getIntProperty("checker.batch-size", 100);
+        rateLimiter = new ReadRateLimiter(ConfigurationManager.getLongProperty("checker.max-read-rate", 0) * 1024 * 1024);
     }
 
     /**
@@ -113,20 +150,116 @@ public final class CheckerCommand
         // bitstream table - this always done.
         bitstreamInfoDAO.updateMissingBitstreams();
 
-        int id = dispatcher.next();
+        claims = new ClaimingDispatcher(dispatcher);
+        if (threads == 1)
+        {
+            new Worker(context).run();
+        }
+        else
+        {
+            List<Thread> workers = new ArrayList<Thread>();
+            for (int i = 0; i < threads; i++)
+            {
+                Thread worker = new Thread(new Worker(null), "checker-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers)
+            {
+                try
+                {
+                    worker.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    LOG.warn("Interrupted while waiting for the checker threads");
+                    break;
+                }
+            }
+        }
+
+        LOG.info("Checker finished: " + metrics);
+    }
+
+    /**
+     * The dispatchers are not thread safe, the threads take their bitstreams
+     * one at a time. A bitstream is claimed when it is handed out, because
+     * its result is written later with the rest of the batch.
+     *
+     * @return the next bitstream id or {@link BitstreamDispatcher#SENTINEL}
+     */
+    private int nextBitstreamId()
+    {
+        return claims.next();
+    }
 
-        while (id != BitstreamDispatcher.SENTINEL)
+    /**
+     * Checks bitstreams until the dispatcher has no more. A worker without a
+     * Context of its own creates one.
+     */
+    private final class Worker implements Runnable
+    {
+        private final Context context;
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+
+        private final ChecksumResultsBatch results = new ChecksumResultsBatch(batchSize);
+
+        private Worker(Context context)
         {
-            LOG.debug("Processing bitstream id = " + id);
-            BitstreamInfo info = checkBitstream(context, id);
+            this.context = context;
+        }
 
-            if (reportVerbose
-                    || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+        @Override
+        public void run()
+        {
+            Context workerContext = context;
+            try
             {
-                collector.collect(info);
+                if (workerContext == null)
+                {
+                    workerContext = new Context();
+                }
+
+                int id = nextBitstreamId();
+                while (id != BitstreamDispatcher.SENTINEL)
+                {
+                    LOG.debug("Processing bitstream id = " + id);
+                    BitstreamInfo info;
+                    try
+                    {
+                        info = checkBitstream(workerContext, id, buffer, results);
+                    }
+                    finally
+                    {
+                        claims.release(id);
+                    }
+
+                    if (reportVerbose
+                            || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
+                    {
+                        synchronized (collector)
+                        {
+                            collector.collect(info);
+                        }
+                    }
+
+                    id = nextBitstreamId();
+                }
+            }
+            catch (SQLException e)
+            {
+                LOG.error("Unable to create a context for the checker", e);
+            }
+            finally
+            {
+                results.flush();
+                if (context == null && workerContext != null)
+                {
+                    workerContext.abort();
+                }
             }
-
-            id = dispatcher.next();
         }
     }
 
@@ -135,10 +268,15 @@ public final class CheckerCommand
      *
      * @param id
      *            the bitstream id
+     * @param buffer
+     *            the buffer used to read the bitstream
+     * @param results
+     *            the batch the results are added to
      *
      * @return the information about the bitstream and its checksum data
      */
-    private BitstreamInfo checkBitstream(Context context, final int id)
+    private BitstreamInfo checkBitstream(Context context, final int id, ByteBuffer buffer,
+            ChecksumResultsBatch results)
     {
         // get bitstream info from bitstream table
         BitstreamInfo info = bitstreamInfoDAO.findByBitstreamId(context, id);
@@ -165,17 +303,17 @@ public final class CheckerCommand
         else if (info.getDeleted())
         {
             // bitstream id is marked 'deleted' in bitstream table.
-            processDeletedBitstream(info);
+            processDeletedBitstream(info, results);
         }
         else
         {
-            processBitstream(info);
+            processBitstream(info, buffer, results);
         }
-        try {
-            context.removeCached(Bitstream.find(context, id), id);
-        } catch (SQLException e) {
-            LOG.error(e.getMessage(), e);
-            e.printStackTrace();
+        // findByBitstreamId caches the bitstream, no need to look it up again
+        Object cached = context.fromCache(Bitstream.class, id);
+        if (cached != null)
+        {
+            context.removeCached(cached, id);
         }
         return info;
     }
@@ -188,7 +326,8 @@ public final class CheckerCommand
      *            InputStream to digest.
      * @param algorithm
      *            the algorithm to use when digesting.
-     * @todo Document the algorithm parameter
+     * @param bufferSize
+     *            the number of bytes read at once
      * @return digest
      *
      * @throws java.security.NoSuchAlgorithmException
@@ -197,22 +336,65 @@ public final class CheckerCommand
      * @throws java.io.IOException
      *             If an exception arises whilst reading the stream
      */
-    private String digestStream(InputStream stream, String algorithm)
+    private String digestStream(InputStream stream, String algorithm, int bufferSize)
             throws java.security.NoSuchAlgorithmException, java.io.IOException
     {
-        // create the digest stream
-        DigestInputStream dStream = new DigestInputStream(stream, MessageDigest
-                .getInstance(algorithm));
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
 
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE];
+        byte[] bytes = new byte[bufferSize];
 
         // make sure all the data is read by the digester
-        int bytesRead = -1;
-        do {
-            bytesRead = dStream.read(bytes, 0, BYTE_ARRAY_SIZE);
-        } while (bytesRead != -1);
+        int bytesRead;
+        while ((bytesRead = stream.read(bytes, 0, bufferSize)) != -1)
+        {
+            rateLimiter.acquire(bytesRead);
+            digest.update(bytes, 0, bytesRead);
+        }
+
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Digest a file through its channel, the data is read into the direct
+     * buffer without copying it to the heap.
+     *
+     * @param file
+     *            the file to digest
+     * @param algorithm
+     *            the algorithm to use when digesting.
+     * @param buffer
+     *            the buffer used to read the file
+     * @return digest
+     *
+     * @throws java.security.NoSuchAlgorithmException
+     *             if the requested algorithm is not provided by the system
+     *             security provider.
+     * @throws java.io.IOException
+     *             If an exception arises whilst reading the file
+     */
+    private String digestFile(File file, String algorithm, ByteBuffer buffer)
+            throws java.security.NoSuchAlgorithmException, java.io.IOException
+    {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
 
-        return Utils.toHex(dStream.getMessageDigest().digest());
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try
+        {
+            buffer.clear();
+            while (channel.read(buffer) != -1)
+            {
+                buffer.flip();
+                rateLimiter.acquire(buffer.remaining());
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+
+        return Utils.toHex(digest.digest());
     }
 
     /**
@@ -249,8 +431,10 @@ public final class CheckerCommand
      *
      * @param info
      *            a deleted bitstream.
+     * @param results
+     *            the batch the result is added to
      */
-    private void processDeletedBitstream(BitstreamInfo info)
+    private void processDeletedBitstream(BitstreamInfo info, ChecksumResultsBatch results)
     {
         info.setProcessStartDate(new Date());
         info
@@ -258,8 +442,7 @@ public final class CheckerCommand
         info.setProcessStartDate(new Date());
         info.setProcessEndDate(new Date());
         info.setToBeProcessed(false);
-        bitstreamInfoDAO.update(info);
-        checksumHistoryDAO.insertHistory(info);
+        results.add(info);
     }
 
     /**
@@ -295,10 +478,15 @@ public final class CheckerCommand
      *
      * @param info
      *            BitstreamInfo to handle
+     * @param buffer
+     *            the buffer used to read the bitstream
+     * @param results
+     *            the batch the result is added to
      */
-    private void processBitstream(BitstreamInfo info)
+    private void processBitstream(BitstreamInfo info, ByteBuffer buffer, ChecksumResultsBatch results)
     {
         info.setProcessStartDate(new Date());
+        long start = System.nanoTime();
 
         if (info.getChecksumAlgorithm() == null)
         {
@@ -307,13 +495,31 @@ public final class CheckerCommand
 
         try
         {
-            InputStream bitstream = bitstreamDAO.getBitstream(info
-                    .getBitstreamId());
-
-            info.setBitstreamFound(true);
-
-            String checksum = digestStream(bitstream, info
-                    .getChecksumAlgorithm());
+            String checksum;
+            File file = LocalAssetstoreFiles.getLocalFile(info.getInternalId(), info.getStoreNumber());
+            if (file != null)
+            {
+                info.setBitstreamFound(true);
+                checksum = digestFile(file, info.getChecksumAlgorithm(), buffer);
+            }
+            else
+            {
+                InputStream bitstream = bitstreamDAO.getBitstream(info
+                        .getBitstreamId());
+
+                info.setBitstreamFound(true);
+
+                try
+                {
+                    checksum = digestStream(bitstream, info
+                            .getChecksumAlgorithm(), buffer.capacity());
+                }
+                finally
+                {
+                    bitstream.close();
+                }
+            }
+            metrics.record(System.nanoTime() - start, info.getSize());
 
             info.setCalculatedChecksum(checksum);
 
@@ -351,10 +557,13 @@ public final class CheckerCommand
         finally
         {
             info.setProcessEndDate(new Date());
+            if (info.getCalculatedChecksum() == null)
+            {
+                metrics.fail();
+            }
 
             // record new checksum and comparison result in db
-            bitstreamInfoDAO.update(info);
-            checksumHistoryDAO.insertHistory(info);
+            results.add(info);
         }
     }
 
@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.dspace.storage.rdbms.DatabaseManager;
+
+/**
+ * <p>
+ * Collects checker results and writes them to most_recent_checksum and
+ * checksum_history with JDBC batches, one transaction per batch. The rows are
+ * the same as the ones written by {@link BitstreamInfoDAO#update(BitstreamInfo)}
+ * and {@link ChecksumHistoryDAO#insertHistory(BitstreamInfo)}.
+ * </p>
+ *
+ * <p>
+ * An instance is not thread safe, each checker thread uses its own.
+ * </p>
+ */
+public class ChecksumResultsBatch extends DAOSupport
+{
+    private static final Logger LOG = Logger.getLogger(ChecksumResultsBatch.class);
+
+    private static final String UPDATE_CHECKSUM = "UPDATE most_recent_checksum SET current_checksum = ?, "
+            + "expected_checksum = ?, matched_prev_checksum = ?, to_be_processed = ?, "
+            + "last_process_start_date = ?, last_process_end_date = ?, result = ? WHERE bitstream_id = ?";
+
+    private static final String INSERT_HISTORY = "INSERT INTO checksum_history (bitstream_id, "
+            + "process_start_date, process_end_date, checksum_expected, checksum_calculated, result) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_HISTORY_ORACLE = "INSERT INTO checksum_history (check_id, bitstream_id, "
+            + "process_start_date, process_end_date, checksum_expected, checksum_calculated, result) "
+            + "VALUES (checksum_history_seq.nextval, ?, ?, ?, ?, ?, ?)";
+
+    private final int size;
+
+    private final List<BitstreamInfo> results = new ArrayList<BitstreamInfo>();
+
+    /**
+     * @param size
+     *            the number of results written per batch
+     */
+    public ChecksumResultsBatch(int size)
+    {
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * Add a result, the batch is written when it is full.
+     *
+     * @param info
+     *            the processed bitstream
+     */
+    public void add(BitstreamInfo info)
+    {
+        if (info == null)
+        {
+            throw new IllegalArgumentException("BitstreamInfo parameter may not be null");
+        }
+        results.add(info);
+        if (results.size() >= size)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Write the pending results.
+     */
+    public void flush()
+    {
+        if (results.isEmpty())
+        {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement update = null;
+        PreparedStatement history = null;
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            update = conn.prepareStatement(UPDATE_CHECKSUM);
+            history = conn.prepareStatement(DatabaseManager.isOracle() ? INSERT_HISTORY_ORACLE : INSERT_HISTORY);
+
+            for (BitstreamInfo info : results)
+            {
+                Timestamp start = new Timestamp(info.getProcessStartDate().getTime());
+                Timestamp end = new Timestamp(info.getProcessEndDate().getTime());
+
+                update.setString(1, info.getCalculatedChecksum() == null ? "" : info.getCalculatedChecksum());
+                update.setString(2, info.getStoredChecksum());
+                update.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()));
+                update.setBoolean(4, info.getToBeProcessed());
+                update.setTimestamp(5, start);
+                update.setTimestamp(6, end);
+                update.setString(7, info.getChecksumCheckResult());
+                update.setInt(8, info.getBitstreamId());
+                update.addBatch();
+
+                history.setInt(1, info.getBitstreamId());
+                history.setTimestamp(2, start);
+                history.setTimestamp(3, end);
+                history.setString(4, info.getStoredChecksum());
+                history.setString(5, info.getCalculatedChecksum());
+                history.setString(6, info.getChecksumCheckResult());
+                history.addBatch();
+            }
+
+            update.executeBatch();
+            history.executeBatch();
+            conn.commit();
+            results.clear();
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem writing " + results.size() + " checksum results. " + e.getMessage(), e);
+            rollback(conn);
+            throw new IllegalStateException("Problem writing checksum results. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(history);
+            cleanup(update, conn);
+        }
+    }
+
+    private void rollback(Connection conn)
+    {
+        if (conn == null)
+        {
+            return;
+        }
+        try
+        {
+            conn.rollback();
+        }
+        catch (SQLException e)
+        {
+            LOG.warn("Unable to roll back the checksum results", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.storage.rdbms.DatabaseManager;
+
+/**
+ * <p>
+ * Hands out the bitstreams of another dispatcher to the checker threads, and
+ * claims every bitstream in most_recent_checksum as soon as it is handed out.
+ * </p>
+ *
+ * <p>
+ * The dispatchers pick the bitstream whose last_process_end_date is the
+ * oldest, and the {@link SimpleDispatcher} of a run only picks bitstreams
+ * whose last_process_start_date is before the start of the run. The results
+ * are written by a {@link ChecksumResultsBatch} later on, so without the claim
+ * the dispatcher would hand out the same bitstream until the batch is written.
+ * A claim sets both dates to the current time, the written result overwrites
+ * them.
+ * </p>
+ *
+ * <p>
+ * The bitstreams being checked are also kept in memory. When the dispatcher
+ * returns one of them again, {@link BitstreamDispatcher#SENTINEL} is returned
+ * instead and the thread asking for it stops.
+ * </p>
+ */
+public class ClaimingDispatcher extends DAOSupport implements BitstreamDispatcher
+{
+    private static final Logger LOG = Logger.getLogger(ClaimingDispatcher.class);
+
+    private static final String CLAIM_BITSTREAM = "UPDATE most_recent_checksum "
+            + "SET last_process_start_date = ?, last_process_end_date = ? WHERE bitstream_id = ?";
+
+    private final BitstreamDispatcher delegate;
+
+    private final Set<Integer> checking = new HashSet<Integer>();
+
+    /**
+     * @param delegate
+     *            the dispatcher choosing the bitstreams
+     */
+    public ClaimingDispatcher(BitstreamDispatcher delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the next bitstream to check, claimed, or
+     *         {@link BitstreamDispatcher#SENTINEL}
+     */
+    @Override
+    public synchronized int next()
+    {
+        int id = delegate.next();
+        if (id == SENTINEL)
+        {
+            return SENTINEL;
+        }
+        if (!checking.add(id))
+        {
+            LOG.warn("Bitstream " + id + " was dispatched again while it is being checked, stopping this thread");
+            return SENTINEL;
+        }
+
+        try
+        {
+            claim(id);
+        }
+        catch (SQLException e)
+        {
+            checking.remove(id);
+            LOG.error("Problem claiming bitstream " + id + ". " + e.getMessage(), e);
+            throw new IllegalStateException("Problem claiming bitstream " + id + ". " + e.getMessage(), e);
+        }
+        return id;
+    }
+
+    /**
+     * Called when the check of a bitstream is done, its result may not be
+     * written yet.
+     *
+     * @param id
+     *            a bitstream returned by {@link #next()}
+     */
+    public synchronized void release(int id)
+    {
+        checking.remove(id);
+    }
+
+    /**
+     * Mark a bitstream as processed now, so the dispatchers do not return it
+     * again in this run.
+     *
+     * @param id
+     *            the bitstream id
+     * @throws SQLException
+     *             if the row could not be updated
+     */
+    protected void claim(int id) throws SQLException
+    {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try
+        {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            conn = DatabaseManager.getConnection();
+            stmt = conn.prepareStatement(CLAIM_BITSTREAM);
+            stmt.setTimestamp(1, now);
+            stmt.setTimestamp(2, now);
+            stmt.setInt(3, id);
+            stmt.executeUpdate();
+            conn.commit();
+        }
+        finally
+        {
+            cleanup(stmt, conn);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of bytes read per second by all checker threads together.
+ * A thread that reads ahead of the rate sleeps until its bytes are due, after
+ * an idle period at most one second worth of bytes is read at full speed.
+ */
+public class ReadRateLimiter
+{
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+
+    /** The time at which all bytes acquired so far are due. */
+    private long due = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond
+     *            the maximum read rate, 0 or less for unlimited
+     */
+    public ReadRateLimiter(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Wait until the bytes can be read within the rate.
+     *
+     * @param bytes
+     *            the number of bytes that were just read
+     * @throws InterruptedIOException
+     *             if the thread is interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException
+    {
+        if (bytesPerSecond <= 0 || bytes <= 0)
+        {
+            return;
+        }
+
+        long wait;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            due = Math.max(due, now - NANOS_PER_SECOND) + bytes * NANOS_PER_SECOND / bytesPerSecond;
+            wait = due - now;
+        }
+
+        if (wait > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while limiting the read rate");
+            }
+        }
+    }
+}
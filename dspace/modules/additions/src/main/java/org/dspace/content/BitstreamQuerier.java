@@ -56,4 +56,23 @@ public class BitstreamQuerier {
         }
     }
 
+    /**
+     * Read the last virus scan date of every bitstream with a single unsorted query. The metadata field is resolved
+     * up front, so the registry tables are not joined for every row.
+     *
+     * @return rows with the bitstream_id and the text_value of the scan date, null when the bitstream was never
+     * scanned. The caller closes the iterator.
+     */
+    public TableRowIterator findAllVirusScanDates(Context context) throws SQLException {
+        MetadataSchema schema = MetadataSchema.find(context, "bitstream");
+        MetadataField field = schema == null ? null : MetadataField.findByElement(context, schema.getSchemaID(), "virus", "lastScanDate");
+        if (field == null) {
+            return DatabaseManager.query(context, "SELECT bitstream_id, NULL AS text_value FROM bitstream");
+        }
+        return DatabaseManager.query(context, "SELECT bitstream_id, text_value\n"
+                + "FROM bitstream LEFT JOIN metadatavalue\n"
+                + "ON bitstream_id = resource_id AND resource_type_id = 0 AND metadata_field_id = ?",
+                field.getFieldID());
+    }
+
 }
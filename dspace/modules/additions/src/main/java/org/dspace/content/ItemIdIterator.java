@@ -2,10 +2,18 @@ package org.dspace.content;
 
 import org.dspace.core.Context;
 import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
 import org.dspace.storage.rdbms.TableRowIterator;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Created by Roeland Dillen (roeland at atmire dot com)
@@ -16,9 +24,12 @@ public class ItemIdIterator implements Iterator<Integer> {
 
 
     /*
-    * This class basically wraps a TableRowIterator.
+    * This class either wraps a single TableRowIterator, or reads the IDs in chunks
+    * ordered by item_id so no cursor stays open between two chunks.
     */
 
+    private static final String UNFILTERED_CONDITION = "(in_archive='1' or withdrawn='1')";
+
     /** Our context */
     private Context ourContext;
 
@@ -27,14 +38,81 @@ public class ItemIdIterator implements Iterator<Integer> {
     private Long total;
     private Long pos;
 
+    /** Chunked mode: the current chunk, the bounds of the ID range and the last ID read and returned */
+    private List<Integer> chunk;
+    private int chunkIndex;
+    private int chunkSize;
+    private boolean exhausted;
+    private Integer fromId;
+    private Integer toId;
+    private Date modifiedSince;
+    private Integer lastReadId;
+    private Integer lastId;
+    private Integer maxId;
+    private ChunkFilter chunkFilter;
+
+    /**
+     * Decides which IDs of a chunk are returned by the iterator.
+     */
+    public interface ChunkFilter {
+
+        /**
+         * @param lastModified the IDs of a chunk in ascending order, mapped to the last modified date of the item
+         * @return the IDs to return, in ascending order
+         */
+        List<Integer> filter(LinkedHashMap<Integer, Date> lastModified) throws SQLException, IOException;
+    }
+
+    /**
+     * Only used when reading in chunks.
+     *
+     * @param chunkFilter the filter applied to every chunk read from the database
+     */
+    public void setChunkFilter(ChunkFilter chunkFilter) {
+        this.chunkFilter = chunkFilter;
+    }
+
+    /**
+     * @return the total number of items, or null when reading in chunks
+     */
     public Long getTotal() {
         return total;
     }
 
+    /**
+     * @return the exact number of item IDs returned so far
+     */
     public Long getPos() {
         return pos;
     }
 
+    /**
+     * @return the last item ID returned. When reading in chunks, a new iterator starting at this ID + 1
+     * continues where this one stopped.
+     */
+    public Integer getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Estimate the progress from the position of the last returned ID within the ID range.
+     *
+     * @return a value between 0 and 1, or null when not reading in chunks
+     */
+    public Double getProgress() {
+        if (chunk == null) {
+            return null;
+        }
+        if (exhausted && chunkIndex >= chunk.size()) {
+            return 1.0;
+        }
+        if (lastReadId == null || maxId == null) {
+            return 0.0;
+        }
+        int first = fromId == null ? 0 : fromId;
+        return maxId <= first ? 1.0 : Math.min(1.0, (double) (lastReadId - first) / (maxId - first));
+    }
+
     /**
      * Construct an item iterator. This is not a public method, since this
      * iterator is only created by CM API methods.
@@ -53,8 +131,36 @@ public class ItemIdIterator implements Iterator<Integer> {
         pos=0L;
     }
 
+    /**
+     * Construct an item iterator that reads the IDs in [fromId, toId) in chunks.
+     */
+    ItemIdIterator(Context context, Integer fromId, Integer toId, Date modifiedSince, int chunkSize, Integer maxId)
+    {
+        ourContext = context;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.modifiedSince = modifiedSince;
+        this.chunkSize = chunkSize;
+        this.maxId = maxId;
+        chunk = new ArrayList<Integer>(0);
+        pos=0L;
+    }
+
     @Override
     public boolean hasNext() {
+        if (chunk != null) {
+            if (chunkIndex < chunk.size()) {
+                return true;
+            }
+            try {
+                while (chunkIndex >= chunk.size() && !exhausted) {
+                    nextChunk();
+                }
+            } catch (SQLException | IOException e) {
+                throw new IllegalStateException("Unable to read the next chunk of item IDs after " + lastReadId, e);
+            }
+            return chunkIndex < chunk.size();
+        }
         try {
             return itemRows.hasNext();
         } catch (SQLException e) {
@@ -64,14 +170,74 @@ public class ItemIdIterator implements Iterator<Integer> {
 
     @Override
     public Integer next() {
+        if (chunk != null) {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pos++;
+            lastId = chunk.get(chunkIndex++);
+            return lastId;
+        }
         try {
             pos++;
-            return itemRows.next().getIntColumn("item_id");
+            lastId = itemRows.next().getIntColumn("item_id");
+            return lastId;
         } catch (SQLException e) {
             return null;
         }
     }
 
+    /**
+     * Read the next chunk of IDs. The cursor is closed before returning.
+     */
+    private void nextChunk() throws SQLException, IOException {
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder query = new StringBuilder("SELECT item_id, last_modified FROM item WHERE ").append(UNFILTERED_CONDITION);
+        if (lastReadId != null) {
+            query.append(" AND item_id > ?");
+            parameters.add(lastReadId);
+        } else if (fromId != null) {
+            query.append(" AND item_id >= ?");
+            parameters.add(fromId);
+        }
+        if (toId != null) {
+            query.append(" AND item_id < ?");
+            parameters.add(toId);
+        }
+        if (modifiedSince != null) {
+            query.append(" AND last_modified >= ?");
+            parameters.add(new Timestamp(modifiedSince.getTime()));
+        }
+        query.append(" ORDER BY item_id");
+        parameters.add(chunkSize);
+
+        String sql;
+        if (DatabaseManager.isOracle()) {
+            sql = "SELECT item_id, last_modified FROM (" + query + ") WHERE ROWNUM <= ?";
+        } else {
+            sql = query + " LIMIT ?";
+        }
+
+        LinkedHashMap<Integer, Date> lastModified = new LinkedHashMap<Integer, Date>();
+        TableRowIterator rows = DatabaseManager.query(ourContext, sql, parameters.toArray());
+        try {
+            while (rows.hasNext()) {
+                TableRow row = rows.next();
+                int id = row.getIntColumn("item_id");
+                lastModified.put(id, row.getDateColumn("last_modified"));
+                lastReadId = id;
+            }
+        } finally {
+            rows.close();
+        }
+        exhausted = lastModified.size() < chunkSize;
+
+        chunk = chunkFilter == null || lastModified.isEmpty()
+                ? new ArrayList<Integer>(lastModified.keySet())
+                : chunkFilter.filter(lastModified);
+        chunkIndex = 0;
+    }
+
     @Override
     public void remove() {
 
@@ -110,4 +276,56 @@ public class ItemIdIterator implements Iterator<Integer> {
         Long count= DatabaseManager.querySingle(context,totalQuery).getLongColumn("ct");
         return new ItemIdIterator(context, rows,count);
     }
+
+    /**
+     * Get the IDs of all "final" items in the archive (see {@link #findAllUnfilteredItemIds(Context)})
+     * within [fromId, toId), in ascending order. The IDs are read in chunks of <code>chunkSize</code>
+     * using the last ID of the previous chunk as lower bound, so no cursor is held open between chunks
+     * and the total does not need to be counted.
+     * <p/>
+     * An interrupted iteration can be resumed by passing the last processed ID + 1 as <code>fromId</code>,
+     * and a repository can be split over several processes by giving each of them its own range.
+     *
+     * @param context   DSpace context object
+     * @param fromId    the lowest item ID to return, null for no lower bound
+     * @param toId      the item ID to stop before, null for no upper bound
+     * @param chunkSize the number of IDs to read per query
+     * @return an iterator over the IDs of the items in the given range
+     * @throws SQLException
+     */
+    public static ItemIdIterator findUnfilteredItemIds(Context context, Integer fromId, Integer toId, int chunkSize) throws SQLException
+    {
+        return findUnfilteredItemIds(context, fromId, toId, null, chunkSize);
+    }
+
+    /**
+     * Get the IDs of all "final" items in the archive within [fromId, toId) that were modified since the
+     * given date, in ascending order and in chunks (see {@link #findUnfilteredItemIds(Context, Integer, Integer, int)}).
+     * Withdrawn items are included since withdrawing an item updates its last modified date.
+     *
+     * @param context       DSpace context object
+     * @param fromId        the lowest item ID to return, null for no lower bound
+     * @param toId          the item ID to stop before, null for no upper bound
+     * @param modifiedSince only return items with a last modified date on or after this date, null for all items
+     * @param chunkSize     the number of IDs to read per query
+     * @return an iterator over the IDs of the matching items
+     * @throws SQLException
+     */
+    public static ItemIdIterator findUnfilteredItemIds(Context context, Integer fromId, Integer toId, Date modifiedSince, int chunkSize) throws SQLException
+    {
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder maxQuery = new StringBuilder("SELECT max(item_id) as max_id FROM item WHERE ").append(UNFILTERED_CONDITION);
+        if (fromId != null) {
+            maxQuery.append(" AND item_id >= ?");
+            parameters.add(fromId);
+        }
+        if (toId != null) {
+            maxQuery.append(" AND item_id < ?");
+            parameters.add(toId);
+        }
+        TableRow row = DatabaseManager.querySingle(context, maxQuery.toString(), parameters.toArray());
+        Integer maxId = row == null || row.isColumnNull("max_id") ? null : row.getIntColumn("max_id");
+
+        return new ItemIdIterator(context, fromId, toId, modifiedSince, Math.max(1, chunkSize), maxId);
+    }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ package org.dspace.ctask.general;
 // above package assignment temporary pending better aysnch release process
 // package org.dspace.ctask.integrity;
 
+import com.atmire.clamav.ClamdConnectionPool;
 import com.atmire.utils.ItemUtils;
 import com.atmire.utils.MetadataUtils;
 import org.apache.commons.collections.CollectionUtils;
@@ -28,15 +29,18 @@ import org.dspace.curate.Curator;
 import org.dspace.curate.Suspendable;
 
 import javax.mail.MessagingException;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * ClamScan.java
@@ -51,12 +55,8 @@ import java.util.*;
 
 @Suspendable(invoked = Curator.Invoked.INTERACTIVE)
 public class ClamScan extends AbstractCurationTask {
-    private static final int DEFAULT_CHUNK_SIZE = 4096;//2048
-    private static final byte[] INSTREAM = "zINSTREAM\0".getBytes();
-    private static final byte[] PING = "zPING\0".getBytes();
-    private static final byte[] STATS = "nSTATS\n".getBytes();//prefix with z
-    private static final byte[] IDSESSION = "zIDSESSION\0".getBytes();
-    private static final byte[] END = "zEND\0".getBytes();
+    private static final int DEFAULT_CHUNK_SIZE = 65536;
+    private static final int DEFAULT_CONCURRENCY = 4;
     private static final String PLUGIN_PREFIX = "clamav";
     private static final String INFECTED_MESSAGE = "had virus detected.";
     private static final String CLEAN_MESSAGE = "had no viruses detected.";
@@ -72,8 +72,15 @@ public class ClamScan extends AbstractCurationTask {
     private int status = Curator.CURATE_UNSET;
     private List<String> results = null;
 
-    private Socket socket = null;
-    private DataOutputStream dataOutputStream = null;
+    /** Shared by all scans, the number of concurrent scans per item is limited by scan.concurrency */
+    private static final ExecutorService scanExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "clamscan");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     public ClamScan(Context context, boolean commit) {
         this.context = context;
@@ -100,6 +107,14 @@ public class ClamScan extends AbstractCurationTask {
         return ConfigurationManager.getBooleanProperty(PLUGIN_PREFIX, "scan.failfast");
     }
 
+    public static int getChunkSize() {
+        return ConfigurationManager.getIntProperty(PLUGIN_PREFIX, "scan.chunk-size", DEFAULT_CHUNK_SIZE);
+    }
+
+    public static int getConcurrency() {
+        return ConfigurationManager.getIntProperty(PLUGIN_PREFIX, "scan.concurrency", DEFAULT_CONCURRENCY);
+    }
+
     @Override
     public void init(Curator curator, String taskId) throws IOException {
         super.init(curator, taskId);
@@ -135,10 +150,10 @@ public class ClamScan extends AbstractCurationTask {
         if (CollectionUtils.isNotEmpty(bitstreams)) {
 
             try {
-                openSession();
+                ClamdConnectionPool.getInstance().checkConnection();
             } catch (IOException ioE) {
                 // no point going further - set result and error out
-                closeSession();
+                log.error("Failed to connect to clamd . . .", ioE);
                 setResult(CONNECT_FAIL_MESSAGE);
                 return Curator.CURATE_ERROR;
             }
@@ -150,11 +165,24 @@ public class ClamScan extends AbstractCurationTask {
                 else
                     itemHandle = getItemHandle(item);
 
+                // up to scan.concurrency bitstreams are streamed to clamd at the same time, the results are
+                // processed in the order of the bitstreams
                 boolean breakBitstreamIteration = false;
                 Iterator<Bitstream> iterator = bitstreams.iterator();
-                while (iterator.hasNext() && !breakBitstreamIteration) {
-                    Bitstream next = iterator.next();
-                    breakBitstreamIteration = performBitstream(itemHandle, next);
+                LinkedList<PendingScan> window = new LinkedList<>();
+                try {
+                    while (!breakBitstreamIteration && (iterator.hasNext() || !window.isEmpty())) {
+                        while (window.size() < Math.max(1, getConcurrency()) && iterator.hasNext()) {
+                            window.add(startScan(iterator.next()));
+                        }
+                        PendingScan next = window.removeFirst();
+                        breakBitstreamIteration = processResult(itemHandle, next.bitstream, next.getStatus());
+                    }
+                } finally {
+                    // scans started before the iteration stopped are awaited, so no stream stays open
+                    for (PendingScan pending : window) {
+                        pending.getStatus();
+                    }
                 }
 
                 if (status != Curator.CURATE_ERROR) {
@@ -162,8 +190,6 @@ public class ClamScan extends AbstractCurationTask {
                 }
             } catch (SQLException | AuthorizeException e) {
                 throw new IOException(e.getMessage(), e);
-            } finally {
-                closeSession();
             }
 
         }
@@ -173,21 +199,41 @@ public class ClamScan extends AbstractCurationTask {
 
     public boolean performBitstream(String itemHandle, Bitstream bitstream)
             throws SQLException, AuthorizeException, IOException {
-        boolean breakBitstreamIteration = false;
-        int bstatus = -10;
-        InputStream inputstream = null;
+        return processResult(itemHandle, bitstream, startScan(bitstream).getStatus());
+    }
+
+    /**
+     * Open the bitstream in the calling thread, the Context is not shared, and stream it to clamd
+     * in a scan thread unless scan.concurrency is 1.
+     */
+    protected PendingScan startScan(Bitstream bitstream) throws SQLException, AuthorizeException {
+        InputStream inputstream;
         try {
             inputstream = bitstream.retrieve();
         } catch (IOException ioe) {
-            bstatus = FILE_NOT_FOUND;
+            return new PendingScan(bitstream, FILE_NOT_FOUND);
         }
 
-        if (inputstream != null) {
-            logDebugMessage("Scanning " + bitstream.getName() + " . . . ");
-
-            bstatus = scan(bitstream, inputstream, itemHandle);
-            inputstream.close();
+        logDebugMessage("Scanning " + bitstream.getName() + " . . . ");
+        FutureTask<Integer> task = new FutureTask<>(new ScanTask(bitstream, inputstream));
+        if (getConcurrency() <= 1) {
+            task.run();
+        } else {
+            scanExecutor.execute(task);
+        }
+        return new PendingScan(bitstream, task);
+    }
 
+    protected boolean processResult(String itemHandle, Bitstream bitstream, int bstatus) {
+        boolean breakBitstreamIteration = false;
+        if (bstatus != FILE_NOT_FOUND) {
+            if (bstatus == Curator.CURATE_FAIL) {
+                String itemMsg = "item - " + itemHandle + ": ";
+                String bsMsg = "bitstream - " + bitstream.getName() +
+                        ": SequenceId - " + bitstream.getSequenceID() + ": infected";
+                report(itemMsg + bsMsg);
+                results.add(bsMsg);
+            }
             if (bstatus == Curator.CURATE_ERROR) {
                 // no point going further - set result and error out
                 setResult(SCAN_FAIL_MESSAGE);
@@ -208,6 +254,43 @@ public class ClamScan extends AbstractCurationTask {
         return breakBitstreamIteration;
     }
 
+    /**
+     * A bitstream that is being scanned, or could not be opened.
+     */
+    protected static class PendingScan {
+
+        private final Bitstream bitstream;
+        private final Future<Integer> result;
+        private final int status;
+
+        private PendingScan(Bitstream bitstream, Future<Integer> result) {
+            this.bitstream = bitstream;
+            this.result = result;
+            this.status = Curator.CURATE_UNSET;
+        }
+
+        private PendingScan(Bitstream bitstream, int status) {
+            this.bitstream = bitstream;
+            this.result = null;
+            this.status = status;
+        }
+
+        private int getStatus() {
+            if (result == null) {
+                return status;
+            }
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Curator.CURATE_ERROR;
+            } catch (ExecutionException e) {
+                log.error("Error scanning bitstream " + bitstream.getID(), e.getCause());
+                return Curator.CURATE_ERROR;
+            }
+        }
+    }
+
     private List<PostScanOperation> getPostScanOperations() {
         PostScanOperation[] array = {
                 new UpdateMetadata(),
@@ -306,133 +389,49 @@ public class ClamScan extends AbstractCurationTask {
 
 
     /**
-     * openSession
-     * <p>
-     * This method opens a session.
+     * Streams a bitstream to clamd over a pooled session and closes it. Only uses the
+     * InputStream, so it can run outside the thread that owns the Context.
      */
+    private static class ScanTask implements Callable<Integer> {
 
-    private void openSession() throws IOException {
-        socket = new Socket();
-        try {
-            logDebugMessage("Connecting to " + getHost() + ":" + getPort());
-            socket.connect(new InetSocketAddress(getHost(), getPort()));
-        } catch (IOException e) {
-            log.error("Failed to connect to clamd . . .", e);
-            throw (e);
-        }
-        try {
-            socket.setSoTimeout(getTimeout());
-        } catch (SocketException e) {
-            log.error("Could not set socket timeout . . .  " + getTimeout() + "ms", e);
-            throw (new IOException(e));
-        }
-        try {
-            dataOutputStream = new DataOutputStream(socket.getOutputStream());
-        } catch (IOException e) {
-            log.error("Failed to open OutputStream . . . ", e);
-            throw (e);
-        }
+        private final Bitstream bitstream;
+        private final InputStream inputstream;
 
-        try {
-            dataOutputStream.write(IDSESSION);
-        } catch (IOException e) {
-            log.error("Error initiating session with IDSESSION command . . . ", e);
-            throw (e);
+        private ScanTask(Bitstream bitstream, InputStream inputstream) {
+            this.bitstream = bitstream;
+            this.inputstream = inputstream;
         }
-    }
 
-    /**
-     * closeSession
-     * <p>
-     * Close the IDSESSION in CLAMD
-     */
-    private void closeSession() {
-        if (dataOutputStream != null) {
-            try {
-                dataOutputStream.write(END);
-            } catch (IOException e) {
-                log.error("Exception closing dataOutputStream", e);
-            }
-        }
-        try {
-            logDebugMessage("Closing the socket for ClamAv daemon . . . ");
-            socket.close();
-        } catch (IOException e) {
-            log.error("Exception closing socket", e);
-        }
-    }
-
-    /**
-     * scan
-     * <p>
-     * Issue the INSTREAM command and return the response to
-     * and from the clamav daemon
-     *
-     * @param the bitstream for reporting results
-     * @param the InputStream to read
-     * @param the item handle for reporting results
-     * @return a ScanResult representing the server response
-     * @throws IOException
-     */
-    final static byte[] buffer = new byte[DEFAULT_CHUNK_SIZE];
-    ;
-
-    private int scan(Bitstream bitstream, InputStream inputstream, String itemHandle) {
-        try {
-            dataOutputStream.write(INSTREAM);
-        } catch (IOException e) {
-            log.error("Error writing INSTREAM command . . .");
-            return Curator.CURATE_ERROR;
-        }
-        int read = DEFAULT_CHUNK_SIZE;
-        while (read == DEFAULT_CHUNK_SIZE) {
-            try {
-                read = inputstream.read(buffer);
-            } catch (IOException e) {
-                log.error("Failed attempting to read the InputStream . . . ");
-                return Curator.CURATE_ERROR;
-            }
-            if (read == -1) {
-                break;
-            }
+        @Override
+        public Integer call() {
+            long start = System.currentTimeMillis();
+            String response;
             try {
-                dataOutputStream.writeInt(read);
-                dataOutputStream.write(buffer, 0, read);
+                response = ClamdConnectionPool.getInstance().scan(inputstream, new byte[getChunkSize()]);
             } catch (IOException e) {
-                log.error("Could not write to the socket . . . ");
+                log.error("Error scanning bitstream " + bitstream.getID() + " with clamd", e);
                 return Curator.CURATE_ERROR;
+            } finally {
+                try {
+                    inputstream.close();
+                } catch (IOException e) {
+                    log.debug("Exception closing the bitstream", e);
+                }
             }
-        }
-        try {
-            dataOutputStream.writeInt(0);
-            dataOutputStream.flush();
-        } catch (IOException e) {
-            log.error("Error writing zero-length chunk to socket");
-            return Curator.CURATE_ERROR;
-        }
-        try {
-            read = socket.getInputStream().read(buffer);
-
-        } catch (IOException e) {
-            log.error("Error reading result from socket");
-            return Curator.CURATE_ERROR;
-        }
 
-        if (read > 0) {
-            String response = new String(buffer, 0, read);
-            logDebugMessage("Response: " + response);
-            if (response.indexOf("FOUND") != -1) {
-                String itemMsg = "item - " + itemHandle + ": ";
-                String bsMsg = "bitstream - " + bitstream.getName() +
-                        ": SequenceId - " + bitstream.getSequenceID() + ": infected";
-                report(itemMsg + bsMsg);
-                results.add(bsMsg);
+            if (log.isDebugEnabled()) {
+                log.debug("Response for bitstream " + bitstream.getID() + " after "
+                        + (System.currentTimeMillis() - start) + " ms: " + response);
+            }
+            if (response.contains("FOUND")) {
                 return Curator.CURATE_FAIL;
-            } else {
-                return Curator.CURATE_SUCCESS;
+            } else if (response.endsWith("ERROR")) {
+                // e.g. "INSTREAM size limit exceeded. ERROR"
+                log.error("clamd could not scan bitstream " + bitstream.getID() + ": " + response);
+                return Curator.CURATE_ERROR;
             }
+            return Curator.CURATE_SUCCESS;
         }
-        return Curator.CURATE_ERROR;
     }
 
     private void formatResults(String itemHandle) throws IOException {
@@ -0,0 +1,211 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers solr documents per indexing thread and sends each buffer to solr as a single
+ * update request once it holds <code>batchSize</code> documents or its oldest document
+ * is older than <code>maxAge</code> milliseconds.
+ * <p/>
+ * No commit is sent when a buffer is flushed, the caller commits once {@link #flushAll()}
+ * has been called. Every flush is counted so the batch size can be tuned against the
+ * number of indexing threads.
+ */
+public class BatchedSolrDocumentWriter {
+
+    private static final Logger log = Logger.getLogger(BatchedSolrDocumentWriter.class);
+
+    private final SolrServer solr;
+    private final int batchSize;
+    private final long maxAge;
+
+    private final Queue<Buffer> allBuffers = new ConcurrentLinkedQueue<Buffer>();
+    private final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            Buffer buffer = new Buffer();
+            allBuffers.add(buffer);
+            return buffer;
+        }
+    };
+
+    private final long created = System.currentTimeMillis();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong documentCount = new AtomicLong();
+    private final AtomicLong failedDocumentCount = new AtomicLong();
+    private final AtomicLong flushTime = new AtomicLong();
+
+    public BatchedSolrDocumentWriter(SolrServer solr, int batchSize, long maxAge) {
+        this.solr = solr;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Add a document to the buffer of the current thread, flushing that buffer when it is full
+     * or expired.
+     *
+     * @param doc the document to index
+     */
+    public void add(SolrInputDocument doc) throws IOException, SolrServerException {
+        buffers.get().add(doc);
+    }
+
+    /**
+     * Flush the buffers of all threads whose oldest document exceeded the maximum age.
+     * This allows buffers of threads that are idle or slow to be sent without waiting for them to fill up.
+     */
+    public void flushExpired() {
+        for (Buffer buffer : allBuffers) {
+            try {
+                buffer.flushIfExpired();
+            } catch (Exception e) {
+                log.error("Error while flushing expired solr documents", e);
+            }
+        }
+    }
+
+    /**
+     * Flush the buffers of all threads, regardless of their size or age.
+     */
+    public void flushAll() {
+        for (Buffer buffer : allBuffers) {
+            try {
+                buffer.flush();
+            } catch (Exception e) {
+                log.error("Error while flushing solr documents", e);
+            }
+        }
+    }
+
+    private void send(List<SolrInputDocument> documents) throws IOException, SolrServerException {
+        long start = System.currentTimeMillis();
+        try {
+            solr.add(documents);
+        } catch (IOException | SolrServerException | RuntimeException e) {
+            failedDocumentCount.addAndGet(documents.size());
+            log.error("Failed to send a batch of " + documents.size() + " documents to solr, first document: "
+                    + documents.get(0).getFieldValue("search.uniqueid"));
+            throw e;
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        long flushes = flushCount.incrementAndGet();
+        long total = documentCount.addAndGet(documents.size());
+        flushTime.addAndGet(duration);
+
+        log.info(String.format("Flushed %d documents in %d ms (%.1f docs/s), total: %d documents in %d flushes (%.1f docs/s)",
+                documents.size(), duration, rate(documents.size(), duration),
+                total, flushes, getThroughput()));
+    }
+
+    private static double rate(long documents, long millis) {
+        return millis <= 0 ? documents * 1000.0 : documents * 1000.0 / millis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @return the number of update requests sent to solr
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return the number of documents successfully sent to solr
+     */
+    public long getDocumentCount() {
+        return documentCount.get();
+    }
+
+    /**
+     * @return the number of documents that were part of a failed update request
+     */
+    public long getFailedDocumentCount() {
+        return failedDocumentCount.get();
+    }
+
+    /**
+     * @return the total time (in milliseconds) spent waiting for solr update requests
+     */
+    public long getFlushTime() {
+        return flushTime.get();
+    }
+
+    /**
+     * @return the number of documents sent per second since this writer was created
+     */
+    public double getThroughput() {
+        return rate(documentCount.get(), System.currentTimeMillis() - created);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d documents in %d flushes (batch size %d, %d failed), %d ms waiting for solr, %.1f docs/s",
+                getDocumentCount(), getFlushCount(), batchSize, getFailedDocumentCount(), getFlushTime(), getThroughput());
+    }
+
+    /**
+     * The buffer of a single indexing thread. Access is synchronized since expired buffers are
+     * flushed from another thread.
+     */
+    private class Buffer {
+
+        private List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>(batchSize);
+        private long oldest;
+
+        synchronized void add(SolrInputDocument doc) throws IOException, SolrServerException {
+            if (documents.isEmpty()) {
+                oldest = System.currentTimeMillis();
+            }
+            documents.add(doc);
+            if (documents.size() >= batchSize || isExpired()) {
+                flush();
+            }
+        }
+
+        synchronized void flushIfExpired() throws IOException, SolrServerException {
+            if (isExpired()) {
+                flush();
+            }
+        }
+
+        synchronized void flush() throws IOException, SolrServerException {
+            if (documents.isEmpty()) {
+                return;
+            }
+            // swap the list first so a failing request is not retried on every following add
+            List<SolrInputDocument> toSend = documents;
+            documents = new ArrayList<SolrInputDocument>(batchSize);
+            send(toSend);
+        }
+
+        private boolean isExpired() {
+            return !documents.isEmpty() && maxAge > 0 && System.currentTimeMillis() - oldest >= maxAge;
+        }
+    }
+}
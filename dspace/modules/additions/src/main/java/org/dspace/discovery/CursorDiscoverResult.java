@@ -0,0 +1,49 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+/**
+ * The result of a search that was paged with a cursor, see
+ * {@link SolrServiceImpl#CURSOR_MARK_PROPERTY}.
+ */
+public class CursorDiscoverResult extends DiscoverResult
+{
+    private final String cursorMark;
+    private final String nextCursorMark;
+
+    public CursorDiscoverResult(String cursorMark, String nextCursorMark)
+    {
+        this.cursorMark = cursorMark;
+        this.nextCursorMark = nextCursorMark;
+    }
+
+    /**
+     * @return the cursor of this page
+     */
+    public String getCursorMark()
+    {
+        return cursorMark;
+    }
+
+    /**
+     * @return the cursor of the next page, the same as the cursor of this page
+     *         after the last page
+     */
+    public String getNextCursorMark()
+    {
+        return nextCursorMark;
+    }
+
+    /**
+     * @return whether there may be results after this page
+     */
+    public boolean hasNextPage()
+    {
+        return nextCursorMark != null && !nextCursorMark.equals(cursorMark);
+    }
+}
@@ -7,10 +7,13 @@
  */
 package org.dspace.discovery;
 
-import com.atmire.utils.multithreading.ItemFold;
-import com.atmire.utils.multithreading.ItemIdPayload;
+import com.atmire.utils.multithreading.ItemPipeline;
+import com.atmire.utils.multithreading.ItemProcessor;
+import com.atmire.utils.multithreading.PipelineSink;
+import com.atmire.utils.multithreading.PipelineStageMetrics;
 import org.dspace.content.*;
 import org.dspace.util.MultiFormatDateParser;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -28,6 +31,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -38,6 +42,7 @@ import java.util.Vector;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.collections.Transformer;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateFormatUtils;
@@ -50,6 +55,7 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
@@ -84,7 +90,9 @@ import org.dspace.discovery.configuration.DiscoverySortConfiguration;
 import org.dspace.discovery.configuration.DiscoverySortFieldConfiguration;
 import org.dspace.discovery.configuration.HierarchicalSidebarFacetConfiguration;
 import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.DatabaseUtils;
+import org.dspace.storage.rdbms.TableRowIterator;
 import org.dspace.utils.DSpace;
 import org.springframework.stereotype.Service;
 
@@ -117,6 +125,14 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     protected static final String HANDLE_FIELD = "handle";
     protected static final String RESOURCE_TYPE_FIELD = "search.resourcetype";
     protected static final String RESOURCE_ID_FIELD = "search.resourceid";
+    protected static final String UNIQUE_ID_FIELD = "search.uniqueid";
+
+    /**
+     * The property of a {@link DiscoverQuery} with the cursor to page with instead of the start, "*" for the first
+     * page. The results are sorted on the unique key after the sort field of the query, so every page costs the same
+     * regardless of its position. The result is a {@link CursorDiscoverResult} with the cursor of the next page.
+     */
+    public static final String CURSOR_MARK_PROPERTY = CursorMarkParams.CURSOR_MARK_PARAM;
 
     public static final String FILTER_SEPARATOR = "\n|||\n";
 
@@ -131,6 +147,12 @@ public class SolrServiceImpl implements SearchService, IndexingService {
      */
     private HttpSolrServer solr = null;
 
+    /**
+     * Collects the documents built by the current thread instead of sending them to solr, only set
+     * while a thread is building documents as part of {@link #updateIndex(Context, boolean)}.
+     */
+    private final ThreadLocal<List<SolrInputDocument>> deferredDocuments = new ThreadLocal<List<SolrInputDocument>>();
+
 
     protected HttpSolrServer getSolr()
     {
@@ -379,34 +401,333 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         updateIndex(context, false);
     }
 
-    protected class IndexItemPayload extends ItemIdPayload {
+    /**
+     * Builds the solr documents of a single item during {@link #updateIndex(Context, boolean)}.
+     * The documents are returned instead of written so the pipeline sink can send them to solr.
+     */
+    protected class IndexItemProcessor implements ItemProcessor<List<SolrInputDocument>> {
 
         private boolean force;
 
-        public IndexItemPayload(boolean force) {
+        public IndexItemProcessor(boolean force) {
             this.force = force;
         }
 
-        public IndexItemPayload(Integer id, Context context, boolean force) {
-            super(id, context);
-            this.force = force;
+        @Override
+        public List<SolrInputDocument> process(Context context, Item item) throws SQLException {
+            List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>(1);
+            deferredDocuments.set(documents);
+            try {
+                indexContent(context, item, force);
+            } finally {
+                deferredDocuments.remove();
+            }
+            return documents.isEmpty() ? null : documents;
         }
+    }
 
+    /**
+     * Sends the documents built by {@link IndexItemProcessor} to solr, through the batched writer if batching is enabled.
+     */
+    protected class IndexDocumentSink extends PipelineSink<List<SolrInputDocument>> {
+
+        private BatchedSolrDocumentWriter writer;
 
+        public IndexDocumentSink(BatchedSolrDocumentWriter writer) {
+            this.writer = writer;
+        }
 
         @Override
-        protected void doRun(Item item) {
-            try {
-                indexContent(getContext(),item,force);
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+        public void write(List<SolrInputDocument> documents) throws IOException, SolrServerException {
+            if (writer != null) {
+                for (SolrInputDocument document : documents) {
+                    writer.add(document);
+                }
+            } else if (getSolr() != null) {
+                getSolr().add(documents);
+            }
+        }
+
+        @Override
+        protected void idle() {
+            if (writer != null) {
+                writer.flushExpired();
             }
         }
 
         @Override
-        public ItemIdPayload create(Integer id, Context context) {
-            return new IndexItemPayload(id,context,force);  //TODO: implement method
+        protected void finish() {
+            if (writer != null) {
+                writer.flushAll();
+                log.info("Batched item indexing finished: " + writer);
+            }
+        }
+    }
+
+    /**
+     * Create the writer used to batch item documents during a full reindex.
+     * Batching is enabled by setting discovery.index.batch.size to a value larger than 1.
+     *
+     * @return the batched writer or null if batching is disabled
+     */
+    protected BatchedSolrDocumentWriter createBatchedWriter()
+    {
+        int batchSize = ConfigurationManager.getIntProperty("discovery", "index.batch.size", 0);
+        if (batchSize <= 1 || getSolr() == null)
+        {
+            return null;
+        }
+        long maxAge = ConfigurationManager.getLongProperty("discovery", "index.batch.max-age", 10000);
+        log.info("Batching item documents per sink thread, batch size: " + batchSize + ", max age: " + maxAge + " ms");
+        return new BatchedSolrDocumentWriter(getSolr(), batchSize, maxAge);
+    }
+
+    /**
+     * Create the iterator over the item IDs to index. The IDs are read in chunks of
+     * discovery.index.chunk-size, a chunk size of 0 reads all IDs with a single query.
+     *
+     * @param fromId        the lowest item ID to index, null for no lower bound
+     * @param toId          the item ID to stop before, null for no upper bound
+     * @param modifiedSince only index items modified on or after this date, null for all items
+     */
+    protected ItemIdIterator createItemIdIterator(Context context, Integer fromId, Integer toId, Date modifiedSince) throws SQLException
+    {
+        int chunkSize = ConfigurationManager.getIntProperty("discovery", "index.chunk-size", 1000);
+        if (chunkSize <= 0 && fromId == null && toId == null && modifiedSince == null)
+        {
+            return ItemIdIterator.findAllUnfilteredItemIds(context);
+        }
+        return ItemIdIterator.findUnfilteredItemIds(context, fromId, toId, modifiedSince, chunkSize <= 0 ? 1000 : chunkSize);
+    }
+
+    /**
+     * Only passes on the IDs of items that are not in the index or were modified after they were indexed,
+     * using a single solr query per chunk instead of {@link #requiresIndexing(String, Date)} per item.
+     */
+    protected class StaleItemFilter implements ItemIdIterator.ChunkFilter {
+
+        @Override
+        public List<Integer> filter(LinkedHashMap<Integer, Date> lastModified) throws IOException {
+            Map<Integer, Date> lastIndexed = getLastIndexed(Constants.ITEM, lastModified.keySet());
+            List<Integer> stale = new ArrayList<Integer>();
+            for (Map.Entry<Integer, Date> entry : lastModified.entrySet())
+            {
+                Date indexed = lastIndexed.get(entry.getKey());
+                if (indexed == null || entry.getValue() == null || indexed.before(entry.getValue()))
+                {
+                    stale.add(entry.getKey());
+                }
+            }
+            log.debug(stale.size() + " of " + lastModified.size() + " items require indexing");
+            return stale;
+        }
+    }
+
+    /**
+     * Look up when the given objects were last indexed with a single solr query.
+     *
+     * @param type the type of the objects
+     * @param ids  the IDs of the objects
+     * @return the last indexed date of every object that is in the index
+     */
+    protected Map<Integer, Date> getLastIndexed(int type, Set<Integer> ids) throws IOException
+    {
+        Map<Integer, Date> lastIndexed = new HashMap<Integer, Date>();
+        if (getSolr() == null || ids.isEmpty())
+        {
+            return lastIndexed;
         }
+
+        StringBuilder uniqueIds = new StringBuilder();
+        for (Integer id : ids)
+        {
+            if (uniqueIds.length() > 0)
+            {
+                uniqueIds.append(",");
+            }
+            uniqueIds.append(type).append("-").append(id);
+        }
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery("{!terms f=search.uniqueid cache=false}" + uniqueIds);
+        query.setFields(RESOURCE_ID_FIELD, LAST_INDEXED_FIELD);
+        query.setRows(ids.size());
+
+        try {
+            QueryResponse rsp = getSolr().query(query, SolrRequest.METHOD.POST);
+            for (SolrDocument doc : rsp.getResults())
+            {
+                Object value = doc.getFieldValue(LAST_INDEXED_FIELD);
+                if (value instanceof Date)
+                {
+                    lastIndexed.put(Integer.valueOf(String.valueOf(doc.getFieldValue(RESOURCE_ID_FIELD))), (Date) value);
+                }
+            }
+        } catch (SolrServerException e)
+        {
+            throw new IOException("Unable to retrieve the last indexed dates", e);
+        }
+        return lastIndexed;
+    }
+
+    /**
+     * Index the collections or communities that are missing from the index. Collections and communities have no
+     * last modified date, changes to them are indexed by the event consumer.
+     *
+     * @param type {@link Constants#COLLECTION} or {@link Constants#COMMUNITY}
+     */
+    protected void indexMissingContainers(Context context, int type) throws SQLException, IOException
+    {
+        String table = Constants.typeText[type].toLowerCase();
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        TableRowIterator rows = DatabaseManager.query(context, "SELECT " + table + "_id AS id FROM " + table);
+        try {
+            while (rows.hasNext())
+            {
+                ids.add(rows.next().getIntColumn("id"));
+            }
+        } finally {
+            rows.close();
+        }
+
+        Map<Integer, Date> lastIndexed = getLastIndexed(type, ids);
+        for (Integer id : ids)
+        {
+            if (!lastIndexed.containsKey(id))
+            {
+                DSpaceObject dso = DSpaceObject.find(context, type, id);
+                if (dso != null)
+                {
+                    indexContent(context, dso, true);
+                    context.removeCached(dso, id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the file storing the date of the last successful update of the index, null if delta indexing is disabled
+     */
+    protected File getIndexWatermarkFile()
+    {
+        String path = ConfigurationManager.getProperty("discovery", "index.delta.watermark-file");
+        return StringUtils.isBlank(path) ? null : new File(path);
+    }
+
+    /**
+     * @return the last modified date from which a delta update has to start, null if the whole
+     * repository has to be checked
+     */
+    protected Date getDeltaStartDate()
+    {
+        File file = getIndexWatermarkFile();
+        if (file == null || !file.isFile())
+        {
+            return null;
+        }
+        try {
+            long watermark = Long.parseLong(StringUtils.trim(FileUtils.readFileToString(file, "UTF-8")));
+            // items can be committed after the watermark was taken, check them again
+            long overlap = ConfigurationManager.getIntProperty("discovery", "index.delta.overlap", 3600) * 1000L;
+            return new Date(watermark - overlap);
+        } catch (IOException | NumberFormatException e)
+        {
+            log.warn("Unable to read the index watermark from " + file + ", checking all items", e);
+            return null;
+        }
+    }
+
+    protected void storeIndexWatermark(Date watermark)
+    {
+        File file = getIndexWatermarkFile();
+        if (file == null)
+        {
+            return;
+        }
+        try {
+            FileUtils.writeStringToFile(file, String.valueOf(watermark.getTime()), "UTF-8");
+            log.info("Stored index watermark " + watermark + " in " + file);
+        } catch (IOException e)
+        {
+            log.error("Unable to store the index watermark in " + file, e);
+        }
+    }
+
+    /**
+     * Index the given items with the indexing pipeline.
+     *
+     * @param items      the IDs of the items to index, closed when done
+     * @param force      whether or not to force the reindexing
+     * @param checkpoint the file to store the last completed item ID in, null to disable
+     * @return true if no item failed in the pipeline
+     */
+    protected boolean indexItems(Context context, ItemIdIterator items, boolean force, File checkpoint) throws InterruptedException
+    {
+        ItemPipeline<List<SolrInputDocument>> pipeline = new ItemPipeline<List<SolrInputDocument>>("discovery",
+                new IndexItemProcessor(force), new IndexDocumentSink(createBatchedWriter()));
+        pipeline.setWorkerThreads(ConfigurationManager.getIntProperty("discovery", "index-threads", 4));
+        pipeline.setSinkThreads(ConfigurationManager.getIntProperty("discovery", "index.pipeline.sink-threads", 1));
+        int queueSize = ConfigurationManager.getIntProperty("discovery", "index.pipeline.queue-size", 1000);
+        pipeline.setIdQueueSize(queueSize);
+        pipeline.setResultQueueSize(queueSize);
+        pipeline.setReportInterval(ConfigurationManager.getIntProperty("discovery", "index.pipeline.report-interval", 30) * 1000L);
+        pipeline.setCheckpointFile(checkpoint);
+        try {
+            pipeline.execute(items);
+        } finally {
+            items.close();
+        }
+
+        for (PipelineStageMetrics stage : pipeline.getStageMetrics())
+        {
+            if (stage.getFailed() > 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Index the items with an ID in [fromId, toId), without touching collections and communities.
+     * This allows a full reindex to be split over several processes, each indexing its own range.
+     * <p/>
+     * When a checkpoint file is given, the last completed item ID is stored in it while indexing and
+     * a next run with the same file continues after that ID.
+     *
+     * @param context    the dspace context
+     * @param force      whether or not to force the reindexing
+     * @param fromId     the lowest item ID to index, null for no lower bound
+     * @param toId       the item ID to stop before, null for no upper bound
+     * @param checkpoint the checkpoint file, may be null
+     */
+    public void updateItemIndex(Context context, boolean force, Integer fromId, Integer toId, File checkpoint)
+            throws SQLException, IOException, SearchServiceException
+    {
+        Integer completed = ItemPipeline.readCheckpoint(checkpoint);
+        if (completed != null && (fromId == null || completed >= fromId))
+        {
+            log.info("Resuming from checkpoint " + checkpoint + " after item " + completed);
+            fromId = completed + 1;
+        }
+        if (fromId != null && toId != null && fromId >= toId)
+        {
+            log.info("No items left to index in the range ending at " + toId);
+            return;
+        }
+
+        try {
+            ItemIdIterator items = ItemIdIterator.findUnfilteredItemIds(context, fromId, toId,
+                    Math.max(1, ConfigurationManager.getIntProperty("discovery", "index.chunk-size", 1000)));
+            if (!force)
+            {
+                items.setChunkFilter(new StaleItemFilter());
+            }
+            indexItems(context, items, true, checkpoint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchServiceException("Interrupted while indexing items", e);
+        }
+        commit();
     }
 
     /**
@@ -426,44 +747,57 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     public void updateIndex(Context context, boolean force)
     {
         try {
-            ItemIdIterator items = ItemIdIterator.findAllUnfilteredItemIds(context);
-            ItemFold fold=new ItemFold(ConfigurationManager.getIntProperty("discovery", "index-threads", 4),new IndexItemPayload(force),items);
-            fold.execute(context);
+            Date started = new Date();
+            Date modifiedSince = force ? null : getDeltaStartDate();
+            if (modifiedSince != null)
+            {
+                log.info("Updating the index for items modified since " + modifiedSince);
+            }
 
+            ItemIdIterator items = createItemIdIterator(context, null, null, modifiedSince);
+            // when reading in chunks, check which items are stale per chunk instead of per item
+            boolean filterStale = !force && items.getTotal() == null;
+            if (filterStale)
+            {
+                items.setChunkFilter(new StaleItemFilter());
+            }
+            boolean itemsIndexed = indexItems(context, items, force || filterStale, null);
 
-/*            try {
-                for (items = Item.findAllUnfiltered(context); items.hasNext();)
+            if (modifiedSince != null)
+            {
+                indexMissingContainers(context, Constants.COLLECTION);
+                indexMissingContainers(context, Constants.COMMUNITY);
+            }
+            else
+            {
+                Collection[] collections = Collection.findAll(context);
+                for (Collection collection : collections)
                 {
-                    Item item = items.next();
-                    indexContent(context, item, force);
-                    item.decache();
+                    indexContent(context, collection, force);
+                    context.removeCached(collection, collection.getID());
+
                 }
-            } finally {
-                if (items != null)
+
+                Community[] communities = Community.findAll(context);
+                for (Community community : communities)
                 {
-                    items.close();
+                    indexContent(context, community, force);
+                    context.removeCached(community, community.getID());
                 }
             }
-*/
 
-            Collection[] collections = Collection.findAll(context);
-            for (Collection collection : collections)
+            if(getSolr() != null)
             {
-                indexContent(context, collection, force);
-                context.removeCached(collection, collection.getID());
-
+                getSolr().commit();
             }
 
-            Community[] communities = Community.findAll(context);
-            for (Community community : communities)
+            if (itemsIndexed)
             {
-                indexContent(context, community, force);
-                context.removeCached(community, community.getID());
+                storeIndexWatermark(started);
             }
-
-            if(getSolr() != null)
+            else
             {
-                getSolr().commit();
+                log.warn("Some items failed to index, the index watermark is not updated");
             }
 
         } catch (Exception e)
@@ -498,37 +832,7 @@ public class SolrServiceImpl implements SearchService, IndexingService {
             {
                 getSolr().deleteByQuery(RESOURCE_TYPE_FIELD + ":[2 TO 4]");
             } else {
-                SolrQuery query = new SolrQuery();
-                // Query for all indexed Items, Collections and Communities,
-                // returning just their handle
-                query.setFields(HANDLE_FIELD);
-                query.setQuery(RESOURCE_TYPE_FIELD + ":[2 TO 4]");
-                QueryResponse rsp = getSolr().query(query);
-                SolrDocumentList docs = rsp.getResults();
-
-                Iterator iter = docs.iterator();
-                while (iter.hasNext())
-                {
-
-                    SolrDocument doc = (SolrDocument) iter.next();
-
-                    String handle = (String) doc.getFieldValue(HANDLE_FIELD);
-
-                    DSpaceObject o = HandleManager.resolveToObject(context, handle);
-
-                    if (o == null)
-                    {
-                        log.info("Deleting: " + handle);
-                    /*
-                          * Use IndexWriter to delete, its easier to manage
-                          * write.lock
-                          */
-                        unIndexContent(context, handle);
-                    } else {
-                        context.removeCached(o, o.getID());
-                        log.debug("Keeping: " + handle);
-                    }
-                }
+                removeStaleDocuments(context);
             }
         } catch(Exception e)
         {
@@ -542,6 +846,115 @@ public class SolrServiceImpl implements SearchService, IndexingService {
 
 
 
+    }
+
+    /**
+     * Remove the items, collections and communities whose handle no longer resolves to an object. The index is read
+     * page by page with a cursor, the handles of a page are checked with a single query and the stale documents of
+     * a page are deleted with a single request. The deletions are committed once at the end.
+     */
+    protected void removeStaleDocuments(Context context) throws SQLException, IOException, SolrServerException
+    {
+        int pageSize = Math.max(1, ConfigurationManager.getIntProperty("discovery", "index.clean.page-size", 1000));
+        long start = System.currentTimeMillis();
+        long scanned = 0;
+        long deleted = 0;
+
+        SolrQuery query = new SolrQuery();
+        // Query for all indexed Items, Collections and Communities,
+        // returning just their handle
+        query.setQuery(RESOURCE_TYPE_FIELD + ":[2 TO 4]");
+        query.setFields(UNIQUE_ID_FIELD, HANDLE_FIELD);
+        query.setRows(pageSize);
+        // a cursor requires a sort on the unique key
+        query.setSort(UNIQUE_ID_FIELD, SolrQuery.ORDER.asc);
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while (true)
+        {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse rsp = getSolr().query(query);
+
+            Map<String, String> handles = new LinkedHashMap<String, String>();
+            for (SolrDocument doc : rsp.getResults())
+            {
+                String handle = (String) doc.getFieldValue(HANDLE_FIELD);
+                if (handle != null)
+                {
+                    handles.put(String.valueOf(doc.getFieldValue(UNIQUE_ID_FIELD)), handle);
+                }
+            }
+            scanned += rsp.getResults().size();
+
+            Set<String> existing = findExistingHandles(context, new HashSet<String>(handles.values()));
+            List<String> stale = new ArrayList<String>();
+            for (Map.Entry<String, String> entry : handles.entrySet())
+            {
+                if (existing.contains(entry.getValue()))
+                {
+                    log.debug("Keeping: " + entry.getValue());
+                } else {
+                    log.info("Deleting: " + entry.getValue());
+                    stale.add(entry.getKey());
+                }
+            }
+            if (!stale.isEmpty())
+            {
+                getSolr().deleteById(stale);
+                deleted += stale.size();
+            }
+
+            String nextCursorMark = rsp.getNextCursorMark();
+            if (nextCursorMark == null || cursorMark.equals(nextCursorMark))
+            {
+                break;
+            }
+            cursorMark = nextCursorMark;
+        }
+
+        if (deleted > 0)
+        {
+            getSolr().commit();
+        }
+        log.info("Cleaned the index: scanned " + scanned + " documents, deleted " + deleted + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @param handles the handles to check
+     * @return the handles that resolve to an existing item, collection or community
+     */
+    protected Set<String> findExistingHandles(Context context, Set<String> handles) throws SQLException
+    {
+        Set<String> existing = new HashSet<String>();
+        if (handles.isEmpty())
+        {
+            return existing;
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < handles.size(); i++)
+        {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        TableRowIterator rows = DatabaseManager.query(context,
+                "SELECT h.handle FROM handle h WHERE h.handle IN (" + placeholders + ") AND ("
+                        + "(h.resource_type_id = " + Constants.ITEM
+                        + " AND EXISTS (SELECT 1 FROM item i WHERE i.item_id = h.resource_id))"
+                        + " OR (h.resource_type_id = " + Constants.COLLECTION
+                        + " AND EXISTS (SELECT 1 FROM collection c WHERE c.collection_id = h.resource_id))"
+                        + " OR (h.resource_type_id = " + Constants.COMMUNITY
+                        + " AND EXISTS (SELECT 1 FROM community m WHERE m.community_id = h.resource_id)))",
+                handles.toArray());
+        try {
+            while (rows.hasNext())
+            {
+                existing.add(rows.next().getStringColumn("handle"));
+            }
+        } finally {
+            rows.close();
+        }
+        return existing;
     }
 
     /**
@@ -739,6 +1152,9 @@ public class SolrServiceImpl implements SearchService, IndexingService {
 
     /**
      * Write the document to the index under the appropriate handle.
+     * When the current thread is building documents for a full reindex, documents without full text streams
+     * are collected for the indexing pipeline and documents with full text streams are extracted without an
+     * immediate commit.
      *
      * @param doc the solr document to be written to the server
      * @param streams
@@ -749,6 +1165,7 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         try {
             if(getSolr() != null)
             {
+                List<SolrInputDocument> deferred = deferredDocuments.get();
                 if(CollectionUtils.isNotEmpty(streams))
                 {
                     ContentStreamUpdateRequest req = new ContentStreamUpdateRequest("/update/extract");
@@ -773,9 +1190,16 @@ public class SolrServiceImpl implements SearchService, IndexingService {
                     req.setParam(ExtractingParams.UNKNOWN_FIELD_PREFIX, "attr_");
                     req.setParam(ExtractingParams.MAP_PREFIX + "content", "fulltext");
                     req.setParam(ExtractingParams.EXTRACT_FORMAT, "text");
-                    req.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
+                    if (deferred == null)
+                    {
+                        req.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
+                    }
                     req.process(getSolr());
                 }
+                else if (deferred != null)
+                {
+                    deferred.add(doc);
+                }
                 else
                 {
                     getSolr().add(doc);
@@ -1729,6 +2153,13 @@ public class SolrServiceImpl implements SearchService, IndexingService {
             solrQuery.add(property, values.toArray(new String[values.size()]));
         }
 
+        if(solrQuery.get(CURSOR_MARK_PROPERTY) != null)
+        {
+            // a cursor replaces the start and requires the unique key as the last sort field
+            solrQuery.setStart(null);
+            solrQuery.addSortField(UNIQUE_ID_FIELD, SolrQuery.ORDER.asc);
+        }
+
         List<DiscoverFacetField> facetFields = discoveryQuery.getFacetFields();
         if(0 < facetFields.size())
         {
@@ -1844,7 +2275,15 @@ public class SolrServiceImpl implements SearchService, IndexingService {
     }
 
     protected DiscoverResult retrieveResult(Context context, DiscoverQuery query, QueryResponse solrQueryResponse) throws SQLException {
-        DiscoverResult result = new DiscoverResult();
+        DiscoverResult result;
+        if(solrQueryResponse != null && solrQueryResponse.getNextCursorMark() != null)
+        {
+            List<String> cursorMark = query.getProperties().get(CURSOR_MARK_PROPERTY);
+            result = new CursorDiscoverResult(cursorMark == null || cursorMark.isEmpty() ? null : cursorMark.get(0),
+                    solrQueryResponse.getNextCursorMark());
+        } else {
+            result = new DiscoverResult();
+        }
 
         if(solrQueryResponse != null)
         {
@@ -17,18 +17,25 @@ import org.apache.solr.common.SolrInputDocument;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.authorize.ResourcePolicy;
 import org.dspace.content.DSpaceObject;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
+import org.dspace.eperson.GroupMembershipCache;
 import org.dspace.utils.DSpace;
 
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Restriction plugin that ensures that indexes all the resource policies.
@@ -42,6 +49,21 @@ public class SolrServiceResourceRestrictionPlugin implements SolrServiceIndexPlu
 
     private static final Logger log = Logger.getLogger(SolrServiceResourceRestrictionPlugin.class);
 
+    /**
+     * The resource restriction queries of recent users, shared by all instances of this plugin.
+     */
+    private static final Map<String, CachedQuery> resourceQueries = new LinkedHashMap<String, CachedQuery>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedQuery> eldest) {
+            return size() > getCacheSize();
+        }
+    };
+
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    private static final AtomicLong builds = new AtomicLong();
+    private static final AtomicLong totalBuildNanos = new AtomicLong();
+
     @Override
     public void additionalIndex(Context context, DSpaceObject dso, SolrInputDocument document) {
         try {
@@ -67,65 +89,143 @@ public class SolrServiceResourceRestrictionPlugin implements SolrServiceIndexPlu
     public void additionalSearchParameters(Context context, DiscoverQuery discoveryQuery, SolrQuery solrQuery) {
         try {
             if (!AuthorizeManager.isAdmin(context)) {
-                StringBuilder resourceQuery = new StringBuilder();
-                //Always add the anonymous group id to the query
-                resourceQuery.append("(read:g0)");
-                EPerson currentUser = context.getCurrentUser();
-                if (currentUser != null) {
-                    resourceQuery.append(" OR (read:e").append(currentUser.getID()).append(")");
+                solrQuery.addFilterQuery(getResourceQuery(context));
+            }
+        } catch (SQLException e) {
+            log.error(LogManager.getHeader(context, "Error while adding resource policy information to query", ""), e);
+        }
+    }
+
+    /**
+     * The filter query is remembered per user, special groups, group membership version and metadata based policy
+     * version. The metadata of the user is not part of the key, changes to it are seen once the query expires.
+     */
+    private String getResourceQuery(Context context) throws SQLException {
+        MetadataBasedAuthorizationService metadataBasedAuthorizationService = getMetadataBasedAuthorizationService();
+
+        String key = null;
+        long membershipVersion = GroupMembershipCache.getInstance().getVersion(context);
+        if (membershipVersion >= 0 && getCacheSize() > 0) {
+            EPerson currentUser = context.getCurrentUser();
+            StringBuilder keyBuilder = new StringBuilder();
+            keyBuilder.append(currentUser == null ? "anonymous" : "e" + currentUser.getID());
+            keyBuilder.append(":").append(membershipVersion);
+            keyBuilder.append(":").append(metadataBasedAuthorizationService == null ? 0 : metadataBasedAuthorizationService.getPoliciesVersion());
+            for (Integer specialGroupId : getSpecialGroupIds(context)) {
+                keyBuilder.append(":g").append(specialGroupId);
+            }
+            key = keyBuilder.toString();
+
+            synchronized (resourceQueries) {
+                CachedQuery cached = resourceQueries.get(key);
+                if (cached != null && cached.expires > System.currentTimeMillis()) {
+                    cacheHits.incrementAndGet();
+                    return cached.query;
                 }
+            }
+        }
+        cacheMisses.incrementAndGet();
 
-                //Retrieve all the groups the current user is a member of (including parent groups)!
-                Set<Integer> groupIds = Group.allMemberGroupIDs(context, currentUser);
-
-                List<MetadataBasedAuthorizationService> metadataBasedAuthorizationServiceList =
-                        new DSpace().getServiceManager().getServicesByType(MetadataBasedAuthorizationService.class);
-
-                //If we have metadata based access policies enabled
-                if (metadataBasedAuthorizationServiceList.size() > 0) {
-                    MetadataBasedAuthorizationService metadataBasedAuthorizationService = metadataBasedAuthorizationServiceList.get(0);
-
-                    for (Integer groupId : groupIds) {
-                        //build restrictions for groups with metadata based policies
-                        Group group = Group.find(context, groupId);
-
-                        //If the current group has metadata based restriction policies
-                        List<Policy> policiesFromGroup = retrievePoliciesForGroupAndMembers(context, metadataBasedAuthorizationService, group);
-
-                        StringBuilder criteria = new StringBuilder();
-                        if (CollectionUtils.isNotEmpty(policiesFromGroup)) {
-                            //For each of the policies of the current group or one of his subgroups, make sure one of the policies is fulfilled
-                            for (Policy policy : policiesFromGroup) {
-                                if(StringUtils.isNotBlank(criteria)) {
-                                    criteria.append(" OR ");
-                                }
-                                String solrQueryCriteria = policy.getSolrQueryCriteria(currentUser);
-
-                                criteria.append("(read:g" + group.getID());
-                                if (StringUtils.isNotBlank(solrQueryCriteria)) {
-                                    criteria.append(" AND " + solrQueryCriteria);
-                                }
-                                criteria.append(")");
-                            }
-                        } else {
-                            criteria.append("(read:g").append(groupId).append(")");
-                        }
-
-                        //Add them as extra search criteria
-                        resourceQuery.append(" OR " + criteria.toString());
+        long start = System.nanoTime();
+        String resourceQuery = buildResourceQuery(context, metadataBasedAuthorizationService);
+        long buildTime = System.nanoTime() - start;
+        builds.incrementAndGet();
+        totalBuildNanos.addAndGet(buildTime);
+
+        if (key != null) {
+            synchronized (resourceQueries) {
+                resourceQueries.put(key, new CachedQuery(resourceQuery, System.currentTimeMillis() + getTimeToLive()));
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Built the resource restriction query of " + resourceQuery.length() + " characters in "
+                    + buildTime / 1000000 + " ms, " + cacheHits.get() + " cache hits, " + cacheMisses.get() + " misses");
+        }
+
+        return resourceQuery;
+    }
+
+    private String buildResourceQuery(Context context, MetadataBasedAuthorizationService metadataBasedAuthorizationService) throws SQLException {
+        //Always add the anonymous group id to the query
+        Set<String> readValues = new LinkedHashSet<>();
+        readValues.add("g0");
+        EPerson currentUser = context.getCurrentUser();
+        if (currentUser != null) {
+            readValues.add("e" + currentUser.getID());
+        }
+
+        //Retrieve all the groups the current user is a member of (including parent groups), in a fixed order so the
+        //same memberships always give the same filter query for the solr filter cache
+        Set<Integer> groupIds = new TreeSet<>(Group.allMemberGroupIDs(context, currentUser));
+
+        StringBuilder restrictedCriteria = new StringBuilder();
+        for (Integer groupId : groupIds) {
+            //If we have metadata based access policies enabled
+            List<Policy> policiesFromGroup = Collections.emptyList();
+            if (metadataBasedAuthorizationService != null) {
+                //build restrictions for groups with metadata based policies
+                Group group = Group.find(context, groupId);
+
+                //If the current group has metadata based restriction policies
+                policiesFromGroup = retrievePoliciesForGroupAndMembers(context, metadataBasedAuthorizationService, group);
+            }
+
+            if (CollectionUtils.isNotEmpty(policiesFromGroup)) {
+                //For each of the policies of the current group or one of his subgroups, make sure one of the policies is fulfilled
+                StringBuilder criteria = new StringBuilder();
+                for (Policy policy : policiesFromGroup) {
+                    if(criteria.length() > 0) {
+                        criteria.append(" OR ");
                     }
-                } else {
-                    for (Integer groupId : groupIds) {
-                        resourceQuery.append(" OR (read:g").append(groupId).append(")");
+                    String solrQueryCriteria = policy.getSolrQueryCriteria(context, currentUser);
+
+                    criteria.append("(read:g" + groupId);
+                    if (StringUtils.isNotBlank(solrQueryCriteria)) {
+                        criteria.append(" AND " + solrQueryCriteria);
                     }
+                    criteria.append(")");
                 }
 
-                solrQuery.addFilterQuery(resourceQuery.toString());
+                //Add them as extra search criteria
+                restrictedCriteria.append(" OR ").append(criteria);
+            } else {
+                readValues.add("g" + groupId);
+            }
+        }
 
+        StringBuilder resourceQuery = new StringBuilder();
+        if (readValues.size() >= getTermsThreshold()) {
+            //A long list of groups is sent as a single terms query instead of a boolean query per group
+            String termsQuery = "{!terms f=read}" + StringUtils.join(readValues, ",");
+            if (restrictedCriteria.length() == 0) {
+                return termsQuery;
+            }
+            resourceQuery.append("_query_:\"").append(termsQuery).append("\"");
+        } else {
+            for (String readValue : readValues) {
+                if (resourceQuery.length() > 0) {
+                    resourceQuery.append(" OR ");
+                }
+                resourceQuery.append("(read:").append(readValue).append(")");
             }
-        } catch (SQLException e) {
-            log.error(LogManager.getHeader(context, "Error while adding resource policy information to query", ""), e);
         }
+
+        return resourceQuery.append(restrictedCriteria).toString();
+    }
+
+    private Set<Integer> getSpecialGroupIds(Context context) throws SQLException {
+        Set<Integer> specialGroupIds = new TreeSet<>();
+        for (Group specialGroup : context.getSpecialGroups()) {
+            specialGroupIds.add(specialGroup.getID());
+        }
+        return specialGroupIds;
+    }
+
+    private MetadataBasedAuthorizationService getMetadataBasedAuthorizationService() {
+        List<MetadataBasedAuthorizationService> metadataBasedAuthorizationServiceList =
+                new DSpace().getServiceManager().getServicesByType(MetadataBasedAuthorizationService.class);
+
+        return metadataBasedAuthorizationServiceList.isEmpty() ? null : metadataBasedAuthorizationServiceList.get(0);
     }
 
     private List<Policy> retrievePoliciesForGroupAndMembers(Context context, MetadataBasedAuthorizationService metadataBasedAuthorizationService, Group group) throws SQLException {
@@ -148,4 +248,48 @@ public class SolrServiceResourceRestrictionPlugin implements SolrServiceIndexPlu
         }
     }
 
+    private static int getCacheSize() {
+        return ConfigurationManager.getIntProperty("discovery", "search.restriction.cache.size", 1000);
+    }
+
+    private static long getTimeToLive() {
+        return ConfigurationManager.getIntProperty("discovery", "search.restriction.cache.time-to-live", 300) * 1000L;
+    }
+
+    private static int getTermsThreshold() {
+        return ConfigurationManager.getIntProperty("discovery", "search.restriction.terms-threshold", 20);
+    }
+
+    /**
+     * @return the number of searches that used a remembered resource restriction query
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of searches that had to build the resource restriction query
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the average time it took to build a resource restriction query, in milliseconds
+     */
+    public static double getAverageBuildMillis() {
+        long count = builds.get();
+        return count == 0 ? 0 : totalBuildNanos.get() / 1000000.0 / count;
+    }
+
+    private static class CachedQuery {
+
+        private final String query;
+        private final long expires;
+
+        CachedQuery(String query, long expires) {
+            this.query = query;
+            this.expires = expires;
+        }
+    }
 }
@@ -8,11 +8,13 @@
 package org.dspace.eperson;
 
 import org.apache.log4j.Logger;
+import org.dspace.authorize.AuthorizationCache;
 import org.dspace.authorize.AuthorizeConfiguration;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.Collection;
 import org.dspace.content.*;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
@@ -411,34 +413,53 @@ public class Group extends DSpaceObject
     {
         List<Group> groupList = new ArrayList<Group>();
 
-        StringBuilder groupQuery = new StringBuilder();
-        groupQuery.append("SELECT * FROM group2groupcache WHERE parent_id = ?");
+        AuthorizationCache cache = AuthorizationCache.get(c);
+        Set<Integer> subGroupIDs = cache == null ? null : cache.getSubGroupIDs(g.getID());
+        if (subGroupIDs == null)
+        {
+            subGroupIDs = GroupMembershipCache.getInstance().getSubGroupIDs(c, g.getID());
+        }
+        if (subGroupIDs == null)
+        {
+            subGroupIDs = new LinkedHashSet<Integer>();
 
-        // was member of at least one group
-        // NOTE: even through the query is built dynamically, all data is
-        // separated into the parameters array.
-        TableRowIterator tri = DatabaseManager.queryTable(c, "group2groupcache",
-                groupQuery.toString(),
-                g.getID());
+            StringBuilder groupQuery = new StringBuilder();
+            groupQuery.append("SELECT * FROM group2groupcache WHERE parent_id = ?");
 
-        try
-        {
-            while (tri.hasNext())
+            // was member of at least one group
+            // NOTE: even through the query is built dynamically, all data is
+            // separated into the parameters array.
+            TableRowIterator tri = DatabaseManager.queryTable(c, "group2groupcache",
+                    groupQuery.toString(),
+                    g.getID());
+
+            try
             {
-                TableRow row = tri.next();
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next();
 
-                int parentID = row.getIntColumn("child_id");
+                    subGroupIDs.add(Integer.valueOf(row.getIntColumn("child_id")));
+                }
+            }
+            finally
+            {
+                // close the TableRowIterator to free up resources
+                if (tri != null)
+                {
+                    tri.close();
+                }
+            }
 
-                groupList.add(Group.find(c, Integer.valueOf(parentID)));
+            if (cache != null)
+            {
+                cache.putSubGroupIDs(g.getID(), Collections.unmodifiableSet(subGroupIDs));
             }
         }
-        finally
+
+        for (Integer subGroupID : subGroupIDs)
         {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
-            {
-                tri.close();
-            }
+            groupList.add(Group.find(c, subGroupID.intValue()));
         }
 
         return groupList;
@@ -454,9 +475,59 @@ public class Group extends DSpaceObject
      */
     public static Set<Integer> allMemberGroupIDs(Context c, EPerson e)
             throws SQLException
+    {
+        return new HashSet<Integer>(memberGroupIDs(c, e));
+    }
+
+    /**
+     * The group memberships of an eperson, remembered by the context for the
+     * next authorization check.
+     *
+     * @return Set of Integer groupIDs, must not be modified
+     */
+    private static Set<Integer> memberGroupIDs(Context c, EPerson e)
+            throws SQLException
+    {
+        EPerson currentUser = c.getCurrentUser();
+        boolean includesSpecialGroups = currentUser == null
+                || (e != null && currentUser.getID() == e.getID());
+
+        AuthorizationCache cache = AuthorizationCache.get(c);
+        Set<Integer> groupIDs = cache == null ? null : cache.getMemberGroupIDs(c, e, includesSpecialGroups);
+        if (groupIDs == null)
+        {
+            groupIDs = findMemberGroupIDs(c, e);
+            if (cache != null)
+            {
+                cache.putMemberGroupIDs(c, e, includesSpecialGroups, Collections.unmodifiableSet(groupIDs));
+            }
+        }
+        return groupIDs;
+    }
+
+    private static Set<Integer> findMemberGroupIDs(Context c, EPerson e)
+            throws SQLException
     {
         Set<Integer> groupIDs = new HashSet<Integer>();
 
+        // the special groups and the anonymous group, as added below
+        Set<Integer> implicitGroupIDs = new HashSet<Integer>();
+        if (c.getCurrentUser() == null || (e != null && c.getCurrentUser().getID() == e.getID()))
+        {
+            for (Group special : c.getSpecialGroups())
+            {
+                implicitGroupIDs.add(Integer.valueOf(special.getID()));
+            }
+        }
+        implicitGroupIDs.add(Integer.valueOf(0));
+
+        Set<Integer> cached = GroupMembershipCache.getInstance().getMemberGroupIDs(c,
+                e == null ? -1 : e.getID(), implicitGroupIDs);
+        if (cached != null)
+        {
+            return cached;
+        }
+
         if (e != null)
         {
             // two queries - first to get groups eperson is a member of
@@ -603,6 +674,12 @@ public class Group extends DSpaceObject
     public static Set<Integer> allMemberIDs(Context c, Group g)
             throws SQLException
     {
+        Set<Integer> cached = GroupMembershipCache.getInstance().getMemberEPersonIDs(c, g.getID());
+        if (cached != null)
+        {
+            return cached;
+        }
+
         // two queries - first to get all groups which are a member of this group
         // second query gets all members of each group in the first query
         Set<Integer> epeopleIDs = new HashSet<Integer>();
@@ -699,7 +776,7 @@ public class Group extends DSpaceObject
     private static boolean epersonInGroup(Context c, int groupID, EPerson e)
             throws SQLException
     {
-        Set<Integer> groupIDs = Group.allMemberGroupIDs(c, e);
+        Set<Integer> groupIDs = memberGroupIDs(c, e);
 
         return groupIDs.contains(Integer.valueOf(groupID));
     }
@@ -1082,10 +1159,15 @@ public class Group extends DSpaceObject
 
         // Remove from cache
         ourContext.removeCached(this, getID());
+        AuthorizationCache.clear(ourContext);
+        GroupMembershipCache.markChanged(ourContext);
 
         // Remove any ResourcePolicies that reference this group
         AuthorizeManager.removeGroupPolicies(ourContext, getID());
 
+        // the groups this group is a member of lose its descendants
+        Set<Integer> ancestors = Group2GroupCache.ancestors(ourContext, getID());
+
         // Remove any group memberships first
         DatabaseManager.updateQuery(ourContext,
                 "DELETE FROM EPersonGroup2EPerson WHERE eperson_group_id= ? ",
@@ -1101,6 +1183,15 @@ public class Group extends DSpaceObject
                 "DELETE FROM group2group WHERE parent_id= ? OR child_id= ? ",
                 getID(),getID());
 
+        if (isIncrementalGroupCache())
+        {
+            Group2GroupCache.update(ourContext, ancestors);
+        }
+        else if (!ancestors.isEmpty())
+        {
+            rethinkGroupCache();
+        }
+
         // Delete the Dublin Core
         removeMetadataFromDatabase();
 
@@ -1216,6 +1307,8 @@ public class Group extends DSpaceObject
             }
 
             epeopleChanged = false;
+            AuthorizationCache.clear(ourContext);
+            GroupMembershipCache.markChanged(ourContext);
         }
 
         // Redo Group mappings if they've changed
@@ -1240,9 +1333,21 @@ public class Group extends DSpaceObject
             }
 
             // groups changed, now change group cache
-            rethinkGroupCache();
+            if (isIncrementalGroupCache())
+            {
+                // only this group and its ancestors can have gained or lost descendants
+                Set<Integer> affected = Group2GroupCache.ancestors(ourContext, getID());
+                affected.add(getID());
+                Group2GroupCache.update(ourContext, affected);
+            }
+            else
+            {
+                rethinkGroupCache();
+            }
 
             groupsChanged = false;
+            AuthorizationCache.clear(ourContext);
+            GroupMembershipCache.markChanged(ourContext);
         }
 
         log.info(LogManager.getHeader(ourContext, "update_group", "group_id="
@@ -1298,6 +1403,15 @@ public class Group extends DSpaceObject
         return null;
     }
 
+    /**
+     * Whether group2groupcache is updated for the affected groups only, instead
+     * of being regenerated completely by {@link #rethinkGroupCache()}.
+     */
+    private static boolean isIncrementalGroupCache()
+    {
+        return ConfigurationManager.getBooleanProperty("eperson.group.cache.incremental", true);
+    }
+
     /**
      * Regenerate the group cache AKA the group2groupcache table in the database -
      * meant to be called when a group is added or removed from another group
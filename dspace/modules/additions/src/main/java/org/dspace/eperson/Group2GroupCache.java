@@ -0,0 +1,359 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Maintains the group2groupcache table, the transitive closure of the
+ * group2group table. Instead of rewriting the whole table, only the rows of
+ * the groups whose descendants can have changed are compared with group2group
+ * and the differences are written with batched inserts and deletes.
+ *
+ * @see Group#update()
+ */
+public class Group2GroupCache
+{
+    private static final Logger log = Logger.getLogger(Group2GroupCache.class);
+
+    /** Number of statements sent to the database at once */
+    private static final int BATCH_SIZE = 500;
+
+    /** Number of parameters of a single IN clause */
+    private static final int IN_CLAUSE_SIZE = 500;
+
+    /**
+     * Read the group2group table.
+     *
+     * @return the IDs of the direct child groups, per parent group ID
+     */
+    public static Map<Integer, Set<Integer>> readEdges(Context c) throws SQLException
+    {
+        return readPairs(c, "SELECT parent_id, child_id FROM group2group");
+    }
+
+    /**
+     * Read the group2groupcache rows of the given parent groups.
+     *
+     * @param parents the parent group IDs, null for the whole table
+     * @return the IDs of the cached descendants, per parent group ID
+     */
+    public static Map<Integer, Set<Integer>> readCache(Context c, Collection<Integer> parents) throws SQLException
+    {
+        if (parents == null)
+        {
+            return readPairs(c, "SELECT parent_id, child_id FROM group2groupcache");
+        }
+
+        Map<Integer, Set<Integer>> cache = new HashMap<Integer, Set<Integer>>();
+        List<Integer> ids = new ArrayList<Integer>(parents);
+        for (int start = 0; start < ids.size(); start += IN_CLAUSE_SIZE)
+        {
+            List<Integer> chunk = ids.subList(start, Math.min(start + IN_CLAUSE_SIZE, ids.size()));
+            StringBuilder query = new StringBuilder("SELECT parent_id, child_id FROM group2groupcache WHERE parent_id IN (");
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                query.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(")");
+            cache.putAll(readPairs(c, query.toString(), chunk.toArray()));
+        }
+        return cache;
+    }
+
+    private static Map<Integer, Set<Integer>> readPairs(Context c, String query, Object... parameters)
+            throws SQLException
+    {
+        Map<Integer, Set<Integer>> pairs = new HashMap<Integer, Set<Integer>>();
+        TableRowIterator tri = DatabaseManager.query(c, query, parameters);
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                add(pairs, row.getIntColumn("parent_id"), row.getIntColumn("child_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return pairs;
+    }
+
+    /**
+     * @return the IDs of the groups the group is a direct or indirect member
+     *         of, according to group2groupcache
+     */
+    public static Set<Integer> ancestors(Context c, int groupID) throws SQLException
+    {
+        Set<Integer> ancestors = new HashSet<Integer>();
+        TableRowIterator tri = DatabaseManager.query(c,
+                "SELECT parent_id FROM group2groupcache WHERE child_id = ?", groupID);
+        try
+        {
+            while (tri.hasNext())
+            {
+                ancestors.add(tri.next().getIntColumn("parent_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return ancestors;
+    }
+
+    /**
+     * @param edges the direct child groups per parent group
+     * @return all direct and indirect child groups of the parent, the parent
+     *         itself is never included
+     */
+    public static Set<Integer> descendants(Map<Integer, Set<Integer>> edges, int parent)
+    {
+        Set<Integer> descendants = new HashSet<Integer>();
+        Deque<Integer> todo = new ArrayDeque<Integer>();
+        todo.add(parent);
+        while (!todo.isEmpty())
+        {
+            Set<Integer> children = edges.get(todo.poll());
+            if (children == null)
+            {
+                continue;
+            }
+            for (Integer child : children)
+            {
+                if (child != parent && descendants.add(child))
+                {
+                    todo.add(child);
+                }
+            }
+        }
+        return descendants;
+    }
+
+    /**
+     * @return the complete closure of the group2group edges, as
+     *         {@link Group#update()} used to write it
+     */
+    public static Map<Integer, Set<Integer>> computeClosure(Map<Integer, Set<Integer>> edges)
+    {
+        Map<Integer, Set<Integer>> closure = new HashMap<Integer, Set<Integer>>();
+        for (Integer parent : edges.keySet())
+        {
+            Set<Integer> descendants = descendants(edges, parent);
+            if (!descendants.isEmpty())
+            {
+                closure.put(parent, descendants);
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Bring the cached descendants of the given groups in line with
+     * group2group. After adding or removing a member group of a group, the
+     * group and its ancestors are the only groups whose descendants can have
+     * changed.
+     *
+     * @param parents the IDs of the groups to update
+     * @return the rows that were inserted and deleted
+     */
+    public static Changes update(Context c, Collection<Integer> parents) throws SQLException
+    {
+        if (parents.isEmpty())
+        {
+            return new Changes();
+        }
+
+        Map<Integer, Set<Integer>> edges = readEdges(c);
+        Map<Integer, Set<Integer>> expected = new HashMap<Integer, Set<Integer>>();
+        for (Integer parent : parents)
+        {
+            expected.put(parent, descendants(edges, parent));
+        }
+
+        Changes changes = diff(expected, readCache(c, parents));
+        apply(c, changes);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Updated group2groupcache for " + parents.size() + " groups: " + changes);
+        }
+        return changes;
+    }
+
+    /**
+     * Compare the whole group2groupcache table with the closure of group2group.
+     *
+     * @param fix whether to write the differences to group2groupcache
+     * @return the missing and superfluous rows
+     */
+    public static Changes verify(Context c, boolean fix) throws SQLException
+    {
+        Changes changes = diff(computeClosure(readEdges(c)), readCache(c, null));
+        if (fix)
+        {
+            apply(c, changes);
+        }
+        return changes;
+    }
+
+    /**
+     * @param expected the expected descendants per parent
+     * @param actual   the cached descendants per parent. Parents that are
+     *                 not in expected are expected to have no descendants
+     */
+    static Changes diff(Map<Integer, Set<Integer>> expected, Map<Integer, Set<Integer>> actual)
+    {
+        Changes changes = new Changes();
+        for (Map.Entry<Integer, Set<Integer>> entry : expected.entrySet())
+        {
+            Set<Integer> cached = actual.get(entry.getKey());
+            for (Integer child : entry.getValue())
+            {
+                if (cached == null || !cached.contains(child))
+                {
+                    add(changes.missing, entry.getKey(), child);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Set<Integer>> entry : actual.entrySet())
+        {
+            Set<Integer> descendants = expected.get(entry.getKey());
+            for (Integer child : entry.getValue())
+            {
+                if (descendants == null || !descendants.contains(child))
+                {
+                    add(changes.superfluous, entry.getKey(), child);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static void apply(Context c, Changes changes) throws SQLException
+    {
+        String nextId = DatabaseManager.isOracle() ? "group2groupcache_seq.nextval" : "nextval('group2groupcache_seq')";
+        execute(c, "INSERT INTO group2groupcache (id, parent_id, child_id) VALUES (" + nextId + ", ?, ?)",
+                changes.missing);
+        execute(c, "DELETE FROM group2groupcache WHERE parent_id = ? AND child_id = ?", changes.superfluous);
+    }
+
+    private static void execute(Context c, String sql, Map<Integer, Set<Integer>> pairs) throws SQLException
+    {
+        if (pairs.isEmpty())
+        {
+            return;
+        }
+
+        Connection connection = c.getDBConnection();
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try
+        {
+            int batched = 0;
+            for (Map.Entry<Integer, Set<Integer>> entry : pairs.entrySet())
+            {
+                for (Integer child : entry.getValue())
+                {
+                    statement.setInt(1, entry.getKey());
+                    statement.setInt(2, child);
+                    statement.addBatch();
+                    if (++batched % BATCH_SIZE == 0)
+                    {
+                        statement.executeBatch();
+                    }
+                }
+            }
+            if (batched % BATCH_SIZE != 0)
+            {
+                statement.executeBatch();
+            }
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    private static void add(Map<Integer, Set<Integer>> pairs, int parent, int child)
+    {
+        Set<Integer> children = pairs.get(parent);
+        if (children == null)
+        {
+            children = new HashSet<Integer>();
+            pairs.put(parent, children);
+        }
+        children.add(child);
+    }
+
+    /**
+     * The group2groupcache rows that were missing and superfluous.
+     */
+    public static class Changes
+    {
+        private final Map<Integer, Set<Integer>> missing = new TreeMap<Integer, Set<Integer>>();
+        private final Map<Integer, Set<Integer>> superfluous = new TreeMap<Integer, Set<Integer>>();
+
+        /**
+         * @return the child group IDs per parent group ID that were not cached
+         */
+        public Map<Integer, Set<Integer>> getMissing()
+        {
+            return missing;
+        }
+
+        /**
+         * @return the child group IDs per parent group ID that were cached but
+         *         are not a descendant
+         */
+        public Map<Integer, Set<Integer>> getSuperfluous()
+        {
+            return superfluous;
+        }
+
+        public int getMissingCount()
+        {
+            return count(missing);
+        }
+
+        public int getSuperfluousCount()
+        {
+            return count(superfluous);
+        }
+
+        public boolean isEmpty()
+        {
+            return missing.isEmpty() && superfluous.isEmpty();
+        }
+
+        private int count(Map<Integer, Set<Integer>> pairs)
+        {
+            int count = 0;
+            for (Set<Integer> children : pairs.values())
+            {
+                count += children.size();
+            }
+            return count;
+        }
+
+        @Override
+        public String toString()
+        {
+            return getMissingCount() + " missing rows, " + getSuperfluousCount() + " superfluous rows";
+        }
+    }
+}
@@ -0,0 +1,681 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.DatabaseUtils;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+import java.nio.IntBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM wide copy of the group hierarchy and the direct group memberships of
+ * the epeople, so the group memberships of an eperson can be computed without
+ * querying the database.
+ * <p>
+ * The copy is an immutable snapshot, replaced as a whole by a background
+ * thread. Every statement that changes group2group or epersongroup2eperson
+ * increases the version in the group_membership_version table, the snapshot
+ * is only used while its version is the current one. The version is checked at
+ * most once per eperson.group.membership.version-check-interval milliseconds,
+ * and again right after a Context of this JVM committed membership changes,
+ * see {@link GroupMembershipConsumer}. The snapshot is loaded by a single
+ * daemon thread. While the snapshot is outdated or being loaded, or the
+ * version can not be read, the callers fall back to the database. Only a
+ * missing group_membership_version table turns the cache off for good. A Context that changed memberships itself always uses the
+ * database, its changes are not visible to other connections before commit.
+ */
+public class GroupMembershipCache
+{
+    private static final Logger log = Logger.getLogger(GroupMembershipCache.class);
+
+    private static GroupMembershipCache instance;
+
+    private final boolean enabled;
+    private final long checkInterval;
+
+    private volatile Snapshot snapshot;
+    private volatile long currentVersion = -1;
+    private volatile long nextCheck;
+    private volatile boolean unavailable;
+    private final Object checkLock = new Object();
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private final ThreadPoolExecutor loader;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private volatile long lastLoadMillis;
+
+    /**
+     * @return the cache configured in dspace.cfg
+     */
+    public static synchronized GroupMembershipCache getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new GroupMembershipCache(
+                    ConfigurationManager.getBooleanProperty("eperson.group.membership.cache", true),
+                    ConfigurationManager.getLongProperty("eperson.group.membership.version-check-interval", 1000));
+        }
+        return instance;
+    }
+
+    GroupMembershipCache(boolean enabled, long checkInterval)
+    {
+        this.enabled = enabled;
+        this.checkInterval = checkInterval;
+        loader = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "group-membership-cache");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        loader.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Make the Context use the database for the rest of its life, after it
+     * changed group memberships.
+     */
+    public static void markChanged(Context c)
+    {
+        if (c.fromCache(ChangedMarker.class, 0) == null)
+        {
+            c.cache(new ChangedMarker(), 0);
+        }
+    }
+
+    /**
+     * Read the version again on the next lookup instead of waiting for the
+     * check interval. Called once group membership changes are committed.
+     */
+    public static void committed()
+    {
+        GroupMembershipCache cache = instance;
+        if (cache != null)
+        {
+            cache.nextCheck = 0;
+        }
+    }
+
+    /**
+     * @param epersonID     the eperson, -1 for none
+     * @param extraGroupIDs groups the eperson is a member of without being
+     *                      stored in epersongroup2eperson, e.g. the special
+     *                      groups and the anonymous group
+     * @return the IDs of all groups the eperson and the extra groups are a
+     *         direct or indirect member of, null if the database has to be used
+     */
+    public Set<Integer> getMemberGroupIDs(Context c, int epersonID, Collection<Integer> extraGroupIDs)
+    {
+        Snapshot current = current(c);
+        if (current == null)
+        {
+            return null;
+        }
+
+        BitSet groups = new BitSet();
+        IntBuffer directGroups = current.directGroups.get(epersonID);
+        while (directGroups.hasRemaining())
+        {
+            current.addWithAncestors(groups, directGroups.get());
+        }
+        for (Integer groupID : extraGroupIDs)
+        {
+            current.addWithAncestors(groups, groupID);
+        }
+        return toSet(groups);
+    }
+
+    /**
+     * @return the IDs of all direct and indirect sub groups of the group, null
+     *         if the database has to be used
+     */
+    public Set<Integer> getSubGroupIDs(Context c, int groupID)
+    {
+        Snapshot current = current(c);
+        if (current == null)
+        {
+            return null;
+        }
+        return toSet(current.descendants(groupID));
+    }
+
+    /**
+     * @return the IDs of all epeople that are a member of the group or one of
+     *         its sub groups, null if the database has to be used
+     */
+    public Set<Integer> getMemberEPersonIDs(Context c, int groupID)
+    {
+        Snapshot current = current(c);
+        if (current == null)
+        {
+            return null;
+        }
+
+        Set<Integer> epeople = new HashSet<Integer>();
+        addAll(epeople, current.directMembers.get(groupID));
+        BitSet descendants = current.descendants(groupID);
+        for (int child = descendants.nextSetBit(0); child >= 0; child = descendants.nextSetBit(child + 1))
+        {
+            addAll(epeople, current.directMembers.get(child));
+        }
+        return epeople;
+    }
+
+    /**
+     * @return the current version of the group memberships, -1 if the
+     *         version is not known or the Context changed memberships itself
+     */
+    public long getVersion(Context c)
+    {
+        if (!enabled || unavailable || c.fromCache(ChangedMarker.class, 0) != null)
+        {
+            return -1;
+        }
+
+        checkVersion();
+        return unavailable ? -1 : currentVersion;
+    }
+
+    private Snapshot current(Context c)
+    {
+        Snapshot current = snapshot;
+        if (!enabled || unavailable || c.fromCache(ChangedMarker.class, 0) != null)
+        {
+            return null;
+        }
+
+        checkVersion();
+        if (currentVersion < 0)
+        {
+            // the version could not be read, try again after the check interval
+            misses.incrementAndGet();
+            return null;
+        }
+        if (current == null || current.version != currentVersion)
+        {
+            misses.incrementAndGet();
+            loadInBackground();
+            return null;
+        }
+        hits.incrementAndGet();
+        return current;
+    }
+
+    private void checkVersion()
+    {
+        long now = System.currentTimeMillis();
+        if (now < nextCheck)
+        {
+            return;
+        }
+        synchronized (checkLock)
+        {
+            if (now < nextCheck)
+            {
+                return;
+            }
+            Connection connection = null;
+            try
+            {
+                connection = DatabaseManager.getConnection();
+                currentVersion = readVersion(connection);
+            }
+            catch (SQLException e)
+            {
+                currentVersion = -1;
+                if (isVersionTableMissing())
+                {
+                    log.warn("The group_membership_version table does not exist, group memberships are read from the database", e);
+                    unavailable = true;
+                }
+                else
+                {
+                    log.warn("The group membership version can not be read, group memberships are read from the database until the next check", e);
+                }
+            }
+            finally
+            {
+                close(connection);
+            }
+            nextCheck = now + checkInterval;
+        }
+    }
+
+    /**
+     * @return whether the version can never be read because the table is
+     *         missing, false if that can not be determined either
+     */
+    private boolean isVersionTableMissing()
+    {
+        Connection connection = null;
+        try
+        {
+            connection = DatabaseManager.getConnection();
+            return !DatabaseUtils.tableExists(connection, "group_membership_version");
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+        finally
+        {
+            close(connection);
+        }
+    }
+
+    private void loadInBackground()
+    {
+        if (!loading.compareAndSet(false, true))
+        {
+            return;
+        }
+        loader.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    load();
+                }
+                finally
+                {
+                    loading.set(false);
+                }
+            }
+        });
+    }
+
+    private void load()
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            long start = System.currentTimeMillis();
+
+            // read before the memberships, the memberships are at least as recent as this version
+            long version = readVersion(context.getDBConnection());
+            Snapshot current = snapshot;
+            if (current != null && current.version == version)
+            {
+                // the outdated version was not committed yet
+                currentVersion = version;
+                return;
+            }
+
+            snapshot = new Snapshot(version, Group2GroupCache.readEdges(context),
+                    readMemberships(context, "eperson_id", "eperson_group_id"),
+                    readMemberships(context, "eperson_group_id", "eperson_id"));
+            currentVersion = Math.max(currentVersion, version);
+            lastLoadMillis = System.currentTimeMillis() - start;
+            loads.incrementAndGet();
+            log.info("Loaded the group memberships at version " + version + ", " + this);
+        }
+        catch (SQLException e)
+        {
+            log.error("Unable to load the group memberships", e);
+        }
+        finally
+        {
+            if (context != null)
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private long readVersion(Connection connection) throws SQLException
+    {
+        PreparedStatement statement = connection.prepareStatement("SELECT version FROM group_membership_version");
+        try
+        {
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    private IntMultimap readMemberships(Context c, String keyColumn, String valueColumn) throws SQLException
+    {
+        IntMultimap.Builder builder = new IntMultimap.Builder();
+        TableRowIterator tri = DatabaseManager.query(c, "SELECT " + keyColumn + ", " + valueColumn
+                + " FROM epersongroup2eperson ORDER BY " + keyColumn);
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next();
+                builder.add(row.getIntColumn(keyColumn), row.getIntColumn(valueColumn));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return builder.build();
+    }
+
+    private void close(Connection connection)
+    {
+        if (connection != null)
+        {
+            try
+            {
+                connection.close();
+            }
+            catch (SQLException e)
+            {
+                log.debug("Unable to close the connection", e);
+            }
+        }
+    }
+
+    private static Set<Integer> toSet(BitSet bits)
+    {
+        Set<Integer> set = new HashSet<Integer>(Math.max(16, bits.cardinality() * 2));
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+        {
+            set.add(i);
+        }
+        return set;
+    }
+
+    private static void addAll(Set<Integer> set, IntBuffer values)
+    {
+        while (values.hasRemaining())
+        {
+            set.add(values.get());
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from memory
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that had to use the database
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of times the memberships were loaded
+     */
+    public long getLoads()
+    {
+        return loads.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        Snapshot current = snapshot;
+        return "group memberships " + (current == null ? "not loaded" : "version " + current.version + ", "
+                + current.directGroups.size() + " epeople, " + current.groupCount + " groups")
+                + ", " + hits.get() + " hits, " + misses.get() + " misses, " + loads.get() + " loads, last load took "
+                + lastLoadMillis + " ms";
+    }
+
+    /**
+     * The group hierarchy and direct memberships at a version. The closure of
+     * the hierarchy is stored as a bit set of ancestors and of descendants per
+     * group ID.
+     */
+    static final class Snapshot
+    {
+        private static final BitSet EMPTY = new BitSet();
+
+        private final long version;
+        private final int groupCount;
+        private final BitSet[] ancestors;
+        private final BitSet[] descendants;
+        private final IntMultimap directGroups;
+        private final IntMultimap directMembers;
+
+        /**
+         * @param edges         the direct child groups per parent group
+         * @param directGroups  the direct groups per eperson
+         * @param directMembers the direct eperson members per group
+         */
+        Snapshot(long version, Map<Integer, Set<Integer>> edges, IntMultimap directGroups, IntMultimap directMembers)
+        {
+            this.version = version;
+            this.directGroups = directGroups;
+            this.directMembers = directMembers;
+
+            int maxGroupID = directMembers.maxKey();
+            for (Map.Entry<Integer, Set<Integer>> entry : edges.entrySet())
+            {
+                maxGroupID = Math.max(maxGroupID, entry.getKey());
+                for (Integer child : entry.getValue())
+                {
+                    maxGroupID = Math.max(maxGroupID, child);
+                }
+            }
+            groupCount = maxGroupID + 1;
+
+            int[][] children = new int[groupCount][];
+            int[][] parents = new int[groupCount][];
+            Map<Integer, List<Integer>> parentLists = new HashMap<Integer, List<Integer>>();
+            for (Map.Entry<Integer, Set<Integer>> entry : edges.entrySet())
+            {
+                children[entry.getKey()] = toArray(entry.getValue());
+                for (Integer child : entry.getValue())
+                {
+                    List<Integer> list = parentLists.get(child);
+                    if (list == null)
+                    {
+                        list = new ArrayList<Integer>();
+                        parentLists.put(child, list);
+                    }
+                    list.add(entry.getKey());
+                }
+            }
+            for (Map.Entry<Integer, List<Integer>> entry : parentLists.entrySet())
+            {
+                parents[entry.getKey()] = toArray(entry.getValue());
+            }
+
+            ancestors = closure(parents);
+            descendants = closure(children);
+        }
+
+        private static BitSet[] closure(int[][] adjacency)
+        {
+            BitSet[] closure = new BitSet[adjacency.length];
+            int[] todo = new int[adjacency.length];
+            for (int group = 0; group < adjacency.length; group++)
+            {
+                if (adjacency[group] == null)
+                {
+                    continue;
+                }
+                BitSet reached = new BitSet();
+                int size = 0;
+                todo[size++] = group;
+                while (size > 0)
+                {
+                    int[] next = adjacency[todo[--size]];
+                    if (next == null)
+                    {
+                        continue;
+                    }
+                    for (int other : next)
+                    {
+                        if (other != group && !reached.get(other))
+                        {
+                            reached.set(other);
+                            todo[size++] = other;
+                        }
+                    }
+                }
+                closure[group] = reached;
+            }
+            return closure;
+        }
+
+        private static int[] toArray(Collection<Integer> values)
+        {
+            int[] array = new int[values.size()];
+            int i = 0;
+            for (Integer value : values)
+            {
+                array[i++] = value;
+            }
+            return array;
+        }
+
+        void addWithAncestors(BitSet groups, int groupID)
+        {
+            if (groupID < 0)
+            {
+                return;
+            }
+            groups.set(groupID);
+            if (groupID < groupCount && ancestors[groupID] != null)
+            {
+                groups.or(ancestors[groupID]);
+            }
+        }
+
+        BitSet descendants(int groupID)
+        {
+            if (groupID < 0 || groupID >= groupCount || descendants[groupID] == null)
+            {
+                return EMPTY;
+            }
+            return descendants[groupID];
+        }
+    }
+
+    /**
+     * Immutable int to int[] map, stored as a sorted key array and one value
+     * array with the offsets of the values per key.
+     */
+    static final class IntMultimap
+    {
+        private static final int[] NONE = new int[0];
+
+        private final int[] keys;
+        private final int[] offsets;
+        private final int[] values;
+
+        private IntMultimap(int[] keys, int[] offsets, int[] values)
+        {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        /**
+         * @return a read-only view of the values of the key in the shared
+         *         value array, empty if the key has no values
+         */
+        IntBuffer get(int key)
+        {
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0)
+            {
+                return IntBuffer.wrap(NONE).asReadOnlyBuffer();
+            }
+            return IntBuffer.wrap(values, offsets[index], offsets[index + 1] - offsets[index]).asReadOnlyBuffer();
+        }
+
+        int size()
+        {
+            return keys.length;
+        }
+
+        int maxKey()
+        {
+            return keys.length == 0 ? 0 : keys[keys.length - 1];
+        }
+
+        /**
+         * Collects the values ordered by key.
+         */
+        static final class Builder
+        {
+            private int[] keys = new int[1024];
+            private int[] offsets = new int[1025];
+            private int[] values = new int[1024];
+            private int keyCount;
+            private int valueCount;
+
+            void add(int key, int value)
+            {
+                if (keyCount == 0 || keys[keyCount - 1] != key)
+                {
+                    if (keyCount > 0 && key < keys[keyCount - 1])
+                    {
+                        throw new IllegalArgumentException("Keys must be added in ascending order");
+                    }
+                    if (keyCount == keys.length)
+                    {
+                        keys = Arrays.copyOf(keys, keys.length * 2);
+                        offsets = Arrays.copyOf(offsets, keys.length + 1);
+                    }
+                    offsets[keyCount] = valueCount;
+                    keys[keyCount++] = key;
+                }
+                if (valueCount == values.length)
+                {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueCount++] = value;
+            }
+
+            IntMultimap build()
+            {
+                offsets[keyCount] = valueCount;
+                return new IntMultimap(Arrays.copyOf(keys, keyCount), Arrays.copyOf(offsets, keyCount + 1),
+                        Arrays.copyOf(values, valueCount));
+            }
+        }
+    }
+
+    /**
+     * Marks a Context that changed group memberships.
+     */
+    private static final class ChangedMarker
+    {
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Makes the {@link GroupMembershipCache} read the membership version again
+ * once the changes to groups are committed, instead of after the check
+ * interval.
+ */
+public class GroupMembershipConsumer implements Consumer
+{
+    private boolean membershipsChanged;
+
+    public void initialize() throws Exception
+    {
+        membershipsChanged = false;
+    }
+
+    public void consume(Context context, Event event) throws Exception
+    {
+        membershipsChanged = true;
+    }
+
+    public void end(Context context) throws Exception
+    {
+        if (membershipsChanged)
+        {
+            GroupMembershipCache.committed();
+            membershipsChanged = false;
+        }
+    }
+
+    public void finish(Context context) throws Exception
+    {
+    }
+}
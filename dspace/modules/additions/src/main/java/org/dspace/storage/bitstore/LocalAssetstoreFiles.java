@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.storage.bitstore;
+
+import java.io.File;
+import java.sql.SQLException;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+
+/**
+ * Locates the files of bitstreams in a local assetstore, the same way as
+ * {@link BitstreamStorageManager} does, so they can be read through a
+ * FileChannel instead of a stream.
+ */
+public class LocalAssetstoreFiles
+{
+    private LocalAssetstoreFiles()
+    {
+    }
+
+    /**
+     * @param bitstreamID
+     *            the bitstream
+     * @return the file, or null if the bitstream is registered, stored in SRB
+     *         or the file does not exist
+     */
+    public static File getLocalFile(Context context, int bitstreamID) throws SQLException
+    {
+        TableRow row = DatabaseManager.find(context, "bitstream", bitstreamID);
+        if (row == null)
+        {
+            return null;
+        }
+        return getLocalFile(row.getStringColumn("internal_id"), row.getIntColumn("store_number"));
+    }
+
+    /**
+     * @param internalId
+     *            the internal ID of the bitstream
+     * @param store
+     *            the store number of the bitstream
+     * @return the file, or null if the bitstream is registered, stored in SRB
+     *         or the file does not exist
+     */
+    public static File getLocalFile(String internalId, int store)
+    {
+        if (internalId == null || internalId.length() < 6 || internalId.contains(File.separator)
+                || BitstreamStorageManager.isRegisteredBitstream(internalId))
+        {
+            return null;
+        }
+
+        String assetstoreDir = ConfigurationManager.getProperty("assetstore.dir" + (store == 0 ? "" : "." + store));
+        if (assetstoreDir == null)
+        {
+            return null;
+        }
+
+        File file = new File(assetstoreDir, internalId.substring(0, 2) + File.separator
+                + internalId.substring(2, 4) + File.separator + internalId.substring(4, 6)
+                + File.separator + internalId);
+        return file.isFile() ? file : null;
+    }
+}
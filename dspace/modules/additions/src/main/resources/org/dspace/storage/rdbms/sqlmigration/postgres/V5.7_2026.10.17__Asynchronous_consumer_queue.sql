@@ -0,0 +1,20 @@
+-- Durable work queue of the asynchronous consumers. Every row is a pending (object, consumer) pair,
+-- events for the same pair coalesce into a single row until it is processed.
+
+CREATE TABLE async_consumer_queue
+(
+  queue_id         SERIAL PRIMARY KEY,
+  resource_type_id INTEGER NOT NULL,
+  resource_id      INTEGER NOT NULL,
+  consumer         VARCHAR(256) NOT NULL,
+  enqueued         TIMESTAMP NOT NULL,
+  last_event       TIMESTAMP NOT NULL,
+  not_before       TIMESTAMP NOT NULL,
+  attempts         INTEGER NOT NULL DEFAULT 0,
+  claimed_by       VARCHAR(256),
+  claimed_at       TIMESTAMP,
+  last_error       TEXT,
+  CONSTRAINT async_consumer_queue_object_unique UNIQUE (resource_type_id, resource_id, consumer)
+);
+
+CREATE INDEX async_consumer_queue_not_before_idx ON async_consumer_queue (not_before);
@@ -0,0 +1,7 @@
+-- Priority lane of the asynchronous consumer queue entries: 0 for interactive changes, 1 for batch changes.
+
+ALTER TABLE async_consumer_queue ADD COLUMN priority INTEGER NOT NULL DEFAULT 1;
+
+DROP INDEX IF EXISTS async_consumer_queue_not_before_idx;
+
+CREATE INDEX async_consumer_queue_due_idx ON async_consumer_queue (consumer, priority, not_before);
@@ -0,0 +1,24 @@
+-- Version of the group memberships, increased by every statement that changes group2group or epersongroup2eperson.
+-- The in-memory group membership closure of every JVM compares it with the version it was loaded at.
+
+CREATE TABLE group_membership_version
+(
+  version BIGINT NOT NULL
+);
+
+INSERT INTO group_membership_version (version) VALUES (0);
+
+CREATE OR REPLACE FUNCTION increase_group_membership_version() RETURNS TRIGGER AS $$
+BEGIN
+  UPDATE group_membership_version SET version = version + 1;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER group2group_membership_version
+  AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON group2group
+  FOR EACH STATEMENT EXECUTE PROCEDURE increase_group_membership_version();
+
+CREATE TRIGGER epersongroup2eperson_membership_version
+  AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON epersongroup2eperson
+  FOR EACH STATEMENT EXECUTE PROCEDURE increase_group_membership_version();
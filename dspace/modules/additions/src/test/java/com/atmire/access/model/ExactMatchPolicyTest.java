@@ -0,0 +1,240 @@
+package com.atmire.access.model;
+
+import org.dspace.content.Item;
+import org.dspace.content.Metadatum;
+import org.dspace.core.Context;
+import org.dspace.eperson.EPerson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author philip at atmire.com
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ExactMatchPolicyTest {
+
+    private static final String ITEM_FIELD = "dc.identifier.niscode";
+    private static final String EPERSON_FIELD = "eperson.niscode";
+
+    private ExactMatchPolicy policy;
+
+    @Mock
+    private EPerson ePerson;
+
+    @Mock
+    private Item item;
+
+    @Before
+    public void setUp() {
+        policy = createPolicy();
+        when(ePerson.getID()).thenReturn(1);
+    }
+
+    @Test
+    public void testMatchingValue() {
+        setEpersonValues("NISCODE:12007:Gemeente Bornem", "NISCODE:11002:Antwerpen");
+        setItemValues("44021", "11002");
+
+        assertTrue(policy.isAuthorized(newContext(), ePerson, item));
+    }
+
+    @Test
+    public void testNoMatchingValue() {
+        setEpersonValues("NISCODE:12007:Gemeente Bornem", "NOISECODE:11002:Antwerpen");
+        setItemValues("44021", "11002");
+
+        assertFalse(policy.isAuthorized(newContext(), ePerson, item));
+    }
+
+    @Test
+    public void testNoEpersonValues() {
+        setEpersonValues();
+        setItemValues("12007");
+
+        assertFalse(policy.isAuthorized(newContext(), ePerson, item));
+    }
+
+    @Test
+    public void testSameAsNestedLoop() {
+        Random random = new Random(42);
+        String[] epersonPool = {"NISCODE:1:a", "NISCODE:2:b", "NISCODE:3:c", "NOISECODE:4:d", "NISCODE::e", ""};
+        String[] itemPool = {"1", "2", "3", "4", "", "NISCODE:1:a", null};
+
+        for (int run = 0; run < 500; run++) {
+            String[] epersonValues = pick(random, epersonPool);
+            String[] itemValues = pick(random, itemPool);
+            setEpersonValues(epersonValues);
+            setItemValues(itemValues);
+
+            assertEquals(Arrays.toString(epersonValues) + " " + Arrays.toString(itemValues),
+                    nestedLoop(epersonValues, itemValues), policy.isAuthorized(newContext(), ePerson, item));
+        }
+    }
+
+    @Test
+    public void testSolrQueryCriteria() {
+        setEpersonValues("NISCODE:2:b", "NISCODE:1:a", "NISCODE:2:c");
+
+        assertEquals("(" + ITEM_FIELD + "_keyword:\"1\" OR " + ITEM_FIELD + "_keyword:\"2\")",
+                policy.getSolrQueryCriteria(newContext(), ePerson));
+    }
+
+    @Test
+    public void testSolrQueryCriteriaWithoutValues() {
+        setEpersonValues("NOISECODE:1:a");
+
+        assertEquals("(" + ITEM_FIELD + "_keyword:\"NO-VALUE-FOUND\")",
+                policy.getSolrQueryCriteria(newContext(), ePerson));
+
+        // blank values are no criteria either
+        setEpersonValues("NISCODE: :a");
+
+        assertEquals("(" + ITEM_FIELD + "_keyword:\"NO-VALUE-FOUND\")",
+                policy.getSolrQueryCriteria(newContext(), ePerson));
+    }
+
+    @Test
+    public void testValuesAreReusedWithinContext() {
+        setEpersonValues("NISCODE:12007:Gemeente Bornem");
+        setItemValues("12007");
+        Context context = newContext();
+
+        assertTrue(policy.isAuthorized(context, ePerson, item));
+        assertTrue(policy.isAuthorized(context, ePerson, item));
+        assertSame(policy.getEpersonAclValues(context, ePerson), policy.getEpersonAclValues(context, ePerson));
+        verify(ePerson, times(1)).getMetadata(anyString(), anyString(), anyString(), anyString());
+
+        // another policy extracts its own values
+        ExactMatchPolicy other = createPolicy();
+        other.getEpersonAclValues(context, ePerson);
+        verify(ePerson, times(2)).getMetadata(anyString(), anyString(), anyString(), anyString());
+
+        // the values are not kept after the Context
+        assertTrue(policy.isAuthorized(newContext(), ePerson, item));
+        verify(ePerson, times(3)).getMetadata(anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testValuesAreKeptPerEperson() {
+        EPerson otherEPerson = mock(EPerson.class);
+        when(otherEPerson.getID()).thenReturn(2);
+        when(otherEPerson.getMetadata(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(metadata("NISCODE:11002:Antwerpen"));
+        setEpersonValues("NISCODE:12007:Gemeente Bornem");
+        Context context = newContext();
+
+        assertEquals(Arrays.asList("12007"), new ArrayList<>(policy.getEpersonAclValues(context, ePerson)));
+        assertEquals(Arrays.asList("11002"), new ArrayList<>(policy.getEpersonAclValues(context, otherEPerson)));
+        assertEquals(Arrays.asList("12007"), new ArrayList<>(policy.getEpersonAclValues(context, ePerson)));
+    }
+
+    /**
+     * The check before the values were collected in a set.
+     */
+    private boolean nestedLoop(String[] epersonValues, String[] itemValues) {
+        for (String epersonValue : epersonValues) {
+            String epersonAclValue = policy.getEpersonValueExtractor().extractEpersonAclValue(epersonValue);
+            if (epersonAclValue == null) {
+                continue;
+            }
+            for (String itemValue : itemValues) {
+                if (epersonAclValue.equals(itemValue)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String[] pick(Random random, String[] pool) {
+        String[] values = new String[random.nextInt(4)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = pool[random.nextInt(pool.length)];
+        }
+        return values;
+    }
+
+    private void setEpersonValues(String... values) {
+        when(ePerson.getMetadata(eq("eperson"), eq("niscode"), isNull(String.class), anyString()))
+                .thenReturn(metadata(values));
+    }
+
+    private void setItemValues(String... values) {
+        when(item.getMetadata(eq("dc"), eq("identifier"), eq("niscode"), anyString())).thenReturn(metadata(values));
+    }
+
+    private Metadatum[] metadata(String... values) {
+        Metadatum[] metadata = new Metadatum[values.length];
+        for (int i = 0; i < values.length; i++) {
+            metadata[i] = new Metadatum();
+            metadata[i].value = values[i];
+        }
+        return metadata;
+    }
+
+    private ExactMatchPolicy createPolicy() {
+        ItemField itemField = new ItemField();
+        itemField.setValue(ITEM_FIELD);
+        EpersonField epersonField = new EpersonField();
+        epersonField.setValue(EPERSON_FIELD);
+        EpersonValueExtractor extractor = new EpersonValueExtractor();
+        extractor.setValue("NISCODE:(.*):.*");
+
+        ExactMatchPolicy exactMatchPolicy = new ExactMatchPolicy();
+        exactMatchPolicy.setItemField(itemField);
+        exactMatchPolicy.setEpersonField(epersonField);
+        exactMatchPolicy.setEpersonValueExtractor(extractor);
+        return exactMatchPolicy;
+    }
+
+    /**
+     * A Context with a working object cache.
+     */
+    private Context newContext() {
+        final Map<String, Object> objects = new HashMap<>();
+        Context context = mock(Context.class);
+        when(context.fromCache(any(Class.class), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] arguments = invocation.getArguments();
+                return objects.get(((Class) arguments[0]).getName() + ":" + arguments[1]);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Object[] arguments = invocation.getArguments();
+                objects.put(arguments[0].getClass().getName() + ":" + arguments[1], arguments[0]);
+                return null;
+            }
+        }).when(context).cache(any(), anyInt());
+        return context;
+    }
+}
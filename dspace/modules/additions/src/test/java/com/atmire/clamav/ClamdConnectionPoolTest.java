@@ -0,0 +1,228 @@
+package com.atmire.clamav;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClamdConnectionPoolTest {
+
+    private static final String SIGNATURE = "EICAR-TEST";
+
+    private FakeClamd clamd;
+    private ClamdConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        clamd = new FakeClamd();
+        pool = new ClamdConnectionPool("127.0.0.1", clamd.getPort(), 5000, 2, 4, 20000, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+        clamd.close();
+    }
+
+    @Test
+    public void testCleanAndInfectedStreams() throws Exception {
+        assertEquals("stream: OK", scan("clean content", 4));
+        assertEquals("stream: Test.Signature FOUND", scan("infected " + SIGNATURE + " content", 4));
+        // chunks larger than the stream
+        assertEquals("stream: OK", scan("clean content", 65536));
+        assertEquals("stream: OK", scan("", 4));
+    }
+
+    @Test
+    public void testSessionIsReused() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("stream: OK", scan("clean content " + i, 8));
+        }
+        assertEquals(1, clamd.getConnections());
+        assertEquals(10, pool.getMetrics().getProcessed());
+        assertTrue(pool.getMetrics().getBytes() > 0);
+    }
+
+    @Test
+    public void testConcurrentScansArePipelined() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 40; i++) {
+                final String content = (i % 5 == 0 ? SIGNATURE : "clean") + " content " + i;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return scan(content, 16);
+                    }
+                }));
+            }
+            for (int i = 0; i < 40; i++) {
+                assertEquals(i % 5 == 0 ? "stream: Test.Signature FOUND" : "stream: OK", results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(clamd.getConnections() <= 2);
+    }
+
+    @Test
+    public void testBrokenSessionIsReplaced() throws Exception {
+        assertEquals("stream: OK", scan("clean content", 4));
+        clamd.dropConnections();
+        // the pending scan on the dropped session fails, the next one opens a new session
+        try {
+            scan("clean content", 4);
+        } catch (IOException e) {
+            // expected when the drop was not noticed before the scan
+        }
+        assertEquals("stream: OK", scan("clean content", 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void testConnectionRefused() throws Exception {
+        clamd.close();
+        new ClamdConnectionPool("127.0.0.1", clamd.getPort(), 1000, 1, 1, 20000, 0).checkConnection();
+        fail();
+    }
+
+    private String scan(String content, int chunkSize) throws IOException {
+        return pool.scan(new ByteArrayInputStream(content.getBytes("UTF-8")), new byte[chunkSize]);
+    }
+
+    /**
+     * Speaks the IDSESSION and INSTREAM commands of clamd. A stream containing the test signature is reported
+     * as infected, the replies are sent in the order the streams arrive.
+     */
+    private static class FakeClamd {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final List<Socket> sockets = new ArrayList<Socket>();
+
+        private FakeClamd() throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!serverSocket.isClosed()) {
+                        try {
+                            final Socket socket = serverSocket.accept();
+                            connections.incrementAndGet();
+                            synchronized (sockets) {
+                                sockets.add(socket);
+                            }
+                            Thread session = new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    serve(socket);
+                                }
+                            });
+                            session.setDaemon(true);
+                            session.start();
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                int id = 0;
+                boolean session = false;
+                while (true) {
+                    String command = readCommand(in);
+                    if (command == null || command.equals("zEND")) {
+                        break;
+                    } else if (command.equals("zIDSESSION")) {
+                        session = true;
+                    } else if (command.equals("zINSTREAM")) {
+                        id++;
+                        String reply = scanStream(in);
+                        out.write(((session ? id + ": " : "") + reply + "\0").getBytes("UTF-8"));
+                        out.flush();
+                    } else {
+                        out.write("UNKNOWN COMMAND\0".getBytes("UTF-8"));
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // the client went away
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        private String readCommand(InputStream in) throws IOException {
+            ByteArrayOutputStream command = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) > 0) {
+                command.write(b);
+            }
+            return b == -1 ? null : command.toString("UTF-8");
+        }
+
+        private String scanStream(DataInputStream in) throws IOException {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            int length;
+            while ((length = in.readInt()) > 0) {
+                byte[] chunk = new byte[length];
+                in.readFully(chunk);
+                data.write(chunk);
+            }
+            boolean infected = data.toString("UTF-8").contains(SIGNATURE);
+            return infected ? "stream: Test.Signature FOUND" : "stream: OK";
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private int getConnections() {
+            return connections.get();
+        }
+
+        private void dropConnections() throws IOException {
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+                sockets.clear();
+            }
+        }
+
+        private void close() throws IOException {
+            dropConnections();
+            serverSocket.close();
+        }
+    }
+}
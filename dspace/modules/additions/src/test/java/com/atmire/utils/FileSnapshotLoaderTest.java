@@ -0,0 +1,176 @@
+package com.atmire.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author philip at atmire.com
+ */
+public class FileSnapshotLoaderTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private File file;
+
+    private long lastModified;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("snapshot", ".txt");
+        lastModified = file.lastModified() - HOUR;
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        write("first");
+        TextLoader loader = new TextLoader(0);
+
+        FileSnapshotLoader.Snapshot<String> snapshot = loader.getSnapshot();
+        assertEquals("first", snapshot.getValue());
+        assertNull(snapshot.getError());
+        assertEquals(file.lastModified(), snapshot.getLastModified());
+        assertEquals(1, loader.loads);
+    }
+
+    @Test
+    public void testReloadWhenChanged() throws IOException {
+        write("first");
+        TextLoader loader = new TextLoader(0);
+        FileSnapshotLoader.Snapshot<String> first = loader.getSnapshot();
+
+        // not changed, the snapshot stays the same
+        assertSame(first, loader.getSnapshot());
+        assertEquals(1, loader.loads);
+
+        write("second");
+        FileSnapshotLoader.Snapshot<String> second = loader.getSnapshot();
+        assertEquals("second", second.getValue());
+        assertNotEquals(first.getVersion(), second.getVersion());
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void testReloadWhenOnlyLengthChanged() throws IOException {
+        write("first");
+        TextLoader loader = new TextLoader(0);
+        loader.get();
+
+        // rewritten within the same modification time
+        write("first and more", lastModified);
+        assertEquals("first and more", loader.get());
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void testKeepPreviousOnError() throws IOException {
+        write("first");
+        TextLoader loader = new TextLoader(0);
+        FileSnapshotLoader.Snapshot<String> first = loader.getSnapshot();
+
+        write("error");
+        FileSnapshotLoader.Snapshot<String> failed = loader.getSnapshot();
+        assertEquals("first", failed.getValue());
+        assertNotNull(failed.getError());
+        assertNotEquals(first.getVersion(), failed.getVersion());
+
+        // the broken file is not loaded again until it changes
+        assertSame(failed, loader.getSnapshot());
+        assertEquals(2, loader.loads);
+
+        write("fixed");
+        FileSnapshotLoader.Snapshot<String> fixed = loader.getSnapshot();
+        assertEquals("fixed", fixed.getValue());
+        assertNull(fixed.getError());
+        assertEquals(3, loader.loads);
+    }
+
+    @Test
+    public void testErrorOnFirstLoad() throws IOException {
+        write("error");
+        TextLoader loader = new TextLoader(0);
+
+        FileSnapshotLoader.Snapshot<String> snapshot = loader.getSnapshot();
+        assertNull(snapshot.getValue());
+        assertNotNull(snapshot.getError());
+        assertNull(loader.get());
+    }
+
+    @Test
+    public void testCheckInterval() throws IOException {
+        write("first");
+        TextLoader loader = new TextLoader(HOUR);
+        assertEquals("first", loader.get());
+
+        // the change is not seen before the check interval has passed
+        write("second");
+        assertEquals("first", loader.get());
+        assertEquals(1, loader.loads);
+
+        loader.invalidate();
+        assertEquals("second", loader.get());
+        assertEquals(2, loader.loads);
+
+        write("third");
+        assertEquals("second", loader.get());
+
+        // a shorter interval takes effect immediately
+        loader.setCheckIntervalMillis(0);
+        assertEquals("third", loader.get());
+        write("fourth");
+        assertEquals("fourth", loader.get());
+        assertEquals(4, loader.loads);
+    }
+
+    /**
+     * Every write gets its own modification time, the file system may not be able to tell writes apart otherwise.
+     */
+    private void write(String contents) throws IOException {
+        lastModified += 1000;
+        write(contents, lastModified);
+    }
+
+    private void write(String contents, long modified) throws IOException {
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        file.setLastModified(modified);
+    }
+
+    private class TextLoader extends FileSnapshotLoader<String> {
+
+        private int loads;
+
+        private TextLoader(long checkIntervalMillis) {
+            super(checkIntervalMillis);
+        }
+
+        @Override
+        protected File getFile() {
+            return file;
+        }
+
+        @Override
+        protected String load(File file) throws Exception {
+            loads++;
+            String contents = FileUtils.readFileToString(file, "UTF-8");
+            if ("error".equals(contents)) {
+                throw new IllegalArgumentException("Unable to parse " + file);
+            }
+            return contents;
+        }
+    }
+}
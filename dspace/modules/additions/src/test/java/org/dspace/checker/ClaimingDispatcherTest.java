@@ -0,0 +1,194 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ClaimingDispatcherTest
+{
+    private static final int BITSTREAMS = 500;
+
+    private static final int THREADS = 8;
+
+    /**
+     * Without a claim the dispatcher returns the same bitstream until the
+     * results are written.
+     */
+    @Test
+    public void testUnclaimedBitstreamIsDispatchedAgain()
+    {
+        Table table = new Table(BITSTREAMS);
+        int first = table.next();
+        assertEquals(first, table.next());
+    }
+
+    @Test
+    public void testRunVisitsEveryBitstreamOnce() throws Exception
+    {
+        final Table table = new Table(BITSTREAMS);
+        final ClaimingDispatcher claims = new TableClaims(table);
+        final List<Integer> visited = Collections.synchronizedList(new ArrayList<Integer>());
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++)
+        {
+            Thread worker = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // the results are only written when the run is done, like
+                    // a batch larger than the number of bitstreams
+                    int id = claims.next();
+                    while (id != BitstreamDispatcher.SENTINEL)
+                    {
+                        visited.add(id);
+                        Thread.yield();
+                        claims.release(id);
+                        id = claims.next();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        assertEquals(BITSTREAMS, visited.size());
+        List<Integer> sorted = new ArrayList<Integer>(visited);
+        Collections.sort(sorted);
+        for (int i = 0; i < BITSTREAMS; i++)
+        {
+            assertEquals(Integer.valueOf(i + 1), sorted.get(i));
+        }
+    }
+
+    @Test
+    public void testBitstreamBeingCheckedIsNotHandedOutTwice()
+    {
+        final int[] returned = { 7 };
+        ClaimingDispatcher claims = new ClaimingDispatcher(new BitstreamDispatcher()
+        {
+            @Override
+            public int next()
+            {
+                return returned[0];
+            }
+        })
+        {
+            @Override
+            protected void claim(int id)
+            {
+            }
+        };
+
+        assertEquals(7, claims.next());
+        assertEquals(BitstreamDispatcher.SENTINEL, claims.next());
+
+        // checked, dispatched again in a later pass of a continuous run
+        claims.release(7);
+        assertEquals(7, claims.next());
+
+        returned[0] = BitstreamDispatcher.SENTINEL;
+        assertEquals(BitstreamDispatcher.SENTINEL, claims.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedClaimIsNotHandedOut()
+    {
+        ClaimingDispatcher claims = new ClaimingDispatcher(new Table(1))
+        {
+            @Override
+            protected void claim(int id) throws java.sql.SQLException
+            {
+                throw new java.sql.SQLException("down");
+            }
+        };
+        claims.next();
+    }
+
+    private static final class TableClaims extends ClaimingDispatcher
+    {
+        private final Table table;
+
+        private TableClaims(Table table)
+        {
+            super(table);
+            this.table = table;
+        }
+
+        @Override
+        protected void claim(int id)
+        {
+            table.claim(id);
+        }
+    }
+
+    /**
+     * The most_recent_checksum rows as seen by a {@link SimpleDispatcher} of a
+     * run: the row with the oldest end date whose start date is before the
+     * start of the run.
+     */
+    private static final class Table implements BitstreamDispatcher
+    {
+        private final AtomicLong clock = new AtomicLong(1000);
+
+        private final long runStart;
+
+        private final Map<Integer, long[]> rows = new HashMap<Integer, long[]>();
+
+        private Table(int size)
+        {
+            for (int id = 1; id <= size; id++)
+            {
+                long date = clock.incrementAndGet();
+                rows.put(id, new long[] { date, date });
+            }
+            runStart = clock.incrementAndGet();
+        }
+
+        @Override
+        public synchronized int next()
+        {
+            int oldest = SENTINEL;
+            long oldestEnd = Long.MAX_VALUE;
+            for (Map.Entry<Integer, long[]> row : rows.entrySet())
+            {
+                long[] dates = row.getValue();
+                if (dates[0] < runStart && (dates[1] < oldestEnd || dates[1] == oldestEnd && row.getKey() < oldest))
+                {
+                    oldest = row.getKey();
+                    oldestEnd = dates[1];
+                }
+            }
+            return oldest;
+        }
+
+        private synchronized void claim(int id)
+        {
+            long now = clock.incrementAndGet();
+            long[] dates = rows.get(id);
+            assertTrue(dates != null);
+            dates[0] = now;
+            dates[1] = now;
+        }
+    }
+}
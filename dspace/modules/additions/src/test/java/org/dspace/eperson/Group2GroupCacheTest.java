@@ -0,0 +1,339 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks the incremental updates of group2groupcache against a full
+ * recompute, with the tables kept in memory.
+ */
+public class Group2GroupCacheTest
+{
+    @Test
+    public void testDiamond()
+    {
+        // 1 -> 2 -> 4, 1 -> 3 -> 4, 4 -> 5
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 1, 3, 2, 4, 3, 4, 4, 5);
+
+        assertEquals(set(2, 3, 4, 5), Group2GroupCache.descendants(edges, 1));
+        assertEquals(set(4, 5), Group2GroupCache.descendants(edges, 2));
+        assertEquals(set(), Group2GroupCache.descendants(edges, 5));
+        assertEquals(fullClosure(edges), Group2GroupCache.computeClosure(edges));
+    }
+
+    @Test
+    public void testCycle()
+    {
+        // 1 -> 2 -> 3 -> 1, 3 -> 4
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 2, 3, 3, 1, 3, 4);
+
+        // a group is never its own descendant
+        assertEquals(set(2, 3, 4), Group2GroupCache.descendants(edges, 1));
+        assertEquals(set(1, 2, 4), Group2GroupCache.descendants(edges, 3));
+        assertEquals(fullClosure(edges), Group2GroupCache.computeClosure(edges));
+    }
+
+    @Test
+    public void testSelfEdge()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 1, 1, 2);
+
+        assertEquals(set(2), Group2GroupCache.descendants(edges, 1));
+        assertEquals(fullClosure(edges), Group2GroupCache.computeClosure(edges));
+    }
+
+    @Test
+    public void testEdgeRemovalInDiamond()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 1, 3, 2, 4, 3, 4, 4, 5);
+        Map<Integer, Set<Integer>> cache = Group2GroupCache.computeClosure(edges);
+
+        // 4 stays a descendant of 1 through 3
+        removeMember(edges, cache, 2, 4);
+        assertEquals(fullClosure(edges), cache);
+        assertTrue(cache.get(1).contains(4));
+        assertFalse(cache.containsKey(2));
+
+        removeMember(edges, cache, 3, 4);
+        assertEquals(fullClosure(edges), cache);
+        assertEquals(set(2, 3), cache.get(1));
+    }
+
+    @Test
+    public void testEdgeRemovalInCycle()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 2, 3, 3, 1, 3, 4);
+        Map<Integer, Set<Integer>> cache = Group2GroupCache.computeClosure(edges);
+
+        removeMember(edges, cache, 3, 1);
+        assertEquals(fullClosure(edges), cache);
+        assertEquals(set(2, 3, 4), cache.get(1));
+        assertFalse(cache.get(3).contains(1));
+    }
+
+    @Test
+    public void testEdgeAddition()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 3, 4);
+        Map<Integer, Set<Integer>> cache = Group2GroupCache.computeClosure(edges);
+
+        addMember(edges, cache, 2, 3);
+        assertEquals(fullClosure(edges), cache);
+        assertEquals(set(2, 3, 4), cache.get(1));
+
+        // closes a cycle
+        addMember(edges, cache, 4, 1);
+        assertEquals(fullClosure(edges), cache);
+    }
+
+    @Test
+    public void testGroupDelete()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 1, 3, 2, 4, 3, 4, 4, 5, 6, 4);
+        Map<Integer, Set<Integer>> cache = Group2GroupCache.computeClosure(edges);
+
+        deleteGroup(edges, cache, 4);
+        assertEquals(fullClosure(edges), cache);
+        assertEquals(set(2, 3), cache.get(1));
+        assertFalse(cache.containsKey(6));
+    }
+
+    @Test
+    public void testRandomChanges()
+    {
+        Random random = new Random(7);
+        Map<Integer, Set<Integer>> edges = new HashMap<Integer, Set<Integer>>();
+        Map<Integer, Set<Integer>> cache = new HashMap<Integer, Set<Integer>>();
+        for (int i = 0; i < 2000; i++)
+        {
+            int parent = 1 + random.nextInt(12);
+            int child = 1 + random.nextInt(12);
+            int change = random.nextInt(10);
+            if (change < 6)
+            {
+                addMember(edges, cache, parent, child);
+            }
+            else if (change < 9)
+            {
+                removeMember(edges, cache, parent, child);
+            }
+            else
+            {
+                deleteGroup(edges, cache, parent);
+            }
+            assertEquals("after change " + i, fullClosure(edges), cache);
+        }
+    }
+
+    @Test
+    public void testVerify()
+    {
+        Map<Integer, Set<Integer>> edges = edges(1, 2, 2, 3, 4, 5);
+        Map<Integer, Set<Integer>> cache = Group2GroupCache.computeClosure(edges);
+        assertTrue(Group2GroupCache.diff(Group2GroupCache.computeClosure(edges), cache).isEmpty());
+
+        // a lost row and a stale row
+        cache.get(1).remove(3);
+        cache.put(7, set(1));
+        Group2GroupCache.Changes changes = Group2GroupCache.diff(Group2GroupCache.computeClosure(edges), cache);
+        assertEquals(1, changes.getMissingCount());
+        assertEquals(set(3), changes.getMissing().get(1));
+        assertEquals(1, changes.getSuperfluousCount());
+        assertEquals(set(1), changes.getSuperfluous().get(7));
+
+        apply(cache, changes);
+        assertEquals(fullClosure(edges), cache);
+    }
+
+    /**
+     * {@link Group#update()} after adding a member group.
+     */
+    private void addMember(Map<Integer, Set<Integer>> edges, Map<Integer, Set<Integer>> cache, int parent, int child)
+    {
+        Set<Integer> affected = ancestors(cache, parent);
+        affected.add(parent);
+        add(edges, parent, child);
+        update(edges, cache, affected);
+    }
+
+    /**
+     * {@link Group#update()} after removing a member group.
+     */
+    private void removeMember(Map<Integer, Set<Integer>> edges, Map<Integer, Set<Integer>> cache, int parent,
+            int child)
+    {
+        Set<Integer> affected = ancestors(cache, parent);
+        affected.add(parent);
+        Set<Integer> children = edges.get(parent);
+        if (children != null)
+        {
+            children.remove(child);
+            if (children.isEmpty())
+            {
+                edges.remove(parent);
+            }
+        }
+        update(edges, cache, affected);
+    }
+
+    /**
+     * {@link Group#delete()}.
+     */
+    private void deleteGroup(Map<Integer, Set<Integer>> edges, Map<Integer, Set<Integer>> cache, int group)
+    {
+        Set<Integer> affected = ancestors(cache, group);
+        removeGroup(cache, group);
+        removeGroup(edges, group);
+        update(edges, cache, affected);
+    }
+
+    /**
+     * {@link Group2GroupCache#update(org.dspace.core.Context, java.util.Collection)}.
+     */
+    private void update(Map<Integer, Set<Integer>> edges, Map<Integer, Set<Integer>> cache, Set<Integer> parents)
+    {
+        Map<Integer, Set<Integer>> expected = new HashMap<Integer, Set<Integer>>();
+        Map<Integer, Set<Integer>> cached = new HashMap<Integer, Set<Integer>>();
+        for (Integer parent : parents)
+        {
+            expected.put(parent, Group2GroupCache.descendants(edges, parent));
+            if (cache.containsKey(parent))
+            {
+                cached.put(parent, new HashSet<Integer>(cache.get(parent)));
+            }
+        }
+        apply(cache, Group2GroupCache.diff(expected, cached));
+    }
+
+    private void apply(Map<Integer, Set<Integer>> cache, Group2GroupCache.Changes changes)
+    {
+        for (Map.Entry<Integer, Set<Integer>> entry : changes.getMissing().entrySet())
+        {
+            for (Integer child : entry.getValue())
+            {
+                assertTrue(add(cache, entry.getKey(), child));
+            }
+        }
+        for (Map.Entry<Integer, Set<Integer>> entry : changes.getSuperfluous().entrySet())
+        {
+            Set<Integer> children = cache.get(entry.getKey());
+            assertTrue(children.removeAll(entry.getValue()));
+            if (children.isEmpty())
+            {
+                cache.remove(entry.getKey());
+            }
+        }
+    }
+
+    private Set<Integer> ancestors(Map<Integer, Set<Integer>> cache, int group)
+    {
+        Set<Integer> ancestors = new HashSet<Integer>();
+        for (Map.Entry<Integer, Set<Integer>> entry : cache.entrySet())
+        {
+            if (entry.getValue().contains(group))
+            {
+                ancestors.add(entry.getKey());
+            }
+        }
+        return ancestors;
+    }
+
+    private void removeGroup(Map<Integer, Set<Integer>> pairs, int group)
+    {
+        pairs.remove(group);
+        Iterator<Set<Integer>> children = pairs.values().iterator();
+        while (children.hasNext())
+        {
+            Set<Integer> set = children.next();
+            set.remove(group);
+            if (set.isEmpty())
+            {
+                children.remove();
+            }
+        }
+    }
+
+    /**
+     * The closure by repeatedly adding the children of the descendants until
+     * nothing changes.
+     */
+    private Map<Integer, Set<Integer>> fullClosure(Map<Integer, Set<Integer>> edges)
+    {
+        Map<Integer, Set<Integer>> closure = new HashMap<Integer, Set<Integer>>();
+        for (Map.Entry<Integer, Set<Integer>> entry : edges.entrySet())
+        {
+            closure.put(entry.getKey(), new HashSet<Integer>(entry.getValue()));
+        }
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (Set<Integer> descendants : closure.values())
+            {
+                for (Integer descendant : new HashSet<Integer>(descendants))
+                {
+                    Set<Integer> children = edges.get(descendant);
+                    if (children != null)
+                    {
+                        changed |= descendants.addAll(children);
+                    }
+                }
+            }
+        }
+        Iterator<Map.Entry<Integer, Set<Integer>>> entries = closure.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<Integer, Set<Integer>> entry = entries.next();
+            entry.getValue().remove(entry.getKey());
+            if (entry.getValue().isEmpty())
+            {
+                entries.remove();
+            }
+        }
+        return closure;
+    }
+
+    private static Map<Integer, Set<Integer>> edges(int... pairs)
+    {
+        Map<Integer, Set<Integer>> edges = new HashMap<Integer, Set<Integer>>();
+        for (int i = 0; i < pairs.length; i += 2)
+        {
+            add(edges, pairs[i], pairs[i + 1]);
+        }
+        return edges;
+    }
+
+    private static boolean add(Map<Integer, Set<Integer>> pairs, int parent, int child)
+    {
+        Set<Integer> children = pairs.get(parent);
+        if (children == null)
+        {
+            children = new HashSet<Integer>();
+            pairs.put(parent, children);
+        }
+        return children.add(child);
+    }
+
+    private static Set<Integer> set(Integer... values)
+    {
+        return new HashSet<Integer>(Arrays.asList(values));
+    }
+}
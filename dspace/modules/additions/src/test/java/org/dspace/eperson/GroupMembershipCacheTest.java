@@ -0,0 +1,243 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.dspace.eperson.GroupMembershipCache.IntMultimap;
+import org.dspace.eperson.GroupMembershipCache.Snapshot;
+import org.junit.Test;
+
+/**
+ * Checks the closures and the multimap of the in-memory group memberships.
+ */
+public class GroupMembershipCacheTest
+{
+    @Test
+    public void testClosuresOfDiamondAndCycle()
+    {
+        // diamond 1 -> 2 -> 4, 1 -> 3 -> 4, cycle 5 -> 6 -> 5
+        Map<Integer, Set<Integer>> edges = new HashMap<Integer, Set<Integer>>();
+        add(edges, 1, 2);
+        add(edges, 1, 3);
+        add(edges, 2, 4);
+        add(edges, 3, 4);
+        add(edges, 5, 6);
+        add(edges, 6, 5);
+        Snapshot snapshot = new Snapshot(1, edges, new IntMultimap.Builder().build(),
+                new IntMultimap.Builder().build());
+
+        assertEquals(bits(2, 3, 4), snapshot.descendants(1));
+        assertEquals(bits(), snapshot.descendants(4));
+        assertEquals(bits(6), snapshot.descendants(5));
+        assertEquals(bits(), snapshot.descendants(-1));
+        assertEquals(bits(), snapshot.descendants(100));
+
+        BitSet groups = new BitSet();
+        snapshot.addWithAncestors(groups, 4);
+        assertEquals(bits(1, 2, 3, 4), groups);
+
+        groups = new BitSet();
+        snapshot.addWithAncestors(groups, 6);
+        assertEquals(bits(5, 6), groups);
+
+        // groups outside of the hierarchy, e.g. a special group created later
+        groups = new BitSet();
+        snapshot.addWithAncestors(groups, 100);
+        snapshot.addWithAncestors(groups, -1);
+        assertEquals(bits(100), groups);
+    }
+
+    @Test
+    public void testClosuresMatchGroup2GroupCache()
+    {
+        Random random = new Random(11);
+        for (int run = 0; run < 50; run++)
+        {
+            Map<Integer, Set<Integer>> edges = new HashMap<Integer, Set<Integer>>();
+            for (int i = 0; i < 60; i++)
+            {
+                add(edges, random.nextInt(40), random.nextInt(40));
+            }
+            Snapshot snapshot = new Snapshot(run, edges, new IntMultimap.Builder().build(),
+                    new IntMultimap.Builder().build());
+
+            Map<Integer, Set<Integer>> closure = Group2GroupCache.computeClosure(edges);
+            for (int group = 0; group < 40; group++)
+            {
+                Set<Integer> descendants = closure.containsKey(group) ? closure.get(group) : new HashSet<Integer>();
+                assertEquals(toBits(descendants), snapshot.descendants(group));
+
+                BitSet expected = new BitSet();
+                expected.set(group);
+                for (Map.Entry<Integer, Set<Integer>> entry : closure.entrySet())
+                {
+                    if (entry.getValue().contains(group))
+                    {
+                        expected.set(entry.getKey());
+                    }
+                }
+                BitSet groups = new BitSet();
+                snapshot.addWithAncestors(groups, group);
+                assertEquals(expected, groups);
+            }
+        }
+    }
+
+    @Test
+    public void testMultimap()
+    {
+        IntMultimap.Builder builder = new IntMultimap.Builder();
+        builder.add(2, 20);
+        builder.add(2, 21);
+        builder.add(5, 50);
+        builder.add(9, 90);
+        builder.add(9, 91);
+        builder.add(9, 92);
+        IntMultimap map = builder.build();
+
+        assertEquals(3, map.size());
+        assertEquals(9, map.maxKey());
+        assertEquals("[20, 21]", toString(map.get(2)));
+        assertEquals("[50]", toString(map.get(5)));
+        assertEquals("[90, 91, 92]", toString(map.get(9)));
+        assertEquals("[]", toString(map.get(1)));
+        assertEquals("[]", toString(map.get(10)));
+
+        // every lookup gets its own position
+        IntBuffer values = map.get(9);
+        values.get();
+        assertEquals("[90, 91, 92]", toString(map.get(9)));
+
+        assertEquals(0, new IntMultimap.Builder().build().size());
+        assertEquals(0, new IntMultimap.Builder().build().maxKey());
+    }
+
+    @Test
+    public void testMultimapIsReadOnly()
+    {
+        IntMultimap.Builder builder = new IntMultimap.Builder();
+        builder.add(1, 10);
+        builder.add(2, 20);
+        IntMultimap map = builder.build();
+
+        IntBuffer values = map.get(1);
+        assertTrue(values.isReadOnly());
+        try
+        {
+            values.put(0, 99);
+            fail("The values of the multimap can be changed");
+        }
+        catch (ReadOnlyBufferException e)
+        {
+            assertEquals("[10]", toString(map.get(1)));
+        }
+        assertTrue(map.get(3).isReadOnly());
+    }
+
+    @Test
+    public void testMultimapKeysInAscendingOrder()
+    {
+        IntMultimap.Builder builder = new IntMultimap.Builder();
+        builder.add(5, 1);
+        try
+        {
+            builder.add(4, 1);
+            fail("A lower key was accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMultimapGrows()
+    {
+        Map<Integer, Set<Integer>> expected = new TreeMap<Integer, Set<Integer>>();
+        Random random = new Random(3);
+        IntMultimap.Builder builder = new IntMultimap.Builder();
+        for (int key = 0; key < 5000; key += 1 + random.nextInt(3))
+        {
+            int count = random.nextInt(4);
+            for (int i = 0; i < count; i++)
+            {
+                int value = random.nextInt(100000);
+                builder.add(key, value);
+                add(expected, key, value);
+            }
+        }
+        IntMultimap map = builder.build();
+
+        assertEquals(expected.size(), map.size());
+        for (int key = -1; key <= 5001; key++)
+        {
+            IntBuffer values = map.get(key);
+            Set<Integer> actual = new HashSet<Integer>();
+            while (values.hasRemaining())
+            {
+                actual.add(values.get());
+            }
+            Set<Integer> keyValues = expected.get(key);
+            assertEquals(keyValues == null ? new HashSet<Integer>() : keyValues, actual);
+        }
+    }
+
+    private static String toString(IntBuffer values)
+    {
+        StringBuilder string = new StringBuilder("[");
+        while (values.hasRemaining())
+        {
+            string.append(string.length() > 1 ? ", " : "").append(values.get());
+        }
+        return string.append("]").toString();
+    }
+
+    private static void add(Map<Integer, Set<Integer>> pairs, int key, int value)
+    {
+        Set<Integer> values = pairs.get(key);
+        if (values == null)
+        {
+            values = new HashSet<Integer>();
+            pairs.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static BitSet toBits(Set<Integer> values)
+    {
+        BitSet bits = new BitSet();
+        for (Integer value : values)
+        {
+            bits.set(value);
+        }
+        return bits;
+    }
+
+    private static BitSet bits(int... values)
+    {
+        BitSet bits = new BitSet();
+        for (int value : values)
+        {
+            bits.set(value);
+        }
+        return bits;
+    }
+}
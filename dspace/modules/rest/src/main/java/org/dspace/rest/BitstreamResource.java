@@ -20,23 +20,34 @@ import org.dspace.rest.common.Bitstream;
 import org.dspace.rest.common.ResourcePolicy;
 import org.dspace.rest.exceptions.ContextException;
 import org.dspace.storage.bitstore.BitstreamStorageManager;
+import org.dspace.storage.bitstore.LocalAssetstoreFiles;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.usage.UsageEvent;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLConnection;
 import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * @author Rostislav Novak (Computing and Information Centre, CTU in Prague)
@@ -50,6 +61,15 @@ public class BitstreamResource extends Resource
 
     private static Logger log = Logger.getLogger(BitstreamResource.class);
 
+    private static final int PARTIAL_CONTENT = 206;
+
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * A request for more ranges is answered with the whole bitstream.
+     */
+    private static final int MAX_RANGES = 20;
+
     /**
      * Return bitstream properties without file data. It can throw
      * WebApplicationException with three response codes. Response code
@@ -286,6 +306,11 @@ public class BitstreamResource extends Resource
      * there was a problem with reading bitstream file. SQLException if there was
      * a problem while reading from database. And AuthorizeException if there was
      * a problem with authorization of user logged to DSpace context.
+     * <p>
+     * The response carries the checksum of the bitstream as ETag and answers
+     * conditional requests with NOT_MODIFIED(304). A Range header is answered
+     * with PARTIAL_CONTENT(206) and the requested byte range, or a
+     * multipart/byteranges body for several ranges.
      *
      * @param bitstreamId
      *            Id of the bitstream, whose data will be read.
@@ -293,10 +318,14 @@ public class BitstreamResource extends Resource
      *            If you want to access the item as the user logged into the context.
      *            The header "rest-dspace-token" with the token passed
      *            from the login method must be set.
+     * @param conditionalRequest
+     *            The request, to evaluate the If-None-Match and
+     *            If-Modified-Since headers.
      * @return Returns response with data with file content type. It can
      *         return the NOT_FOUND(404) response code in case of wrong bitstream
      *         id. Or response code UNAUTHORIZED(401) if user is not
-     *         allowed to read bitstream.
+     *         allowed to read bitstream. Or REQUESTED_RANGE_NOT_SATISFIABLE(416)
+     *         if none of the requested ranges is part of the bitstream.
      * @throws WebApplicationException
      *             Thrown if there was a problem: reading the file data; or reading
      *             the database; or creating the context; or with authorization.
@@ -311,26 +340,78 @@ public class BitstreamResource extends Resource
             @PathParam("bitstream_id") Integer bitstreamId,
 
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
-            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Request conditionalRequest)
             throws WebApplicationException
     {
 
         log.info("Reading data of bitstream(id=" + bitstreamId + ").");
         org.dspace.core.Context context = null;
-        InputStream inputStream = null;
-        String type = null;
+        Response response = null;
 
         try
         {
             context = createContext();
             org.dspace.content.Bitstream dspaceBitstream = findBitstream(context, bitstreamId, org.dspace.core.Constants.READ);
 
-            writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
-                    request, context);
+            String type = dspaceBitstream.getFormat().getMIMEType();
+            long size = dspaceBitstream.getSize();
+            File file = LocalAssetstoreFiles.getLocalFile(context, dspaceBitstream.getID());
+            Date lastModified = getLastModified(dspaceBitstream, file);
+            EntityTag eTag = dspaceBitstream.getChecksum() == null ? null : new EntityTag(dspaceBitstream.getChecksum());
+            // only shared caches may keep bitstreams that anyone can read
+            boolean privateResponse = context.getCurrentUser() != null || context.getSpecialGroups().length > 0;
+
+            ResponseBuilder notModified = evaluatePreconditions(conditionalRequest, lastModified, eTag);
+            if (notModified != null)
+            {
+                log.trace("Bitstream(id=" + bitstreamId + ") was not modified.");
+                response = addCacheHeaders(notModified, lastModified, eTag, privateResponse).build();
+                context.complete();
+                return response;
+            }
+
+            List<ByteRangeOutput.Range> ranges = null;
+            String range = headers.getRequestHeaders().getFirst("Range");
+            if (range != null && isRangeCurrent(headers.getRequestHeaders().getFirst("If-Range"), lastModified, eTag))
+            {
+                ranges = ByteRangeOutput.parseRanges(range, size, MAX_RANGES);
+                if (ranges != null && ranges.isEmpty())
+                {
+                    response = Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header("Content-Range", "bytes */" + size).build();
+                    context.complete();
+                    return response;
+                }
+            }
+
+            // a resumed download is counted once, by the request for its first byte
+            if (ranges == null || ranges.get(0).getStart() == 0)
+            {
+                writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
+                        request, context);
+            }
 
             log.trace("Bitsream(id=" + bitstreamId + ") data was successfully read.");
-            inputStream = dspaceBitstream.retrieve();
-            type = dspaceBitstream.getFormat().getMIMEType();
+            InputStream inputStream = file == null ? dspaceBitstream.retrieve() : null;
+            ByteRangeOutput output = new ByteRangeOutput(file, inputStream, size, ranges, type);
+
+            ResponseBuilder builder;
+            if (ranges == null)
+            {
+                builder = Response.ok(output).type(type);
+            }
+            else if (output.isMultipart())
+            {
+                builder = Response.status(PARTIAL_CONTENT).entity(output).type(output.getMultipartType());
+            }
+            else
+            {
+                builder = Response.status(PARTIAL_CONTENT).entity(output).type(type)
+                        .header("Content-Range", output.getRange().toContentRange(size));
+            }
+            builder.header("Content-Length", output.getContentLength());
+            response = addCacheHeaders(builder, lastModified, eTag, privateResponse).build();
 
             context.complete();
         }
@@ -359,7 +440,99 @@ public class BitstreamResource extends Resource
             processFinally(context);
         }
 
-        return Response.ok(inputStream).type(type).build();
+        return response;
+    }
+
+    /**
+     * @return the time the file of the bitstream was stored, or the last
+     *         modification of its item if the file is not in a local
+     *         assetstore. Null if neither is known
+     */
+    private Date getLastModified(org.dspace.content.Bitstream bitstream, File file) throws SQLException
+    {
+        if (file != null)
+        {
+            return new Date(file.lastModified());
+        }
+        org.dspace.content.DSpaceObject parent = bitstream.getParentObject();
+        if (parent instanceof org.dspace.content.Item)
+        {
+            return ((org.dspace.content.Item) parent).getLastModified();
+        }
+        return null;
+    }
+
+    /**
+     * @return the response to a conditional request for an unchanged
+     *         bitstream, null if the bitstream has to be sent
+     */
+    private ResponseBuilder evaluatePreconditions(Request conditionalRequest, Date lastModified, EntityTag eTag)
+    {
+        if (lastModified != null && eTag != null)
+        {
+            return conditionalRequest.evaluatePreconditions(lastModified, eTag);
+        }
+        else if (lastModified != null)
+        {
+            return conditionalRequest.evaluatePreconditions(lastModified);
+        }
+        else if (eTag != null)
+        {
+            return conditionalRequest.evaluatePreconditions(eTag);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the Range header applies, which is the case unless the
+     *         If-Range header names another version of the bitstream
+     */
+    private boolean isRangeCurrent(String ifRange, Date lastModified, EntityTag eTag)
+    {
+        if (ifRange == null)
+        {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+        {
+            // only a strong validator can be used for ranges
+            return eTag != null && ifRange.equals("\"" + eTag.getValue() + "\"");
+        }
+        if (lastModified == null)
+        {
+            return false;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try
+        {
+            return format.parse(ifRange).getTime() == lastModified.getTime() / 1000 * 1000;
+        }
+        catch (ParseException e)
+        {
+            return false;
+        }
+    }
+
+    private ResponseBuilder addCacheHeaders(ResponseBuilder builder, Date lastModified, EntityTag eTag, boolean privateResponse)
+    {
+        builder.header("Accept-Ranges", "bytes");
+        if (lastModified != null)
+        {
+            builder.lastModified(lastModified);
+        }
+        if (eTag != null)
+        {
+            builder.tag(eTag);
+        }
+        if (privateResponse)
+        {
+            CacheControl cacheControl = new CacheControl();
+            cacheControl.setPrivate(true);
+            builder.cacheControl(cacheControl);
+        }
+        return builder;
     }
 
     /**
@@ -834,6 +1007,7 @@ public class BitstreamResource extends Resource
         dspacePolicy.setRpName(policy.getRpName());
 
         dspacePolicy.update();
+        AuthorizeManager.clearAuthorizationCache(context);
         dspaceBitstream.updateLastModified();
     }
 
@@ -0,0 +1,377 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes a whole bitstream or some byte ranges of it. A file in a local
+ * assetstore is read through a FileChannel at the position of every range,
+ * other stores are read from a stream by skipping to the ranges, which are
+ * sorted for that purpose. More than one range is written as a
+ * multipart/byteranges body.
+ */
+public class ByteRangeOutput implements StreamingOutput
+{
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final InputStream stream;
+    private final long size;
+    private final List<Range> ranges;
+    private final String boundary;
+    private final List<byte[]> partHeaders = new ArrayList<byte[]>();
+    private final byte[] closingBoundary;
+
+    /**
+     * @param file
+     *            the file of the bitstream in a local assetstore, null to read
+     *            the stream
+     * @param stream
+     *            the content of the bitstream, used if there is no file
+     * @param size
+     *            the size of the bitstream
+     * @param ranges
+     *            the ranges to write, null or empty for the whole bitstream
+     * @param type
+     *            the MIME type of the bitstream, repeated in every part of a
+     *            multipart body
+     */
+    public ByteRangeOutput(File file, InputStream stream, long size, List<Range> ranges, String type)
+    {
+        this.file = file;
+        this.stream = stream;
+        this.size = size;
+        this.ranges = ranges == null || ranges.isEmpty()
+                ? Collections.singletonList(new Range(0, size - 1)) : ranges;
+
+        if (this.ranges.size() > 1)
+        {
+            boundary = UUID.randomUUID().toString().replace("-", "");
+            for (Range range : this.ranges)
+            {
+                partHeaders.add(("\r\n--" + boundary + "\r\nContent-Type: " + type + "\r\nContent-Range: "
+                        + range.toContentRange(size) + "\r\n\r\n").getBytes(ASCII));
+            }
+            closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(ASCII);
+        }
+        else
+        {
+            boundary = null;
+            closingBoundary = null;
+        }
+    }
+
+    /**
+     * @return whether the body is a multipart/byteranges body
+     */
+    public boolean isMultipart()
+    {
+        return boundary != null;
+    }
+
+    /**
+     * @return the Content-Type of a multipart body
+     */
+    public String getMultipartType()
+    {
+        return "multipart/byteranges; boundary=" + boundary;
+    }
+
+    /**
+     * @return the single range to write
+     */
+    public Range getRange()
+    {
+        return ranges.get(0);
+    }
+
+    /**
+     * @return the number of bytes of the body
+     */
+    public long getContentLength()
+    {
+        long length = 0;
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            length += ranges.get(i).getLength();
+            if (isMultipart())
+            {
+                length += partHeaders.get(i).length;
+            }
+        }
+        return isMultipart() ? length + closingBoundary.length : length;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        if (file != null)
+        {
+            FileChannel channel = new FileInputStream(file).getChannel();
+            try
+            {
+                // not closed, closing the channel would close the response
+                WritableByteChannel target = Channels.newChannel(output);
+                for (int i = 0; i < ranges.size(); i++)
+                {
+                    writePartHeader(output, i);
+                    transfer(channel, target, ranges.get(i));
+                }
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        else
+        {
+            try
+            {
+                long position = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int i = 0; i < ranges.size(); i++)
+                {
+                    writePartHeader(output, i);
+                    position = copy(stream, output, ranges.get(i), position, buffer);
+                }
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+
+        if (isMultipart())
+        {
+            output.write(closingBoundary);
+        }
+        output.flush();
+    }
+
+    private void writePartHeader(OutputStream output, int part) throws IOException
+    {
+        if (isMultipart())
+        {
+            output.write(partHeaders.get(part));
+        }
+    }
+
+    private void transfer(FileChannel channel, WritableByteChannel target, Range range) throws IOException
+    {
+        long position = range.getStart();
+        long remaining = range.getLength();
+        while (remaining > 0)
+        {
+            long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0)
+            {
+                throw new EOFException("The file " + file + " ends before byte " + position);
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * @return the position in the stream after the range
+     */
+    private long copy(InputStream input, OutputStream output, Range range, long position, byte[] buffer)
+            throws IOException
+    {
+        while (position < range.getStart())
+        {
+            long skipped = input.skip(range.getStart() - position);
+            if (skipped <= 0)
+            {
+                // skip may give up before the end of the stream, read a byte to find out
+                if (input.read() < 0)
+                {
+                    throw new EOFException("The bitstream ends before byte " + range.getStart());
+                }
+                skipped = 1;
+            }
+            position += skipped;
+        }
+
+        long remaining = range.getLength();
+        while (remaining > 0)
+        {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0)
+            {
+                throw new EOFException("The bitstream ends before byte " + (range.getEnd() + 1));
+            }
+            output.write(buffer, 0, read);
+            remaining -= read;
+            position += read;
+        }
+        return position;
+    }
+
+    /**
+     * Parse the value of a Range header.
+     *
+     * @param header
+     *            the Range header
+     * @param size
+     *            the size of the bitstream
+     * @param maxRanges
+     *            the maximum number of ranges, a request for more ranges is
+     *            answered with the whole bitstream
+     * @return the requested ranges sorted by position with overlapping and
+     *         adjacent ranges merged, null if the header is malformed and has
+     *         to be ignored, an empty list if none of the ranges can be
+     *         satisfied
+     */
+    public static List<Range> parseRanges(String header, long size, int maxRanges)
+    {
+        if (header == null || !header.trim().startsWith("bytes="))
+        {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<Range>();
+        String[] specs = header.trim().substring("bytes=".length()).split(",");
+        if (specs.length > maxRanges)
+        {
+            return null;
+        }
+        for (String spec : specs)
+        {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0)
+            {
+                return null;
+            }
+            try
+            {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty())
+                {
+                    // the last bytes of the bitstream
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0)
+                    {
+                        return null;
+                    }
+                    start = Math.max(0, size - suffix);
+                    end = size - 1;
+                    if (suffix == 0)
+                    {
+                        continue;
+                    }
+                }
+                else
+                {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                    if (!last.isEmpty() && Long.parseLong(last) < start)
+                    {
+                        return null;
+                    }
+                }
+                if (start < 0)
+                {
+                    return null;
+                }
+                if (start < size)
+                {
+                    ranges.add(new Range(start, end));
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                return null;
+            }
+        }
+
+        Collections.sort(ranges, new Comparator<Range>()
+        {
+            @Override
+            public int compare(Range a, Range b)
+            {
+                return a.getStart() < b.getStart() ? -1 : (a.getStart() == b.getStart() ? 0 : 1);
+            }
+        });
+        List<Range> merged = new ArrayList<Range>();
+        for (Range range : ranges)
+        {
+            Range previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && range.getStart() <= previous.getEnd() + 1)
+            {
+                merged.set(merged.size() - 1, new Range(previous.getStart(), Math.max(previous.getEnd(), range.getEnd())));
+            }
+            else
+            {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * A range of bytes, both positions inclusive.
+     */
+    public static class Range
+    {
+        private final long start;
+        private final long end;
+
+        public Range(long start, long end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart()
+        {
+            return start;
+        }
+
+        public long getEnd()
+        {
+            return end;
+        }
+
+        public long getLength()
+        {
+            return end - start + 1;
+        }
+
+        /**
+         * @return the value of the Content-Range header of this range
+         */
+        public String toContentRange(long size)
+        {
+            return "bytes " + start + "-" + end + "/" + size;
+        }
+    }
+}
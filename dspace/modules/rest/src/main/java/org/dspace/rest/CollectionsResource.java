@@ -27,6 +27,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -259,7 +260,7 @@ public class CollectionsResource extends Resource
             response = org.dspace.rest.common.Item[].class
     )
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public Item[] getCollectionItems(
+    public Response getCollectionItems(
             @ApiParam( value = "The identifier of the collection.", required = true )
             @PathParam("collection_id") Integer collectionId,
 
@@ -267,17 +268,19 @@ public class CollectionsResource extends Resource
             @QueryParam("expand") String expand,
 
             @ApiParam( value = "The maximum amount of items shown.", required = false)
-            @QueryParam("limit") @DefaultValue("100") Integer limit,
+            @QueryParam("limit") @DefaultValue("100") final Integer limit,
 
             @ApiParam( value = "The amount of items to skip.", required = false)
-            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
-            @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
+            @QueryParam("offset") @DefaultValue("0") final Integer offset, @QueryParam("userIP") final String user_ip,
+            @QueryParam("userAgent") final String user_agent, @QueryParam("xforwardedfor") final String xforwardedfor,
+            @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+            @Context Providers providers) throws WebApplicationException
     {
 
         log.info("Reading collection(id=" + collectionId + ") items.");
         org.dspace.core.Context context = null;
-        List<Item> items = null;
+        MediaType mediaType = ItemListOutput.selectMediaType(headers);
+        ItemListOutput output = null;
 
         try
         {
@@ -287,26 +290,50 @@ public class CollectionsResource extends Resource
             writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
                     headers, request, context);
 
-            items = new ArrayList<Item>();
-            org.dspace.content.ItemIterator dspaceItems = dspaceCollection.getItems();
-            for (int i = 0; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
+            if ("HEAD".equals(request.getMethod()))
+            {
+                context.complete();
+                return Response.ok().type(mediaType).build();
+            }
+
+            final org.dspace.core.Context itemContext = context;
+            final org.dspace.content.ItemIterator dspaceItems = dspaceCollection.getItems();
+            output = new ItemListOutput(itemContext, expand, mediaType, providers)
             {
-                if (i >= offset)
+                private int i = 0;
+
+                @Override
+                protected org.dspace.content.Item nextItem() throws SQLException
                 {
-                    org.dspace.content.Item dspaceItem = dspaceItems.next();
-                    if (ItemService.isItemListedForUser(context, dspaceItem))
+                    for (; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
                     {
-                        items.add(new Item(dspaceItem, expand, context));
-                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                                headers, request, context);
+                        if (i >= offset)
+                        {
+                            org.dspace.content.Item dspaceItem = dspaceItems.next();
+                            if (ItemService.isItemListedForUser(itemContext, dspaceItem))
+                            {
+                                i++;
+                                return dspaceItem;
+                            }
+                        } else {
+                            //Advance the iterator to offset.
+                            dspaceItems.nextID();
+                        }
                     }
-                } else {
-                    //Advance the iterator to offset.
-                    dspaceItems.nextID();
+                    dspaceItems.close();
+                    return null;
                 }
-            }
 
-            context.complete();
+                @Override
+                protected void itemWritten(org.dspace.content.Item dspaceItem)
+                {
+                    writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                            headers, request, itemContext);
+                }
+            };
+
+            // the items are read while they are written, the output completes the context
+            context = null;
         }
         catch (SQLException e)
         {
@@ -321,8 +348,7 @@ public class CollectionsResource extends Resource
             processFinally(context);
         }
 
-        log.trace("All items in collection(id=" + collectionId + ") were successfully read.");
-        return items.toArray(new Item[0]);
+        return Response.ok(output, mediaType).build();
     }
 
     /**
@@ -0,0 +1,209 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import com.sun.jersey.core.header.OutBoundHeaders;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.log4j.Logger;
+import org.dspace.rest.common.Item;
+import org.dspace.rest.common.ItemExpansion;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a list of items while the items are read, instead of building the
+ * whole list first. The items are read in chunks, the expanded fields of a
+ * chunk are loaded together by an {@link ItemExpansion}. Every item is
+ * converted, written and removed from the cache of the context before the
+ * next chunk is read, so the memory used does not grow with the number of
+ * items.
+ * <p>
+ * The JSON is written by the JSON provider of Jersey one item at a time, the
+ * XML is written with the items element Jersey uses for lists. The output
+ * completes the context once all items are written, or aborts it when the
+ * writing fails.
+ */
+public abstract class ItemListOutput implements StreamingOutput
+{
+    private static final Logger log = Logger.getLogger(ItemListOutput.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    /**
+     * The number of items whose expanded fields are loaded together.
+     */
+    private static final int CHUNK_SIZE = 100;
+
+    private static JAXBContext jaxbContext;
+
+    private final org.dspace.core.Context context;
+    private final ItemExpansion expansion;
+    private final MediaType mediaType;
+    private final Providers providers;
+
+    /**
+     * @param context
+     *            the context to read the items with, completed by this output
+     * @param expand
+     *            the expand parameter of the items
+     * @param mediaType
+     *            the media type to write, see {@link #selectMediaType(HttpHeaders)}
+     * @param providers
+     *            the providers of the request, for the JSON provider
+     */
+    protected ItemListOutput(org.dspace.core.Context context, String expand, MediaType mediaType, Providers providers)
+    {
+        this.context = context;
+        this.expansion = new ItemExpansion(expand, context);
+        this.mediaType = mediaType;
+        this.providers = providers;
+    }
+
+    /**
+     * @return the next item to write, null after the last item
+     */
+    protected abstract org.dspace.content.Item nextItem() throws SQLException;
+
+    /**
+     * Called after an item was written, e.g. to record a usage event.
+     */
+    protected void itemWritten(org.dspace.content.Item item)
+    {
+    }
+
+    /**
+     * @return JSON or XML, whichever the client prefers. JSON if the client
+     *         accepts anything
+     */
+    public static MediaType selectMediaType(HttpHeaders headers)
+    {
+        for (MediaType acceptable : headers.getAcceptableMediaTypes())
+        {
+            if (acceptable.isCompatible(MediaType.APPLICATION_JSON_TYPE))
+            {
+                return MediaType.APPLICATION_JSON_TYPE;
+            }
+            if (acceptable.isCompatible(MediaType.APPLICATION_XML_TYPE))
+            {
+                return MediaType.APPLICATION_XML_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+        // the providers and marshallers must not close the response between the items
+        OutputStream itemOutput = new CloseShieldOutputStream(output);
+        boolean json = !MediaType.APPLICATION_XML_TYPE.isCompatible(mediaType);
+        int count = 0;
+
+        try
+        {
+            MessageBodyWriter<Item> jsonWriter = null;
+            Marshaller marshaller = null;
+            if (json)
+            {
+                jsonWriter = providers.getMessageBodyWriter(Item.class, Item.class, NO_ANNOTATIONS, mediaType);
+                output.write('[');
+            }
+            else
+            {
+                marshaller = getJaxbContext().createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+                marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+                output.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><items>".getBytes(UTF8));
+            }
+
+            List<org.dspace.content.Item> chunk = new ArrayList<org.dspace.content.Item>(CHUNK_SIZE);
+            boolean more = true;
+            while (more)
+            {
+                org.dspace.content.Item next = null;
+                while (chunk.size() < CHUNK_SIZE && (next = nextItem()) != null)
+                {
+                    chunk.add(next);
+                }
+                more = next != null;
+                expansion.load(chunk);
+
+                for (org.dspace.content.Item dspaceItem : chunk)
+                {
+                    Item item = new Item(dspaceItem, expansion);
+                    if (json)
+                    {
+                        if (count > 0)
+                        {
+                            output.write(',');
+                        }
+                        jsonWriter.writeTo(item, Item.class, Item.class, NO_ANNOTATIONS, mediaType,
+                                new OutBoundHeaders(), itemOutput);
+                    }
+                    else
+                    {
+                        marshaller.marshal(item, itemOutput);
+                    }
+                    count++;
+
+                    itemWritten(dspaceItem);
+                    context.removeCached(dspaceItem, dspaceItem.getID());
+                }
+                chunk.clear();
+            }
+
+            output.write(json ? "]".getBytes(UTF8) : "</items>".getBytes(UTF8));
+            output.flush();
+            context.complete();
+            log.trace(count + " items were written.");
+        }
+        catch (SQLException e)
+        {
+            log.error("Could not read the items after " + count + " items, SQLException. Message: " + e, e);
+            throw new WebApplicationException(e);
+        }
+        catch (JAXBException e)
+        {
+            log.error("Could not write the items after " + count + " items, JAXBException. Message: " + e, e);
+            throw new WebApplicationException(e);
+        }
+        finally
+        {
+            if (context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException
+    {
+        if (jaxbContext == null)
+        {
+            jaxbContext = JAXBContext.newInstance(Item.class);
+        }
+        return jaxbContext;
+    }
+}
@@ -25,6 +25,7 @@ import org.dspace.eperson.Group;
 import org.dspace.handle.HandleManager;
 import org.dspace.rest.common.Bitstream;
 import org.dspace.rest.common.Item;
+import org.dspace.rest.common.ItemExpansion;
 import org.dspace.rest.common.MetadataEntry;
 import org.dspace.rest.exceptions.ContextException;
 import org.dspace.storage.rdbms.TableRow;
@@ -40,6 +41,7 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Providers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -156,8 +158,10 @@ public class ItemsResource extends Resource {
             } else {
                 if (items.size() >= 1) {
                     Item[] returnItems = new Item[items.size()];
+                    ItemExpansion expansion = new ItemExpansion(expand, context);
+                    expansion.load(items);
                     for (int i = 0; i < items.size(); i++) {
-                        returnItems[i] = new Item(items.get(i), expand, context);
+                        returnItems[i] = new Item(items.get(i), expansion);
                         writeStats(items.get(i), UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers, request, context);
                     }
 
@@ -194,6 +198,9 @@ public class ItemsResource extends Resource {
      *
      * @param limit   How many items in array will be. Default value is 100.
      * @param offset  On which index will array start. Default value is 0.
+     * @param cursor  The cursor of the page instead of the offset, "*" for the
+     *                first page. The cursor of the next page is returned in the
+     *                X-Next-Cursor header.
      * @param headers If you want to access to item under logged user into context.
      *                In headers must be set header "rest-dspace-token" with passed
      *                token from login method.
@@ -218,15 +225,19 @@ public class ItemsResource extends Resource {
             @ApiParam(value = "The amount of items to skip.", required = false)
             @QueryParam("offset") @DefaultValue("0") Integer offset,
 
+            @ApiParam(value = "The cursor of the page, \"*\" for the first page. The cursor of the next page is returned in the " + SearchResource.NEXT_CURSOR_HEADER + " header. Replaces the offset.", required = false)
+            @QueryParam("cursor") String cursor,
+
             @QueryParam("userIP") String user_ip,
             @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException {
+            @Context HttpHeaders headers, @Context HttpServletRequest request,
+            @Context Providers providers) throws WebApplicationException {
 
         log.info("Reading items.(offset=" + offset + ",limit=" + limit + ").");
 
         try {
             SearchResource searchResource = new SearchResource();
-            return searchResource.searchItems("*:*", expand, limit, offset, "dc.date.accessioned", null, "asc", user_ip, user_agent, xforwardedfor, headers, request);
+            return searchResource.searchItems("*:*", expand, limit, offset, cursor, "dc.date.accessioned", null, "asc", user_ip, user_agent, xforwardedfor, headers, request, providers);
         } catch (Exception ex) {
             log.error(ex.getMessage());
             return Response.status(Response.Status.BAD_REQUEST).entity(ex.getMessage()).build();
@@ -558,6 +569,7 @@ public class ItemsResource extends Resource {
                     }
 
                     dspacePolicy.update();
+                    AuthorizeManager.clearAuthorizationCache(context);
                     dspaceBitstream.updateLastModified();
                 }
             }
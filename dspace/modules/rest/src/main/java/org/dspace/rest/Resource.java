@@ -50,9 +50,11 @@ public class Resource
     private static Logger log = Logger.getLogger(Resource.class);
 
     private static final boolean writeStatistics;
+    private static final boolean writeStatisticsAsync;
     static
     {
         writeStatistics = ConfigurationManager.getBooleanProperty("rest", "stats", false);
+        writeStatisticsAsync = ConfigurationManager.getBooleanProperty("rest", "stats.async", true);
     }
 
     static public String getServletContextPath() {
@@ -112,7 +114,9 @@ public class Resource
     }
 
     /**
-     * Records a statistics event about an object used via REST API.
+     * Records a statistics event about an object used via REST API. Unless
+     * rest.stats.async is false, the event is queued and fired by the
+     * {@link UsageEventQueue}, so the request does not wait for it.
      * @param dspaceObject
      *            DSpace object on which a request was performed.
      * @param action
@@ -132,6 +136,25 @@ public class Resource
             return;
         }
 
+        // no queue once the webapp stops, the event is fired below then
+        UsageEventQueue queue = writeStatisticsAsync ? UsageEventQueue.getInstance() : null;
+        if (queue != null)
+        {
+            if ((user_ip == null) || (user_ip.length() == 0))
+            {
+                // the request is recycled before the event is written
+                queue.offer(action, dspaceObject, request.getRemoteAddr(),
+                        request.getHeader("User-Agent"), request.getHeader("X-Forwarded-For"), context.getCurrentUser());
+            }
+            else
+            {
+                queue.offer(action, dspaceObject, user_ip, user_agent, xforwardedfor,
+                        context.getCurrentUser());
+            }
+            log.debug("queued event");
+            return;
+        }
+
         if ((user_ip == null) || (user_ip.length() == 0))
         {
             new DSpace().getEventService().fireEvent(new UsageEvent(action, request, context, dspaceObject));
@@ -14,10 +14,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
+import org.dspace.discovery.CursorDiscoverResult;
 import org.dspace.discovery.DiscoverQuery;
 import org.dspace.discovery.DiscoverResult;
 import org.dspace.discovery.SearchService;
 import org.dspace.discovery.SearchUtils;
+import org.dspace.discovery.SolrServiceImpl;
 import org.dspace.discovery.configuration.DiscoveryConfiguration;
 import org.dspace.discovery.configuration.DiscoveryConfigurationParameters;
 import org.dspace.discovery.configuration.DiscoverySortConfiguration;
@@ -28,9 +30,9 @@ import org.dspace.usage.UsageEvent;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
-import java.util.ArrayList;
+import javax.ws.rs.ext.Providers;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 
 @Path("/search")
@@ -42,6 +44,11 @@ public class SearchResource extends Resource {
     /** log4j category */
     private static final Logger log = Logger.getLogger(SearchResource.class);
 
+    /**
+     * The response header with the cursor of the next page, missing after the last page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private org.dspace.core.Context context;
 
     /**
@@ -71,6 +78,8 @@ public class SearchResource extends Resource {
             @QueryParam("limit") int limit,
             @ApiParam(value = "The amount of items to skip.", required = false)
             @QueryParam("offset") int offset,
+            @ApiParam(value = "The cursor of the page, \"*\" for the first page. The cursor of the next page is returned in the " + NEXT_CURSOR_HEADER + " header. Replaces the offset.", required = false)
+            @QueryParam("cursor") String cursor,
             @ApiParam(value = "The field by which the result should be sorted.", required = false)
             @QueryParam("sort-by") String sortBy,
             @ApiParam(value = "A field to limit the search to certain collections/communities.", required = false)
@@ -78,9 +87,10 @@ public class SearchResource extends Resource {
             @ApiParam(value = "The ordering of the results.", required = false, allowableValues = "asc,desc")
             @QueryParam("order") String order,
 
-            @QueryParam("userIP") String user_ip,
-            @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
-            @Context HttpHeaders headers, @Context HttpServletRequest request)
+            @QueryParam("userIP") final String user_ip,
+            @QueryParam("userAgent") final String user_agent, @QueryParam("xforwardedfor") final String xforwardedfor,
+            @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+            @Context Providers providers)
             throws WebApplicationException, Exception {
 
         // get the context user.
@@ -112,8 +122,14 @@ public class SearchResource extends Resource {
 
         dq.setStart(offset);
 
+        if (StringUtils.isNotBlank(cursor)) {
+            // pages deep in the results cost the same as the first page, unlike an offset
+            dq.addProperty(SolrServiceImpl.CURSOR_MARK_PROPERTY, cursor);
+        }
+
 
         Response response;
+        boolean streaming = false;
         try {
             if (StringUtils.isNotBlank(scope)) {
                 scopeObject = getScope(scope);
@@ -130,27 +146,46 @@ public class SearchResource extends Resource {
             DiscoverResult result = scopeObject == null ? searchService.search(context, dq) : searchService.search(context, scopeObject, dq);
 
 
-            List<DSpaceObject> dspaceObjects = result.getDspaceObjects();
-
-            List<org.dspace.rest.common.Item> toReturn = new ArrayList<org.dspace.rest.common.Item>();
-            for (DSpaceObject obj : dspaceObjects) {
-                Item it = (Item) obj;
-                toReturn.add(new org.dspace.rest.common.Item(it, cleanExpand, context));
-
-                writeStats(it, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                        headers, request, context);
+            MediaType mediaType = ItemListOutput.selectMediaType(headers);
+            String nextCursor = null;
+            if (result instanceof CursorDiscoverResult && ((CursorDiscoverResult) result).hasNextPage()) {
+                nextCursor = ((CursorDiscoverResult) result).getNextCursorMark();
             }
+            if ("HEAD".equals(request.getMethod())) {
+                return Response.ok().type(mediaType).header(NEXT_CURSOR_HEADER, nextCursor).build();
+            }
+
+            final Iterator<DSpaceObject> dspaceObjects = result.getDspaceObjects().iterator();
+            ItemListOutput output = new ItemListOutput(context, cleanExpand, mediaType, providers) {
+                @Override
+                protected Item nextItem() {
+                    if (!dspaceObjects.hasNext()) {
+                        return null;
+                    }
+                    Item it = (Item) dspaceObjects.next();
+                    // the page is only referenced here, let the written items go
+                    dspaceObjects.remove();
+                    return it;
+                }
 
-            GenericEntity<List<org.dspace.rest.common.Item>> entity = new GenericEntity<List<org.dspace.rest.common.Item>>(toReturn) {
+                @Override
+                protected void itemWritten(Item it) {
+                    writeStats(it, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                            headers, request, context);
+                }
             };
 
-            response = Response.ok(entity).build();
+            response = Response.ok(output, mediaType).header(NEXT_CURSOR_HEADER, nextCursor).build();
+            // the items are converted while they are written, the output completes the context
+            streaming = true;
 
         } catch (Exception ex) {
             log.error(ex.getMessage());
             response = Response.status(Response.Status.BAD_REQUEST).entity(ex.getMessage()).build();
         } finally {
-            context.complete();
+            if (!streaming) {
+                context.complete();
+            }
         }
 
         return response;
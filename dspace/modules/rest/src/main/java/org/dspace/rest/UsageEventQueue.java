@@ -0,0 +1,353 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import org.apache.log4j.Logger;
+import org.dspace.content.DSpaceObject;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.eperson.EPerson;
+import org.dspace.services.EventService;
+import org.dspace.usage.UsageEvent;
+import org.dspace.utils.DSpace;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires the usage events of the REST API from a background thread, so a
+ * response does not wait for the statistics to be written.
+ * <p>
+ * A request only adds the event to a bounded queue without locking. The
+ * writer thread waits until a batch is full or the flush interval has passed
+ * since the last write, and fires the batch with one context, in which the
+ * object and the user of every event are found again because the context of
+ * the request is closed by then. When more than
+ * <code>stats.queue.sample-above</code> events are queued only one in
+ * <code>stats.queue.sample-rate</code> events is kept, when the queue is full
+ * the events are dropped. Both are counted and logged.
+ */
+public class UsageEventQueue
+{
+    private static final Logger log = Logger.getLogger(UsageEventQueue.class);
+
+    private static UsageEventQueue instance;
+
+    /** Set when the webapp stops, no queue is started after that. */
+    private static boolean shutdown;
+
+    private final ConcurrentLinkedQueue<QueuedEvent> queue = new ConcurrentLinkedQueue<QueuedEvent>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int sampleAbove;
+    private final int sampleRate;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private UsageEventQueue(int capacity, int batchSize, long flushIntervalMillis, int sampleAbove, int sampleRate)
+    {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.sampleAbove = sampleAbove;
+        this.sampleRate = Math.max(1, sampleRate);
+
+        writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeEvents();
+            }
+        }, "rest-usage-events");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the queue of the webapp, started on first use. null once the
+     *         webapp stops, the events have to be fired by the caller then
+     */
+    public static synchronized UsageEventQueue getInstance()
+    {
+        if (shutdown)
+        {
+            return null;
+        }
+        if (instance == null)
+        {
+            instance = new UsageEventQueue(
+                    ConfigurationManager.getIntProperty("rest", "stats.queue.capacity", 10000),
+                    ConfigurationManager.getIntProperty("rest", "stats.queue.batch-size", 100),
+                    ConfigurationManager.getIntProperty("rest", "stats.queue.flush-interval", 1000),
+                    ConfigurationManager.getIntProperty("rest", "stats.queue.sample-above", 0),
+                    ConfigurationManager.getIntProperty("rest", "stats.queue.sample-rate", 10));
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a usage event.
+     *
+     * @param action
+     *            the action that was performed
+     * @param dspaceObject
+     *            the object the action was performed on
+     * @param ip
+     *            the IP address of the client
+     * @param userAgent
+     *            the User-Agent of the client
+     * @param xforwardedfor
+     *            the X-Forwarded-For header of the request
+     * @param user
+     *            the logged in user, may be null
+     * @return whether the event was queued, false if it was sampled out or
+     *         dropped
+     */
+    public boolean offer(UsageEvent.Action action, DSpaceObject dspaceObject, String ip, String userAgent,
+            String xforwardedfor, EPerson user)
+    {
+        if (!running)
+        {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        if (sampleAbove > 0 && size.get() > sampleAbove
+                && sampleCounter.incrementAndGet() % sampleRate != 0)
+        {
+            if (sampledOut.incrementAndGet() % 1000 == 1)
+            {
+                log.warn("More than " + sampleAbove + " usage events are queued, only one in " + sampleRate
+                        + " events is kept. " + getStatistics());
+            }
+            return false;
+        }
+
+        int newSize = size.incrementAndGet();
+        if (newSize > capacity)
+        {
+            size.decrementAndGet();
+            if (dropped.incrementAndGet() % 1000 == 1)
+            {
+                log.warn("The usage event queue is full, usage events are dropped. " + getStatistics());
+            }
+            return false;
+        }
+
+        queue.add(new QueuedEvent(action, dspaceObject.getType(), dspaceObject.getID(), ip, userAgent,
+                xforwardedfor, user == null ? -1 : user.getID()));
+        queued.incrementAndGet();
+        if (newSize == batchSize)
+        {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private void writeEvents()
+    {
+        long flushTime = System.nanoTime() + flushIntervalNanos;
+        while (running || size.get() > 0)
+        {
+            // wait for a full batch, offer() wakes the writer when there is one
+            long wait = flushTime - System.nanoTime();
+            if (running && size.get() < batchSize && wait > 0)
+            {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            List<QueuedEvent> batch = new ArrayList<QueuedEvent>(batchSize);
+            QueuedEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null)
+            {
+                size.decrementAndGet();
+                batch.add(event);
+            }
+            if (!batch.isEmpty())
+            {
+                write(batch);
+            }
+            flushTime = System.nanoTime() + flushIntervalNanos;
+        }
+        log.info("Stopped writing usage events. " + getStatistics());
+    }
+
+    private void write(List<QueuedEvent> batch)
+    {
+        Context context = null;
+        try
+        {
+            context = new Context();
+            EventService eventService = new DSpace().getEventService();
+            for (QueuedEvent event : batch)
+            {
+                try
+                {
+                    DSpaceObject dspaceObject = DSpaceObject.find(context, event.type, event.id);
+                    if (dspaceObject == null)
+                    {
+                        failed.incrementAndGet();
+                        continue;
+                    }
+                    context.setCurrentUser(event.epersonID == -1 ? null : EPerson.find(context, event.epersonID));
+                    eventService.fireEvent(new UsageEvent(event.action, event.ip, event.userAgent,
+                            event.xforwardedfor, context, dspaceObject));
+                    written.incrementAndGet();
+                }
+                catch (SQLException | RuntimeException e)
+                {
+                    failed.incrementAndGet();
+                    log.error("Could not write usage event for object(type=" + event.type + ", id=" + event.id + ")", e);
+                }
+            }
+            context.complete();
+        }
+        catch (SQLException e)
+        {
+            failed.addAndGet(batch.size());
+            log.error("Could not write " + batch.size() + " usage events, SQLException. Message: " + e, e);
+        }
+        finally
+        {
+            if (context != null && context.isValid())
+            {
+                context.abort();
+            }
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Wrote " + batch.size() + " usage events. " + getStatistics());
+        }
+    }
+
+    /**
+     * Stop accepting events and wait for the queued events to be written.
+     */
+    public void shutdown(long timeoutMillis)
+    {
+        running = false;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join(timeoutMillis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getQueued()
+    {
+        return queued.get();
+    }
+
+    public long getSampledOut()
+    {
+        return sampledOut.get();
+    }
+
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    public long getWritten()
+    {
+        return written.get();
+    }
+
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    private String getStatistics()
+    {
+        return "queued=" + queued.get() + ", size=" + size.get() + ", written=" + written.get() + ", failed="
+                + failed.get() + ", sampledOut=" + sampledOut.get() + ", dropped=" + dropped.get();
+    }
+
+    /**
+     * Writes the queued events when the webapp stops. Listed after the DSpace
+     * kernel listener in web.xml, so it is called while the kernel still runs.
+     */
+    public static class ShutdownListener implements ServletContextListener
+    {
+        @Override
+        public void contextInitialized(ServletContextEvent event)
+        {
+        }
+
+        @Override
+        public void contextDestroyed(ServletContextEvent event)
+        {
+            UsageEventQueue queue;
+            synchronized (UsageEventQueue.class)
+            {
+                queue = instance;
+                instance = null;
+                shutdown = true;
+            }
+            if (queue != null)
+            {
+                queue.shutdown(ConfigurationManager.getIntProperty("rest", "stats.queue.shutdown-timeout", 10000));
+            }
+        }
+    }
+
+    private static class QueuedEvent
+    {
+        private final UsageEvent.Action action;
+        private final int type;
+        private final int id;
+        private final String ip;
+        private final String userAgent;
+        private final String xforwardedfor;
+        private final int epersonID;
+
+        private QueuedEvent(UsageEvent.Action action, int type, int id, String ip, String userAgent,
+                String xforwardedfor, int epersonID)
+        {
+            this.action = action;
+            this.type = type;
+            this.id = id;
+            this.ip = ip;
+            this.userAgent = userAgent;
+            this.xforwardedfor = xforwardedfor;
+            this.epersonID = epersonID;
+        }
+    }
+}
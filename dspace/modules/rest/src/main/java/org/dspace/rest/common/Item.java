@@ -7,22 +7,14 @@
  */
 package org.dspace.rest.common;
 
-import com.atmire.objectmanager.MetaDatumEnricherApplier;
 import org.apache.log4j.Logger;
-import org.dspace.app.util.MetadataExposure;
-import org.dspace.authorize.AuthorizeManager;
-import org.dspace.content.Bundle;
-import org.dspace.content.Metadatum;
 import org.dspace.core.Context;
-import org.dspace.utils.DSpace;
 
 import javax.ws.rs.WebApplicationException;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -50,78 +42,15 @@ public class Item extends DSpaceObject {
     public Item(){}
 
     public Item(org.dspace.content.Item item, String expand, Context context) throws SQLException, WebApplicationException{
+        this(item, new ItemExpansion(expand, context));
+    }
+
+    /**
+     * @param expansion the expansion shared by the items of a page, see {@link ItemExpansion#load(java.util.List)}
+     */
+    public Item(org.dspace.content.Item item, ItemExpansion expansion) throws SQLException, WebApplicationException{
         super(item);
-        setup(item, expand, context);
-    }
-
-    private void setup(org.dspace.content.Item item, String expand, Context context) throws SQLException{
-        List<String> expandFields = new ArrayList<String>();
-        if(expand != null) {
-            expandFields = Arrays.asList(expand.split(","));
-        }
-
-        if(expandFields.contains("metadata") || expandFields.contains("all")) {
-            metadata = new ArrayList<>();
-            MetaDatumEnricherApplier metaDatumEnricherApplier = new DSpace().getServiceManager().getServiceByName(MetaDatumEnricherApplier.class.getSimpleName(), MetaDatumEnricherApplier.class);
-            Metadatum[] dcvs = metaDatumEnricherApplier.enrichMetaData(item, context);
-            for (Metadatum dcv : dcvs) {
-                if (!MetadataExposure.isHidden(context, dcv.schema, dcv.element, dcv.qualifier)) {
-                    metadata.add(new MetadataEntry(dcv.getField(), dcv.value, dcv.language));
-                }
-            }
-        } else {
-            this.addExpand("metadata");
-        }
-
-        this.setArchived(Boolean.toString(item.isArchived()));
-        this.setWithdrawn(Boolean.toString(item.isWithdrawn()));
-        this.setLastModified(item.getLastModified().toString());
-
-        if(expandFields.contains("parentCollection") || expandFields.contains("all")) {
-            this.parentCollection = new Collection(item.getOwningCollection(), null, context, null, null);
-        } else {
-            this.addExpand("parentCollection");
-        }
-
-        if(expandFields.contains("parentCollectionList") || expandFields.contains("all")) {
-            this.parentCollectionList = new ArrayList<Collection>();
-            org.dspace.content.Collection[] collections = item.getCollections();
-            for(org.dspace.content.Collection collection : collections) {
-                this.parentCollectionList.add(new Collection(collection, null, context, null, null));
-            }
-        } else {
-            this.addExpand("parentCollectionList");
-        }
-
-        if(expandFields.contains("parentCommunityList") || expandFields.contains("all")) {
-            this.parentCommunityList = new ArrayList<Community>();
-            org.dspace.content.Community[] communities = item.getCommunities();
-            for(org.dspace.content.Community community : communities) {
-                this.parentCommunityList.add(new Community(community, null, context));
-            }
-        } else {
-            this.addExpand("parentCommunityList");
-        }
-
-        //TODO: paging - offset, limit
-        if(expandFields.contains("bitstreams") || expandFields.contains("all")) {
-            bitstreams = new ArrayList<Bitstream>();
-            Bundle[] bundles = item.getBundles();
-            for(Bundle bundle : bundles) {
-                org.dspace.content.Bitstream[] itemBitstreams = bundle.getBitstreams();
-                for(org.dspace.content.Bitstream itemBitstream : itemBitstreams) {
-                    if(AuthorizeManager.authorizeActionBoolean(context, itemBitstream, org.dspace.core.Constants.READ)) {
-                        bitstreams.add(new Bitstream(itemBitstream, null));
-                    }
-                }
-            }
-        } else {
-            this.addExpand("bitstreams");
-        }
-
-        if(!expandFields.contains("all")) {
-            this.addExpand("all");
-        }
+        expansion.setup(this, item);
     }
 
     public String getArchived() {
@@ -0,0 +1,381 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest.common;
+
+import com.atmire.objectmanager.MetaDatumEnricherApplier;
+import org.apache.log4j.Logger;
+import org.dspace.app.util.MetadataExposure;
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bundle;
+import org.dspace.content.MetadataField;
+import org.dspace.content.MetadataSchema;
+import org.dspace.content.Metadatum;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+import org.dspace.utils.DSpace;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands the items of a page together. The expand parameter is parsed once, the metadata, parent collections, parent
+ * communities and bundles of all items are read with one query each, the bitstreams are authorized together and every
+ * parent collection and community is converted once per page. The parents of a community are read once.
+ * <p>
+ * Call {@link #load(List)} with the items of a page before converting them with
+ * {@link Item#Item(org.dspace.content.Item, ItemExpansion)}. Items that were not loaded are expanded one by one.
+ */
+public class ItemExpansion {
+    private static final Logger log = Logger.getLogger(ItemExpansion.class);
+
+    /**
+     * The maximum number of item IDs in the IN list of a single query.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private final Context context;
+    private final boolean all;
+    private final boolean metadata;
+    private final boolean parentCollection;
+    private final boolean parentCollectionList;
+    private final boolean parentCommunityList;
+    private final boolean bitstreams;
+
+    private MetaDatumEnricherApplier metaDatumEnricherApplier;
+
+    private final Map<Integer, Collection> collections = new HashMap<>();
+    private final Map<Integer, Community> communities = new HashMap<>();
+    private final Map<Integer, org.dspace.content.Community[]> communityParents = new HashMap<>();
+
+    private final Map<Integer, List<Metadatum>> loadedMetadata = new HashMap<>();
+    private final Map<Integer, List<Integer>> loadedCollectionIDs = new HashMap<>();
+    private final Map<Integer, List<Integer>> loadedCommunityIDs = new HashMap<>();
+    private final Map<Integer, List<org.dspace.content.Bitstream>> loadedBitstreams = new HashMap<>();
+
+    public ItemExpansion(String expand, Context context) {
+        this.context = context;
+
+        List<String> expandFields = new ArrayList<String>();
+        if(expand != null) {
+            expandFields = Arrays.asList(expand.split(","));
+        }
+        all = expandFields.contains("all");
+        metadata = all || expandFields.contains("metadata");
+        parentCollection = all || expandFields.contains("parentCollection");
+        parentCollectionList = all || expandFields.contains("parentCollectionList");
+        parentCommunityList = all || expandFields.contains("parentCommunityList");
+        bitstreams = all || expandFields.contains("bitstreams");
+    }
+
+    /**
+     * Read everything that is expanded for the items at once.
+     */
+    public void load(List<org.dspace.content.Item> items) throws SQLException {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<Integer> itemIDs = new ArrayList<Integer>(items.size());
+        for (org.dspace.content.Item item : items) {
+            itemIDs.add(item.getID());
+        }
+
+        for (int from = 0; from < itemIDs.size(); from += MAX_IDS_PER_QUERY) {
+            List<Integer> chunk = itemIDs.subList(from, Math.min(itemIDs.size(), from + MAX_IDS_PER_QUERY));
+            if (metadata) {
+                loadMetadata(chunk);
+            }
+            if (parentCollectionList) {
+                loadIDs(chunk, "SELECT item_id, collection_id AS parent_id FROM collection2item WHERE item_id IN ",
+                        loadedCollectionIDs);
+            }
+            if (parentCommunityList) {
+                loadIDs(chunk, "SELECT item_id, community_id AS parent_id FROM community2item WHERE item_id IN ",
+                        loadedCommunityIDs);
+            }
+            if (bitstreams) {
+                loadBitstreams(chunk);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + items.size() + " items for expansion (metadata=" + metadata + ", parentCollectionList="
+                    + parentCollectionList + ", parentCommunityList=" + parentCommunityList + ", bitstreams="
+                    + bitstreams + ")");
+        }
+    }
+
+    private void loadMetadata(List<Integer> itemIDs) throws SQLException {
+        for (Integer itemID : itemIDs) {
+            loadedMetadata.put(itemID, new ArrayList<Metadatum>());
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add(Constants.ITEM);
+        parameters.addAll(itemIDs);
+        // the order of DSpaceObject.getMetadata() for every item
+        TableRowIterator tri = DatabaseManager.queryTable(context, "MetadataValue",
+                "SELECT * FROM MetadataValue WHERE resource_type_id = ? AND resource_id IN " + placeholders(itemIDs)
+                        + " ORDER BY resource_id, metadata_field_id, place", parameters.toArray());
+        try {
+            while (tri.hasNext()) {
+                TableRow row = tri.next();
+                MetadataField field = MetadataField.find(context, row.getIntColumn("metadata_field_id"));
+                MetadataSchema schema = field == null ? null : MetadataSchema.find(context, field.getSchemaID());
+                if (schema == null) {
+                    log.error("Loading item - cannot find metadata field or schema "
+                            + row.getIntColumn("metadata_field_id") + " for resourceId=" + row.getIntColumn("resource_id"));
+                    continue;
+                }
+
+                Metadatum dcv = new Metadatum();
+                dcv.schema = schema.getName();
+                dcv.element = field.getElement();
+                dcv.qualifier = field.getQualifier();
+                dcv.value = row.getStringColumn("text_value");
+                dcv.language = row.getStringColumn("text_lang");
+                dcv.authority = row.getStringColumn("authority");
+                dcv.confidence = row.getIntColumn("confidence");
+                loadedMetadata.get(row.getIntColumn("resource_id")).add(dcv);
+            }
+        } finally {
+            tri.close();
+        }
+    }
+
+    private void loadIDs(List<Integer> itemIDs, String query, Map<Integer, List<Integer>> loaded) throws SQLException {
+        for (Integer itemID : itemIDs) {
+            loaded.put(itemID, new ArrayList<Integer>());
+        }
+
+        TableRowIterator tri = DatabaseManager.query(context, query + placeholders(itemIDs), itemIDs.toArray());
+        try {
+            while (tri.hasNext()) {
+                TableRow row = tri.next();
+                loaded.get(row.getIntColumn("item_id")).add(row.getIntColumn("parent_id"));
+            }
+        } finally {
+            tri.close();
+        }
+    }
+
+    private void loadBitstreams(List<Integer> itemIDs) throws SQLException {
+        Map<Integer, List<Integer>> bundleIDs = new HashMap<>();
+        loadIDs(itemIDs, "SELECT item_id, bundle_id AS parent_id FROM item2bundle WHERE item_id IN ", bundleIDs);
+
+        // a bundle reads all its bitstreams with one query
+        List<org.dspace.content.Bitstream> pageBitstreams = new ArrayList<org.dspace.content.Bitstream>();
+        Map<Integer, List<org.dspace.content.Bitstream>> itemBitstreams = new HashMap<>();
+        for (Integer itemID : itemIDs) {
+            List<org.dspace.content.Bitstream> found = new ArrayList<org.dspace.content.Bitstream>();
+            for (Integer bundleID : bundleIDs.get(itemID)) {
+                Bundle bundle = Bundle.find(context, bundleID);
+                if (bundle != null) {
+                    found.addAll(Arrays.asList(bundle.getBitstreams()));
+                }
+            }
+            itemBitstreams.put(itemID, found);
+            pageBitstreams.addAll(found);
+        }
+
+        Set<org.dspace.content.Bitstream> authorized = Collections.newSetFromMap(
+                new IdentityHashMap<org.dspace.content.Bitstream, Boolean>());
+        authorized.addAll(AuthorizeManager.filterAuthorized(context, pageBitstreams, Constants.READ));
+
+        for (Map.Entry<Integer, List<org.dspace.content.Bitstream>> item : itemBitstreams.entrySet()) {
+            List<org.dspace.content.Bitstream> readable = new ArrayList<org.dspace.content.Bitstream>();
+            for (org.dspace.content.Bitstream bitstream : item.getValue()) {
+                if (authorized.contains(bitstream)) {
+                    readable.add(bitstream);
+                }
+            }
+            loadedBitstreams.put(item.getKey(), readable);
+        }
+    }
+
+    private String placeholders(List<Integer> ids) {
+        StringBuilder placeholders = new StringBuilder("(");
+        for (int i = 0; i < ids.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.append(")").toString();
+    }
+
+    /**
+     * Fill the expanded fields of an item, with what was loaded for it if it was loaded. The loaded data of the item
+     * is released.
+     */
+    void setup(Item dto, org.dspace.content.Item item) throws SQLException {
+        int itemID = item.getID();
+
+        if(metadata) {
+            List<MetadataEntry> entries = new ArrayList<>();
+            List<Metadatum> loaded = loadedMetadata.remove(itemID);
+            Metadatum[] dcvs = loaded == null
+                    ? getMetaDatumEnricherApplier().enrichMetaData(item, context)
+                    : getMetaDatumEnricherApplier().enrichMetaData(item, loaded.toArray(new Metadatum[loaded.size()]), context);
+            for (Metadatum dcv : dcvs) {
+                if (!MetadataExposure.isHidden(context, dcv.schema, dcv.element, dcv.qualifier)) {
+                    entries.add(new MetadataEntry(dcv.getField(), dcv.value, dcv.language));
+                }
+            }
+            dto.setMetadata(entries);
+        } else {
+            dto.addExpand("metadata");
+        }
+
+        dto.setArchived(Boolean.toString(item.isArchived()));
+        dto.setWithdrawn(Boolean.toString(item.isWithdrawn()));
+        dto.setLastModified(item.getLastModified().toString());
+
+        if(parentCollection) {
+            dto.setParentCollection(getCollection(item.getOwningCollection()));
+        } else {
+            dto.addExpand("parentCollection");
+        }
+
+        if(parentCollectionList) {
+            List<Collection> parentCollections = new ArrayList<Collection>();
+            List<Integer> collectionIDs = loadedCollectionIDs.remove(itemID);
+            if (collectionIDs == null) {
+                for(org.dspace.content.Collection collection : item.getCollections()) {
+                    parentCollections.add(getCollection(collection));
+                }
+            } else {
+                for (Integer collectionID : collectionIDs) {
+                    org.dspace.content.Collection collection = org.dspace.content.Collection.find(context, collectionID);
+                    if (collection != null) {
+                        parentCollections.add(getCollection(collection));
+                    }
+                }
+            }
+            dto.setParentCollectionList(parentCollections);
+        } else {
+            dto.addExpand("parentCollectionList");
+        }
+
+        if(parentCommunityList) {
+            List<Community> parentCommunities = new ArrayList<Community>();
+            Set<Integer> added = new HashSet<Integer>();
+            List<Integer> communityIDs = loadedCommunityIDs.remove(itemID);
+            if (communityIDs == null) {
+                for(org.dspace.content.Community community : item.getCommunities()) {
+                    addCommunity(parentCommunities, added, community);
+                }
+            } else {
+                // every community of the item followed by its parents, as Item.getCommunities() lists them
+                for (Integer communityID : communityIDs) {
+                    org.dspace.content.Community community = org.dspace.content.Community.find(context, communityID);
+                    if (community != null) {
+                        addCommunity(parentCommunities, added, community);
+                        for (org.dspace.content.Community parent : getAllParents(community)) {
+                            addCommunity(parentCommunities, added, parent);
+                        }
+                    }
+                }
+            }
+            dto.setParentCommunityList(parentCommunities);
+        } else {
+            dto.addExpand("parentCommunityList");
+        }
+
+        //TODO: paging - offset, limit
+        if(bitstreams) {
+            List<org.dspace.content.Bitstream> readable = loadedBitstreams.remove(itemID);
+            if (readable == null) {
+                List<org.dspace.content.Bitstream> itemBitstreams = new ArrayList<org.dspace.content.Bitstream>();
+                for(Bundle bundle : item.getBundles()) {
+                    itemBitstreams.addAll(Arrays.asList(bundle.getBitstreams()));
+                }
+                readable = AuthorizeManager.filterAuthorized(context, itemBitstreams, Constants.READ);
+            }
+            List<Bitstream> bitstreamList = new ArrayList<Bitstream>();
+            for(org.dspace.content.Bitstream bitstream : readable) {
+                bitstreamList.add(new Bitstream(bitstream, null));
+            }
+            dto.setBitstreams(bitstreamList);
+        } else {
+            dto.addExpand("bitstreams");
+        }
+
+        if(!all) {
+            dto.addExpand("all");
+        }
+    }
+
+    private MetaDatumEnricherApplier getMetaDatumEnricherApplier() {
+        if (metaDatumEnricherApplier == null) {
+            metaDatumEnricherApplier = new DSpace().getServiceManager().getServiceByName(
+                    MetaDatumEnricherApplier.class.getSimpleName(), MetaDatumEnricherApplier.class);
+        }
+        return metaDatumEnricherApplier;
+    }
+
+    /**
+     * @return the collection converted once for all items of the expansion
+     */
+    private Collection getCollection(org.dspace.content.Collection collection) throws SQLException {
+        if (collection == null) {
+            return null;
+        }
+        Collection converted = collections.get(collection.getID());
+        if (converted == null) {
+            converted = new Collection(collection, null, context, null, null);
+            collections.put(collection.getID(), converted);
+        }
+        return converted;
+    }
+
+    /**
+     * Add a community to the list unless it was added already.
+     */
+    private void addCommunity(List<Community> list, Set<Integer> added, org.dspace.content.Community community)
+            throws SQLException {
+        if (added.add(community.getID())) {
+            list.add(getCommunity(community));
+        }
+    }
+
+    /**
+     * @return the parents of the community up to the top community, read once for all items of the expansion
+     */
+    private org.dspace.content.Community[] getAllParents(org.dspace.content.Community community) throws SQLException {
+        org.dspace.content.Community[] parents = communityParents.get(community.getID());
+        if (parents == null) {
+            parents = community.getAllParents();
+            communityParents.put(community.getID(), parents);
+        }
+        return parents;
+    }
+
+    /**
+     * @return the community converted once for all items of the expansion
+     */
+    private Community getCommunity(org.dspace.content.Community community) throws SQLException {
+        if (community == null) {
+            return null;
+        }
+        Community converted = communities.get(community.getID());
+        if (converted == null) {
+            converted = new Community(community, null, context);
+            communities.put(community.getID(), converted);
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.dspace.rest.ByteRangeOutput.Range;
+import org.junit.Test;
+
+/**
+ * Checks the parsing of the Range header of a bitstream retrieval.
+ */
+public class ByteRangeOutputTest
+{
+    private static final long SIZE = 1000;
+
+    private static final int MAX_RANGES = 4;
+
+    @Test
+    public void testSingleRange()
+    {
+        List<Range> ranges = ByteRangeOutput.parseRanges("bytes=0-499", SIZE, MAX_RANGES);
+        assertEquals("[0-499]", toString(ranges));
+        assertEquals(500, ranges.get(0).getLength());
+        assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(SIZE));
+
+        assertEquals("[10-10]", toString(ByteRangeOutput.parseRanges(" bytes= 10 - 10 ", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testLastPositionBeyondSize()
+    {
+        assertEquals("[900-999]", toString(ByteRangeOutput.parseRanges("bytes=900-5000", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testSuffixRange()
+    {
+        assertEquals("[900-999]", toString(ByteRangeOutput.parseRanges("bytes=-100", SIZE, MAX_RANGES)));
+
+        // a suffix longer than the bitstream is the whole bitstream
+        assertEquals("[0-999]", toString(ByteRangeOutput.parseRanges("bytes=-5000", SIZE, MAX_RANGES)));
+
+        // an empty suffix is not satisfiable
+        assertEquals("[]", toString(ByteRangeOutput.parseRanges("bytes=-0", SIZE, MAX_RANGES)));
+        assertEquals("[0-9]", toString(ByteRangeOutput.parseRanges("bytes=-0,0-9", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testOpenEndedRange()
+    {
+        assertEquals("[500-999]", toString(ByteRangeOutput.parseRanges("bytes=500-", SIZE, MAX_RANGES)));
+        assertEquals("[999-999]", toString(ByteRangeOutput.parseRanges("bytes=999-", SIZE, MAX_RANGES)));
+        assertEquals("[0-999]", toString(ByteRangeOutput.parseRanges("bytes=0-", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testRangesAreSorted()
+    {
+        assertEquals("[0-9, 100-199, 900-999]",
+                toString(ByteRangeOutput.parseRanges("bytes=-100,100-199,0-9", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testOverlappingRangesAreMerged()
+    {
+        assertEquals("[0-199]", toString(ByteRangeOutput.parseRanges("bytes=0-99,50-199", SIZE, MAX_RANGES)));
+
+        // contained in the previous range
+        assertEquals("[0-199]", toString(ByteRangeOutput.parseRanges("bytes=0-199,50-60", SIZE, MAX_RANGES)));
+
+        // the open-ended range and the suffix cover the same bytes
+        assertEquals("[500-999]", toString(ByteRangeOutput.parseRanges("bytes=500-,-100", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testAdjacentRangesAreMerged()
+    {
+        assertEquals("[0-199]", toString(ByteRangeOutput.parseRanges("bytes=100-199,0-99", SIZE, MAX_RANGES)));
+
+        // a gap of one byte is kept
+        assertEquals("[0-99, 101-199]", toString(ByteRangeOutput.parseRanges("bytes=0-99,101-199", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testUnsatisfiableRanges()
+    {
+        // answered with 416 Requested Range Not Satisfiable
+        assertTrue(ByteRangeOutput.parseRanges("bytes=1000-", SIZE, MAX_RANGES).isEmpty());
+        assertTrue(ByteRangeOutput.parseRanges("bytes=1000-1999", SIZE, MAX_RANGES).isEmpty());
+        assertTrue(ByteRangeOutput.parseRanges("bytes=1000-1999,5000-", SIZE, MAX_RANGES).isEmpty());
+        assertTrue(ByteRangeOutput.parseRanges("bytes=-100", 0, MAX_RANGES).isEmpty());
+
+        // the satisfiable ranges are kept
+        assertEquals("[0-9]", toString(ByteRangeOutput.parseRanges("bytes=1000-1999,0-9", SIZE, MAX_RANGES)));
+    }
+
+    @Test
+    public void testTooManyRanges()
+    {
+        assertEquals("[0-0, 2-2, 4-4, 6-6]",
+                toString(ByteRangeOutput.parseRanges("bytes=0-0,2-2,4-4,6-6", SIZE, MAX_RANGES)));
+
+        // answered with the whole bitstream
+        assertNull(ByteRangeOutput.parseRanges("bytes=0-0,2-2,4-4,6-6,8-8", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=0-0,0-0", SIZE, 1));
+    }
+
+    @Test
+    public void testMalformedHeader()
+    {
+        assertNull(ByteRangeOutput.parseRanges(null, SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("items=0-99", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=100", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=-", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=a-b", SIZE, MAX_RANGES));
+        assertNull(ByteRangeOutput.parseRanges("bytes=0-99,x", SIZE, MAX_RANGES));
+
+        // the last position before the first one
+        assertNull(ByteRangeOutput.parseRanges("bytes=500-100", SIZE, MAX_RANGES));
+
+        // a negative first position
+        assertNull(ByteRangeOutput.parseRanges("bytes=--100", SIZE, MAX_RANGES));
+    }
+
+    private static String toString(List<Range> ranges)
+    {
+        StringBuilder string = new StringBuilder("[");
+        for (Range range : ranges)
+        {
+            string.append(string.length() > 1 ? ", " : "").append(range.getStart()).append('-').append(range.getEnd());
+        }
+        return string.append("]").toString();
+    }
+}